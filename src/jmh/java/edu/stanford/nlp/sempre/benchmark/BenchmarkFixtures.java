@@ -0,0 +1,102 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.ExactValueEvaluator;
+import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.Executor;
+import edu.stanford.nlp.sempre.FeatureExtractor;
+import edu.stanford.nlp.sempre.Grammar;
+import edu.stanford.nlp.sempre.JavaExecutor;
+import edu.stanford.nlp.sempre.Parser;
+import edu.stanford.nlp.sempre.tables.TableKnowledgeGraph;
+import fig.basic.LogInfo;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Self-contained inputs for the benchmarks: small grammars, synthetic utterances and tables, generated grammar files. Apart from those grammar files and the
+ * unittest-files lexicon of LexiconBenchmark, nothing is read from disk.
+ */
+public final class BenchmarkFixtures
+{
+	private BenchmarkFixtures()
+	{
+	}
+
+	public static final String[] NATIONS = { "Germany", "France", "Italy", "Spain", "Brazil", "Japan", "Kenya", "Canada", "Norway", "Chile" };
+
+	// Parsers log every derivation; keep that off the measurements.
+	public static void quiet()
+	{
+		LogInfo.writeToStdout = false;
+	}
+
+	// Same components as the parser tests: rule features, Java executor, exact match.
+	public static Parser.Spec parserSpec(final Grammar grammar)
+	{
+		final Executor executor = new JavaExecutor();
+		if (!FeatureExtractor.opts.featureDomains.contains("rule"))
+			FeatureExtractor.opts.featureDomains.add("rule");
+		return new Parser.Spec(grammar, new FeatureExtractor(executor), executor, new ExactValueEvaluator());
+	}
+
+	public static Example example(final String utterance)
+	{
+		final Example ex = new Example.Builder().setId("benchmark").setUtterance(utterance).createExample();
+		ex.preprocess();
+		return ex;
+	}
+
+	// "1 plus 2 times 3 ..." with |numTokens| tokens (rounded up to an odd number, so that it parses with the arithmetic grammar).
+	public static String arithmeticUtterance(final int numTokens)
+	{
+		final StringBuilder buf = new StringBuilder("1");
+		for (int i = 1; i < numTokens; i += 2)
+			buf.append(i % 4 == 1 ? " plus " : " times ").append(i / 2 + 2);
+		return buf.toString();
+	}
+
+	// A table of athletes with |numRows| rows: Name (distinct), Nation (10 values), Year and Score (numbers).
+	public static TableKnowledgeGraph table(final int numRows)
+	{
+		final Random random = new Random(numRows);
+		final List<String[]> data = new ArrayList<>();
+		data.add(new String[] { "Name", "Nation", "Year", "Score" });
+		for (int i = 0; i < numRows; i++)
+			data.add(new String[] { "Athlete " + i, NATIONS[random.nextInt(NATIONS.length)], String.valueOf(1950 + random.nextInt(60)), String.valueOf(random.nextInt(100)) });
+		return new TableKnowledgeGraph("benchmark-" + numRows + ".csv", data);
+	}
+
+	// A question about the table of table(), as tokens.
+	public static List<String> tableQuestion()
+	{
+		final List<String> tokens = new ArrayList<>();
+		for (final String token : "which athlete from norway had the highest score after 1990 ?".split(" "))
+			tokens.add(token);
+		return tokens;
+	}
+
+	// A grammar file with |numRules| lexical rules, a few compositional ones, and a macro.
+	public static Path grammarFile(final int numRules) throws IOException
+	{
+		final List<String> lines = new ArrayList<>();
+		lines.add("(def @name fb:people.person.name)");
+		lines.add("(rule $ROOT ($Set) (IdentityFn))");
+		lines.add("(rule $Set ($Entity) (IdentityFn))");
+		lines.add("(rule $Set ($Relation $Set) (JoinFn forward))");
+		lines.add("(rule $Set ($Set and $Set) (MergeFn and))");
+		for (int i = 0; i < numRules; i++)
+			if (i % 2 == 0)
+				lines.add(String.format("(rule $Entity (entity %d) (ConstantFn (string entity%d)))", i, i));
+			else
+				lines.add(String.format("(rule $Relation (relation %d) (ConstantFn (lambda x (@name (var x)))) (anchored 1))", i));
+		final Path path = Files.createTempFile("benchmark", ".grammar");
+		path.toFile().deleteOnExit();
+		Files.write(path, lines, StandardCharsets.UTF_8);
+		return path;
+	}
+}
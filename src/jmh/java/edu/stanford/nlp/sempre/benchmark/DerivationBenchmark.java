@@ -0,0 +1,57 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.Derivation;
+import edu.stanford.nlp.sempre.FeatureVector;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.IdentityFn;
+import edu.stanford.nlp.sempre.NumberValue;
+import edu.stanford.nlp.sempre.Rule;
+import edu.stanford.nlp.sempre.SemType;
+import edu.stanford.nlp.sempre.ValueFormula;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a Derivation as the floating parser does (shared rule, formula and type, one child, empty feature vector). Run with -prof gc: gc.alloc.rate.norm
+ * is the heap allocated per derivation, including its FeatureVector.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DerivationBenchmark
+{
+	private Rule rule;
+	private Formula formula;
+	private List<Derivation> children;
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+		rule = new Rule("$ROOT", Collections.singletonList("$X"), new IdentityFn());
+		formula = new ValueFormula<>(new NumberValue(3));
+		final Derivation child = new Derivation.Builder().cat("$X").start(0).end(1).rule(Rule.nullRule).children(Derivation.emptyList).formula(formula).type(SemType.numberType).createDerivation();
+		children = Collections.singletonList(child);
+	}
+
+	// Returned, so that the derivation is allocated on the heap.
+	@Benchmark
+	public Derivation createDerivation()
+	{
+		return new Derivation.Builder().cat("$ROOT").start(0).end(1).rule(rule).children(children).formula(formula).type(SemType.numberType).localFeatureVector(new FeatureVector()).createDerivation();
+	}
+}
@@ -0,0 +1,82 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.ContextValue;
+import edu.stanford.nlp.sempre.Executor;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.tables.lambdadcs.LambdaDCSExecutor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LambdaDCSExecutor throughput against table size, on typical WikiTableQuestions logical forms (join, comparison, superlative, aggregation, movement).
+ * The executor cache is off, so that every execution computes its denotation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExecutorBenchmark
+{
+	public static final List<String> FORMULAS = Arrays.asList( //
+			"(count (fb:row.row.nation fb:cell_nation.norway))", //
+			"(!fb:row.row.name (fb:row.row.year (fb:cell.cell.number (>= (number 1990)))))", //
+			"(!fb:row.row.name (argmax 1 1 (fb:row.row.nation fb:cell_nation.norway) (reverse (lambda r (!fb:cell.cell.number (!fb:row.row.score (var r)))))))", //
+			"(sum (!fb:cell.cell.number (!fb:row.row.score (fb:row.row.nation fb:cell_nation.japan))))", //
+			"(argmax 1 1 (!fb:row.row.nation (fb:type.object.type fb:type.row)) (reverse (lambda v (count (fb:row.row.nation (var v))))))", //
+			"(!fb:row.row.name (fb:row.row.next (argmax 1 1 (fb:row.row.nation fb:cell_nation.kenya) (reverse (lambda r (!fb:cell.cell.number (!fb:row.row.score (var r))))))))");
+
+	@Param({ "10", "100", "1000" })
+	public int numRows;
+
+	// Executor.batchThreads for executeBatch (each parameter combination runs in its own fork, so the batch pool has this size).
+	@Param({ "1", "4" })
+	public int batchThreads;
+
+	private LambdaDCSExecutor executor;
+	private ContextValue context;
+	private final List<Formula> formulas = new ArrayList<>();
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+		LambdaDCSExecutor.opts.useCache = false;
+		Executor.opts.batchThreads = batchThreads;
+		executor = new LambdaDCSExecutor();
+		context = new ContextValue(BenchmarkFixtures.table(numRows));
+		for (final String formula : FORMULAS)
+			formulas.add(Formula.fromString(formula));
+	}
+
+	// All the formulas, one after the other.
+	@Benchmark
+	public int execute()
+	{
+		int hash = 0;
+		for (final Formula formula : formulas)
+			hash += executor.execute(formula, context).value.hashCode();
+		return hash;
+	}
+
+	// All the formulas as one batch, on batchThreads threads.
+	@Benchmark
+	public List<Executor.Response> executeBatch()
+	{
+		return executor.executeBatch(formulas, context);
+	}
+}
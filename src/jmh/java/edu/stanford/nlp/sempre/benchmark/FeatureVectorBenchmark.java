@@ -0,0 +1,59 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.FeatureVector;
+import edu.stanford.nlp.sempre.Params;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FeatureVector.dotProduct against the number of features (half indicator, half real-valued), with a weight for every other feature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeatureVectorBenchmark
+{
+	@Param({ "10", "100", "1000" })
+	public int numFeatures;
+
+	private FeatureVector features;
+	private final Params params = new Params();
+
+	@Setup
+	public void setUp()
+	{
+		features = new FeatureVector();
+		final Map<String, Double> gradient = new HashMap<>();
+		for (int i = 0; i < numFeatures; i++)
+		{
+			if (i % 2 == 0)
+				features.add("rule", "r" + i);
+			else
+				features.add("bigram", "b" + i, i / 10.0);
+			if (i % 2 == 0)
+				gradient.put((i % 4 == 0 ? "rule :: r" : "bigram :: b") + i, 1.0);
+		}
+		params.update(gradient);
+	}
+
+	@Benchmark
+	public double dotProduct()
+	{
+		return features.dotProduct(params);
+	}
+}
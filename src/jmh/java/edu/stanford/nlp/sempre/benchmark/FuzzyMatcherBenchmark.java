@@ -0,0 +1,67 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.FuzzyMatchFn.FuzzyMatchFnMode;
+import edu.stanford.nlp.sempre.tables.TableKnowledgeGraph;
+import edu.stanford.nlp.sempre.tables.match.EditDistanceFuzzyMatcher;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EditDistanceFuzzyMatcher against table size: building the matcher for a table, and matching every span of a question.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FuzzyMatcherBenchmark
+{
+	@Param({ "10", "100", "1000" })
+	public int numRows;
+
+	private TableKnowledgeGraph graph;
+	private EditDistanceFuzzyMatcher matcher;
+	private final List<String> question = BenchmarkFixtures.tableQuestion();
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+		graph = BenchmarkFixtures.table(numRows);
+		matcher = new EditDistanceFuzzyMatcher(graph);
+	}
+
+	@Benchmark
+	public EditDistanceFuzzyMatcher build()
+	{
+		return new EditDistanceFuzzyMatcher(graph);
+	}
+
+	// Uncached lookups of all the spans, as entities, unaries and binaries.
+	@Benchmark
+	public int matchSpans()
+	{
+		int numMatches = 0;
+		for (int start = 0; start < question.size(); start++)
+			for (int end = start + 1; end <= question.size(); end++)
+			{
+				final String term = String.join(" ", question.subList(start, end));
+				numMatches += matcher.getFuzzyMatchedFormulas(term, FuzzyMatchFnMode.ENTITY).size();
+				numMatches += matcher.getFuzzyMatchedFormulas(term, FuzzyMatchFnMode.UNARY).size();
+				numMatches += matcher.getFuzzyMatchedFormulas(term, FuzzyMatchFnMode.BINARY).size();
+			}
+		return numMatches;
+	}
+}
@@ -0,0 +1,48 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.Grammar;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Grammar.read against the number of rules in the grammar file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GrammarBenchmark
+{
+	@Param({ "100", "1000", "10000" })
+	public int numRules;
+
+	private String path;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		BenchmarkFixtures.quiet();
+		path = BenchmarkFixtures.grammarFile(numRules).toString();
+	}
+
+	@Benchmark
+	public Grammar read()
+	{
+		final Grammar grammar = new Grammar();
+		grammar.read(path);
+		return grammar;
+	}
+}
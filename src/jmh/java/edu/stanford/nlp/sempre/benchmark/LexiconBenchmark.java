@@ -0,0 +1,54 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.freebase.UnaryLexicon;
+import edu.stanford.nlp.sempre.freebase.lexicons.LexicalEntry.UnaryLexicalEntry;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in the unary lexicon of unittest-files. Like LexiconTest, this needs the Freebase schema (./pull-dependencies freebase) and has to be run from
+ * the root of the repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LexiconBenchmark
+{
+	private static final String[] LEXEMES = { "lawyer", "continent", "Lawyer", "not in the lexicon" };
+
+	private UnaryLexicon lexicon;
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+		UnaryLexicon.opts.unaryLexiconFilePath = "unittest-files/unaryInfoStringAndAlignment.txt";
+		lexicon = UnaryLexicon.getInstance();
+	}
+
+	@Benchmark
+	public int lookupEntries() throws IOException
+	{
+		int numEntries = 0;
+		for (final String lexeme : LEXEMES)
+		{
+			final List<UnaryLexicalEntry> entries = lexicon.lookupEntries(lexeme);
+			numEntries += entries.size();
+		}
+		return numEntries;
+	}
+}
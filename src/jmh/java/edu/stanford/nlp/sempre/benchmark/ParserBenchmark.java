@@ -0,0 +1,65 @@
+package edu.stanford.nlp.sempre.benchmark;
+
+import edu.stanford.nlp.sempre.BeamParser;
+import edu.stanford.nlp.sempre.FloatingParser;
+import edu.stanford.nlp.sempre.Params;
+import edu.stanford.nlp.sempre.Parser;
+import edu.stanford.nlp.sempre.ParserState;
+import edu.stanford.nlp.sempre.test.TestUtils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse latency against utterance length, with the arithmetic grammars of the parser tests (run with -prof gc for the allocation per parse).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParserBenchmark
+{
+	@Param({ "beam", "coarseBeam", "floating" })
+	public String parserType;
+
+	@Param({ "3", "7", "11", "15" })
+	public int numTokens;
+
+	private Parser parser;
+	private String utterance;
+	private final Params params = new Params();
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+		Parser.opts.coarsePrune = "coarseBeam".equals(parserType);
+		if ("floating".equals(parserType))
+		{
+			FloatingParser.opts.defaultIsFloating = true;
+			FloatingParser.opts.maxDepth = 4;
+			FloatingParser.opts.useAnchorsOnce = true;
+			parser = new FloatingParser(BenchmarkFixtures.parserSpec(TestUtils.makeArithmeticFloatingGrammar()));
+		}
+		else
+			parser = new BeamParser(BenchmarkFixtures.parserSpec(TestUtils.makeArithmeticGrammar()));
+		utterance = BenchmarkFixtures.arithmeticUtterance(numTokens);
+	}
+
+	@Benchmark
+	public ParserState parse()
+	{
+		return parser.parse(params, BenchmarkFixtures.example(utterance), false);
+	}
+}
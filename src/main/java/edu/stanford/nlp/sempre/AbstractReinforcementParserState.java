@@ -157,7 +157,8 @@ abstract class AbstractReinforcementParserState extends ChartParserState
 				LogInfo.logs("applyRule %s %s %s %s", start, end, rule, children);
 			StopWatchSet.begin(rule.getSemRepn()); // measuring time
 			StopWatchSet.begin(rule.toString());
-			final DerivationStream results = rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, com.google.common.collect.ImmutableList.copyOf(children)));
+			final long ruleStart = System.nanoTime();
+			final DerivationStream results = Metrics.recordRule(rule, ruleStart, rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, com.google.common.collect.ImmutableList.copyOf(children))));
 			StopWatchSet.end();
 			StopWatchSet.end();
 			return results;
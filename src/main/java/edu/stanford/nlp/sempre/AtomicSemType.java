@@ -6,12 +6,14 @@ import fig.basic.LispTree;
 public class AtomicSemType extends SemType
 {
 	public final String name;
+	public final int id; // In SemTypeHierarchy
 
 	public AtomicSemType(final String name_)
 	{
 		if (name_ == null)
 			throw new SempreError("Null name");
 		name = name_;
+		id = SemTypeHierarchy.singleton.getTypeId(name);
 	}
 
 	@Override
@@ -29,13 +31,13 @@ public class AtomicSemType extends SemType
 			return that.meet(this);
 		if (that instanceof AtomicSemType)
 		{
-			final String name1 = name;
-			final String name2 = ((AtomicSemType) that).name;
-			if (name1.equals(name2))
+			final int id1 = id;
+			final int id2 = ((AtomicSemType) that).id;
+			if (id1 == id2)
 				return this; // Shortcut: the same
-			if (SemTypeHierarchy.singleton.getSupertypes(name1).contains(name2))
+			if (SemTypeHierarchy.singleton.isSupertype(id1, id2))
 				return this;
-			if (SemTypeHierarchy.singleton.getSupertypes(name2).contains(name1))
+			if (SemTypeHierarchy.singleton.isSupertype(id2, id1))
 				return that;
 			return SemType.bottomType;
 		}
@@ -54,6 +56,12 @@ public class AtomicSemType extends SemType
 		return SemType.bottomType;
 	}
 
+	@Override
+	public SemType intern()
+	{
+		return SemType.internAtomic(name);
+	}
+
 	@Override
 	public LispTree toLispTree()
 	{
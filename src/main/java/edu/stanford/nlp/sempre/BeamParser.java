@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 import fig.basic.IOUtils;
 import fig.basic.IntRef;
 import fig.basic.LogInfo;
+import fig.basic.MapUtils;
 import fig.basic.Option;
 import fig.basic.SetUtils;
 import fig.basic.StopWatchSet;
@@ -13,9 +14,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 /**
@@ -30,6 +33,8 @@ public class BeamParser extends Parser
 	{
 		@Option
 		public int maxNewTreesPerSpan = Integer.MAX_VALUE;
+		@Option(gloss = "Apply non-cat-unary rules to child combinations in best-first order (cube pruning), and stop once the cell has beamSize new derivations")
+		public boolean cubePrune = false;
 	}
 
 	public static Options opts = new Options();
@@ -41,9 +46,15 @@ public class BeamParser extends Parser
 		super(spec);
 
 		// Index the non-cat-unary rules
-		trie = new Trie();
-		for (final Rule rule : grammar.rules)
-			addRule(rule);
+		final CompiledGrammar compiled = grammar.getCompiled();
+		if (compiled != null && compiled.isCurrent(grammar))
+			trie = compiled.takeTrie();
+		if (trie == null)
+		{
+			trie = new Trie();
+			for (final Rule rule : grammar.rules)
+				addRule(rule);
+		}
 		if (Parser.opts.visualizeChartFilling)
 			chartFillOut = IOUtils.openOutAppendEasy(Execution.getFile("chartfill"));
 	}
@@ -92,12 +103,17 @@ class BeamParserState extends ChartParserState
 	private final BeamParser parser;
 	private final BeamParserState coarseState; // Used to prune
 
+	// Cube pruning: running mean of the local score (score minus the children's scores) of the derivations built by each rule
+	private final Map<Rule, double[]> ruleLocalScores;
+	private long numCubeCompositions, numCubeAvoidedCompositions;
+
 	public BeamParserState(final BeamParser parser_, final Params params_, final Example ex, final boolean computeExpectedCounts_, final Mode mode_, final BeamParserState coarseState_)
 	{
 		super(parser_, params_, ex, computeExpectedCounts_);
 		parser = parser_;
 		mode = mode_;
 		coarseState = coarseState_;
+		ruleLocalScores = mode == Mode.full && BeamParser.opts.cubePrune ? new HashMap<>() : null;
 	}
 
 	@Override
@@ -117,9 +133,11 @@ class BeamParserState extends ChartParserState
 		}
 
 		// Recursive case
+		// Once the deadline expires, skip the remaining inner spans but still build the full span, so that root derivations are built from the current chart.
 		for (int len = 1; len <= numTokens; len++)
 			for (int i = 0; i + len <= numTokens; i++)
-				build(i, i + len);
+				if (len == numTokens || !isTimedOut())
+					build(i, i + len);
 
 		if (parser.verbose(2))
 			LogInfo.end_track();
@@ -133,8 +151,19 @@ class BeamParserState extends ChartParserState
 
 		setPredDerivations();
 
+		if (ruleLocalScores != null)
+		{
+			if (parser.verbose(1))
+				LogInfo.logs("BeamParser.cubePrune: %d compositions, %d avoided", numCubeCompositions, numCubeAvoidedCompositions);
+			evaluation.add("cubeCompositions", numCubeCompositions);
+			evaluation.add("cubeAvoidedCompositions", numCubeAvoidedCompositions);
+		}
+
 		if (mode == Mode.full)
 		{
+			// Root derivations only span the whole utterance, so the best ones are sent before executing all of them.
+			notifyListener("span " + numTokens, predDerivations);
+
 			// Compute gradient with respect to the predicted derivations
 			ensureExecuted();
 			if (computeExpectedCounts)
@@ -148,7 +177,10 @@ class BeamParserState extends ChartParserState
 	// Create all the derivations for the span [start, end).
 	protected void build(final int start, final int end)
 	{
-		applyNonCatUnaryRules(start, end, start, parser.trie, new ArrayList<Derivation>(), new IntRef(0));
+		if (ruleLocalScores != null)
+			applyNonCatUnaryRulesBestFirst(start, end);
+		else
+			applyNonCatUnaryRules(start, end, start, parser.trie, new ArrayList<Derivation>(), new IntRef(0));
 
 		final Set<String> cellsPruned = new HashSet<>();
 		applyCatUnaryRules(start, end, cellsPruned);
@@ -172,12 +204,15 @@ class BeamParserState extends ChartParserState
 			if (mode == Mode.full)
 			{
 				StopWatchSet.begin(rule.getSemRepn());
-				final DerivationStream results = rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, ImmutableList.copyOf(children)));
+				final long ruleStart = System.nanoTime();
+				final DerivationStream results = Metrics.recordRule(rule, ruleStart, rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, ImmutableList.copyOf(children))));
 				StopWatchSet.end();
 				while (results.hasNext())
 				{
 					final Derivation newDeriv = results.next();
 					featurizeAndScoreDerivation(newDeriv);
+					if (ruleLocalScores != null)
+						updateRuleLocalScore(rule, newDeriv);
 					addToChart(newDeriv);
 				}
 				return results.estimatedSize();
@@ -281,6 +316,159 @@ class BeamParserState extends ChartParserState
 			}
 	}
 
+	// -- Cube pruning --
+
+	// A rule together with the chart cells (sorted by score) that its children come from.
+	private static class Cube
+	{
+		final Rule rule;
+		final List<List<Derivation>> cells;
+
+		Cube(final Rule rule, final List<List<Derivation>> cells)
+		{
+			this.rule = rule;
+			this.cells = cells;
+		}
+
+		long size()
+		{
+			long size = 1;
+			for (final List<Derivation> cell : cells)
+				size = Math.min(size * cell.size(), Integer.MAX_VALUE);
+			return size;
+		}
+	}
+
+	// One combination of children in a cube: children.get(d) = cube.cells.get(d).get(indices[d]).
+	private static class CubeItem
+	{
+		final Cube cube;
+		final int[] indices;
+		final double priority;
+
+		CubeItem(final Cube cube, final int[] indices, final double priority)
+		{
+			this.cube = cube;
+			this.indices = indices;
+			this.priority = priority;
+		}
+
+		List<Derivation> children()
+		{
+			final List<Derivation> children = new ArrayList<>(indices.length);
+			for (int d = 0; d < indices.length; d++)
+				children.add(cube.cells.get(d).get(indices[d]));
+			return children;
+		}
+	}
+
+	// Same as applyNonCatUnaryRules, but for each category, walk the combinations of children (one cube per rule and choice of child cells) in decreasing
+	// order of (sum of the children's scores + estimated local score of the rule), and stop once the cell has beamSize new derivations.
+	// The child cells are already pruned, so they are sorted by score.
+	private void applyNonCatUnaryRulesBestFirst(final int start, final int end)
+	{
+		final Map<String, List<Cube>> cubes = new LinkedHashMap<>();
+		collectCubes(start, end, start, parser.trie, new ArrayList<List<Derivation>>(), cubes);
+
+		final int beamSize = getBeamSize();
+		int numNew = 0;
+		for (final Map.Entry<String, List<Cube>> entry : cubes.entrySet())
+		{
+			final PriorityQueue<CubeItem> queue = new PriorityQueue<>(Math.max(1, entry.getValue().size()), (a, b) -> Double.compare(b.priority, a.priority));
+			long numCombinations = 0;
+			for (final Cube cube : entry.getValue())
+			{
+				numCombinations += cube.size();
+				queue.add(newCubeItem(cube, new int[cube.cells.size()]));
+			}
+
+			long numApplied = 0;
+			final int sizeBefore = cellSize(entry.getKey(), start, end);
+			while (!queue.isEmpty() && cellSize(entry.getKey(), start, end) - sizeBefore < beamSize && numNew < BeamParser.opts.maxNewTreesPerSpan)
+			{
+				final CubeItem item = queue.poll();
+				numNew += applyRule(start, end, item.cube.rule, item.children());
+				numApplied++;
+				pushSuccessors(item, queue);
+			}
+			numCubeCompositions += numApplied;
+			numCubeAvoidedCompositions += numCombinations - numApplied;
+		}
+	}
+
+	// Like applyNonCatUnaryRules, but collect the cells instead of enumerating the derivations in them.
+	private void collectCubes(final int start, final int end, final int i, final Trie node, final ArrayList<List<Derivation>> cells, final Map<String, List<Cube>> cubes)
+	{
+		if (node == null)
+			return;
+		if (!coarseAllows(node, start, end))
+			return;
+
+		if (i == end)
+		{
+			for (final Rule rule : node.rules)
+				if (coarseAllows(rule.lhs, start, end))
+					MapUtils.addToList(cubes, rule.lhs, new Cube(rule, new ArrayList<>(cells)));
+			return;
+		}
+
+		// Advance terminal token
+		collectCubes(start, end, i + 1, node.next(ex.token(i)), cells, cubes);
+
+		// Advance non-terminal category
+		for (int j = i + 1; j <= end; j++)
+			for (final Map.Entry<String, List<Derivation>> entry : chart[i][j].entrySet())
+			{
+				if (entry.getValue().isEmpty())
+					continue;
+				cells.add(entry.getValue());
+				collectCubes(start, end, j, node.next(entry.getKey()), cells, cubes);
+				cells.remove(cells.size() - 1);
+			}
+	}
+
+	// Each combination is queued by exactly one predecessor: the one with the last nonzero index decremented.
+	// Its priority is at most the predecessor's, so combinations come out of the queue in best-first order.
+	private void pushSuccessors(final CubeItem item, final PriorityQueue<CubeItem> queue)
+	{
+		int last = item.indices.length - 1;
+		while (last > 0 && item.indices[last] == 0)
+			last--;
+		for (int d = Math.max(last, 0); d < item.indices.length; d++)
+			if (item.indices[d] + 1 < item.cube.cells.get(d).size())
+			{
+				final int[] indices = item.indices.clone();
+				indices[d]++;
+				queue.add(newCubeItem(item.cube, indices));
+			}
+	}
+
+	private CubeItem newCubeItem(final Cube cube, final int[] indices)
+	{
+		final double[] localScore = ruleLocalScores.get(cube.rule);
+		double priority = localScore == null ? 0 : localScore[0] / localScore[1];
+		for (int d = 0; d < indices.length; d++)
+			priority += cube.cells.get(d).get(indices[d]).score;
+		return new CubeItem(cube, indices, priority);
+	}
+
+	private void updateRuleLocalScore(final Rule rule, final Derivation deriv)
+	{
+		double localScore = deriv.score;
+		if (deriv.children != null)
+			for (final Derivation child : deriv.children)
+				localScore -= child.score;
+		final double[] stats = ruleLocalScores.computeIfAbsent(rule, r -> new double[2]);
+		stats[0] += localScore;
+		stats[1]++;
+	}
+
+	private int cellSize(final String cat, final int start, final int end)
+	{
+		final List<Derivation> derivations = chart[start][end].get(cat);
+		return derivations == null ? 0 : derivations.size();
+	}
+
 	// -- Coarse state pruning --
 
 	// Remove any (cat, start, end) which isn't reachable from the
@@ -0,0 +1,89 @@
+package edu.stanford.nlp.sempre;
+
+import fig.basic.LogInfo;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Streams the candidates of a query to an HTTP client as server-sent events (text/event-stream): a "candidates" event each time the parser has built more
+ * root derivations (see ParseListener), then the usual JSON response as a "response" event. Writes that fail mean that the client has disconnected; the
+ * Deadline of the query is then expired, so that the parser stops building derivations.
+ */
+public class CandidateStream extends ParseListener
+{
+	private final String server; // Label of the time-to-first-candidate metric
+	private final PrintWriter out;
+	private final Deadline deadline;
+	private final Function<Derivation, Object> renderer; // Derivation => JSON object (as in the final response)
+	private final long startTime = System.nanoTime();
+	private long firstCandidateNanos = -1;
+	private boolean closed, disconnected;
+
+	public CandidateStream(final String server_, final OutputStream out_, final Deadline deadline_, final int maxCandidates_, final Function<Derivation, Object> renderer_)
+	{
+		super(maxCandidates_);
+		server = server_;
+		out = new PrintWriter(new OutputStreamWriter(out_, StandardCharsets.UTF_8));
+		deadline = deadline_;
+		renderer = renderer_;
+	}
+
+	@Override
+	public synchronized void onCandidates(final Example ex, final String stage, final List<Derivation> candidates)
+	{
+		if (firstCandidateNanos == -1)
+		{
+			firstCandidateNanos = System.nanoTime() - startTime;
+			Metrics.firstCandidateTime.get(server).record(firstCandidateNanos);
+		}
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("stage", stage);
+		json.put("time", (System.nanoTime() - startTime) / 1.0e9);
+		final List<Object> items = new ArrayList<>();
+		for (final Derivation deriv : candidates)
+			items.add(renderer.apply(deriv));
+		json.put("candidates", items);
+		send("candidates", json);
+	}
+
+	// Seconds from the start of the query to the first candidates (null if none were sent).
+	public synchronized Double getFirstCandidateTime()
+	{
+		return firstCandidateNanos == -1 ? null : firstCandidateNanos / 1.0e9;
+	}
+
+	public synchronized boolean isDisconnected()
+	{
+		return disconnected;
+	}
+
+	public synchronized void send(final String event, final Object data)
+	{
+		if (closed)
+			return;
+		out.print("event: " + event + "\n");
+		out.print("data: " + Json.writeValueAsStringHard(data) + "\n\n");
+		if (out.checkError()) // Flushes
+		{
+			LogInfo.warnings("CandidateStream: client disconnected, stopping the query");
+			closed = disconnected = true;
+			if (deadline != Deadline.NONE)
+				deadline.expire();
+		}
+	}
+
+	// Send the final response and end the stream (candidates from a parser that is still running are dropped).
+	public synchronized void close(final Object response)
+	{
+		send("response", response);
+		closed = true;
+		out.close();
+	}
+}
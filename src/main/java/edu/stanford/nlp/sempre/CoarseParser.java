@@ -3,59 +3,160 @@ package edu.stanford.nlp.sempre;
 import com.google.common.base.Joiner;
 import fig.basic.LogInfo;
 import fig.basic.MapUtils;
-import fig.basic.Pair;
 import fig.basic.StopWatch;
-import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Parser that only has information on what categories can parse what spans Does not hold backpointers for getting full parse, only reachability information
  * Important: assumes that the grammar is binary Independent from the Parser code and therefore there is duplicate code (traverse(), keepTopDownReachable())
- * 
+ * <p>
+ * Categories (and terminals on the RHS of binary rules) are interned as ids, the chart holds one bitset of categories per span, and the binary and unary rules
+ * are precomputed as bit-matrices, so that filling the chart and pruning it top-down are word-level bit operations.
+ *
  * @author jonathanberant
  */
 public class CoarseParser
 {
 
 	public final Grammar grammar;
-	private final Map<Pair<String, String>, Set<String>> rhsToLhsMap;
 	ArrayList<Rule> catUnaryRules; // Unary rules with category on RHS
-	Map<String, List<Rule>> terminalsToRulesList = new HashMap<>();
+
+	// Symbol <=> id; a set of symbols is a bitset of |numWords| longs.
+	private final Map<String, Integer> symbolIds = new HashMap<>();
+	private final List<String> symbols = new ArrayList<>();
+	private final int numWords;
+
+	// Binary rules, indexed by the left symbol (null if none): bitset of the right symbols, number of right symbols before each word of that bitset, and the LHS
+	// categories for each right symbol (in order of id).
+	private final long[][] binaryRights;
+	private final int[][] binaryRightRanks;
+	private final int[][][] binaryLhs;
+
+	// For each category, the categories above (ancestors) or below (descendants) it through chains of unary rules (null if none).
+	private final long[][] unaryAncestors;
+	private final long[][] unaryDescendants;
+
+	private final Map<String, int[]> terminalsToLhs = new HashMap<>(); // Rules with only terminals on the RHS
+	private final int tokenCat, lemmaTokenCat, phraseCat, lemmaPhraseCat, rootCat;
 
 	public CoarseParser(final Grammar grammar_)
 	{
 		grammar = grammar_;
 		catUnaryRules = new ArrayList<>();
-		rhsToLhsMap = new HashMap<>();
+		tokenCat = intern(Rule.tokenCat);
+		lemmaTokenCat = intern(Rule.lemmaTokenCat);
+		phraseCat = intern(Rule.phraseCat);
+		lemmaPhraseCat = intern(Rule.lemmaPhraseCat);
+		rootCat = intern(Rule.rootCat);
 
 		final Map<String, List<Rule>> graph = new HashMap<>(); // Node from LHS to list of rules
+		final Map<Integer, Map<Integer, Set<Integer>>> binaryRules = new HashMap<>(); // left => right => LHS
+		final Map<String, Set<Integer>> terminalRules = new HashMap<>();
 		for (final Rule rule : grammar.rules)
 		{
 			if (rule.rhs.size() > 2)
 				throw new RuntimeException("We assume that the grammar is binarized, rule: " + rule);
+			final int lhs = intern(rule.lhs);
 			if (rule.isCatUnary())
+			{
+				intern(rule.rhs.get(0));
 				MapUtils.addToList(graph, rule.lhs, rule);
+			}
 			else
 				if (rule.rhs.size() == 2)
-					MapUtils.addToSet(rhsToLhsMap, Pair.newPair(rule.rhs.get(0), rule.rhs.get(1)), rule.lhs);
+					binaryRules.computeIfAbsent(intern(rule.rhs.get(0)), l -> new TreeMap<>()).computeIfAbsent(intern(rule.rhs.get(1)), r -> new LinkedHashSet<>()).add(lhs);
 				else
 				{
 					assert rule.isRhsTerminals();
-					MapUtils.addToList(terminalsToRulesList, Joiner.on(' ').join(rule.rhs), rule);
+					terminalRules.computeIfAbsent(Joiner.on(' ').join(rule.rhs), t -> new LinkedHashSet<>()).add(lhs);
 				}
 		}
+		numWords = (symbols.size() + 63) / 64;
+
+		binaryRights = new long[symbols.size()][];
+		binaryRightRanks = new int[symbols.size()][];
+		binaryLhs = new int[symbols.size()][][];
+		for (final Map.Entry<Integer, Map<Integer, Set<Integer>>> e : binaryRules.entrySet())
+		{
+			final int l = e.getKey();
+			binaryRights[l] = new long[numWords];
+			binaryRightRanks[l] = new int[numWords];
+			binaryLhs[l] = new int[e.getValue().size()][];
+			int k = 0;
+			for (final Map.Entry<Integer, Set<Integer>> rightLhs : e.getValue().entrySet()) // In order of id
+			{
+				set(binaryRights[l], 0, rightLhs.getKey());
+				binaryLhs[l][k++] = toArray(rightLhs.getValue());
+			}
+			for (int w = 1; w < numWords; w++)
+				binaryRightRanks[l][w] = binaryRightRanks[l][w - 1] + Long.bitCount(binaryRights[l][w - 1]);
+		}
+		for (final Map.Entry<String, Set<Integer>> e : terminalRules.entrySet())
+			terminalsToLhs.put(e.getKey(), toArray(e.getValue()));
+
 		// Topologically sort catUnaryRules so that B->C occurs before A->B
 		final Map<String, Boolean> done = new HashMap<>();
 		for (final String node : graph.keySet())
 			traverse(catUnaryRules, node, graph, done);
-		LogInfo.logs("Coarse parser: %d catUnaryRules (sorted), %d nonCatUnaryRules", catUnaryRules.size(), grammar.rules.size() - catUnaryRules.size());
+
+		// Transitive closure of the unary rules: in the topological order, the descendants of B are complete before A->B, and (backwards) the ancestors of B are
+		// complete before B->C.
+		unaryAncestors = new long[symbols.size()][];
+		unaryDescendants = new long[symbols.size()][];
+		for (final Rule rule : catUnaryRules)
+			addClosure(unaryDescendants, symbolIds.get(rule.lhs), symbolIds.get(rule.rhs.get(0)));
+		for (int i = catUnaryRules.size() - 1; i >= 0; i--)
+			addClosure(unaryAncestors, symbolIds.get(catUnaryRules.get(i).rhs.get(0)), symbolIds.get(catUnaryRules.get(i).lhs));
+		LogInfo.logs("Coarse parser: %d catUnaryRules (sorted), %d nonCatUnaryRules, %d symbols", catUnaryRules.size(), grammar.rules.size() - catUnaryRules.size(), symbols.size());
+	}
+
+	private int intern(final String symbol)
+	{
+		Integer id = symbolIds.get(symbol);
+		if (id == null)
+		{
+			id = symbols.size();
+			symbolIds.put(symbol, id);
+			symbols.add(symbol);
+		}
+		return id;
+	}
+
+	private static int[] toArray(final Set<Integer> ids)
+	{
+		final int[] result = new int[ids.size()];
+		int i = 0;
+		for (final int id : ids)
+			result[i++] = id;
+		return result;
+	}
+
+	// closure[a] |= {b} + closure[b]
+	private void addClosure(final long[][] closure, final int a, final int b)
+	{
+		if (closure[a] == null)
+			closure[a] = new long[numWords];
+		set(closure[a], 0, b);
+		if (closure[b] != null)
+			for (int w = 0; w < numWords; w++)
+				closure[a][w] |= closure[b][w];
+	}
+
+	private static boolean get(final long[] bits, final int offset, final int id)
+	{
+		return (bits[offset + (id >> 6)] & 1L << id) != 0;
+	}
+
+	private static void set(final long[] bits, final int offset, final int id)
+	{
+		bits[offset + (id >> 6)] |= 1L << id;
 	}
 
 	/** Helper function for transitive closure of unary rules. */
@@ -85,22 +186,24 @@ public class CoarseParser
 	class CoarseParserState
 	{
 
-		private final Map<String, List<CategorySpan>>[][] chart;
+		// Bitset of the categories of each span (start, end), at offset(start, end).
+		private final long[] chart;
 		public final Example example;
 		public final CoarseParser parser;
 		private final int numTokens;
 		private long time;
 		private final String[][] phrases;
+		private final int[] tokenIds; // Symbol id of each token (-1 if it isn't on the RHS of a binary rule)
 
-		@SuppressWarnings({ "unchecked" })
 		public CoarseParserState(final Example example_, final CoarseParser parser_)
 		{
 			example = example_;
 			parser = parser_;
 			numTokens = example.numTokens();
 			// Initialize the chart.
-			chart = (HashMap<String, List<CategorySpan>>[][]) Array.newInstance(HashMap.class, numTokens, numTokens + 1);
+			chart = new long[numTokens * (numTokens + 1) * numWords];
 			phrases = new String[numTokens][numTokens + 1];
+			tokenIds = new int[numTokens];
 
 			for (int start = 0; start < numTokens; start++)
 			{
@@ -111,11 +214,16 @@ public class CoarseParser
 						sb.append(' ');
 					sb.append(example.languageInfo.tokens.get(end - 1));
 					phrases[start][end] = sb.toString();
-					chart[start][end] = new HashMap<>();
 				}
+				tokenIds[start] = MapUtils.get(symbolIds, phrases[start][start + 1], -1);
 			}
 		}
 
+		private int offset(final int start, final int end)
+		{
+			return (start * (numTokens + 1) + end) * numWords;
+		}
+
 		public long getCoarseParseTime()
 		{
 			return time;
@@ -140,7 +248,8 @@ public class CoarseParser
 
 		public boolean coarseAllows(final String cat, final int start, final int end)
 		{
-			return chart[start][end].containsKey(cat);
+			final Integer id = symbolIds.get(cat);
+			return id != null && get(chart, offset(start, end), id);
 		}
 
 		private void build(final int start, final int end)
@@ -153,163 +262,130 @@ public class CoarseParser
 		{
 			for (int i = 0; i < numTokens; ++i)
 			{
-				addToChart(Rule.tokenCat, i, i + 1);
-				addToChart(Rule.lemmaTokenCat, i, i + 1);
+				set(chart, offset(i, i + 1), tokenCat);
+				set(chart, offset(i, i + 1), lemmaTokenCat);
 			}
 			for (int i = 0; i < numTokens; i++)
 				for (int j = i + 1; j <= numTokens; j++)
 				{
-					addToChart(Rule.phraseCat, i, j);
-					addToChart(Rule.lemmaPhraseCat, i, j);
+					set(chart, offset(i, j), phraseCat);
+					set(chart, offset(i, j), lemmaPhraseCat);
 				}
 		}
 
-		private void addToChart(final String cat, final int start, final int end)
-		{
-			if (Parser.opts.verbose >= 5)
-				LogInfo.logs("Adding to chart %s(%s,%s)", cat, start, end);
-			MapUtils.putIfAbsent(chart[start][end], cat, new ArrayList<CategorySpan>());
-		}
-
-		private void addToChart(final String parentCat, final String childCat, final int start, final int end)
-		{
-			if (Parser.opts.verbose >= 5)
-				LogInfo.logs("Adding to chart %s(%s,%s)-->%s(%s,%s)", parentCat, start, end, childCat, start, end);
-			MapUtils.addToList(chart[start][end], parentCat, new CategorySpan(childCat, start, end));
-		}
-
-		private void addToChart(final String parentCat, final String leftCat, final String rightCat, final int start, final int i, final int end)
+		private void handleBinaryRules(final int start, final int end)
 		{
-			if (Parser.opts.verbose >= 5)
-				LogInfo.logs("Adding to chart %s(%s,%s)-->%s(%s,%s) %s(%s,%s)", parentCat, start, end, leftCat, start, i, rightCat, i, end);
-			MapUtils.addToList(chart[start][end], parentCat, new CategorySpan(leftCat, start, i));
-			MapUtils.addToList(chart[start][end], parentCat, new CategorySpan(rightCat, i, end));
+			for (int i = start + 1; i < end; ++i)
+				combine(start, i, end, null);
 		}
 
-		private void handleBinaryRules(final int start, final int end)
+		// Apply the binary rules to (start, i) and (i, end). Bottom-up (|reachable| is null), add the LHS categories to (start, end); top-down, mark the children of
+		// the reachable LHS categories as reachable.
+		private void combine(final int start, final int i, final int end, final long[] reachable)
 		{
-			for (int i = start + 1; i < end; ++i)
+			final int left = offset(start, i), right = offset(i, end), parent = offset(start, end);
+			// handle single terminals
+			final int leftToken = i - start == 1 ? tokenIds[start] : -1;
+			final int rightToken = end - i == 1 ? tokenIds[i] : -1;
+			for (int w = 0; w < numWords; w++)
 			{
-				final List<String> left = new ArrayList<>(chart[start][i].keySet());
-				final List<String> right = new ArrayList<>(chart[i][end].keySet());
-				if (i - start == 1)
-					left.add(phrases[start][i]); // handle single terminal
-				if (end - i == 1)
-					right.add(phrases[i][end]); // handle single terminal
-
-				for (final String l : left)
-					for (final String r : right)
+				long lefts = chart[left + w];
+				if (leftToken >= 0 && leftToken >> 6 == w)
+					lefts |= 1L << leftToken;
+				for (; lefts != 0; lefts &= lefts - 1)
+				{
+					final int l = w << 6 | Long.numberOfTrailingZeros(lefts);
+					final long[] rights = binaryRights[l];
+					if (rights == null)
+						continue;
+					for (int v = 0; v < numWords; v++)
 					{
-						final Set<String> parentCats = rhsToLhsMap.get(Pair.newPair(l, r));
-
-						if (parentCats != null)
-							for (final String parentCat : parentCats)
-								addToChart(parentCat, l, r, start, i, end);
+						long matches = chart[right + v];
+						if (rightToken >= 0 && rightToken >> 6 == v)
+							matches |= 1L << rightToken;
+						for (matches &= rights[v]; matches != 0; matches &= matches - 1)
+						{
+							final long bit = matches & -matches;
+							final int[] lhs = binaryLhs[l][binaryRightRanks[l][v] + Long.bitCount(rights[v] & bit - 1)];
+							if (reachable == null)
+							{
+								for (final int p : lhs)
+									set(chart, parent, p);
+								continue;
+							}
+							for (final int p : lhs)
+								if (get(reachable, parent, p))
+								{
+									set(reachable, left, l);
+									reachable[right + v] |= bit;
+									break;
+								}
+						}
 					}
+				}
 			}
 		}
 
 		private void handleUnaryRules(final int start, final int end)
 		{
-
+			final int span = offset(start, end);
 			// terminals on RHS
-			for (final Rule rule : MapUtils.get(terminalsToRulesList, phrases[start][end], Collections.<Rule> emptyList()))
-				addToChart(rule.lhs, start, end);
+			final int[] lhs = terminalsToLhs.get(phrases[start][end]);
+			if (lhs != null)
+				for (final int p : lhs)
+					set(chart, span, p);
 			// catUnaryRules
-			for (final Rule rule : parser.catUnaryRules)
-			{
-				final String rhsCat = rule.rhs.get(0);
-				if (chart[start][end].containsKey(rhsCat))
-					addToChart(rule.lhs, rhsCat, start, end);
-			}
+			closeUnary(chart, span, unaryAncestors);
 		}
 
-		public void keepTopDownReachable()
+		// Add the closure of the categories in |bits| at |offset| (the closure is transitive, so newly added categories need not be expanded again).
+		private void closeUnary(final long[] bits, final int offset, final long[][] closure)
 		{
-			if (numTokens == 0)
-				return;
-
-			final Set<CategorySpan> reachable = new HashSet<>();
-			collectReachable(reachable, new CategorySpan(Rule.rootCat, 0, numTokens));
-
-			// Remove all derivations associated with (cat, start, end) that aren't reachable.
-			for (int start = 0; start < numTokens; start++)
-				for (int end = start + 1; end <= numTokens; end++)
+			for (int w = 0; w < numWords; w++)
+				for (long cats = bits[offset + w]; cats != 0; cats &= cats - 1)
 				{
-					final List<String> toRemoveCats = new LinkedList<>();
-					for (final String cat : chart[start][end].keySet())
-						if (!reachable.contains(new CategorySpan(cat, start, end)))
-							toRemoveCats.add(cat);
-					Collections.sort(toRemoveCats);
-					for (final String cat : toRemoveCats)
-					{
-						if (Parser.opts.verbose >= 5)
-							LogInfo.logs("Pruning chart %s(%s,%s)", cat, start, end);
-						chart[start][end].remove(cat);
-					}
+					final long[] more = closure[w << 6 | Long.numberOfTrailingZeros(cats)];
+					if (more != null)
+						for (int v = 0; v < numWords; v++)
+							bits[offset + v] |= more[v];
 				}
 		}
 
-		private void collectReachable(final Set<CategorySpan> reachable, final CategorySpan catSpan)
+		public void keepTopDownReachable()
 		{
-			if (reachable.contains(catSpan))
-				return;
-			if (!chart[catSpan.start][catSpan.end].containsKey(catSpan.cat))
-				// This should only happen for the root when there are no parses.
+			if (numTokens == 0)
 				return;
-			reachable.add(catSpan);
-			for (final CategorySpan childCatSpan : chart[catSpan.start][catSpan.end].get(catSpan.cat))
-				collectReachable(reachable, childCatSpan);
-		}
-	}
-
-	class CategorySpan
-	{
-		public final String cat;
-		public final int start;
-		public final int end;
 
-		public CategorySpan(final String cat_, final int start_, final int end_)
-		{
-			cat = cat_;
-			start = start_;
-			end = end_;
-		}
-
-		@Override
-		public int hashCode()
-		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + (cat == null ? 0 : cat.hashCode());
-			result = prime * result + end;
-			result = prime * result + start;
-			return result;
-		}
+			// Going from longer to shorter spans, each span is complete once the longer spans have been processed.
+			final long[] reachable = new long[chart.length];
+			if (get(chart, offset(0, numTokens), rootCat))
+				set(reachable, offset(0, numTokens), rootCat);
+			for (int len = numTokens; len >= 1; len--)
+				for (int start = 0; start + len <= numTokens; start++)
+				{
+					final int end = start + len, span = offset(start, end);
+					closeUnary(reachable, span, unaryDescendants);
+					for (int w = 0; w < numWords; w++)
+						reachable[span + w] &= chart[span + w];
+					for (int i = start + 1; i < end; i++)
+						combine(start, i, end, reachable);
+				}
 
-		@Override
-		public boolean equals(final Object obj)
-		{
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			final CategorySpan other = (CategorySpan) obj;
-			if (cat == null)
-			{
-				if (other.cat != null)
-					return false;
-			}
-			else
-				if (!cat.equals(other.cat))
-					return false;
-			if (end != other.end)
-				return false;
-			if (start != other.start)
-				return false;
-			return true;
+			// Remove all (cat, start, end) that aren't reachable.
+			if (Parser.opts.verbose >= 5)
+				for (int start = 0; start < numTokens; start++)
+					for (int end = start + 1; end <= numTokens; end++)
+					{
+						final List<String> toRemoveCats = new ArrayList<>();
+						final int span = offset(start, end);
+						for (int w = 0; w < numWords; w++)
+							for (long cats = chart[span + w] & ~reachable[span + w]; cats != 0; cats &= cats - 1)
+								toRemoveCats.add(symbols.get(w << 6 | Long.numberOfTrailingZeros(cats)));
+						Collections.sort(toRemoveCats);
+						for (final String cat : toRemoveCats)
+							LogInfo.logs("Pruning chart %s(%s,%s)", cat, start, end);
+					}
+			System.arraycopy(reachable, 0, chart, 0, chart.length);
 		}
 	}
 }
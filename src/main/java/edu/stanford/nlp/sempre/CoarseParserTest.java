@@ -0,0 +1,203 @@
+package edu.stanford.nlp.sempre;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+/**
+ * Test the pruned chart of CoarseParser against a brute-force computation: the categories of each span bottom-up, then the (category, span) pairs reachable
+ * from $ROOT. The grammar has more than 64 symbols, so the chart bitsets span several words.
+ */
+public class CoarseParserTest
+{
+	private static final int NUM_CATS = 100;
+	private static final int NUM_WORDS = 8;
+
+	private static String cat(final int i)
+	{
+		return "$C" + i;
+	}
+
+	private static String word(final int i)
+	{
+		return "w" + i;
+	}
+
+	// A random binarized grammar: terminal rules, acyclic unary rules (from higher to lower categories) and binary rules over categories, $TOKEN, $PHRASE and
+	// words.
+	private static Grammar makeGrammar(final Random random)
+	{
+		final Grammar grammar = new Grammar();
+		for (int i = 0; i < NUM_CATS; i++)
+		{
+			grammar.addStatement("(rule " + cat(i) + " (" + word(random.nextInt(NUM_WORDS)) + ") (ConstantFn (string " + i + ")))");
+			if (random.nextInt(4) == 0)
+				grammar.addStatement("(rule " + cat(i) + " (" + word(random.nextInt(NUM_WORDS)) + " " + word(random.nextInt(NUM_WORDS)) + ") (ConstantFn (string " + i + ")))");
+		}
+		for (int k = 0; k < 60; k++)
+		{
+			final int i = 1 + random.nextInt(NUM_CATS - 1);
+			grammar.addStatement("(rule " + cat(i) + " (" + cat(random.nextInt(i)) + ") (IdentityFn))");
+		}
+		for (int k = 0; k < 10; k++)
+			grammar.addStatement("(rule $ROOT (" + cat(random.nextInt(NUM_CATS)) + ") (IdentityFn))");
+		for (int k = 0; k < 300; k++)
+			grammar.addStatement("(rule " + cat(random.nextInt(NUM_CATS)) + " (" + randomSymbol(random) + " " + randomSymbol(random) + ") (ConcatFn ,))");
+		return grammar;
+	}
+
+	private static String randomSymbol(final Random random)
+	{
+		final int r = random.nextInt(20);
+		if (r == 0)
+			return Rule.tokenCat;
+		if (r == 1)
+			return Rule.phraseCat;
+		if (r < 4)
+			return word(random.nextInt(NUM_WORDS));
+		return cat(random.nextInt(NUM_CATS));
+	}
+
+	private static Example makeExample(final List<String> tokens)
+	{
+		final Example ex = new Example.Builder().setId("_id").setUtterance(String.join(" ", tokens)).setLanguageInfo(new LanguageInfo()).createExample();
+		ex.languageInfo.tokens.addAll(tokens);
+		return ex;
+	}
+
+	// ============================================================
+	// Brute force
+	// ============================================================
+
+	private static class BruteForceChart
+	{
+		private final List<Rule> rules;
+		private final List<String> tokens;
+		private final int n;
+		private final List<Set<String>> cats = new ArrayList<>(); // Categories of (start, end) at start * (n + 1) + end
+		private final Set<String> reachable = new HashSet<>(); // cat@start,end
+
+		BruteForceChart(final List<Rule> rules_, final List<String> tokens_)
+		{
+			rules = rules_;
+			tokens = tokens_;
+			n = tokens.size();
+			for (int i = 0; i < n * (n + 1); i++)
+				cats.add(new HashSet<String>());
+			for (int len = 1; len <= n; len++)
+				for (int start = 0; start + len <= n; start++)
+					build(start, start + len);
+			visit(Rule.rootCat, 0, n);
+		}
+
+		private Set<String> cats(final int start, final int end)
+		{
+			return cats.get(start * (n + 1) + end);
+		}
+
+		private boolean matches(final String symbol, final int start, final int end)
+		{
+			return cats(start, end).contains(symbol) || end - start == 1 && tokens.get(start).equals(symbol);
+		}
+
+		private void build(final int start, final int end)
+		{
+			final Set<String> span = cats(start, end);
+			if (end - start == 1)
+			{
+				span.add(Rule.tokenCat);
+				span.add(Rule.lemmaTokenCat);
+			}
+			span.add(Rule.phraseCat);
+			span.add(Rule.lemmaPhraseCat);
+			final String phrase = String.join(" ", tokens.subList(start, end));
+			for (final Rule rule : rules)
+				if (rule.isRhsTerminals() && String.join(" ", rule.rhs).equals(phrase))
+					span.add(rule.lhs);
+				else
+					if (rule.rhs.size() == 2)
+						for (int i = start + 1; i < end; i++)
+							if (matches(rule.rhs.get(0), start, i) && matches(rule.rhs.get(1), i, end))
+								span.add(rule.lhs);
+			boolean changed = true;
+			while (changed)
+			{
+				changed = false;
+				for (final Rule rule : rules)
+					if (rule.isCatUnary() && span.contains(rule.rhs.get(0)))
+						changed |= span.add(rule.lhs);
+			}
+		}
+
+		private void visit(final String cat, final int start, final int end)
+		{
+			if (!cats(start, end).contains(cat) || !reachable.add(cat + "@" + start + "," + end))
+				return;
+			for (final Rule rule : rules)
+				if (rule.lhs.equals(cat))
+					if (rule.isCatUnary())
+						visit(rule.rhs.get(0), start, end);
+					else
+						if (rule.rhs.size() == 2)
+							for (int i = start + 1; i < end; i++)
+								if (matches(rule.rhs.get(0), start, i) && matches(rule.rhs.get(1), i, end))
+								{
+									visit(rule.rhs.get(0), start, i);
+									visit(rule.rhs.get(1), i, end);
+								}
+		}
+
+		boolean allows(final String cat, final int start, final int end)
+		{
+			return reachable.contains(cat + "@" + start + "," + end);
+		}
+	}
+
+	@Test
+	public void sameAsBruteForce()
+	{
+		final Random random = new Random(1);
+		final Grammar grammar = makeGrammar(random);
+		final CoarseParser parser = new CoarseParser(grammar);
+		final Set<String> symbols = new HashSet<>();
+		for (final Rule rule : grammar.getRules())
+		{
+			symbols.add(rule.lhs);
+			symbols.addAll(rule.rhs);
+		}
+		symbols.add(Rule.tokenCat);
+		symbols.add(Rule.lemmaTokenCat);
+		symbols.add(Rule.phraseCat);
+		symbols.add(Rule.lemmaPhraseCat);
+		assertTrue(symbols.size() > 2 * 64);
+
+		int numParsed = 0, numReachable = 0;
+		for (int k = 0; k < 200; k++)
+		{
+			final List<String> tokens = new ArrayList<>();
+			for (int i = 1 + random.nextInt(8); i > 0; i--)
+				tokens.add(word(random.nextInt(NUM_WORDS)));
+			final CoarseParser.CoarseParserState state = parser.getCoarsePrunedChart(makeExample(tokens));
+			final BruteForceChart expected = new BruteForceChart(grammar.getRules(), tokens);
+			if (expected.allows(Rule.rootCat, 0, tokens.size()))
+				numParsed++;
+			for (int start = 0; start < tokens.size(); start++)
+				for (int end = start + 1; end <= tokens.size(); end++)
+					for (final String symbol : symbols)
+					{
+						assertEquals(tokens + " " + symbol + "(" + start + "," + end + ")", expected.allows(symbol, start, end), state.coarseAllows(symbol, start, end));
+						if (expected.allows(symbol, start, end))
+							numReachable++;
+					}
+		}
+		// The grammar parses some of the sentences, with more than the root reachable
+		assertTrue(numParsed > 20);
+		assertTrue(numReachable > 10 * numParsed);
+	}
+}
@@ -0,0 +1,442 @@
+package edu.stanford.nlp.sempre;
+
+import fig.basic.LispTree;
+import fig.basic.LogInfo;
+import fig.basic.Pair;
+import fig.basic.Utils;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A snapshot of a Grammar after reading its files: the binarized rules, the macros and tags, and the structures that parsers would otherwise recompute at
+ * startup (the sorted cat-unary rules and the trie of the other rules).
+ * <p>
+ * The snapshot records the grammar files it was built from and a hash of their contents (and of the options that affect reading). Grammar.read() uses the
+ * snapshot at Grammar.opts.compiledPath when the hash still matches, and otherwise reads the grammar files and rewrites the snapshot. Semantic functions are
+ * stored as their LispTrees and initialized again when loading (once per semantic function, as when reading the grammar).
+ */
+public class CompiledGrammar
+{
+	private static final byte[] MAGIC = "SEMPREGC".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+
+	// Number of grammar rules when the snapshot was built; the precomputed structures are only valid while the grammar has exactly these rules.
+	private final int numRules;
+	private final List<Rule> catUnaryRules;
+	private Trie trie;
+
+	private CompiledGrammar(final int numRules, final List<Rule> catUnaryRules, final Trie trie)
+	{
+		this.numRules = numRules;
+		this.catUnaryRules = catUnaryRules;
+		this.trie = trie;
+	}
+
+	// Precompute the parser structures for the rules currently in |grammar|.
+	public static CompiledGrammar compile(final Grammar grammar)
+	{
+		final Trie trie = new Trie();
+		for (final Rule rule : grammar.rules)
+			if (!rule.isCatUnary())
+				trie.add(rule);
+		return new CompiledGrammar(grammar.rules.size(), Parser.sortCatUnaryRules(grammar.rules), trie);
+	}
+
+	// Whether no rule was added to |grammar| since the snapshot was built.
+	public boolean isCurrent(final Grammar grammar)
+	{
+		return grammar.rules.size() == numRules;
+	}
+
+	// Cat-unary rules sorted so that B->C occurs before A->B (see Parser.computeCatUnaryRules).
+	public List<Rule> getCatUnaryRules()
+	{
+		return catUnaryRules;
+	}
+
+	// Trie of the non-cat-unary rules. Parsers add rules to their trie, so only the first parser gets it (later ones get null and build their own).
+	public synchronized Trie takeTrie()
+	{
+		final Trie result = trie;
+		trie = null;
+		return result;
+	}
+
+	// ============================================================
+	// Hash of the grammar sources
+	// ============================================================
+
+	// Hash of the contents of |sourcePaths| (the grammar files in the order they were read) and of the options used to interpret them.
+	public static String hash(final List<String> inPaths, final List<String> sourcePaths)
+	{
+		try
+		{
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			final StringBuilder header = new StringBuilder();
+			header.append(VERSION).append('\n');
+			header.append(inPaths).append('\n');
+			header.append(new TreeSet<>(Grammar.opts.tags)).append('\n');
+			header.append(Grammar.opts.binarizeRules).append('\n');
+			header.append(Grammar.opts.useApplyFn).append('\n');
+			header.append(FloatingParser.opts.defaultIsFloating).append('\n');
+			digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+			for (final String path : sourcePaths)
+			{
+				digest.update((path + '\n').getBytes(StandardCharsets.UTF_8));
+				digest.update(Files.readAllBytes(Paths.get(path)));
+			}
+			final StringBuilder hex = new StringBuilder();
+			for (final byte b : digest.digest())
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		}
+		catch (final IOException e)
+		{
+			return null; // A source file is missing
+		}
+		catch (final NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	// ============================================================
+	// Reading
+	// ============================================================
+
+	/**
+	 * Load the snapshot at |path| into |grammar| (which should be empty) if the snapshot was built from grammar files |inPaths| that have not changed since.
+	 * Return the precomputed structures, or null (leaving |grammar| untouched) if the snapshot is missing, stale or unreadable.
+	 */
+	public static CompiledGrammar read(final String path, final Grammar grammar, final List<String> inPaths)
+	{
+		if (!new File(path).exists())
+			return null;
+		try
+		{
+			final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path)));
+			final byte[] magic = new byte[MAGIC.length];
+			in.get(magic);
+			if (!Arrays.equals(magic, MAGIC) || readVarInt(in) != VERSION)
+			{
+				LogInfo.logs("CompiledGrammar: %s is not a compiled grammar of the current version", path);
+				return null;
+			}
+			final String[] strings = new String[readVarInt(in) + 1];
+			for (int i = 1; i < strings.length; i++)
+			{
+				final byte[] bytes = new byte[readVarInt(in)];
+				in.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			final Reader reader = new Reader(in, strings);
+
+			// Check that the sources have not changed
+			final String hash = reader.string();
+			final List<String> sourcePaths = reader.strings();
+			if (!hash.equals(hash(inPaths, sourcePaths)))
+			{
+				LogInfo.logs("CompiledGrammar: grammar files changed since %s was written", path);
+				return null;
+			}
+
+			// Semantic functions
+			final SemanticFn[] sems = new SemanticFn[readVarInt(in)];
+			for (int i = 0; i < sems.length; i++)
+			{
+				final String className = reader.string();
+				final LispTree tree = reader.tree();
+				sems[i] = (SemanticFn) Utils.newInstanceHard(className);
+				sems[i].init(tree);
+			}
+
+			// Rules
+			final List<Rule> rules = new ArrayList<>();
+			for (int n = readVarInt(in); n > 0; n--)
+			{
+				final String lhs = reader.string();
+				final List<String> rhs = reader.strings();
+				final Rule rule = new Rule(lhs, rhs, sems[readVarInt(in)]);
+				for (int m = readVarInt(in); m > 0; m--)
+					rule.addInfo(reader.string(), in.getDouble());
+				rules.add(rule);
+			}
+			final List<Rule> catUnaryRules = new ArrayList<>();
+			for (int n = readVarInt(in); n > 0; n--)
+				catUnaryRules.add(rules.get(readVarInt(in)));
+			final Trie trie = reader.trie(rules);
+
+			// Everything else the grammar keeps
+			final int freshCatIndex = readVarInt(in);
+			final Map<String, LispTree> macros = new HashMap<>();
+			for (int n = readVarInt(in); n > 0; n--)
+				macros.put(reader.string(), reader.tree());
+			final List<String> validTags = reader.strings();
+			final List<String> statements = reader.strings();
+
+			grammar.rules.addAll(rules);
+			grammar.freshCatIndex = freshCatIndex;
+			grammar.macros.putAll(macros);
+			grammar.validTags.addAll(validTags);
+			grammar.statements.addAll(statements);
+			grammar.sourcePaths.addAll(sourcePaths);
+			return new CompiledGrammar(rules.size(), catUnaryRules, trie);
+		}
+		catch (final RuntimeException | IOException e)
+		{
+			LogInfo.warnings("CompiledGrammar: cannot read %s (%s); reading the grammar files instead", path, e);
+			return null;
+		}
+	}
+
+	private static class Reader
+	{
+		final ByteBuffer in;
+		final String[] strings;
+
+		Reader(final ByteBuffer in, final String[] strings)
+		{
+			this.in = in;
+			this.strings = strings;
+		}
+
+		String string()
+		{
+			return strings[readVarInt(in)];
+		}
+
+		List<String> strings()
+		{
+			final List<String> result = new ArrayList<>();
+			for (int n = readVarInt(in); n > 0; n--)
+				result.add(string());
+			return result;
+		}
+
+		// Leaf: (string index) << 1; list: (number of children) << 1 | 1, followed by the children.
+		LispTree tree()
+		{
+			final int code = readVarInt(in);
+			if ((code & 1) == 0)
+				return LispTree.proto.newLeaf(strings[code >>> 1]);
+			final LispTree tree = LispTree.proto.newList();
+			for (int i = code >>> 1; i > 0; i--)
+				tree.addChild(tree());
+			return tree;
+		}
+
+		Trie trie(final List<Rule> rules)
+		{
+			final Trie trie = new Trie();
+			for (int n = readVarInt(in); n > 0; n--)
+				trie.rules.add(rules.get(readVarInt(in)));
+			trie.cats.addAll(strings());
+			for (int n = readVarInt(in); n > 0; n--)
+			{
+				final String item = string();
+				trie.children.put(item, trie(rules));
+			}
+			return trie;
+		}
+	}
+
+	private static int readVarInt(final ByteBuffer in)
+	{
+		int value = 0;
+		for (int shift = 0;; shift += 7)
+		{
+			final byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	// ============================================================
+	// Writing
+	// ============================================================
+
+	/**
+	 * Write |grammar| (just read from grammar files |inPaths|) and its precomputed structures to |path|. The file is replaced atomically, so concurrent
+	 * readers see either the old or the new snapshot.
+	 */
+	public void write(final String path, final Grammar grammar, final List<String> inPaths)
+	{
+		final String hash = hash(inPaths, grammar.sourcePaths);
+		if (hash == null)
+			return;
+		final Writer writer = new Writer();
+		try
+		{
+			writer.string(hash);
+			writer.strings(grammar.sourcePaths);
+
+			// Semantic functions (shared by the rules that binarization created from the same grammar rule)
+			final Map<SemanticFn, Integer> semIndices = new IdentityHashMap<>();
+			final List<SemanticFn> sems = new ArrayList<>();
+			for (final Rule rule : grammar.rules)
+				if (!semIndices.containsKey(rule.sem))
+				{
+					semIndices.put(rule.sem, sems.size());
+					sems.add(rule.sem);
+				}
+			writer.varInt(sems.size());
+			for (final SemanticFn sem : sems)
+			{
+				writer.string(sem.getClass().getName());
+				writer.tree(sem.toLispTree());
+			}
+
+			// Rules
+			final Map<Rule, Integer> ruleIndices = new IdentityHashMap<>();
+			writer.varInt(grammar.rules.size());
+			for (final Rule rule : grammar.rules)
+			{
+				ruleIndices.put(rule, ruleIndices.size());
+				writer.string(rule.lhs);
+				writer.strings(rule.rhs);
+				writer.varInt(semIndices.get(rule.sem));
+				final List<Pair<String, Double>> info = rule.info == null ? new ArrayList<>() : rule.info;
+				writer.varInt(info.size());
+				for (final Pair<String, Double> pair : info)
+				{
+					writer.string(pair.getFirst());
+					writer.out.writeDouble(pair.getSecond());
+				}
+			}
+			writer.varInt(catUnaryRules.size());
+			for (final Rule rule : catUnaryRules)
+				writer.varInt(ruleIndices.get(rule));
+			writer.trie(trie, ruleIndices);
+
+			writer.varInt(grammar.freshCatIndex);
+			writer.varInt(grammar.macros.size());
+			for (final Map.Entry<String, LispTree> entry : grammar.macros.entrySet())
+			{
+				writer.string(entry.getKey());
+				writer.tree(entry.getValue());
+			}
+			writer.strings(new ArrayList<>(grammar.validTags));
+			writer.strings(grammar.statements);
+
+			// Header and string table go first
+			final File tempFile = new File(path + ".tmp");
+			final File parent = tempFile.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16)))
+			{
+				final Writer header = new Writer();
+				header.out.write(MAGIC);
+				header.varInt(VERSION);
+				header.varInt(writer.strings.size() - 1);
+				for (final String s : writer.strings.subList(1, writer.strings.size()))
+				{
+					final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+					header.varInt(bytes.length);
+					header.out.write(bytes);
+				}
+				header.bytes.writeTo(out);
+				writer.bytes.writeTo(out);
+			}
+			Files.move(tempFile.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LogInfo.logs("CompiledGrammar: wrote %s (%d rules)", path, grammar.rules.size());
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			LogInfo.warnings("CompiledGrammar: cannot write %s: %s", path, e);
+		}
+	}
+
+	private static class Writer
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		final Map<String, Integer> stringIndices = new HashMap<>();
+		final List<String> strings = new ArrayList<>();
+
+		Writer()
+		{
+			strings.add(null);
+			stringIndices.put(null, 0);
+		}
+
+		int stringIndex(final String s)
+		{
+			Integer index = stringIndices.get(s);
+			if (index == null)
+			{
+				index = strings.size();
+				strings.add(s);
+				stringIndices.put(s, index);
+			}
+			return index;
+		}
+
+		void string(final String s) throws IOException
+		{
+			varInt(stringIndex(s));
+		}
+
+		void strings(final List<String> list) throws IOException
+		{
+			varInt(list.size());
+			for (final String s : list)
+				string(s);
+		}
+
+		void tree(final LispTree tree) throws IOException
+		{
+			if (tree.isLeaf())
+				varInt(stringIndex(tree.value) << 1);
+			else
+			{
+				varInt(tree.children.size() << 1 | 1);
+				for (final LispTree child : tree.children)
+					tree(child);
+			}
+		}
+
+		void trie(final Trie trie, final Map<Rule, Integer> ruleIndices) throws IOException
+		{
+			varInt(trie.rules.size());
+			for (final Rule rule : trie.rules)
+				varInt(ruleIndices.get(rule));
+			strings(new ArrayList<>(trie.cats));
+			varInt(trie.children.size());
+			for (final Map.Entry<String, Trie> entry : trie.children.entrySet())
+			{
+				string(entry.getKey());
+				trie(entry.getValue(), ruleIndices);
+			}
+		}
+
+		void varInt(int value) throws IOException
+		{
+			while ((value & ~0x7f) != 0)
+			{
+				out.write(value & 0x7f | 0x80);
+				value >>>= 7;
+			}
+			out.write(value);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package edu.stanford.nlp.sempre;
+
+/**
+ * A point in time after which parsing should stop. Parsers check the deadline cooperatively (between spans, depths, agenda items and executions) and return
+ * the best derivations built so far, rather than being interrupted from another thread.
+ * <p>
+ * The deadline of the request being processed is attached to the current thread (setCurrent/clearCurrent); each ParserState picks it up when it is created,
+ * so that the deadline reaches the parser without changing the Master and Builder interfaces.
+ */
+public class Deadline
+{
+	public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+	private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+	private final long endNanos; // Long.MAX_VALUE means never
+	private volatile boolean expired;
+
+	private Deadline(final long endNanos_)
+	{
+		endNanos = endNanos_;
+	}
+
+	public static Deadline afterMillis(final long millis)
+	{
+		if (millis == Long.MAX_VALUE)
+			return NONE;
+		return new Deadline(System.nanoTime() + millis * 1000000L);
+	}
+
+	public static Deadline afterSeconds(final double seconds)
+	{
+		return afterMillis((long) (seconds * 1000));
+	}
+
+	// A deadline that only expires when expire() is called (e.g., to stop the parse when the client disconnects).
+	public static Deadline untilExpired()
+	{
+		return new Deadline(Long.MAX_VALUE);
+	}
+
+	// Return the earlier of the two deadlines.
+	public Deadline min(final Deadline that)
+	{
+		if (this == NONE)
+			return that;
+		if (that == NONE)
+			return this;
+		return endNanos - that.endNanos <= 0 ? this : that;
+	}
+
+	// Whether the deadline expires at some point in time (rather than never, or only when expire() is called).
+	public boolean isTimed()
+	{
+		return endNanos != Long.MAX_VALUE;
+	}
+
+	public boolean isExpired()
+	{
+		if (expired)
+			return true;
+		if (endNanos == Long.MAX_VALUE || System.nanoTime() - endNanos < 0)
+			return false;
+		expired = true;
+		return true;
+	}
+
+	// Make the deadline expire now (e.g., when the client gives up on the request).
+	public void expire()
+	{
+		if (this == NONE)
+			throw new RuntimeException("Cannot expire Deadline.NONE");
+		expired = true;
+	}
+
+	// Return the number of milliseconds left (0 if expired).
+	public long remainingMillis()
+	{
+		if (expired)
+			return 0;
+		if (endNanos == Long.MAX_VALUE)
+			return Long.MAX_VALUE;
+		return Math.max(0, (endNanos - System.nanoTime()) / 1000000L);
+	}
+
+	// The deadline of the request being processed by the current thread (NONE if there is none).
+	public static Deadline current()
+	{
+		final Deadline deadline = current.get();
+		return deadline == null ? NONE : deadline;
+	}
+
+	public static void setCurrent(final Deadline deadline)
+	{
+		current.set(deadline);
+	}
+
+	public static void clearCurrent()
+	{
+		current.remove();
+	}
+}
@@ -14,6 +14,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Derivation corresponds to the production of a (partial) logical form |formula| from a span of the utterance [start, end). Contains the formula and what was
@@ -66,7 +67,7 @@ public class Derivation implements SemanticFn.Callable, HasScore
 	 * 
 	 * @author sidaw
 	 **/
-	public class GrammarInfo
+	public static class GrammarInfo
 	{
 		public boolean anchored = false;
 		public boolean matched = false;
@@ -75,8 +76,6 @@ public class Derivation implements SemanticFn.Callable, HasScore
 		public List<Derivation> matches = new ArrayList<>();
 	}
 
-	public GrammarInfo grammarInfo = new GrammarInfo();
-
 	// If this derivation is composed of other derivations
 	public final Rule rule; // Which rule was used to produce this derivation?  Set to nullRule if not.
 	public final List<Derivation> children; // Corresponds to the RHS of the rule.
@@ -91,8 +90,6 @@ public class Derivation implements SemanticFn.Callable, HasScore
 
 	//// Fields produced by feature extractor, evaluation, etc.
 
-	private List<String> localChoices; // Just for printing/debugging.
-
 	// TODO(pliang): make fields private
 
 	// Information for scoring
@@ -100,17 +97,8 @@ public class Derivation implements SemanticFn.Callable, HasScore
 	double score = Double.NaN; // Weighted combination of features
 	double prob = Double.NaN; // Probability (normalized exp of score).
 
-	// Used during parsing (by FeatureExtractor, SemanticFn) to cache arbitrary
-	// computation across different sub-Derivations.
-	// Convention:
-	// - use the featureDomain, FeatureComputer or SemanticFn as the key.
-	// - the value is whatever the FeatureExtractor needs.
-	// This information should be set to null after parsing is done.
-	private Map<String, Object> tempState;
-
 	// What the formula evaluates to (optionally set later; only non-null for the root Derivation)
 	public Value value;
-	public Evaluation executorStats;
 
 	// Number in [0, 1] denoting how correct the value is.
 	public double compatibility = Double.NaN;
@@ -118,16 +106,35 @@ public class Derivation implements SemanticFn.Callable, HasScore
 	// Miscellaneous statistics
 	int maxBeamPosition = -1; // Lowest position that this tree or any of its children is on the beam (after sorting)
 	int maxUnsortedBeamPosition = -1; // Lowest position that this tree or any of its children is on the beam (before sorting)
-	int preSortBeamPosition = -1;
-	int postSortBeamPosition = -1;
 
-	// Cache the hash code
-	int hashCode = -1;
+	// Fields that most derivations never use, allocated together on first use.
+	private static class SideData
+	{
+		// Used during parsing (by FeatureExtractor, SemanticFn) to cache arbitrary
+		// computation across different sub-Derivations.
+		// Convention:
+		// - use the featureDomain, FeatureComputer or SemanticFn as the key.
+		// - the value is whatever the FeatureExtractor needs.
+		// This information should be set to null after parsing is done.
+		Map<String, Object> tempState;
+		List<String> localChoices; // Just for printing/debugging.
+		Evaluation executorStats;
+		GrammarInfo grammarInfo;
+	}
+
+	private SideData sideData; // null until one of its fields is set
+
+	private SideData sideData()
+	{
+		if (sideData == null)
+			sideData = new SideData();
+		return sideData;
+	}
 
 	// Each derivation that gets created gets a unique ID in increasing order so that
 	// we can break ties consistently for reproducible results.
-	long creationIndex;
-	public static long numCreated = 0; // Incremented for each derivation we create.
+	final long creationIndex;
+	private static final AtomicLong numCreated = new AtomicLong(); // Incremented for each derivation we create.
 	@SuppressWarnings("unchecked")
 	public static final Comparator<Derivation> derivScoreComparator = (Comparator<Derivation>) Utils.newInstanceHard(SempreUtils.resolveClassName("Derivation$" + opts.derivComparator));
 
@@ -273,7 +280,7 @@ public class Derivation implements SemanticFn.Callable, HasScore
 			localFeatureVector = deriv.localFeatureVector;
 			score = deriv.score;
 			value = deriv.value;
-			executorStats = deriv.executorStats;
+			executorStats = deriv.getExecutorStats();
 			compatibility = deriv.compatibility;
 			prob = deriv.prob;
 			canonicalUtterance = deriv.canonicalUtterance;
@@ -301,11 +308,18 @@ public class Derivation implements SemanticFn.Callable, HasScore
 		localFeatureVector = localFeatureVector_;
 		score = score_;
 		value = value_;
-		executorStats = executorStats_;
+		if (executorStats_ != null)
+			sideData().executorStats = executorStats_;
 		compatibility = compatibility_;
 		prob = prob_;
 		canonicalUtterance = canonicalUtterance_;
-		creationIndex = numCreated++;
+		creationIndex = numCreated.getAndIncrement();
+	}
+
+	// Number of derivations created so far.
+	public static long getNumCreated()
+	{
+		return numCreated.get();
 	}
 
 	public Formula getFormula()
@@ -386,7 +400,16 @@ public class Derivation implements SemanticFn.Callable, HasScore
 
 	public Evaluation getExecutorStats()
 	{
-		return executorStats;
+		return sideData == null ? null : sideData.executorStats;
+	}
+
+	// Grammar induction information (see GrammarInfo), created on first use.
+	public GrammarInfo getGrammarInfo()
+	{
+		final SideData data = sideData();
+		if (data.grammarInfo == null)
+			data.grammarInfo = new GrammarInfo();
+		return data.grammarInfo;
 	}
 
 	public FeatureVector getLocalFeatureVector()
@@ -488,10 +511,52 @@ public class Derivation implements SemanticFn.Callable, HasScore
 		StopWatchSet.begin("Executor.execute");
 		if (opts.showExecutions)
 			LogInfo.logs("%s - %s", canonicalUtterance, formula);
+		final long startTime = System.nanoTime();
 		final Executor.Response response = executor.execute(formula, context);
+		final long nanos = System.nanoTime() - startTime;
+		Metrics.phaseTime.get("execute").record(nanos);
+		Metrics.executorTime.get(executor.getClass().getSimpleName()).record(nanos);
+		StopWatchSet.end();
+		setResponse(response);
+	}
+
+	// Execute the derivations that haven't been executed yet as one batch (see Executor.executeBatch).
+	public static void ensureExecuted(final List<Derivation> derivs, final Executor executor, final ContextValue context)
+	{
+		final List<Derivation> unexecuted = new ArrayList<>();
+		for (final Derivation deriv : derivs)
+			if (!deriv.isExecuted())
+				unexecuted.add(deriv);
+		if (unexecuted.size() <= 1)
+		{
+			for (final Derivation deriv : unexecuted)
+				deriv.ensureExecuted(executor, context);
+			return;
+		}
+		StopWatchSet.begin("Executor.execute");
+		final List<Formula> formulas = new ArrayList<>(unexecuted.size());
+		for (final Derivation deriv : unexecuted)
+		{
+			if (opts.showExecutions)
+				LogInfo.logs("%s - %s", deriv.canonicalUtterance, deriv.formula);
+			formulas.add(deriv.formula);
+		}
+		final long startTime = System.nanoTime();
+		final List<Executor.Response> responses = executor.executeBatch(formulas, context);
+		final long nanos = System.nanoTime() - startTime;
+		Metrics.phaseTime.get("execute").record(nanos);
+		Metrics.executorTime.get(executor.getClass().getSimpleName()).record(nanos);
 		StopWatchSet.end();
+		for (int i = 0; i < unexecuted.size(); i++)
+			unexecuted.get(i).setResponse(responses.get(i));
+	}
+
+	private void setResponse(final Executor.Response response)
+	{
 		value = response.value;
-		executorStats = response.stats;
+		// Only the stats of root derivations are reported (see Parser), so don't allocate side data for the others
+		if (response.stats != null && isRootCat())
+			sideData().executorStats = response.stats;
 	}
 
 	public LispTree toLispTree()
@@ -621,17 +686,18 @@ public class Derivation implements SemanticFn.Callable, HasScore
 
 	public void addLocalChoice(final String choice)
 	{
-		if (localChoices == null)
-			localChoices = new ArrayList<>();
-		localChoices.add(choice);
+		final SideData data = sideData();
+		if (data.localChoices == null)
+			data.localChoices = new ArrayList<>();
+		data.localChoices.add(choice);
 	}
 
 	public void incrementAllChoices(final int factor, final Map<String, Integer> map)
 	{
 		if (opts.showRules)
 			MapUtils.incr(map, "[" + start + ":" + end + "] " + rule.toString(), 1);
-		if (localChoices != null)
-			for (final String choice : localChoices)
+		if (sideData != null && sideData.localChoices != null)
+			for (final String choice : sideData.localChoices)
 				MapUtils.incr(map, choice, factor);
 		for (final Derivation child : children)
 			child.incrementAllChoices(factor, map);
@@ -734,14 +800,16 @@ public class Derivation implements SemanticFn.Callable, HasScore
 	public Map<String, Object> getTempState()
 	{
 		// Create the tempState if it doesn't exist.
-		if (tempState == null)
-			tempState = new HashMap<>();
-		return tempState;
+		final SideData data = sideData();
+		if (data.tempState == null)
+			data.tempState = new HashMap<>();
+		return data.tempState;
 	}
 
 	public void clearTempState()
 	{
-		tempState = null;
+		if (sideData != null)
+			sideData.tempState = null;
 		if (children != null)
 			for (final Derivation child : children)
 				child.clearTempState();
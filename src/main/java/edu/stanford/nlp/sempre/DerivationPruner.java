@@ -99,6 +99,7 @@ public class DerivationPruner
 			{
 				if (opts.pruningVerbosity >= 2)
 					LogInfo.logs("PRUNED [%s] %s", matchedStrategy, deriv.formula);
+				Metrics.prunedDerivations.get(matchedStrategy).inc();
 				return true;
 			}
 		return false;
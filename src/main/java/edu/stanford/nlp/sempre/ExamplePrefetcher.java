@@ -0,0 +1,145 @@
+package edu.stanford.nlp.sempre;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over a list of examples while background threads get (e.g., decode from a serialized dataset) the next few. At most |depth| examples are
+ * prefetched, and no more are started while the ones waiting to be consumed (including the ones still being gotten, estimated from the sizes seen so far) are
+ * estimated to take more than |maxBytes|; one is always prefetched. The examples are gotten in order, so with a single thread, lists that are fastest to read
+ * sequentially (e.g., LazyLoadedExampleList on text dumps) stay fast.
+ */
+public class ExamplePrefetcher implements Iterator<Example>
+{
+	private static class Prefetched
+	{
+		final Example ex;
+		final long bytes;
+
+		Prefetched(final Example ex, final long bytes)
+		{
+			this.ex = ex;
+			this.bytes = bytes;
+		}
+	}
+
+	private final List<Example> examples;
+	private final int depth;
+	private final long maxBytes;
+	private final ExecutorService pool;
+	private final Deque<Future<Prefetched>> pending = new ArrayDeque<>();
+	private int nextIndex = 0; // Next example to prefetch
+	private long lastWaitNanos = 0;
+	private long consumedBytes = 0; // Estimated size of the examples returned by next(), for the ones still being gotten
+	private int numConsumed = 0;
+
+	public ExamplePrefetcher(final List<Example> examples, final int depth, final long maxBytes, final int numThreads)
+	{
+		this.examples = examples;
+		this.depth = Math.max(depth, 1);
+		this.maxBytes = maxBytes;
+		pool = Executors.newFixedThreadPool(Math.max(numThreads, 1));
+		prefetch();
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return !pending.isEmpty();
+	}
+
+	@Override
+	public Example next()
+	{
+		if (pending.isEmpty())
+			throw new NoSuchElementException();
+		final long startTime = System.nanoTime();
+		final Prefetched prefetched;
+		try
+		{
+			prefetched = pending.removeFirst().get();
+		}
+		catch (final InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch (final ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		lastWaitNanos = System.nanoTime() - startTime;
+		consumedBytes += prefetched.bytes;
+		numConsumed++;
+		prefetch();
+		return prefetched.ex;
+	}
+
+	// Time that the last call to next() waited for its example (0 if it had already been prefetched).
+	public long getLastWaitNanos()
+	{
+		return lastWaitNanos;
+	}
+
+	// Stop the background threads (the examples that haven't been consumed are dropped).
+	public void close()
+	{
+		pool.shutdownNow();
+	}
+
+	private void prefetch()
+	{
+		while (nextIndex < examples.size() && pending.size() < depth && (pending.isEmpty() || prefetchedBytes() <= maxBytes))
+		{
+			final int index = nextIndex++;
+			pending.addLast(pool.submit(() ->
+			{
+				final Example ex = examples.get(index);
+				return new Prefetched(ex, estimateBytes(ex));
+			}));
+		}
+	}
+
+	// Estimated size of the examples that are prefetched but not consumed yet. The ones still being gotten count as the average of the ones whose size is
+	// known; if there are none, as more than any limit.
+	private long prefetchedBytes()
+	{
+		long bytes = consumedBytes;
+		int numKnown = numConsumed, numUnknown = 0;
+		for (final Future<Prefetched> future : pending)
+			if (future.isDone() && !future.isCancelled())
+				try
+				{
+					bytes += future.get().bytes;
+					numKnown++;
+				}
+				catch (final InterruptedException | ExecutionException e)
+				{
+					// Reported by next()
+				}
+			else
+				numUnknown++;
+		if (numUnknown > 0 && numKnown == 0)
+			return Long.MAX_VALUE;
+		return bytes - consumedBytes + (numUnknown > 0 ? numUnknown * (bytes / numKnown) : 0);
+	}
+
+	// Rough size of an example: serialized datasets are dominated by the predicted derivations.
+	private static long estimateBytes(final Example ex)
+	{
+		long bytes = 1024;
+		if (ex.utterance != null)
+			bytes += 64L * ex.utterance.length();
+		if (ex.languageInfo != null)
+			bytes += 256L * ex.languageInfo.tokens.size();
+		if (ex.predDerivations != null)
+			bytes += 1024L * ex.predDerivations.size();
+		return bytes;
+	}
+}
@@ -1,6 +1,16 @@
 package edu.stanford.nlp.sempre;
 
 import fig.basic.Evaluation;
+import fig.basic.Option;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An Executor takes a logical form (Formula) and computes its denotation (Value).
@@ -9,6 +19,14 @@ import fig.basic.Evaluation;
  */
 public abstract class Executor
 {
+	public static class Options
+	{
+		@Option(gloss = "Number of threads to execute a batch of formulas with, for the executors that support it (1: one formula at a time)")
+		public int batchThreads = 1;
+	}
+
+	public static Options opts = new Options();
+
 	public static class Response
 	{
 		public Response(final Value value_)
@@ -28,4 +46,71 @@ public abstract class Executor
 
 	// Execute the formula in the given context.
 	public abstract Response execute(Formula formula, ContextValue context);
+
+	// Execute the formulas in the given context; the i-th response is for the i-th formula.
+	// By default, the formulas are executed one at a time. Executors that can run several executions at once override this.
+	public List<Response> executeBatch(final List<Formula> formulas, final ContextValue context)
+	{
+		final List<Response> responses = new ArrayList<>(formulas.size());
+		for (final Formula formula : formulas)
+			responses.add(execute(formula, context));
+		return responses;
+	}
+
+	// Execute each distinct formula once, on the batch threads.
+	// Only for executors whose execute() can be called from several threads at once.
+	protected List<Response> executeInParallel(final List<Formula> formulas, final ContextValue context)
+	{
+		if (opts.batchThreads <= 1 || formulas.size() <= 1)
+		{
+			final List<Response> responses = new ArrayList<>(formulas.size());
+			for (final Formula formula : formulas)
+				responses.add(execute(formula, context));
+			return responses;
+		}
+		final Map<Formula, Future<Response>> futures = new LinkedHashMap<>();
+		for (final Formula formula : formulas)
+			if (!futures.containsKey(formula))
+				futures.put(formula, submit(() -> execute(formula, context)));
+		final List<Response> responses = new ArrayList<>(formulas.size());
+		for (final Formula formula : formulas)
+			responses.add(await(futures.get(formula)));
+		return responses;
+	}
+
+	// Threads shared by all the executors (created when the first batch is executed in parallel).
+	private static ExecutorService batchPool;
+
+	protected static <T> Future<T> submit(final Callable<T> task)
+	{
+		synchronized (Executor.class)
+		{
+			if (batchPool == null)
+				batchPool = Executors.newFixedThreadPool(Math.max(opts.batchThreads, 1), runnable ->
+				{
+					final Thread thread = new Thread(runnable, "Executor.batch");
+					thread.setDaemon(true); // Don't keep the JVM alive
+					return thread;
+				});
+		}
+		return batchPool.submit(task);
+	}
+
+	protected static <T> T await(final Future<T> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (final InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
 }
@@ -12,4 +12,13 @@ public interface FeatureComputer
 	 */
 	void extractLocal(Example ex, Derivation deriv);
 
+	/**
+	 * Same as extractLocal(ex, deriv), but with the example-scoped |context| of the ParserState. Override this to reuse per-example precomputation; |context|
+	 * is null when the caller has no ParserState.
+	 */
+	default void extractLocal(final Example ex, final Derivation deriv, final FeatureContext context)
+	{
+		extractLocal(ex, deriv);
+	}
+
 }
@@ -0,0 +1,37 @@
+package edu.stanford.nlp.sempre;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Example-scoped storage for feature precomputation. Each ParserState builds one FeatureContext and passes it to the FeatureComputers, which can then keep
+ * data that depends only on the example (phrases of the utterance, predicate information, feature name fragments, ...) here instead of in global caches.
+ * <p>
+ * A context belongs to a single ParserState and is not thread-safe.
+ */
+public class FeatureContext
+{
+	public final Example ex;
+	private final Map<Object, Object> data = new HashMap<>();
+
+	public FeatureContext(final Example ex_)
+	{
+		ex = ex_;
+	}
+
+	/**
+	 * Return the object stored under |key|, building it with |builder| on first use.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(final Object key, final Function<Example, T> builder)
+	{
+		T value = (T) data.get(key);
+		if (value == null)
+		{
+			value = builder.apply(ex);
+			data.put(key, value);
+		}
+		return value;
+	}
+}
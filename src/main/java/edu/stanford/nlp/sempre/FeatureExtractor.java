@@ -64,8 +64,15 @@ public class FeatureExtractor
 	// This function is called on every sub-Derivation, so we should extract only
 	// features which depend in some way on |deriv|, not just on its children.
 	public void extractLocal(final Example ex, final Derivation deriv)
+	{
+		extractLocal(ex, deriv, null);
+	}
+
+	// Same as above, with the example-scoped feature context of the ParserState (may be null).
+	public void extractLocal(final Example ex, final Derivation deriv, final FeatureContext context)
 	{
 		StopWatchSet.begin("FeatureExtractor.extractLocal");
+		final long startTime = System.nanoTime();
 		extractRuleFeatures(ex, deriv);
 		extractSpanFeatures(ex, deriv);
 		extractDenotationFeatures(ex, deriv);
@@ -74,7 +81,8 @@ public class FeatureExtractor
 		conjoinLemmaAndBinary(ex, deriv);
 		extractBigramFeatures(ex, deriv);
 		for (final FeatureComputer featureComputer : featureComputers)
-			featureComputer.extractLocal(ex, deriv);
+			featureComputer.extractLocal(ex, deriv, context);
+		Metrics.phaseTime.get("featurize").recordSince(startTime);
 		StopWatchSet.end();
 	}
 
@@ -161,7 +161,7 @@ class FloatingParserState extends ParserState
 	private final DerivationPruner pruner;
 	private final CatSizeBound catSizeBound;
 	private Map<Rule, Long> ruleTime;
-	private boolean timeout = false;
+	private Deadline floatingDeadline = Deadline.NONE; // From maxFloatingParsingTime
 
 	public FloatingParserState(final FloatingParser parser, final Params params, final Example ex, final boolean computeExpectedCounts)
 	{
@@ -212,7 +212,7 @@ class FloatingParserState extends ParserState
 
 	private boolean applyRule(final Rule rule, final int start, final int end, final int depth, final Derivation child1, final Derivation child2, final String canonicalUtterance)
 	{
-		if (timeout && !isRootRule(rule))
+		if (!isRootRule(rule) && isTimedOut())
 			return false;
 		applyRuleActual(rule, start, end, depth, child1, child2, canonicalUtterance);
 		return true;
@@ -249,18 +249,26 @@ class FloatingParserState extends ParserState
 				if (child.rule.equals(rule))
 					return;
 
-		final DerivationStream results = rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, children));
+		final long ruleStart = System.nanoTime();
+		final DerivationStream results = Metrics.recordRule(rule, ruleStart, rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, children)));
+		final List<Derivation> newDerivs = new ArrayList<>();
+		final List<Derivation> toExecute = new ArrayList<>();
 		while (results.hasNext())
 		{
 			Derivation newDeriv = results.next();
 			if (FloatingParser.opts.betaReduce)
 				newDeriv = newDeriv.betaReduction();
 			newDeriv.canonicalUtterance = canonicalUtterance;
-
-			// make sure we execute
+			newDerivs.add(newDeriv);
 			if (FloatingParser.opts.executeAllDerivations && !(newDeriv.type instanceof FuncSemType))
-				newDeriv.ensureExecuted(parser.executor, ex.context);
+				toExecute.add(newDeriv);
+		}
+
+		// make sure we execute (all the new derivations at once, before pruning)
+		Derivation.ensureExecuted(toExecute, parser.executor, ex.context);
 
+		for (final Derivation newDeriv : newDerivs)
+		{
 			if (pruner.isPruned(newDeriv))
 				continue;
 			// Avoid repetitive floating cells
@@ -402,7 +410,7 @@ class FloatingParserState extends ParserState
 		if (depth == (FloatingParser.opts.initialFloatingHasZeroDepth ? 0 : 1))
 			for (final Rule rule : parser.grammar.rules)
 			{
-				if (timeout && !isRootRule(rule))
+				if (!isRootRule(rule) && isTimedOut())
 					continue;
 				if (!rule.isFloating())
 					continue;
@@ -416,7 +424,7 @@ class FloatingParserState extends ParserState
 		// Apply binaries on spans (rule $A ($B $C)), ...
 		for (final Rule rule : parser.grammar.rules)
 		{
-			if (timeout && !isRootRule(rule))
+			if (!isRootRule(rule) && isTimedOut())
 				continue;
 			if (!rule.isFloating())
 				continue;
@@ -487,7 +495,7 @@ class FloatingParserState extends ParserState
 		// Apply unary categories on spans (rule $A ($B))
 		for (final Rule rule : parser.catUnaryRules)
 		{
-			if (timeout && !isRootRule(rule))
+			if (!isRootRule(rule) && isTimedOut())
 				continue;
 			if (!rule.isFloating())
 				continue;
@@ -509,8 +517,18 @@ class FloatingParserState extends ParserState
 			derivations.addAll(myDerivations);
 	}
 
+	// Root derivations built so far (anchored on the whole utterance, or floating at any depth).
+	private List<Derivation> getRootDerivations()
+	{
+		final List<Derivation> derivations = new ArrayList<>();
+		addToDerivations(anchoredCell(Rule.rootCat, 0, numTokens), derivations);
+		for (int depth = 0; depth <= FloatingParser.opts.maxDepth; depth++)
+			addToDerivations(floatingCell(Rule.rootCat, depth), derivations);
+		return derivations;
+	}
+
 	/**
-	 * Build derivations in a thread to allow timeout.
+	 * Build derivations. Once the parse times out, only root rules are applied.
 	 */
 	class DerivationBuilder implements Runnable
 	{
@@ -544,6 +562,8 @@ class FloatingParserState extends ParserState
 				}
 			if (Parser.opts.verbose >= 1)
 				LogInfo.end_track();
+			if (!getDerivations(anchoredCell(Rule.rootCat, 0, numTokens)).isEmpty())
+				notifyListener("anchored", getRootDerivations());
 
 			// Build up floating derivations
 			for (int depth = FloatingParser.opts.initialFloatingHasZeroDepth ? 0 : 1; depth <= FloatingParser.opts.maxDepth; depth++)
@@ -558,6 +578,8 @@ class FloatingParserState extends ParserState
 				}
 				if (Parser.opts.verbose >= 1)
 					LogInfo.end_track();
+				if (!getDerivations(floatingCell(Rule.rootCat, depth)).isEmpty()) // More candidates
+					notifyListener((FloatingParser.opts.useSizeInsteadOfDepth ? "size " : "depth ") + depth, getRootDerivations());
 				// Early stopping
 				if (computeExpectedCounts && ((FloatingParser) parser).earlyStopOnConsistent)
 				{
@@ -588,32 +610,22 @@ class FloatingParserState extends ParserState
 
 	public void buildDerivations()
 	{
-		final DerivationBuilder derivBuilder = new DerivationBuilder();
-		if (FloatingParser.opts.maxFloatingParsingTime == Integer.MAX_VALUE)
-			derivBuilder.run();
-		else
+		if (FloatingParser.opts.maxFloatingParsingTime != Integer.MAX_VALUE)
+			floatingDeadline = Deadline.afterSeconds(FloatingParser.opts.maxFloatingParsingTime);
+		new DerivationBuilder().run();
+	}
+
+	// Time out on either the request deadline or maxFloatingParsingTime.
+	// This only stops the first or second passes, not the final candidate collection.
+	@Override
+	protected boolean isTimedOut()
+	{
+		if (!timedOut && floatingDeadline.isExpired())
 		{
-			final Thread parsingThread = new Thread(derivBuilder);
-			parsingThread.start();
-			try
-			{
-				parsingThread.join(FloatingParser.opts.maxFloatingParsingTime * 1000);
-				if (parsingThread.isAlive())
-				{
-					// This will only interrupt first or second passes, not the final candidate collection.
-					LogInfo.warnings("Parsing time exceeded %d seconds. Will now interrupt ...", FloatingParser.opts.maxFloatingParsingTime);
-					timeout = true;
-					parsingThread.interrupt();
-					parsingThread.join();
-				}
-			}
-			catch (final InterruptedException e)
-			{
-				e.printStackTrace();
-				LogInfo.fails("FloatingParser error: %s", e);
-			}
+			LogInfo.warnings("Parsing time exceeded %d seconds. Will now only apply root rules ...", FloatingParser.opts.maxFloatingParsingTime);
+			timedOut = true;
 		}
-		evaluation.add("timeout", timeout);
+		return super.isTimedOut();
 	}
 
 	// ============================================================
@@ -632,9 +644,7 @@ class FloatingParserState extends ParserState
 			summarizeRuleTime();
 
 		// Collect final predicted derivations
-		addToDerivations(anchoredCell(Rule.rootCat, 0, numTokens), predDerivations);
-		for (int depth = 0; depth <= FloatingParser.opts.maxDepth; depth++)
-			addToDerivations(floatingCell(Rule.rootCat, depth), predDerivations);
+		predDerivations.addAll(getRootDerivations());
 
 		// Compute gradient with respect to the predicted derivations
 		ensureExecuted();
@@ -9,6 +9,7 @@ public class FuncSemType extends SemType
 {
 	public final SemType argType;
 	public final SemType retType;
+	private FuncSemType reversed; // Cached result of reverse()
 
 	public FuncSemType(final SemType argType, final SemType retType)
 	{
@@ -22,7 +23,7 @@ public class FuncSemType extends SemType
 
 	public FuncSemType(final String argType, final String retType)
 	{
-		this(new AtomicSemType(argType), new AtomicSemType(retType));
+		this(SemType.internAtomic(argType), SemType.internAtomic(retType));
 	}
 
 	public boolean isValid()
@@ -44,7 +45,12 @@ public class FuncSemType extends SemType
 		final SemType newRetType = retType.meet(thatFunc.retType);
 		if (!newRetType.isValid())
 			return SemType.bottomType;
-		return new FuncSemType(newArgType, newRetType);
+		// Shortcut: avoid building a new type if the meet is one of the arguments
+		if (newArgType == argType && newRetType == retType)
+			return this;
+		if (newArgType == thatFunc.argType && newRetType == thatFunc.retType)
+			return that;
+		return SemType.internFunc(newArgType, newRetType);
 	}
 
 	public SemType apply(final SemType that)
@@ -56,7 +62,15 @@ public class FuncSemType extends SemType
 
 	public FuncSemType reverse()
 	{
-		return new FuncSemType(retType, argType);
+		FuncSemType result = reversed;
+		if (result == null)
+			reversed = result = SemType.internFunc(retType, argType);
+		return result;
+	}
+
+	public SemType intern()
+	{
+		return SemType.internFunc(argType, retType);
 	}
 
 	public LispTree toLispTree()
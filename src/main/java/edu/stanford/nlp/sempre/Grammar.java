@@ -41,6 +41,8 @@ public class Grammar
 		public boolean binarizeRules = true;
 		@Option(gloss = "Specifiy which ApplyFn to use: defaults to JoinFn when null")
 		public String useApplyFn = null;
+		@Option(gloss = "Compiled grammar snapshot: read the grammar from here if the grammar files have not changed, otherwise write it here after reading them")
+		public String compiledPath = null;
 	}
 
 	public static Options opts = new Options();
@@ -61,10 +63,37 @@ public class Grammar
 	// Verbatim copy of all the lines read, so we can preserve the grammar file.
 	List<String> statements = new ArrayList<>();
 
+	// All grammar files read (including the included ones), in order.
+	List<String> sourcePaths = new ArrayList<>();
+
+	// Structures precomputed for the parsers (null if the grammar was not read through a compiled snapshot).
+	CompiledGrammar compiled;
+
+	public CompiledGrammar getCompiled()
+	{
+		return compiled;
+	}
+
 	public void read()
 	{
 		LogInfo.begin_track("Grammar.read");
-		read(opts.inPaths);
+		if (opts.compiledPath != null && rules.isEmpty())
+		{
+			compiled = CompiledGrammar.read(opts.compiledPath, this, opts.inPaths);
+			if (compiled != null)
+			{
+				LogInfo.logs("Read compiled grammar %s", opts.compiledPath);
+				verifyValid();
+			}
+			else
+			{
+				read(opts.inPaths);
+				compiled = CompiledGrammar.compile(this);
+				compiled.write(opts.compiledPath, this, opts.inPaths);
+			}
+		}
+		else
+			read(opts.inPaths);
 		LogInfo.logs("%s rules", rules.size());
 		LogInfo.end_track();
 	}
@@ -168,6 +197,7 @@ public class Grammar
 		if (statements.size() > 0)
 			statements.add("");
 		statements.add("####### " + path);
+		sourcePaths.add(path);
 		for (final String line : IOUtils.readLinesHard(path))
 			statements.add(line);
 
@@ -307,6 +307,13 @@ public class JavaExecutor extends Executor
 		}
 	}
 
+	// Executions only read the shortcuts, so the formulas can be executed in parallel.
+	@Override
+	public List<Response> executeBatch(final List<Formula> formulas, final ContextValue context)
+	{
+		return executeInParallel(formulas, context);
+	}
+
 	private Object processFormula(final Formula formula, final ContextValue context)
 	{
 		if (formula instanceof ValueFormula) // Unpack value and convert to object (e.g., for ints)
@@ -182,7 +182,7 @@ public class JoinFn extends SemanticFn
 			return derivations.get(currIndex++);
 		}
 
-		SemType specializedTypeCheck(final SemType binaryType, SemType unaryType)
+		SemType specializedTypeCheck(final SemType binaryType, final SemType unaryType)
 		{
 			// Ugly special case for Free917/WebQuestions: when |that| is a
 			// UnionSemType corresponding to an entity (e.g.,
@@ -195,12 +195,16 @@ public class JoinFn extends SemanticFn
 			final SemType argType = binaryType.getArgType();
 			if (unaryType instanceof TopSemType) // Happens when we don't know the type of the unary
 				return SemType.bottomType;
-			if (unaryType instanceof AtomicSemType) // Make things uniform
-				unaryType = new UnionSemType(unaryType);
+			if (unaryType instanceof AtomicSemType && argType instanceof AtomicSemType)
+			{
+				if (SemTypeHierarchy.singleton.isSupertype(((AtomicSemType) unaryType).id, ((AtomicSemType) argType).id))
+					return binaryType.getRetType();
+				return SemType.bottomType;
+			}
 			if (unaryType instanceof UnionSemType && argType instanceof AtomicSemType)
 			{
 				for (final SemType t : ((UnionSemType) unaryType).baseTypes)
-					if (t instanceof AtomicSemType && SemTypeHierarchy.singleton.getSupertypes(((AtomicSemType) t).name).contains(((AtomicSemType) argType).name))
+					if (t instanceof AtomicSemType && SemTypeHierarchy.singleton.isSupertype(((AtomicSemType) t).id, ((AtomicSemType) argType).id))
 						return binaryType.getRetType();
 				return SemType.bottomType;
 			}
@@ -17,6 +17,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The main learning loop. Goes over a dataset multiple times, calling the parser and updating parameters.
@@ -62,6 +66,17 @@ public class Learner
 
 		@Option(gloss = "Number of threads to parallelize")
 		public int numParallelThreads = 1;
+
+		@Option(gloss = "Process groups that do not update the weights (e.g., dev and test) in a background thread, on a copy of the weights, while the next training iteration runs "
+				+ "(their progress is in the eval.group and eval.example outputs, and their stats are logged when they finish)")
+		public boolean asyncEvaluation = false;
+
+		@Option(gloss = "Number of examples to get (e.g., decode from a serialized dataset) on background threads ahead of the one being parsed (0: get each example when it is parsed)")
+		public int prefetchExamples = 0;
+		@Option(gloss = "Number of threads to prefetch examples with (more than 1 only helps with datasets that can be read in any order, e.g., binary dumps)")
+		public int prefetchThreads = 1;
+		@Option(gloss = "Stop prefetching while the examples waiting to be parsed take up more than this many megabytes (roughly estimated)")
+		public int prefetchMaxMegabytes = 256;
 	}
 
 	public static Options opts = new Options();
@@ -113,6 +128,11 @@ public class Learner
 		// if when we start we have parameters already - need to sort the semantic functions.
 		if (!params.isEmpty())
 			sortOnFeedback();
+		// Evaluations running in the background, in the order they were started (= order of completion)
+		final ExecutorService evaluationExecutor = opts.asyncEvaluation && canEvaluateAsync() ? Executors.newSingleThreadExecutor() : null;
+		final List<PendingEvaluation> pendingEvaluations = new ArrayList<>();
+		if (evaluationExecutor != null)
+			LogInfo.begin_threads();
 		// For each iteration, go through the groups and parse (updating if train).
 		for (int iter = 0; iter <= numIters; iter++)
 		{
@@ -138,17 +158,107 @@ public class Learner
 						continue;
 				// Allow the parser to change behavior based on current group and iteration
 				parser.onBeginDataGroup(iter, numIters, group);
-				final Evaluation eval = processExamples(iter, group, dataset.examples(group), updateWeights);
-				MapUtils.addToList(evaluations, group, eval);
-				meanEvaluations.get(group).add(eval);
+				if (evaluationExecutor != null && !updateWeights)
+				{
+					// Only reads the weights, so evaluate on a snapshot and go on with the next group
+					final Params snapshot = params.copyParams();
+					final int evaluationIter = iter;
+					final List<Example> examples = dataset.examples(group);
+					pendingEvaluations.add(new PendingEvaluation(iter, group, examples.size(), evaluationExecutor.submit(() -> processExamples(evaluationIter, group, examples, false, snapshot, true))));
+				}
+				else
+				{
+					final Evaluation eval = processExamples(iter, group, dataset.examples(group), updateWeights, params, false);
+					MapUtils.addToList(evaluations, group, eval);
+					meanEvaluations.get(group).add(eval);
+				}
 				StopWatchSet.logStats();
 				writeParams(iter);
 			}
+			collectEvaluations(pendingEvaluations, evaluations, false);
 			LogInfo.end_track();
 		}
+		if (evaluationExecutor != null)
+		{
+			collectEvaluations(pendingEvaluations, evaluations, true);
+			evaluationExecutor.shutdown();
+			LogInfo.end_threads();
+		}
+		Metrics.writeSummary(Execution.getFile("metrics.json"));
 		LogInfo.end_track();
 	}
 
+	// Evaluating in the background is only safe if nothing the parser reads changes between groups.
+	private boolean canEvaluateAsync()
+	{
+		final List<String> reasons = new ArrayList<>();
+		if (overrides(parser.getClass(), "onBeginDataGroup", int.class, int.class, String.class))
+			reasons.add(parser.getClass().getSimpleName() + " changes behavior per data group");
+		if (opts.sortOnFeedback || opts.addFeedback)
+			for (final SemanticFn semFn : semFuncsToUpdate)
+				if (overrides(semFn.getClass(), "sortOnFeedback", Params.class) || overrides(semFn.getClass(), "addFeedback", Example.class))
+					reasons.add(semFn.getClass().getSimpleName() + " is updated from feedback");
+		if (reasons.isEmpty())
+			return true;
+		LogInfo.warnings("Learner: asyncEvaluation disabled: %s", reasons);
+		return false;
+	}
+
+	private static boolean overrides(final Class<?> cls, final String method, final Class<?>... parameterTypes)
+	{
+		try
+		{
+			final Class<?> declaringClass = cls.getMethod(method, parameterTypes).getDeclaringClass();
+			return declaringClass != Parser.class && declaringClass != SemanticFn.class;
+		}
+		catch (final NoSuchMethodException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	// A group being processed in the background.
+	private static class PendingEvaluation
+	{
+		final int iter;
+		final String group;
+		final int numExamples;
+		final Future<Evaluation> evaluation;
+
+		PendingEvaluation(final int iter_, final String group_, final int numExamples_, final Future<Evaluation> evaluation_)
+		{
+			iter = iter_;
+			group = group_;
+			numExamples = numExamples_;
+			evaluation = evaluation_;
+		}
+	}
+
+	// Add the finished background evaluations to |evaluations|, in the order they were started, and log their stats (on this thread, so that they do not
+	// interleave with the output of the training iteration). If |wait|, wait for all of them.
+	private void collectEvaluations(final List<PendingEvaluation> pendingEvaluations, final Map<String, List<Evaluation>> evaluations, final boolean wait)
+	{
+		while (!pendingEvaluations.isEmpty() && (wait || pendingEvaluations.get(0).evaluation.isDone()))
+		{
+			final PendingEvaluation pending = pendingEvaluations.remove(0);
+			try
+			{
+				final Evaluation evaluation = pending.evaluation.get();
+				if (pending.numExamples > 0)
+				{
+					LogInfo.begin_track("Background evaluation of iter=%s.%s", pending.iter, pending.group);
+					finishExamples(pending.iter, pending.group, evaluation, pending.numExamples);
+					LogInfo.end_track();
+				}
+				MapUtils.addToList(evaluations, pending.group, evaluation);
+			}
+			catch (final InterruptedException | ExecutionException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	private void writeParams(final int iter)
 	{
 		final String path = Execution.getFile("params." + iter);
@@ -179,7 +289,12 @@ public class Learner
 		params.update(counts);
 	}
 
-	private Evaluation processExamples(final int iter, final String group, final List<Example> examples, final boolean computeExpectedCounts)
+	/**
+	 * Parse the examples of a group (updating |params| if |computeExpectedCounts|). A |background| run (see Options.asyncEvaluation) shares the log, the
+	 * execution outputs and the stop watches with the training iteration running at the same time: it only writes the eval.group and eval.example outputs,
+	 * and leaves logging its stats to finishExamples(), which is then called on the main thread.
+	 */
+	private Evaluation processExamples(final int iter, final String group, final List<Example> examples, final boolean computeExpectedCounts, final Params params, final boolean background)
 	{
 		final Evaluation evaluation = new Evaluation();
 
@@ -187,19 +302,25 @@ public class Learner
 			return evaluation;
 
 		final String prefix = "iter=" + iter + "." + group;
+		final String outputPrefix = background ? "eval." : "";
 
-		Execution.putOutput("group", group);
-		LogInfo.begin_track_printAll("Processing %s: %s examples", prefix, examples.size());
-		LogInfo.begin_track("Examples");
+		Execution.putOutput(outputPrefix + "group", group);
+		if (!background)
+		{
+			LogInfo.begin_track_printAll("Processing %s: %s examples", prefix, examples.size());
+			LogInfo.begin_track("Examples");
+		}
 
 		if (opts.numParallelThreads > 1)
 		{
 			// Parallelize!
 			final Parallelizer<Example> paral = new Parallelizer<>(opts.numParallelThreads);
-			final LearnerParallelProcessor processor = new LearnerParallelProcessor(parser, params, prefix, computeExpectedCounts, evaluation);
-			LogInfo.begin_threads();
+			final LearnerParallelProcessor processor = new LearnerParallelProcessor(parser, params, prefix, computeExpectedCounts, evaluation, background);
+			if (!background)
+				LogInfo.begin_threads();
 			paral.process(examples, processor);
-			LogInfo.end_threads();
+			if (!background)
+				LogInfo.end_threads();
 
 		}
 		else
@@ -208,53 +329,82 @@ public class Learner
 
 			final Map<String, Double> counts = new HashMap<>();
 			int batchSize = 0;
-			for (int e = 0; e < examples.size(); e++)
+			final ExamplePrefetcher prefetcher = opts.prefetchExamples > 0 ? new ExamplePrefetcher(examples, opts.prefetchExamples, opts.prefetchMaxMegabytes * (1L << 20), opts.prefetchThreads) : null;
+			try
 			{
-
-				final Example ex = examples.get(e);
-
-				LogInfo.begin_track_printAll("%s: example %s/%s: %s", prefix, e, examples.size(), ex.id);
-				ex.log();
-				Execution.putOutput("example", e);
-
-				final ParserState state = parseExample(params, ex, computeExpectedCounts);
-				if (computeExpectedCounts)
+				for (int e = 0; e < examples.size(); e++)
 				{
-					if (opts.checkGradient)
+
+					// Time spent waiting for the example (high when reading the dataset rather than parsing is the bottleneck)
+					final Example ex;
+					if (prefetcher != null)
 					{
-						LogInfo.begin_track("Checking gradient");
-						checkGradient(ex, state);
-						LogInfo.end_track();
+						ex = prefetcher.next();
+						evaluation.add("exampleWaitTime", prefetcher.getLastWaitNanos() / 1e6);
+					}
+					else
+					{
+						final long startTime = System.nanoTime();
+						ex = examples.get(e);
+						evaluation.add("exampleWaitTime", (System.nanoTime() - startTime) / 1e6);
 					}
 
-					SempreUtils.addToDoubleMap(counts, state.expectedCounts);
+					if (!background)
+					{
+						LogInfo.begin_track_printAll("%s: example %s/%s: %s", prefix, e, examples.size(), ex.id);
+						ex.log();
+					}
+					Execution.putOutput(outputPrefix + "example", e);
 
-					batchSize++;
-					if (batchSize >= opts.batchSize)
+					// (Not timed by StopWatchSet in the background: its stop watches belong to the training iteration)
+					final ParserState state = background ? parser.parse(params, ex, false) : parseExample(params, ex, computeExpectedCounts);
+					if (computeExpectedCounts)
 					{
-						// Gathered enough examples, update parameters
-						updateWeights(counts);
-						batchSize = 0;
+						if (opts.checkGradient)
+						{
+							LogInfo.begin_track("Checking gradient");
+							checkGradient(ex, state);
+							LogInfo.end_track();
+						}
+
+						SempreUtils.addToDoubleMap(counts, state.expectedCounts);
+
+						batchSize++;
+						if (batchSize >= opts.batchSize)
+						{
+							// Gathered enough examples, update parameters
+							updateWeights(counts);
+							batchSize = 0;
+						}
 					}
-				}
 
-				LogInfo.logs("Current: %s", ex.evaluation.summary());
-				evaluation.add(ex.evaluation);
-				LogInfo.logs("Cumulative(%s): %s", prefix, evaluation.summary());
+					evaluation.add(ex.evaluation);
+					if (!background)
+					{
+						LogInfo.logs("Current: %s", ex.evaluation.summary());
+						LogInfo.logs("Cumulative(%s): %s", prefix, evaluation.summary());
+					}
 
-				printLearnerEventsIter(ex, iter, group);
-				LogInfo.end_track();
-				if (opts.addFeedback && computeExpectedCounts)
-					addFeedback(ex);
+					printLearnerEventsIter(ex, iter, group);
+					if (!background)
+						LogInfo.end_track();
+					if (opts.addFeedback && computeExpectedCounts)
+						addFeedback(ex);
 
-				// Write out examples and predictions
-				if (opts.outputPredDerivations)
-					ExampleUtils.writeParaphraseSDF(iter, group, ex, true);
-				if (opts.outputPredValues)
-					ExampleUtils.writePredictionTSV(iter, group, ex);
+					// Write out examples and predictions
+					if (opts.outputPredDerivations)
+						ExampleUtils.writeParaphraseSDF(iter, group, ex, true);
+					if (opts.outputPredValues)
+						ExampleUtils.writePredictionTSV(iter, group, ex);
 
-				// To save memory
-				ex.predDerivations.clear();
+					// To save memory
+					ex.predDerivations.clear();
+				}
+			}
+			finally
+			{
+				if (prefetcher != null)
+					prefetcher.close();
 			}
 
 			if (computeExpectedCounts && batchSize > 0)
@@ -266,13 +416,23 @@ public class Learner
 		if (opts.sortOnFeedback && computeExpectedCounts)
 			sortOnFeedback();
 
-		LogInfo.end_track();
+		if (!background)
+		{
+			LogInfo.end_track();
+			finishExamples(iter, group, evaluation, examples.size());
+			LogInfo.end_track();
+		}
+		return evaluation;
+	}
+
+	// Log and write out the stats of a group.
+	private void finishExamples(final int iter, final String group, final Evaluation evaluation, final int numExamples)
+	{
+		final String prefix = "iter=" + iter + "." + group;
 		logEvaluationStats(evaluation, prefix);
 		evaluation.putOutput(prefix.replace('.', '-'));
 		printLearnerEventsSummary(evaluation, iter, group);
-		ExampleUtils.writeEvaluationSDF(iter, group, evaluation, examples.size());
-		LogInfo.end_track();
-		return evaluation;
+		ExampleUtils.writeEvaluationSDF(iter, group, evaluation, numExamples);
 	}
 
 	private void checkGradient(final Example ex, final ParserState state)
@@ -339,7 +499,8 @@ public class Learner
 		evaluation.putOutput(prefix.replaceAll("iter=", "").replace('.', '_'));
 	}
 
-	private void printLearnerEventsIter(final Example ex, final int iter, final String group)
+	// Synchronized: background evaluations print their events while training prints its own.
+	private synchronized void printLearnerEventsIter(final Example ex, final int iter, final String group)
 	{
 		if (eventsOut == null)
 			return;
@@ -378,7 +539,7 @@ public class Learner
 			}
 	}
 
-	private void printLearnerEventsSummary(final Evaluation evaluation, final int iter, final String group)
+	private synchronized void printLearnerEventsSummary(final Evaluation evaluation, final int iter, final String group)
 	{
 		if (eventsOut == null)
 			return;
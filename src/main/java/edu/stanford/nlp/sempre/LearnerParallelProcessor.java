@@ -21,19 +21,38 @@ public class LearnerParallelProcessor implements Parallelizer.Processor<Example>
 	private final boolean computeExpectedCounts;
 	private final Params params; // this is common to threads and should be synchronized
 	private final Evaluation evaluation; // this is common to threads and should be synchronized
+	private final boolean background; // Evaluating while the Learner trains (see Learner.Options.asyncEvaluation): don't log, output eval.example
 
 	public LearnerParallelProcessor(final Parser parser_, final Params params_, final String prefix_, final boolean computeExpectedCounts_, final Evaluation evaluation_)
+	{
+		this(parser_, params_, prefix_, computeExpectedCounts_, evaluation_, false);
+	}
+
+	public LearnerParallelProcessor(final Parser parser_, final Params params_, final String prefix_, final boolean computeExpectedCounts_, final Evaluation evaluation_, final boolean background_)
 	{
 		prefix = prefix_;
 		parser = parser_;
 		computeExpectedCounts = computeExpectedCounts_;
 		params = params_;
 		evaluation = evaluation_;
+		background = background_;
 	}
 
 	@Override
 	public void process(final Example ex, final int i, final int n)
 	{
+		if (background)
+		{
+			Execution.putOutput("eval.example", i);
+			parser.parse(params, ex, false);
+			synchronized (evaluation)
+			{
+				evaluation.add(ex.evaluation);
+			}
+			ex.clean();
+			return;
+		}
+
 		LogInfo.begin_track_printAll("%s: example %s/%s: %s", prefix, i, n, ex.id);
 		ex.log();
 		Execution.putOutput("example", i);
@@ -0,0 +1,481 @@
+package edu.stanford.nlp.sempre;
+
+import com.google.common.hash.Hashing;
+import fig.basic.IOUtils;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms (per rule, per semantic function, per executor and per parse phase), cheap enough to leave on in
+ * production. Updates are lock-free; the registry can be exported as JSON or in the Prometheus text format (Server and InteractiveServer serve it at
+ * /metrics), and Learner writes a summary to metrics.json in the execution directory.
+ * <p>
+ * Histograms keep log-linear buckets (as in HdrHistogram): 8 buckets per power of two, so quantiles are within 12.5% of the true value.
+ */
+public class Metrics
+{
+	public static class Options
+	{
+		@Option(gloss = "Record metrics")
+		public boolean enabled = true;
+		@Option(gloss = "Keep a latency histogram for every grammar rule (there is always one per semantic function)")
+		public boolean ruleMetrics = true;
+		@Option(gloss = "Maximum number of rules with their own latency histogram (the others are aggregated under \"other\")")
+		public int maxRuleMetrics = 1000;
+	}
+
+	public static Options opts = new Options();
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+	// Counts events.
+	public static class Counter
+	{
+		private final LongAdder count = new LongAdder();
+
+		public void inc()
+		{
+			if (opts.enabled)
+				count.increment();
+		}
+
+		public void add(final long n)
+		{
+			if (opts.enabled)
+				count.add(n);
+		}
+
+		public long get()
+		{
+			return count.sum();
+		}
+	}
+
+	// A value that goes up and down (e.g., a queue depth).
+	public static class Gauge
+	{
+		private final AtomicLong value = new AtomicLong();
+
+		public void add(final long delta)
+		{
+			if (opts.enabled)
+				value.addAndGet(delta);
+		}
+
+		public void set(final long newValue)
+		{
+			if (opts.enabled)
+				value.set(newValue);
+		}
+
+		public long get()
+		{
+			return value.get();
+		}
+	}
+
+	// Distribution of durations (recorded in nanoseconds, exported in seconds).
+	public static class Histogram
+	{
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int MAX_EXPONENT = 40; // Durations above 2^41 ns (about 36 minutes) go to the last bucket
+		private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(final long nanos)
+		{
+			if (!opts.enabled || nanos < 0)
+				return;
+			buckets.incrementAndGet(bucketIndex(nanos));
+			count.increment();
+			sum.add(nanos);
+			long oldMax;
+			while (nanos > (oldMax = max.get()) && !max.compareAndSet(oldMax, nanos))
+			{
+			}
+		}
+
+		// Record the time since |startNanos| (a value of System.nanoTime()).
+		public void recordSince(final long startNanos)
+		{
+			record(System.nanoTime() - startNanos);
+		}
+
+		// Add time to the sum without recording a value (e.g., work done later on behalf of a value already recorded). The count and quantiles don't change.
+		public void addToSum(final long nanos)
+		{
+			if (!opts.enabled || nanos <= 0)
+				return;
+			sum.add(nanos);
+		}
+
+		public long getCount()
+		{
+			return count.sum();
+		}
+
+		public double getSumSeconds()
+		{
+			return sum.sum() / 1e9;
+		}
+
+		public double getMaxSeconds()
+		{
+			return max.get() / 1e9;
+		}
+
+		// Return (an upper bound within one bucket of) the |q|-th quantile, in seconds.
+		public double getQuantileSeconds(final double q)
+		{
+			final long n = getCount();
+			if (n == 0)
+				return 0;
+			final long rank = Math.max(1, (long) Math.ceil(q * n));
+			long seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++)
+			{
+				seen += buckets.get(i);
+				if (seen >= rank)
+					return Math.min(bucketUpperBound(i), max.get()) / 1e9;
+			}
+			return getMaxSeconds();
+		}
+
+		// Values below SUB_BUCKETS have a bucket each; above, each power of two is split into SUB_BUCKETS buckets.
+		static int bucketIndex(final long value)
+		{
+			if (value < SUB_BUCKETS)
+				return (int) value;
+			final int exponent = 63 - Long.numberOfLeadingZeros(value);
+			if (exponent > MAX_EXPONENT)
+				return NUM_BUCKETS - 1;
+			final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		// Smallest value that falls in the bucket after |index|.
+		static long bucketUpperBound(final int index)
+		{
+			if (index < SUB_BUCKETS)
+				return index + 1;
+			final int shift = index / SUB_BUCKETS - 1;
+			return (long) (SUB_BUCKETS + index % SUB_BUCKETS + 1) << shift;
+		}
+	}
+
+	/**
+	 * A named metric with one instance per value of its label (e.g., one histogram per rule). Instances are looked up by key (e.g., the Rule) and labeled
+	 * with the key's toString(); a family without a label has a single instance, under the key "".
+	 */
+	public static class Family<T>
+	{
+		public final String name;
+		public final String labelName; // null if there is no label
+		public final String help;
+		private final String type; // Prometheus type: "counter", "gauge" or "summary" (Histogram)
+		private final Map<Object, T> instances = new ConcurrentHashMap<>();
+
+		private Family(final String name, final String labelName, final String help, final String type)
+		{
+			this.name = name;
+			this.labelName = labelName;
+			this.help = help;
+			this.type = type;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T get(final Object key)
+		{
+			final T instance = instances.get(key);
+			if (instance != null)
+				return instance;
+			return instances.computeIfAbsent(key, k -> (T) (type.equals("counter") ? new Counter() : type.equals("gauge") ? new Gauge() : new Histogram()));
+		}
+
+		public T get()
+		{
+			return get("");
+		}
+
+		// Instances sorted by label.
+		private List<Map.Entry<String, T>> labeledInstances()
+		{
+			final List<Map.Entry<String, T>> result = new ArrayList<>();
+			for (final Map.Entry<Object, T> entry : instances.entrySet())
+				result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey().toString(), entry.getValue()));
+			result.sort(Map.Entry.comparingByKey());
+			return result;
+		}
+	}
+
+	private static final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+	@SuppressWarnings("unchecked")
+	public static Family<Counter> counters(final String name, final String labelName, final String help)
+	{
+		return (Family<Counter>) families.computeIfAbsent(name, k -> new Family<Counter>(name, labelName, help, "counter"));
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Family<Gauge> gauges(final String name, final String labelName, final String help)
+	{
+		return (Family<Gauge>) families.computeIfAbsent(name, k -> new Family<Gauge>(name, labelName, help, "gauge"));
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Family<Histogram> histograms(final String name, final String labelName, final String help)
+	{
+		return (Family<Histogram>) families.computeIfAbsent(name, k -> new Family<Histogram>(name, labelName, help, "summary"));
+	}
+
+	// Metrics recorded by the parsers
+	public static final Family<Histogram> ruleTime = histograms("sempre_rule_seconds", "rule", "Time spent in the semantic function of each rule, per call (the sum includes reading lazy derivations; labeled by a hash of the rule and the rule)");
+	public static final Family<Histogram> semFnTime = histograms("sempre_semfn_seconds", "semfn", "Time spent in each semantic function, per call (the sum includes reading lazy derivations)");
+	public static final Family<Histogram> executorTime = histograms("sempre_executor_seconds", "executor", "Time spent executing formulas");
+	public static final Family<Histogram> phaseTime = histograms("sempre_phase_seconds", "phase", "Time spent in each phase of parsing (featurize, execute, prune)");
+	public static final Family<Histogram> parseTime = histograms("sempre_parse_seconds", "parser", "Time spent parsing an example");
+	public static final Family<Counter> parseTimeouts = counters("sempre_parse_timeouts_total", "parser", "Number of parses stopped by their deadline");
+	public static final Family<Counter> prunedDerivations = counters("sempre_pruned_derivations_total", "strategy", "Number of derivations pruned by each pruning strategy");
+	public static final Family<Counter> requests = counters("sempre_requests_total", "server", "Number of queries received by the server");
+	public static final Family<Histogram> firstCandidateTime = histograms("sempre_first_candidate_seconds", "server", "Time from the start of a streamed query to its first candidates");
+	public static final Family<Gauge> appendLogQueueDepth = gauges("sempre_append_log_queue_depth", null, "Number of lines waiting to be written by AsyncAppendLog");
+	public static final Family<Histogram> appendLogLatency = histograms("sempre_append_log_latency_seconds", null, "Time from AsyncAppendLog.append() to the line being written");
+	public static final Family<Counter> appendLogFailures = counters("sempre_append_log_failures_total", "operation", "Number of failed writes, syncs and closes of log files");
+
+	// Record the time spent applying |rule|: from |startNanos| to the return of its semantic function now, then the time spent reading |results| (semantic
+	// functions such as JoinFn build their derivations lazily) as it is spent, added to the sums. Streams that are never finished (e.g., left on the agenda of
+	// ReinforcementParser) count for what was read of them.
+	public static DerivationStream recordRule(final Rule rule, final long startNanos, final DerivationStream results)
+	{
+		if (!opts.enabled)
+			return results;
+		final long nanos = System.nanoTime() - startNanos;
+		final Histogram semFn = semFnTime.get(rule.getSemRepn());
+		final Histogram ruleHistogram = opts.ruleMetrics ? ruleTime.get(ruleLabel(rule)) : null;
+		semFn.record(nanos);
+		if (ruleHistogram != null)
+			ruleHistogram.record(nanos);
+		return new TimedDerivationStream(semFn, ruleHistogram, results);
+	}
+
+	private static class TimedDerivationStream implements DerivationStream
+	{
+		private final Histogram semFn;
+		private final Histogram rule; // null without opts.ruleMetrics
+		private final DerivationStream results;
+
+		TimedDerivationStream(final Histogram semFn, final Histogram rule, final DerivationStream results)
+		{
+			this.semFn = semFn;
+			this.rule = rule;
+			this.results = results;
+		}
+
+		private void addSince(final long startNanos)
+		{
+			final long nanos = System.nanoTime() - startNanos;
+			semFn.addToSum(nanos);
+			if (rule != null)
+				rule.addToSum(nanos);
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			final long startNanos = System.nanoTime();
+			final boolean hasNext = results.hasNext();
+			addSince(startNanos);
+			return hasNext;
+		}
+
+		@Override
+		public Derivation next()
+		{
+			final long startNanos = System.nanoTime();
+			final Derivation deriv = results.next();
+			addSince(startNanos);
+			return deriv;
+		}
+
+		@Override
+		public Derivation peek()
+		{
+			final long startNanos = System.nanoTime();
+			final Derivation deriv = results.peek();
+			addSince(startNanos);
+			return deriv;
+		}
+
+		@Override
+		public int estimatedSize()
+		{
+			return results.estimatedSize();
+		}
+	}
+
+	// Rules are labeled by a hash of their string (stable across runs) followed by the rule, truncated. Once opts.maxRuleMetrics rules have a label, the
+	// others share OTHER_RULES, so that the number of series stays bounded.
+	private static final Map<Rule, String> ruleLabels = new ConcurrentHashMap<>();
+	public static final String OTHER_RULES = "other";
+
+	public static String ruleLabel(final Rule rule)
+	{
+		final String label = ruleLabels.get(rule);
+		if (label != null)
+			return label;
+		if (ruleLabels.size() >= opts.maxRuleMetrics)
+			return OTHER_RULES;
+		return ruleLabels.computeIfAbsent(rule, r ->
+		{
+			final String repn = r.toString();
+			final long id = Hashing.murmur3_128().hashString(repn, StandardCharsets.UTF_8).asLong();
+			return String.format("%016x %s", id, repn.length() <= MAX_RULE_LABEL_LENGTH ? repn : repn.substring(0, MAX_RULE_LABEL_LENGTH) + "...");
+		});
+	}
+
+	private static final int MAX_RULE_LABEL_LENGTH = 200;
+
+	// Remove all recorded values (the families stay registered).
+	public static void reset()
+	{
+		for (final Family<?> family : families.values())
+			family.instances.clear();
+		ruleLabels.clear();
+	}
+
+	// ============================================================
+	// Export
+	// ============================================================
+
+	// name => list of {label, count, sum, max, quantiles} (histograms), {label, count} (counters) or {label, value} (gauges)
+	public static Map<String, Object> toJsonMap()
+	{
+		final Map<String, Object> result = new LinkedHashMap<>();
+		for (final Family<?> family : families.values())
+		{
+			final List<Map<String, Object>> instances = new ArrayList<>();
+			for (final Map.Entry<String, ?> entry : family.labeledInstances())
+			{
+				final Map<String, Object> instance = new LinkedHashMap<>();
+				if (family.labelName != null)
+					instance.put(family.labelName, entry.getKey());
+				if (family.type.equals("counter"))
+					instance.put("count", ((Counter) entry.getValue()).get());
+				else
+					if (family.type.equals("gauge"))
+						instance.put("value", ((Gauge) entry.getValue()).get());
+					else
+					{
+						final Histogram histogram = (Histogram) entry.getValue();
+						instance.put("count", histogram.getCount());
+						instance.put("sum", histogram.getSumSeconds());
+						instance.put("max", histogram.getMaxSeconds());
+						for (final double q : QUANTILES)
+							instance.put("p" + formatQuantile(q * 100), histogram.getQuantileSeconds(q));
+					}
+				instances.add(instance);
+			}
+			if (!instances.isEmpty())
+				result.put(family.name, instances);
+		}
+		return result;
+	}
+
+	public static String toJson()
+	{
+		return Json.writeValueAsStringHard(toJsonMap());
+	}
+
+	// Histograms are exported as Prometheus summaries.
+	public static String toPrometheus()
+	{
+		final StringBuilder out = new StringBuilder();
+		for (final Family<?> family : families.values())
+		{
+			final List<? extends Map.Entry<String, ?>> instances = family.labeledInstances();
+			if (instances.isEmpty())
+				continue;
+			out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+			for (final Map.Entry<String, ?> entry : instances)
+			{
+				final String label = family.labelName == null ? null : family.labelName + "=\"" + escapeLabel(entry.getKey()) + "\"";
+				if (family.type.equals("counter"))
+				{
+					appendSample(out, family.name, label, null, ((Counter) entry.getValue()).get());
+					continue;
+				}
+				if (family.type.equals("gauge"))
+				{
+					appendSample(out, family.name, label, null, ((Gauge) entry.getValue()).get());
+					continue;
+				}
+				final Histogram histogram = (Histogram) entry.getValue();
+				for (final double q : QUANTILES)
+					appendSample(out, family.name, label, "quantile=\"" + formatQuantile(q) + "\"", histogram.getQuantileSeconds(q));
+				appendSample(out, family.name + "_sum", label, null, histogram.getSumSeconds());
+				appendSample(out, family.name + "_count", label, null, histogram.getCount());
+			}
+		}
+		return out.toString();
+	}
+
+	public static void writeSummary(final String path)
+	{
+		if (path == null)
+			return;
+		final PrintWriter out = IOUtils.openOutHard(path);
+		out.println(toJson());
+		out.close();
+		LogInfo.logs("Metrics: wrote %s", path);
+	}
+
+	private static void appendSample(final StringBuilder out, final String name, final String label, final String extraLabel, final double value)
+	{
+		out.append(name);
+		if (label != null || extraLabel != null)
+		{
+			out.append('{');
+			if (label != null)
+				out.append(label);
+			if (label != null && extraLabel != null)
+				out.append(',');
+			if (extraLabel != null)
+				out.append(extraLabel);
+			out.append('}');
+		}
+		out.append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			out.append((long) value);
+		else
+			out.append(value);
+		out.append('\n');
+	}
+
+	private static String escapeLabel(final String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String formatQuantile(final double q)
+	{
+		return q == Math.rint(q) ? Long.toString((long) q) : Double.toString(q);
+	}
+}
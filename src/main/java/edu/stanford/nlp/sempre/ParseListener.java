@@ -0,0 +1,42 @@
+package edu.stanford.nlp.sempre;
+
+import java.util.List;
+
+/**
+ * Receives the best root derivations built so far while the parser is still running (after the anchored pass and each depth of the FloatingParser, once the
+ * full span is built by the BeamParser), so that a server can send them to the client before parsing finishes (see CandidateStream).
+ * <p>
+ * Like Deadline, the listener of the request being processed is attached to the current thread (setCurrent/clearCurrent) and picked up by each ParserState
+ * when it is created. Listeners are called on the parsing thread, and are not called while learning. To stop the parse early (e.g., when the client has
+ * disconnected), expire the Deadline of the request.
+ */
+public abstract class ParseListener
+{
+	private static final ThreadLocal<ParseListener> current = new ThreadLocal<>();
+
+	public final int maxCandidates; // Number of candidates executed and passed to onCandidates()
+
+	protected ParseListener(final int maxCandidates_)
+	{
+		maxCandidates = maxCandidates_;
+	}
+
+	// |candidates| are the best root derivations so far, sorted by score and executed; |stage| says how far the parser got (e.g., "depth 2").
+	public abstract void onCandidates(Example ex, String stage, List<Derivation> candidates);
+
+	// The listener of the request being processed by the current thread (null if there is none).
+	public static ParseListener current()
+	{
+		return current.get();
+	}
+
+	public static void setCurrent(final ParseListener listener)
+	{
+		current.set(listener);
+	}
+
+	public static void clearCurrent()
+	{
+		current.remove();
+	}
+}
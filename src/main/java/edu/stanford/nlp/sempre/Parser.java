@@ -133,20 +133,30 @@ public abstract class Parser
 	protected void computeCatUnaryRules()
 	{
 		// Handle catUnaryRules
-		catUnaryRules = new ArrayList<>();
+		final CompiledGrammar compiled = grammar.getCompiled();
+		if (compiled != null && compiled.isCurrent(grammar))
+			catUnaryRules = new ArrayList<>(compiled.getCatUnaryRules());
+		else
+			catUnaryRules = sortCatUnaryRules(grammar.rules);
+	}
+
+	// Return the cat-unary rules in |rules|, topologically sorted so that B->C occurs before A->B.
+	public static List<Rule> sortCatUnaryRules(final List<Rule> rules)
+	{
+		final List<Rule> catUnaryRules = new ArrayList<>();
 		final Map<String, List<Rule>> graph = new HashMap<>(); // Node from LHS to list of rules
-		for (final Rule rule : grammar.rules)
+		for (final Rule rule : rules)
 			if (rule.isCatUnary())
 				MapUtils.addToList(graph, rule.lhs, rule);
 
-		// Topologically sort catUnaryRules so that B->C occurs before A->B
 		final Map<String, Boolean> done = new HashMap<>();
 		for (final String node : graph.keySet())
 			traverse(catUnaryRules, node, graph, done);
+		return catUnaryRules;
 	}
 
 	// Helper function for transitive closure of unary rules.
-	protected void traverse(final List<Rule> catUnaryRules_, final String node, final Map<String, List<Rule>> graph, final Map<String, Boolean> done)
+	protected static void traverse(final List<Rule> catUnaryRules_, final String node, final Map<String, List<Rule>> graph, final Map<String, Boolean> done)
 	{
 		final Boolean d = done.get(node);
 		if (Boolean.TRUE.equals(d))
@@ -192,12 +202,16 @@ public abstract class Parser
 		// Parse
 		final StopWatch watch = new StopWatch();
 		watch.start();
+		final long startTime = System.nanoTime();
 		LogInfo.begin_track_printAll("Parser.parse: parse");
 		final ParserState state = newParserState(params, ex, computeExpectedCounts);
 		state.infer();
 		LogInfo.end_track();
 		watch.stop();
 		state.parseTime = watch.getCurrTimeLong();
+		Metrics.parseTime.get(getClass().getSimpleName()).recordSince(startTime);
+		if (state.timedOut)
+			Metrics.parseTimeouts.get(getClass().getSimpleName()).inc();
 		state.setEvaluation();
 
 		ex.predDerivations = state.predDerivations;
@@ -391,8 +405,8 @@ public abstract class Parser
 
 		// Add executor stats
 		for (final Derivation deriv : predDerivations)
-			if (deriv.executorStats != null)
-				evaluation.add(deriv.executorStats);
+			if (deriv.getExecutorStats() != null)
+				evaluation.add(deriv.getExecutorStats());
 
 		LogInfo.end_track();
 	}
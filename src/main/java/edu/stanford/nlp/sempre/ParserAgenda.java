@@ -1,11 +1,11 @@
 package edu.stanford.nlp.sempre;
 
-import fig.basic.LogInfo;
-import fig.basic.PriorityQueue;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Data structure for agenda in reinforcement parser Created by joberant on 10/20/14.
@@ -87,58 +87,324 @@ class ListParserAgenda implements ParserAgenda<PrioritizedDerivationStream>
 	}
 }
 
-class QueueParserAgenda implements ParserAgenda<PrioritizedDerivationStream>
+/**
+ * Agenda for sampling derivation streams with probability proportional to exp(score) (AgendaSampler). The unnormalized probabilities are kept in a sum tree,
+ * so sampling, adding and removing an item take O(log n) instead of renormalizing the whole agenda for every sample.
+ * <p>
+ * The probability sums used for the gradient (PrioritizedDerivationStream.probSum) are accumulated lazily: accumulateProbs() adds 1/Z for the current step to
+ * a running total, and an item's probSum is brought up to date (its weight times the 1/Z accumulated since its last update) whenever it is read through
+ * get(), pop() or the iterator.
+ * <p>
+ * The same tree also keeps the index of the item with the highest priority in each subtree, so pop() is O(log n) as well.
+ */
+class SumTreeParserAgenda implements ParserAgenda<PrioritizedDerivationStream>
 {
+	// Keep the sum of the weights within [exp(-MAX_LOG_SCALE), size * exp(MAX_LOG_SCALE)] by moving the reference score
+	private static final double MAX_LOG_SCALE = 5;
 
-	private final PriorityQueue<PrioritizedDerivationStream> agenda = new PriorityQueue<>();
+	private final List<PrioritizedDerivationStream> items = new ArrayList<>();
+	private int capacity = 1;
+	private double[] tree = new double[2]; // tree[capacity + i] = weight of items[i] = exp(scores[i] - reference); tree[k] = tree[2k] + tree[2k + 1]
+	private int[] best = { -1, -1 }; // best[capacity + i] = i (or -1 if there is no items[i]); best[k] = the one of best[2k] and best[2k + 1] with the highest priority
+	private double[] scores = new double[1]; // Scores when the items were added
+	private double[] accumulatedAtUpdate = new double[1]; // Value of |accumulated| when the probSum of items[i] was last updated
+	private double reference = Double.NaN;
+	private double accumulated; // Sum of 1/Z over the steps passed to accumulateProbs()
 
 	@Override
 	public void sort()
 	{
+		// Sampling does not depend on the order of the items
 	}
 
 	@Override
 	public boolean add(final PrioritizedDerivationStream item, final double priority)
 	{
-		return agenda.add(item, priority);
+		final double score = item.getScore();
+		if (Double.isNaN(reference) || score - reference > 30 * MAX_LOG_SCALE)
+			rescale(Math.max(score, maxScore()));
+		ensureCapacity(items.size() + 1);
+		final int i = items.size();
+		items.add(item);
+		scores[i] = score;
+		accumulatedAtUpdate[i] = accumulated;
+		setWeight(i, Math.exp(score - reference));
+		return true;
 	}
 
 	@Override
 	public int size()
 	{
-		return agenda.size();
+		return items.size();
+	}
+
+	@Override
+	public void clear()
+	{
+		items.clear();
+		Arrays.fill(tree, 0);
+		Arrays.fill(best, -1);
+		reference = Double.NaN;
+		accumulated = 0;
+	}
+
+	// The item with the highest priority
+	@Override
+	public PrioritizedDerivationStream pop()
+	{
+		final int index = best[1];
+		final PrioritizedDerivationStream pds = get(index);
+		remove(pds, index);
+		return pds;
+	}
+
+	@Override
+	public PrioritizedDerivationStream get(final int i)
+	{
+		updateProbSum(i);
+		return items.get(i);
+	}
+
+	// Same as ListParserAgenda: the last item takes the place of the removed one.
+	@Override
+	public void remove(final PrioritizedDerivationStream pds, final int index)
+	{
+		updateProbSum(index);
+		final int last = items.size() - 1;
+		final PrioritizedDerivationStream lastItem = items.remove(last);
+		final double lastWeight = tree[capacity + last];
+		setWeight(last, 0);
+		if (lastItem != pds)
+		{
+			items.set(index, lastItem);
+			scores[index] = scores[last];
+			accumulatedAtUpdate[index] = accumulatedAtUpdate[last];
+			setWeight(index, lastWeight);
+		}
+		if (items.isEmpty())
+			clear();
+	}
+
+	@Override
+	public Iterator<PrioritizedDerivationStream> iterator()
+	{
+		for (int i = 0; i < items.size(); i++)
+			updateProbSum(i);
+		return Collections.unmodifiableList(items).iterator();
+	}
+
+	// Add the current probability of every item to its probSum (lazily).
+	public void accumulateProbs()
+	{
+		normalize();
+		accumulated += 1 / tree[1];
+	}
+
+	// Sample an index with probability proportional to exp(score).
+	public int sampleIndex(final Random random)
+	{
+		normalize();
+		double u = random.nextDouble() * tree[1];
+		int k = 1;
+		while (k < capacity)
+			if (u >= tree[2 * k] && tree[2 * k + 1] > 0)
+			{
+				u -= tree[2 * k];
+				k = 2 * k + 1;
+			}
+			else
+				k = 2 * k;
+		return k - capacity;
+	}
+
+	public double getProb(final int i)
+	{
+		return tree[capacity + i] / tree[1];
+	}
+
+	private void updateProbSum(final int i)
+	{
+		if (accumulated != accumulatedAtUpdate[i])
+		{
+			items.get(i).addProb(tree[capacity + i] * (accumulated - accumulatedAtUpdate[i]));
+			accumulatedAtUpdate[i] = accumulated;
+		}
+	}
+
+	private void normalize()
+	{
+		if (items.isEmpty())
+			throw new RuntimeException("Agenda is empty");
+		final double z = tree[1];
+		if (z < Math.exp(-MAX_LOG_SCALE) || z > items.size() * Math.exp(MAX_LOG_SCALE))
+			rescale(maxScore());
+	}
+
+	private double maxScore()
+	{
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < items.size(); i++)
+			max = Math.max(max, scores[i]);
+		return max;
+	}
+
+	// Recompute the weights relative to a new reference score (after bringing every probSum up to date).
+	private void rescale(final double newReference)
+	{
+		for (int i = 0; i < items.size(); i++)
+		{
+			updateProbSum(i);
+			accumulatedAtUpdate[i] = 0;
+			tree[capacity + i] = Math.exp(scores[i] - newReference);
+		}
+		accumulated = 0;
+		reference = newReference;
+		for (int k = capacity - 1; k >= 1; k--)
+			tree[k] = tree[2 * k] + tree[2 * k + 1];
+	}
+
+	private void ensureCapacity(final int size)
+	{
+		if (size <= capacity)
+			return;
+		int newCapacity = capacity;
+		while (newCapacity < size)
+			newCapacity *= 2;
+		final double[] newTree = new double[2 * newCapacity];
+		final int[] newBest = new int[2 * newCapacity];
+		System.arraycopy(tree, capacity, newTree, newCapacity, items.size());
+		Arrays.fill(newBest, -1);
+		System.arraycopy(best, capacity, newBest, newCapacity, items.size());
+		for (int k = newCapacity - 1; k >= 1; k--)
+		{
+			newTree[k] = newTree[2 * k] + newTree[2 * k + 1];
+			newBest[k] = higherPriority(newBest[2 * k], newBest[2 * k + 1]);
+		}
+		tree = newTree;
+		best = newBest;
+		scores = Arrays.copyOf(scores, newCapacity);
+		accumulatedAtUpdate = Arrays.copyOf(accumulatedAtUpdate, newCapacity);
+		capacity = newCapacity;
+	}
+
+	// Also updates the highest priority along the path (items[i] must already be set, or removed if i == size()).
+	private void setWeight(final int i, final double weight)
+	{
+		int k = capacity + i;
+		tree[k] = weight;
+		best[k] = i < items.size() ? i : -1;
+		for (k >>= 1; k >= 1; k >>= 1)
+		{
+			tree[k] = tree[2 * k] + tree[2 * k + 1];
+			best[k] = higherPriority(best[2 * k], best[2 * k + 1]);
+		}
+	}
+
+	// Ties go to the lower index
+	private int higherPriority(final int i, final int j)
+	{
+		if (i < 0)
+			return j;
+		if (j < 0)
+			return i;
+		return items.get(j).compareTo(items.get(i)) < 0 ? j : i;
+	}
+}
+
+/**
+ * Agenda for MaxSampler: a binary max-heap on the priority, so that pop(), add() and remove() take O(log n). The items can also be accessed by index and
+ * iterated over (in heap order), e.g. to finalize the gradient for the items left on the agenda.
+ */
+class HeapParserAgenda implements ParserAgenda<PrioritizedDerivationStream>
+{
+	private final List<PrioritizedDerivationStream> heap = new ArrayList<>();
+
+	@Override
+	public void sort()
+	{
+	}
+
+	@Override
+	public boolean add(final PrioritizedDerivationStream item, final double priority)
+	{
+		heap.add(item);
+		siftUp(heap.size() - 1);
+		return true;
+	}
+
+	@Override
+	public int size()
+	{
+		return heap.size();
 	}
 
 	@Override
 	public void clear()
 	{
-		// hopefully this is never called since we sample just one
-		LogInfo.warning("QueueParserAgenda: clear is only called when we have more than one sample");
-		while (agenda.hasNext())
-			agenda.next();
+		heap.clear();
 	}
 
 	@Override
 	public PrioritizedDerivationStream pop()
 	{
-		return agenda.next();
+		final PrioritizedDerivationStream pds = heap.get(0);
+		remove(pds, 0);
+		return pds;
 	}
 
 	@Override
 	public PrioritizedDerivationStream get(final int i)
 	{
-		throw new RuntimeException("Not supported");
+		return heap.get(i);
 	}
 
 	@Override
 	public void remove(final PrioritizedDerivationStream pds, final int index)
 	{
-		throw new RuntimeException("Not supported");
+		final PrioritizedDerivationStream last = heap.remove(heap.size() - 1);
+		if (last != pds)
+		{
+			heap.set(index, last);
+			siftDown(index);
+			siftUp(index);
+		}
 	}
 
 	@Override
 	public Iterator<PrioritizedDerivationStream> iterator()
 	{
-		throw new RuntimeException("Not supported");
+		return Collections.unmodifiableList(heap).iterator();
+	}
+
+	// compareTo puts higher priorities first
+	private void siftUp(int i)
+	{
+		final PrioritizedDerivationStream item = heap.get(i);
+		while (i > 0)
+		{
+			final int parent = (i - 1) / 2;
+			if (heap.get(parent).compareTo(item) <= 0)
+				break;
+			heap.set(i, heap.get(parent));
+			i = parent;
+		}
+		heap.set(i, item);
+	}
+
+	private void siftDown(int i)
+	{
+		final PrioritizedDerivationStream item = heap.get(i);
+		final int n = heap.size();
+		while (2 * i + 1 < n)
+		{
+			int child = 2 * i + 1;
+			if (child + 1 < n && heap.get(child + 1).compareTo(heap.get(child)) < 0)
+				child++;
+			if (item.compareTo(heap.get(child)) <= 0)
+				break;
+			heap.set(i, heap.get(child));
+			i = child;
+		}
+		heap.set(i, item);
 	}
 }
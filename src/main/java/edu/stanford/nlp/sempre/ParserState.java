@@ -44,6 +44,9 @@ public abstract class ParserState
 	public final Params params;
 	public final Example ex;
 	public final boolean computeExpectedCounts; // Whether we're learning
+	public final FeatureContext featureContext; // Per-example feature precomputation, shared by all derivations
+	public final Deadline deadline; // Stop building derivations once this expires (see Deadline)
+	public final ParseListener listener; // Receives the best root derivations while parsing (null if none, see ParseListener)
 
 	//// Output
 
@@ -62,6 +65,7 @@ public abstract class ParserState
 	public boolean fallOffBeam; // Did any hypotheses fall off the beam?
 	public int totalGeneratedDerivs; // Total number of derivations produced
 	public int numOfFeaturizedDerivs = 0; // Number of derivations featured
+	public boolean timedOut; // Did the deadline expire while parsing?
 
 	public ParserState(final Parser parser_, final Params params_, final Example ex_, final boolean computeExpectedCounts_)
 	{
@@ -70,6 +74,9 @@ public abstract class ParserState
 		ex = ex_;
 		computeExpectedCounts = computeExpectedCounts_;
 		numTokens = ex.numTokens();
+		featureContext = new FeatureContext(ex);
+		deadline = Deadline.current();
+		listener = ParseListener.current();
 	}
 
 	protected int getBeamSize()
@@ -80,6 +87,19 @@ public abstract class ParserState
 	// Main entry point.  Should set all the output variables.
 	public abstract void infer();
 
+	// Return whether the deadline has expired. Parsers call this in their main loops and stop building new derivations (except the ones needed to finish the
+	// derivations already built) once it returns true.
+	protected boolean isTimedOut()
+	{
+		if (timedOut)
+			return true;
+		if (!deadline.isExpired())
+			return false;
+		LogInfo.warnings("Deadline expired while parsing %s; returning the derivations built so far", ex.id);
+		timedOut = true;
+		return true;
+	}
+
 	protected void featurizeAndScoreDerivation(final Derivation deriv)
 	{
 		if (deriv.isFeaturizedAndScored())
@@ -89,7 +109,7 @@ public abstract class ParserState
 		}
 
 		// Compute features
-		parser.extractor.extractLocal(ex, deriv);
+		parser.extractor.extractLocal(ex, deriv, featureContext);
 
 		// Compute score
 		deriv.computeScoreLocal(params);
@@ -109,6 +129,7 @@ public abstract class ParserState
 	{
 		if (derivations == null)
 			return;
+		final long startTime = System.nanoTime();
 
 		// Update stats about cell size.
 		if (derivations.size() > maxCellSize)
@@ -132,11 +153,6 @@ public abstract class ParserState
 			if (deriv.children != null)
 				for (final Derivation child : deriv.children)
 					deriv.maxUnsortedBeamPosition = Math.max(deriv.maxUnsortedBeamPosition, child.maxUnsortedBeamPosition);
-			if (deriv.preSortBeamPosition == -1)
-				// Need to be careful to only do this once since |pruneCell()|
-				// might be called several times for the same beam and the
-				// second time around we have already sorted once.
-				deriv.preSortBeamPosition = i;
 			i++;
 		}
 
@@ -164,7 +180,6 @@ public abstract class ParserState
 			if (deriv.children != null)
 				for (final Derivation child : deriv.children)
 					deriv.maxBeamPosition = Math.max(deriv.maxBeamPosition, child.maxBeamPosition);
-			deriv.postSortBeamPosition = i;
 			i++;
 		}
 
@@ -191,6 +206,7 @@ public abstract class ParserState
 				fallOffBeam = true;
 			}
 		}
+		Metrics.phaseTime.get("prune").recordSince(startTime);
 	}
 
 	// -- Base case --
@@ -219,18 +235,48 @@ public abstract class ParserState
 		return derivs;
 	}
 
+	// Pass the best of |rootDerivations| (executed) to the listener of the request, if any. Parsers call this whenever they have built more root derivations.
+	protected void notifyListener(final String stage, final List<Derivation> rootDerivations)
+	{
+		if (listener == null || computeExpectedCounts || rootDerivations.isEmpty())
+			return;
+		final List<Derivation> candidates = new ArrayList<>(rootDerivations);
+		Derivation.sortByScore(candidates);
+		final List<Derivation> top = candidates.subList(0, Math.min(listener.maxCandidates, candidates.size()));
+		Derivation.ensureExecuted(top, parser.executor, ex.context);
+		listener.onCandidates(ex, stage, top);
+	}
+
 	// Ensure that all the logical forms are executed and compatibilities are computed.
 	public void ensureExecuted()
 	{
 		LogInfo.begin_track("Parser.ensureExecuted");
-		// Execute predicted derivations to get value.
-		for (final Derivation deriv : predDerivations)
+		// Execute predicted derivations to get value, a batch at a time.
+		// All of them at once, unless we may stop early (after the top one, or when the deadline passes) and so check between batches.
+		// A deadline that is only expired on request (the client disconnected) is checked after the whole batch.
+		final int batchSize;
+		if (computeExpectedCounts || !Parser.opts.executeTopFormulaOnly && !deadline.isTimed())
+			batchSize = Math.max(predDerivations.size(), 1);
+		else
+			if (Parser.opts.executeTopFormulaOnly)
+				batchSize = 1;
+			else
+				batchSize = Math.max(Executor.opts.batchThreads, 1);
+		for (int i = 0; i < predDerivations.size(); i += batchSize)
 		{
-			deriv.ensureExecuted(parser.executor, ex.context);
+			final List<Derivation> batch = predDerivations.subList(i, Math.min(i + batchSize, predDerivations.size()));
+			Derivation.ensureExecuted(batch, parser.executor, ex.context);
 			if (ex.targetValue != null)
-				deriv.compatibility = parser.valueEvaluator.getCompatibility(ex.targetValue, deriv.value);
+				for (final Derivation deriv : batch)
+					deriv.compatibility = parser.valueEvaluator.getCompatibility(ex.targetValue, deriv.value);
 			if (!computeExpectedCounts && Parser.opts.executeTopFormulaOnly)
 				break;
+			// Request deadline expired: leave the remaining derivations unexecuted (not when learning, which needs all the values)
+			if (!computeExpectedCounts && deadline.isExpired())
+			{
+				timedOut = true;
+				break;
+			}
 		}
 		LogInfo.end_track();
 	}
@@ -245,6 +291,7 @@ public abstract class ParserState
 		evaluation.add("fallOffBeam", fallOffBeam);
 		evaluation.add("totalDerivs", totalGeneratedDerivs);
 		evaluation.add("numOfFeaturizedDerivs", numOfFeaturizedDerivs);
+		evaluation.add("timeout", timedOut);
 	}
 
 	public static double compatibilityToReward(final double compatibility)
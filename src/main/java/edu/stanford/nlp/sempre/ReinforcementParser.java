@@ -9,7 +9,6 @@ import fig.basic.NumUtils;
 import fig.basic.Option;
 import fig.basic.Pair;
 import fig.exec.Execution;
-import fig.prob.SampleUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -188,7 +187,13 @@ final class ReinforcementParserState extends AbstractReinforcementParserState
 		super(parser_, params_, ex_, computeExpectedCounts_);
 		samplingStrategy = samplingStrategy_;
 		backpointerList = new HashMap<>();
-		agenda = samplingStrategy.equals("max") ? new QueueParserAgenda() : new ListParserAgenda();
+		if (samplingStrategy.equals("max"))
+			agenda = new HeapParserAgenda();
+		else
+			if (samplingStrategy.equals("agenda"))
+				agenda = new SumTreeParserAgenda();
+			else
+				agenda = new ListParserAgenda();
 	}
 
 	@Override
@@ -233,7 +238,7 @@ final class ReinforcementParserState extends AbstractReinforcementParserState
 			return;
 
 		// Compute features
-		_parser.extractor.extractLocal(ex, deriv);
+		_parser.extractor.extractLocal(ex, deriv, featureContext);
 
 		// Compute score by adding |SEARCH_PREFIX| prefix and adding children scores
 		final FeatureVector searchFV = deriv.addPrefixLocalFeatureVector(_parser.searchPrefix);
@@ -267,6 +272,8 @@ final class ReinforcementParserState extends AbstractReinforcementParserState
 			LogInfo.log("Agenda is empty");
 			return false;
 		}
+		if (isTimedOut())
+			return false;
 
 		return chart[0][numTokens].get(Rule.rootCat) == null || chart[0][numTokens].get(Rule.rootCat).size() < getBeamSize();
 	}
@@ -647,6 +654,7 @@ final class ReinforcementParserState extends AbstractReinforcementParserState
 	}
 
 	// sample from agenda based on agenda scores
+	// The agenda is a SumTreeParserAgenda, so sampling and the probability sums are O(log n) per sample
 	class AgendaSampler extends Sampler
 	{
 
@@ -655,13 +663,13 @@ final class ReinforcementParserState extends AbstractReinforcementParserState
 		public Pair<PrioritizedDerivationStream, Double> sample()
 		{
 
-			final double[] modelProbs = ReinforcementUtils.expNormalize(agenda);
+			final SumTreeParserAgenda sumTreeAgenda = (SumTreeParserAgenda) agenda;
 			if (computeExpectedCounts)// compute probability sum before sampling for gradient computation (easier before sampling)
-				updateProbSum(modelProbs);
+				sumTreeAgenda.accumulateProbs();
 
-			final int sampledIndex = SampleUtils.sampleMultinomial(randGen, modelProbs);
+			final int sampledIndex = sumTreeAgenda.sampleIndex(randGen);
 			final PrioritizedDerivationStream pds = agenda.get(sampledIndex);
-			final double prob = modelProbs[sampledIndex];
+			final double prob = sumTreeAgenda.getProb(sampledIndex);
 			agenda.remove(pds, sampledIndex);
 			return Pair.newPair(pds, prob);
 		}
@@ -7,12 +7,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A simple type system for Formulas. SemType represents a union over base types, where each base type is either - entity type, or - entity type -> base type
  * Example of a 0-ary (for booleans) (type bool) Example of a unary (for Obama) (union fb:government.politician fb:government.us_president ...) Example of a
  * binary (for born in) [remember, arg1 is the argument, arg0 is the return type] (-> fb:location.location fb:people.person) Note: type equality is not
  * implemented, since it's better to use meet() to exploit the finer lattice structure of the type system.
+ * <p>
+ * SemTypes are immutable. The factory methods below (and the results of meet, apply and reverse) return interned instances, so structurally identical types
+ * built from them are shared and can be compared by identity.
  *
  * @author Percy Liang
  */
@@ -44,6 +49,9 @@ public abstract class SemType
 
 	public abstract LispTree toLispTree();
 
+	// Return the interned instance that is structurally identical to |this|.
+	public abstract SemType intern();
+
 	@JsonValue
 	@Override
 	public String toString()
@@ -63,20 +71,20 @@ public abstract class SemType
 		{
 			if (tree.value.equals("top"))
 				return topType;
-			return new AtomicSemType(tree.value);
+			return internAtomic(tree.value);
 		}
 		if ("union".equals(tree.child(0).value))
 		{
 			final List<SemType> result = new ArrayList<>();
 			for (int i = 1; i < tree.children.size(); i++)
 				result.add(fromLispTree(tree.child(i)));
-			return new UnionSemType(result);
+			return internUnion(result);
 		}
 		if ("->".equals(tree.child(0).value))
 		{
 			SemType result = fromLispTree(tree.child(tree.children.size() - 1));
 			for (int i = tree.children.size() - 2; i >= 1; i--)
-				result = new FuncSemType(fromLispTree(tree.child(i)), result);
+				result = internFunc(fromLispTree(tree.child(i)), result);
 			return result;
 		}
 		throw new RuntimeException("Invalid type: " + tree);
@@ -86,20 +94,25 @@ public abstract class SemType
 
 	public static SemType newAtomicSemType(final String type)
 	{
-		return new AtomicSemType(type);
+		return internAtomic(type);
 	}
 
 	public static SemType newFuncSemType(final String argType, final String retType)
 	{
-		return new FuncSemType(argType, retType);
+		return internFunc(internAtomic(argType), internAtomic(retType));
+	}
+
+	public static FuncSemType newFuncSemType(final SemType argType, final SemType retType)
+	{
+		return internFunc(argType, retType);
 	}
 
 	public static SemType newUnionSemType(final Collection<String> types)
 	{
-		final List<SemType> t = new ArrayList<>();
+		final List<SemType> t = new ArrayList<>(types.size());
 		for (final String x : types)
-			t.add(new AtomicSemType(x));
-		return new UnionSemType(t).simplify();
+			t.add(internAtomic(x));
+		return internUnion(t);
 	}
 
 	public static SemType newUnionSemType(final String... types)
@@ -107,20 +120,77 @@ public abstract class SemType
 		return newUnionSemType(Arrays.asList(types));
 	}
 
+	// Interned types (must be initialized before the common types below)
+	private static final Map<String, AtomicSemType> atomicTypes = new ConcurrentHashMap<>();
+	private static final Map<List<SemType>, FuncSemType> funcTypes = new ConcurrentHashMap<>();
+	private static final Map<List<SemType>, UnionSemType> unionTypes = new ConcurrentHashMap<>();
+
+	static AtomicSemType internAtomic(final String name)
+	{
+		AtomicSemType type = atomicTypes.get(name);
+		if (type == null)
+		{
+			type = new AtomicSemType(name);
+			final AtomicSemType existing = atomicTypes.putIfAbsent(name, type);
+			if (existing != null)
+				type = existing;
+		}
+		return type;
+	}
+
+	static FuncSemType internFunc(final SemType argType, final SemType retType)
+	{
+		// Keys hold interned components, so List.equals compares them by identity.
+		final List<SemType> key = Arrays.asList(argType.intern(), retType.intern());
+		FuncSemType type = funcTypes.get(key);
+		if (type == null)
+		{
+			type = new FuncSemType(key.get(0), key.get(1));
+			final FuncSemType existing = funcTypes.putIfAbsent(key, type);
+			if (existing != null)
+				type = existing;
+		}
+		return type;
+	}
+
+	// Same as new UnionSemType(baseTypes).simplify(), but interned.
+	static SemType internUnion(final Collection<SemType> baseTypes)
+	{
+		final List<SemType> key = new ArrayList<>(baseTypes.size());
+		for (final SemType baseType : baseTypes)
+			if (baseType.isValid())
+				key.add(baseType.intern());
+		if (key.isEmpty())
+			return bottomType;
+		if (key.size() == 1)
+			return key.get(0);
+		if (key.contains(topType))
+			return topType;
+		UnionSemType type = unionTypes.get(key);
+		if (type == null)
+		{
+			type = new UnionSemType(key);
+			final UnionSemType existing = unionTypes.putIfAbsent(key, type);
+			if (existing != null)
+				type = existing;
+		}
+		return type;
+	}
+
 	// Common types
 	public static final SemType topType = new TopSemType();
 	public static final SemType bottomType = new UnionSemType();
-	public static final SemType stringType = new AtomicSemType(CanonicalNames.TEXT);
-	public static final SemType intType = new AtomicSemType(CanonicalNames.INT);
-	public static final SemType floatType = new AtomicSemType(CanonicalNames.FLOAT);
-	public static final SemType dateType = new AtomicSemType(CanonicalNames.DATE);
-	public static final SemType timeType = new AtomicSemType(CanonicalNames.TIME);
-	public static final SemType numberType = new AtomicSemType(CanonicalNames.NUMBER);
-	public static final SemType numberOrDateType = new UnionSemType(numberType, dateType);
-	public static final SemType entityType = new AtomicSemType(CanonicalNames.ENTITY);
-	public static final SemType anyType = new AtomicSemType(CanonicalNames.ANY);
-
-	public static final FuncSemType topTopFunc = new FuncSemType(topType, topType);
-	public static final FuncSemType anyAnyFunc = new FuncSemType(anyType, anyType);
-	public static final FuncSemType compareFunc = new FuncSemType(numberOrDateType, numberOrDateType);
+	public static final SemType stringType = internAtomic(CanonicalNames.TEXT);
+	public static final SemType intType = internAtomic(CanonicalNames.INT);
+	public static final SemType floatType = internAtomic(CanonicalNames.FLOAT);
+	public static final SemType dateType = internAtomic(CanonicalNames.DATE);
+	public static final SemType timeType = internAtomic(CanonicalNames.TIME);
+	public static final SemType numberType = internAtomic(CanonicalNames.NUMBER);
+	public static final SemType numberOrDateType = internUnion(Arrays.asList(numberType, dateType));
+	public static final SemType entityType = internAtomic(CanonicalNames.ENTITY);
+	public static final SemType anyType = internAtomic(CanonicalNames.ANY);
+
+	public static final FuncSemType topTopFunc = internFunc(topType, topType);
+	public static final FuncSemType anyAnyFunc = internFunc(anyType, anyType);
+	public static final FuncSemType compareFunc = internFunc(numberOrDateType, numberOrDateType);
 }
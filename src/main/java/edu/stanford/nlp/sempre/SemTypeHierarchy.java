@@ -1,14 +1,26 @@
 package edu.stanford.nlp.sempre;
 
 import fig.basic.LogInfo;
-import fig.basic.MapUtils;
 import fig.basic.Option;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Maintain a hierarchy (DAG) over strings. subtype < type < supertype
+ * <p>
+ * Each type name also gets an integer id, and the supertype relation is mirrored in a bit matrix over these ids (row = type, column = supertype) so that
+ * AtomicSemType.meet can test subtyping without hashing strings. The relation is stored exactly as registered: the supertype sets are expected to already list
+ * all supertypes (e.g., Freebase included_types), so no transitive closure is added on top.
+ * <p>
+ * Types are registered while loading the schema; later lookups of unknown types register them lazily. Registration is synchronized; lookups take no lock:
+ * the maps and sets are concurrent, and each row of the bit matrix is copied on write and published through an AtomicReferenceArray (itself replaced when it
+ * grows), so a reader never sees a row that is being modified.
  *
  * @author Percy Liang
  */
@@ -25,10 +37,16 @@ public class SemTypeHierarchy
 	public static final SemTypeHierarchy singleton = new SemTypeHierarchy();
 
 	// type => list of all supertypes (assume we don't have that many supertypes)
-	private final Map<String, Set<String>> supertypesMap = new HashMap<>(); // type => supertypes of type
-	private final Map<String, Set<String>> subtypesMap = new HashMap<>(); // type => subtype of type
+	private final Map<String, Set<String>> supertypesMap = new ConcurrentHashMap<>(); // type => supertypes of type
+	private final Map<String, Set<String>> subtypesMap = new ConcurrentHashMap<>(); // type => subtype of type
 	// Note: don't always need this, so can maybe remove later
 
+	// type name <=> type id
+	private final Map<String, Integer> typeIds = new HashMap<>();
+	private final List<String> typeNames = new ArrayList<>();
+	// type id => ids of supertypes (never modified once published); null if the type is not registered in the hierarchy yet
+	private volatile AtomicReferenceArray<BitSet> supertypeBits = new AtomicReferenceArray<>(64);
+
 	public SemTypeHierarchy()
 	{
 		// Add basic types.
@@ -52,7 +70,7 @@ public class SemTypeHierarchy
 	}
 
 	// Add standard supertypes of entity
-	public void addEntitySupertypes(final String type)
+	public synchronized void addEntitySupertypes(final String type)
 	{
 		// LogInfo.logs("addEntitySupertypes %s", type);
 		addSupertype(type, type);
@@ -61,22 +79,74 @@ public class SemTypeHierarchy
 	}
 
 	// Add: subtype < supertype
-	public void addSupertype(final String subtype, final String supertype)
+	public synchronized void addSupertype(final String subtype, final String supertype)
+	{
+		final int subtypeId = getTypeId(subtype), supertypeId = getTypeId(supertype);
+		final BitSet oldBits = supertypeBits.get(subtypeId);
+		if (oldBits == null || !oldBits.get(supertypeId))
+		{
+			final BitSet bits = oldBits == null ? new BitSet() : (BitSet) oldBits.clone();
+			bits.set(supertypeId);
+			supertypeBits.set(subtypeId, bits);
+		}
+		// Last, so that a type in supertypesMap always has its bits
+		subtypesMap.computeIfAbsent(supertype, t -> ConcurrentHashMap.newKeySet()).add(subtype);
+		supertypesMap.computeIfAbsent(subtype, t -> ConcurrentHashMap.newKeySet()).add(supertype);
+	}
+
+	// Return the id of |type|, assigning a new one if needed. Does not register |type| in the hierarchy.
+	public synchronized int getTypeId(final String type)
+	{
+		Integer id = typeIds.get(type);
+		if (id == null)
+		{
+			id = typeNames.size();
+			typeIds.put(type, id);
+			typeNames.add(type);
+			if (id >= supertypeBits.length())
+			{
+				final AtomicReferenceArray<BitSet> newBits = new AtomicReferenceArray<>(2 * supertypeBits.length());
+				for (int i = 0; i < supertypeBits.length(); i++)
+					newBits.set(i, supertypeBits.get(i));
+				supertypeBits = newBits;
+			}
+		}
+		return id;
+	}
+
+	public synchronized String getTypeName(final int id)
 	{
-		MapUtils.addToSet(supertypesMap, subtype, supertype);
-		MapUtils.addToSet(subtypesMap, supertype, subtype);
+		return typeNames.get(id);
+	}
+
+	// Return whether |supertype| is a supertype of |type| (both are type ids).
+	// Same as getSupertypes(type).contains(supertype), including the registration of unknown types.
+	public boolean isSupertype(final int type, final int supertype)
+	{
+		BitSet bits = supertypeBits.get(type); // |type| is an id, so it is within the array
+		if (bits == null)
+		{
+			getSupertypes(getTypeName(type));
+			bits = supertypeBits.get(type);
+		}
+		return bits.get(supertype);
 	}
 
 	public Set<String> getSupertypes(final String type)
 	{
 		Set<String> set = supertypesMap.get(type);
 		if (set == null)
-		{
-			if (opts.failOnUnknownTypes)
-				LogInfo.fails("SemTypeHierarchy.getSupertypes: don't know about type %s", type);
-			addEntitySupertypes(type);
-			set = supertypesMap.get(type);
-		}
+			synchronized (this)
+			{
+				set = supertypesMap.get(type);
+				if (set == null)
+				{
+					if (opts.failOnUnknownTypes)
+						LogInfo.fails("SemTypeHierarchy.getSupertypes: don't know about type %s", type);
+					addEntitySupertypes(type);
+					set = supertypesMap.get(type);
+				}
+			}
 		return set;
 	}
 
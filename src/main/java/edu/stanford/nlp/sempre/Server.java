@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -80,6 +81,8 @@ public class Server
 		public int verbose = 1;
 		@Option
 		public int htmlVerbose = 1;
+		@Option(gloss = "Number of candidates sent each time the parser has more of them, with format=stream")
+		public int streamCandidates = 10;
 	}
 
 	public static Options opts = new Options();
@@ -120,6 +123,12 @@ public class Server
 			return format.equals("json");
 		}
 
+		// Candidates sent as server-sent events while parsing (see CandidateStream)
+		boolean streamFormat()
+		{
+			return format.equals("stream");
+		}
+
 		// For writing main content
 
 		public ExchangeState(final HttpExchange exchange) throws IOException
@@ -176,7 +185,10 @@ public class Server
 			if (uriPath.equals("/sempre"))
 				handleQuery(sessionId);
 			else
-				getFile(opts.basePath + uriPath);
+				if (uriPath.equals("/metrics"))
+					getMetrics();
+				else
+					getFile(opts.basePath + uriPath);
 
 			exchange.close();
 		}
@@ -532,39 +544,47 @@ public class Server
 		}
 
 		String makeJson(final Master.Response response)
+		{
+			return Json.writeValueAsStringHard(makeJsonMap(response));
+		}
+
+		Map<String, Object> makeJsonMap(final Master.Response response)
 		{
 			final Map<String, Object> json = new HashMap<>();
 			final List<Object> items = new ArrayList<>();
 			json.put("candidates", items);
 			for (final Derivation deriv : response.getExample().getPredDerivations())
-			{
-				final Map<String, Object> item = new HashMap<>();
-				final Value value = deriv.getValue();
-				if (value instanceof UriValue)
-					item.put("url", ((UriValue) value).value);
-				else
-					if (value instanceof TableValue)
+				items.add(makeCandidateJson(deriv));
+			return json;
+		}
+
+		Object makeCandidateJson(final Derivation deriv)
+		{
+			final Map<String, Object> item = new HashMap<>();
+			final Value value = deriv.getValue();
+			if (value instanceof UriValue)
+				item.put("url", ((UriValue) value).value);
+			else
+				if (value instanceof TableValue)
+				{
+					final TableValue tableValue = (TableValue) value;
+					item.put("header", tableValue.header);
+					final List<List<String>> rowsObj = new ArrayList<>();
+					item.put("rows", rowsObj);
+					for (final List<Value> row : tableValue.rows)
 					{
-						final TableValue tableValue = (TableValue) value;
-						item.put("header", tableValue.header);
-						final List<List<String>> rowsObj = new ArrayList<>();
-						item.put("rows", rowsObj);
-						for (final List<Value> row : tableValue.rows)
-						{
-							final List<String> rowObj = new ArrayList<>();
-							for (final Value v : row)
-								rowObj.add(v.toString());
-							rowsObj.add(rowObj);
-						}
+						final List<String> rowObj = new ArrayList<>();
+						for (final Value v : row)
+							rowObj.add(v.toString());
+						rowsObj.add(rowObj);
 					}
-					else
+				}
+				else
+					if (value != null) // Not executed if the query was cancelled
 						item.put("value", value.toString());
-				item.put("score", deriv.score);
-				item.put("prob", deriv.prob);
-				items.add(item);
-			}
-
-			return Json.writeValueAsStringHard(json);
+			item.put("score", deriv.score);
+			item.put("prob", deriv.prob);
+			return item;
 		}
 
 		// Catch exception if any.
@@ -596,6 +616,7 @@ public class Server
 		void handleQuery(final String sessionId) throws IOException
 		{
 			String query = reqParams.get("q");
+			Metrics.requests.get("Server").inc();
 
 			// If JSON, don't store cookies.
 			final Session session = master.getSession(sessionId);
@@ -608,6 +629,27 @@ public class Server
 				query = "";
 			logs("Server.handleQuery %s: %s", session.id, query);
 
+			// Encode the URL parameters into the freeform text.
+			// A bit backwards, but keeps uniformity.
+			final String select = reqParams.get("select");
+			if (select != null)
+				if (ensureQueryIsLast(session, query))
+					query = LispTree.proto.newList("select", select).toString();
+				else
+					query = null;
+			final String accept = reqParams.get("accept");
+			if (accept != null)
+				if (ensureQueryIsLast(session, query))
+					query = LispTree.proto.newList("accept", accept).toString();
+				else
+					query = null;
+
+			if (streamFormat())
+			{
+				streamQuery(session, query);
+				return;
+			}
+
 			// Print header
 			if (jsonFormat())
 				setHeaders("application/json");
@@ -629,21 +671,6 @@ public class Server
 
 			final String uri = exchange.getRequestURI().toString();
 
-			// Encode the URL parameters into the freeform text.
-			// A bit backwards, but keeps uniformity.
-			final String select = reqParams.get("select");
-			if (select != null)
-				if (ensureQueryIsLast(session, query))
-					query = LispTree.proto.newList("select", select).toString();
-				else
-					query = null;
-			final String accept = reqParams.get("accept");
-			if (accept != null)
-				if (ensureQueryIsLast(session, query))
-					query = LispTree.proto.newList("accept", accept).toString();
-				else
-					query = null;
-
 			// Handle the request
 			Master.Response masterResponse = null;
 			if (query != null)
@@ -706,6 +733,38 @@ public class Server
 			out.close();
 		}
 
+		// Parse |query|, sending the best candidates as soon as the parser has them, then the JSON response (with the time to the first candidates in its
+		// stats). The parse is stopped if the client disconnects.
+		void streamQuery(final Session session, final String query) throws IOException
+		{
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			setHeaders("text/event-stream");
+			final Deadline deadline = Deadline.untilExpired();
+			final CandidateStream stream = new CandidateStream("Server", exchange.getResponseBody(), deadline, opts.streamCandidates, this::makeCandidateJson);
+			final long startTime = System.nanoTime();
+			Master.Response masterResponse;
+			Deadline.setCurrent(deadline);
+			ParseListener.setCurrent(stream);
+			try
+			{
+				masterResponse = query != null ? processQuery(session, query) : null; // null: the select/accept query could not be set up
+			}
+			finally
+			{
+				ParseListener.clearCurrent();
+				Deadline.clearCurrent();
+			}
+
+			final Map<String, Object> json = masterResponse != null && masterResponse.getExample() != null ? makeJsonMap(masterResponse) : new HashMap<>();
+			final Map<String, Object> stats = masterResponse != null ? masterResponse.stats : new LinkedHashMap<>();
+			stats.put("walltime", (System.nanoTime() - startTime) / 1.0e9);
+			stats.put("first_candidate_time", stream.getFirstCandidateTime());
+			if (masterResponse == null)
+				stats.put("error", "Internal error!");
+			json.put("stats", stats);
+			stream.close(json);
+		}
+
 		void getResults() throws IOException
 		{
 			setHeaders("application/json");
@@ -718,6 +777,15 @@ public class Server
 			writer.close();
 		}
 
+		// Prometheus text format, or JSON with format=json
+		void getMetrics() throws IOException
+		{
+			setHeaders(jsonFormat() ? "application/json" : "text/plain; version=0.0.4");
+			final PrintWriter writer = new PrintWriter(new OutputStreamWriter(exchange.getResponseBody()));
+			writer.print(jsonFormat() ? Metrics.toJson() + "\n" : Metrics.toPrometheus());
+			writer.close();
+		}
+
 		void getFile(final String path) throws IOException
 		{
 			if (!new File(path).exists())
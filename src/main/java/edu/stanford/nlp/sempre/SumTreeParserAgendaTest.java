@@ -0,0 +1,138 @@
+package edu.stanford.nlp.sempre;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+/**
+ * Test SumTreeParserAgenda against the computation it replaced: renormalizing a list agenda with ReinforcementUtils.expNormalize for every step and adding
+ * every probability to the probSum of its item.
+ */
+public class SumTreeParserAgendaTest
+{
+	private static final double EPSILON = 1e-9;
+
+	private final SumTreeParserAgenda agenda = new SumTreeParserAgenda();
+	private final ListParserAgenda expected = new ListParserAgenda();
+	private final List<DerivationStream> streams = new ArrayList<>(); // Streams of the items in both agendas, by index
+
+	private static PrioritizedDerivationStream item(final DerivationStream stream, final double priority)
+	{
+		return new PrioritizedDerivationStream(stream, priority, 0);
+	}
+
+	private void add(final double score, final double priority)
+	{
+		final Derivation deriv = new Derivation.Builder().cat("$ROOT").start(0).end(1).rule(Rule.nullRule).children(new ArrayList<Derivation>()).score(score).createDerivation();
+		final DerivationStream stream = SingleDerivationStream.constant(deriv);
+		agenda.add(item(stream, priority), priority);
+		expected.add(item(stream, priority), priority);
+		streams.add(stream);
+	}
+
+	private void accumulate()
+	{
+		agenda.accumulateProbs();
+		final double[] probs = ReinforcementUtils.expNormalize(expected);
+		for (int i = 0; i < expected.size(); i++)
+			expected.get(i).addProb(probs[i]);
+	}
+
+	private void sample(final Random random)
+	{
+		final int index = agenda.sampleIndex(random);
+		assertEquals(ReinforcementUtils.expNormalize(expected)[index], agenda.getProb(index), EPSILON);
+		remove(index);
+	}
+
+	private void pop()
+	{
+		int index = 0;
+		for (int i = 1; i < expected.size(); i++)
+			if (expected.get(i).compareTo(expected.get(index)) < 0)
+				index = i;
+		final PrioritizedDerivationStream pds = agenda.pop();
+		assertSame(streams.get(index), pds.derivStream);
+		assertEquals(expected.get(index).probSum, pds.probSum, EPSILON);
+		expected.remove(expected.get(index), index);
+		streams.set(index, streams.get(streams.size() - 1));
+		streams.remove(streams.size() - 1);
+	}
+
+	private void remove(final int index)
+	{
+		assertEquals(expected.get(index).probSum, agenda.get(index).probSum, EPSILON);
+		agenda.remove(agenda.get(index), index);
+		expected.remove(expected.get(index), index);
+		streams.set(index, streams.get(streams.size() - 1));
+		streams.remove(streams.size() - 1);
+	}
+
+	private void check()
+	{
+		assertEquals(expected.size(), agenda.size());
+		if (expected.size() == 0)
+			return;
+		final double[] probs = ReinforcementUtils.expNormalize(expected);
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertSame(streams.get(i), agenda.get(i).derivStream);
+			assertEquals(probs[i], agenda.getProb(i), EPSILON);
+			assertEquals(expected.get(i).probSum, agenda.get(i).probSum, EPSILON);
+		}
+	}
+
+	@Test
+	public void sameAsExpNormalize()
+	{
+		final Random random = new Random(1);
+		// Rescaling: a much higher score moves the reference up, and removing it leaves a sum below exp(-5)
+		for (int i = 0; i < 5; i++)
+			add(i, i);
+		accumulate();
+		check();
+		add(200, 100);
+		check();
+		accumulate();
+		accumulate();
+		check();
+		pop(); // The item with score 200
+		check();
+		accumulate();
+		check();
+		sample(random);
+		check();
+
+		// Random steps, with enough items to grow the tree
+		for (int step = 0; step < 2000; step++)
+		{
+			final double r = random.nextDouble();
+			if (agenda.size() == 0 || r < 0.4)
+				add(random.nextGaussian() * 20, random.nextInt(10));
+			else
+				if (r < 0.7)
+					accumulate();
+				else
+					if (r < 0.85)
+						sample(random);
+					else
+						if (r < 0.95)
+							pop();
+						else
+							remove(random.nextInt(agenda.size()));
+			if (step % 10 == 0)
+				check();
+		}
+		check();
+		while (agenda.size() > 0)
+		{
+			accumulate();
+			pop();
+		}
+		check();
+	}
+}
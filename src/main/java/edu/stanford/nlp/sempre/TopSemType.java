@@ -25,6 +25,11 @@ public class TopSemType extends SemType
 		return this;
 	}
 
+	public SemType intern()
+	{
+		return SemType.topType;
+	}
+
 	public LispTree toLispTree()
 	{
 		return LispTree.proto.newLeaf("top");
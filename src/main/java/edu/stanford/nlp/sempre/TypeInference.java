@@ -1,5 +1,7 @@
 package edu.stanford.nlp.sempre;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import fig.basic.ImmutableAssocList;
 import fig.basic.ListUtils;
 import fig.basic.LogInfo;
@@ -17,6 +19,9 @@ import java.util.Set;
  * returns the most generic types. - If the Freebase schema is loaded, FreebaseTypeLookup will give the type information from the schema. - Furthermore, if
  * EntityLexicon is loaded, EntityLexicon will give even more refined types. Note that we just return an upper bound on the type. Doesn't have to be perfect,
  * since this is just used to prune out bad combinations.
+ * <p>
+ * Types inferred with the default TypeLookup are memoized by formula, since the same formulas are built over and over during parsing. This assumes that the
+ * type lookup and SemTypeHierarchy are loaded before parsing starts.
  *
  * @author Percy Liang
  */
@@ -32,6 +37,8 @@ public final class TypeInference
 		public int verbose = 1;
 		@Option(gloss = "Class for looking up types")
 		public String typeLookup = "NullTypeLookup";
+		@Option(gloss = "Number of formulas whose types are memoized (0 to disable); only used with the default type lookup")
+		public int cacheSize = 100000;
 	}
 
 	public static Options opts = new Options();
@@ -48,6 +55,31 @@ public final class TypeInference
 	public static void setTypeLookup(final TypeLookup typeLookup)
 	{ // Kind of hacky, only used in tests
 		TypeInference.typeLookup = typeLookup;
+		clearCache();
+	}
+
+	// Memoized types for the default type lookup (with and without free variables)
+	private static volatile Cache<Formula, SemType> typeCache, freeVariableTypeCache;
+
+	private static Cache<Formula, SemType> getTypeCache(final boolean allowFreeVariable)
+	{
+		final Cache<Formula, SemType> cache = allowFreeVariable ? freeVariableTypeCache : typeCache;
+		if (cache != null || opts.cacheSize <= 0)
+			return cache;
+		synchronized (TypeInference.class)
+		{
+			if (typeCache == null)
+			{
+				freeVariableTypeCache = CacheBuilder.newBuilder().maximumSize(opts.cacheSize).build();
+				typeCache = CacheBuilder.newBuilder().maximumSize(opts.cacheSize).build();
+			}
+			return allowFreeVariable ? freeVariableTypeCache : typeCache;
+		}
+	}
+
+	public static synchronized void clearCache()
+	{
+		typeCache = freeVariableTypeCache = null;
 	}
 
 	// For computing type of (call ...) expressions.
@@ -139,12 +171,21 @@ public final class TypeInference
 	// Use the default typeLookup
 	public static SemType inferType(final Formula formula)
 	{
-		return inferType(formula, getTypeLookup(), false);
+		return inferType(formula, false);
 	}
 
 	public static SemType inferType(final Formula formula, final boolean allowFreeVariable)
 	{
-		return inferType(formula, getTypeLookup(), allowFreeVariable);
+		final Cache<Formula, SemType> cache = getTypeCache(allowFreeVariable);
+		if (cache == null)
+			return inferType(formula, getTypeLookup(), allowFreeVariable);
+		SemType type = cache.getIfPresent(formula);
+		if (type == null)
+		{
+			type = inferType(formula, getTypeLookup(), allowFreeVariable);
+			cache.put(formula, type);
+		}
+		return type;
 	}
 
 	public static SemType inferType(final Formula formula, final TypeLookup typeLookup)
@@ -248,9 +289,9 @@ public final class TypeInference
 					if (comparisonFormulas.contains(join.relation))
 						return check(type.meet(inferType(join.child, env, SemType.numberOrDateType)));
 
-					SemType relationType = inferType(join.relation, env, new FuncSemType(SemType.topType, type)); // Relation
+					SemType relationType = inferType(join.relation, env, SemType.internFunc(SemType.topType, type)); // Relation
 					final SemType childType = inferType(join.child, env, relationType.getArgType()); // Child
-					relationType = inferType(join.relation, env, new FuncSemType(childType, type)); // Relation again
+					relationType = inferType(join.relation, env, SemType.internFunc(childType, type)); // Relation again
 					return check(relationType.getRetType());
 
 				}
@@ -282,7 +323,7 @@ public final class TypeInference
 								env = env.addVar(lambda.var);
 								final SemType bodyType = inferType(lambda.body, env, type.getRetType());
 								final SemType varType = check(env.updateType(lambda.var, type.getArgType()));
-								return new FuncSemType(varType, bodyType);
+								return SemType.internFunc(varType, bodyType);
 
 							}
 							else
@@ -330,7 +371,7 @@ public final class TypeInference
 													inferType(superlative.count, env, SemType.numberType);
 													type = check(type.meet(SemType.anyType)); // Must be not higher-order
 													type = inferType(superlative.head, env, type); // Head
-													final SemType relationType = inferType(superlative.relation, env, new FuncSemType(SemType.numberOrDateType, type)); // Relation
+													final SemType relationType = inferType(superlative.relation, env, SemType.internFunc(SemType.numberOrDateType, type)); // Relation
 													type = inferType(superlative.head, env, relationType.getRetType()); // Head again
 													return type;
 
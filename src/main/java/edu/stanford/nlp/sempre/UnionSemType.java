@@ -41,26 +41,44 @@ public class UnionSemType extends SemType
 	{
 		if (that instanceof TopSemType)
 			return this;
-		final List<SemType> result = new ArrayList<>();
-		for (final SemType baseType : baseTypes)
-			result.add(baseType.meet(that));
-		return new UnionSemType(result).simplify();
+		// Only allocate once some base type actually changes
+		List<SemType> result = null;
+		for (int i = 0; i < baseTypes.size(); i++)
+		{
+			final SemType baseType = baseTypes.get(i);
+			final SemType newType = baseType.meet(that);
+			if (result == null && newType != baseType)
+			{
+				result = new ArrayList<>(baseTypes.size());
+				result.addAll(baseTypes.subList(0, i));
+			}
+			if (result != null)
+				result.add(newType);
+		}
+		if (result == null && isSimplified())
+			return this;
+		return SemType.internUnion(result == null ? baseTypes : result);
 	}
 
 	public SemType apply(final SemType that)
 	{
-		final List<SemType> result = new ArrayList<>();
+		final List<SemType> result = new ArrayList<>(baseTypes.size());
 		for (final SemType baseType : baseTypes)
 			result.add(baseType.apply(that));
-		return new UnionSemType(result).simplify();
+		return SemType.internUnion(result);
 	}
 
 	public SemType reverse()
 	{
-		final List<SemType> result = new ArrayList<>();
+		final List<SemType> result = new ArrayList<>(baseTypes.size());
 		for (final SemType baseType : baseTypes)
 			result.add(baseType.reverse());
-		return new UnionSemType(result).simplify();
+		return SemType.internUnion(result);
+	}
+
+	public SemType intern()
+	{
+		return SemType.internUnion(baseTypes);
 	}
 
 	public LispTree toLispTree()
@@ -72,6 +90,12 @@ public class UnionSemType extends SemType
 		return result;
 	}
 
+	// Whether simplify() would return |this|
+	private boolean isSimplified()
+	{
+		return baseTypes.size() >= 2 && !baseTypes.contains(SemType.topType);
+	}
+
 	public SemType simplify()
 	{
 		if (baseTypes.size() == 0)
@@ -0,0 +1,26 @@
+package edu.stanford.nlp.sempre.cprune;
+
+import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.Rule;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Example-level state of collaborative pruning. One instance is created per exploit / explore pass, so that several examples can be pruned in parallel.
+ */
+public class CPruneContext
+{
+	public final Example ex;
+	public final CollaborativePruner.Mode mode;
+
+	public boolean foundConsistentDerivation = false;
+	// patternString => pattern (only set in EXPLOIT mode)
+	public Map<String, FormulaPattern> predictedPatterns;
+	public List<Rule> predictedRules;
+
+	public CPruneContext(final Example ex_, final CollaborativePruner.Mode mode_)
+	{
+		ex = ex_;
+		mode = mode_;
+	}
+}
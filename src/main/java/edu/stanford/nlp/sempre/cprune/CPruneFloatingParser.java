@@ -13,6 +13,8 @@ import java.util.List;
 
 /**
  * A parser that first tries to exploit the macro grammar and only fall back to full search when needed.
+ *
+ * Pruning state is kept per example (see {@link CPruneContext}), so the parser can be used with Learner.numParallelThreads &gt; 1.
  */
 public class CPruneFloatingParser extends FloatingParser
 {
@@ -28,11 +30,7 @@ public class CPruneFloatingParser extends FloatingParser
 	@Override
 	public void onBeginDataGroup(final int iter, final int numIters, final String group)
 	{
-		if (CollaborativePruner.uidToCachedNeighbors == null)
-		{
-			CollaborativePruner.customGrammar.init(grammar);
-			CollaborativePruner.loadNeighbors();
-		}
+		CollaborativePruner.init(grammar);
 		CollaborativePruner.stats.reset(iter + "." + group);
 	}
 
@@ -77,7 +75,7 @@ class CPruneFloatingParserState extends ParserState
 	public void explore()
 	{
 		LogInfo.begin_track("Explore");
-		CollaborativePruner.initialize(ex, CollaborativePruner.Mode.EXPLORE);
+		final CPruneContext context = CollaborativePruner.initialize(ex, CollaborativePruner.Mode.EXPLORE);
 		final ParserState exploreParserState = ((CPruneFloatingParser) parser).exploreParser.newParserState(params, ex, computeExpectedCounts);
 		exploreParserState.infer();
 		predDerivations.clear();
@@ -85,18 +83,16 @@ class CPruneFloatingParserState extends ParserState
 		expectedCounts = exploreParserState.expectedCounts;
 		if (computeExpectedCounts)
 			for (final Derivation deriv : predDerivations)
-				CollaborativePruner.updateConsistentPattern(parser.valueEvaluator, ex, deriv);
-		CollaborativePruner.stats.totalExplore += 1;
-		if (CollaborativePruner.foundConsistentDerivation)
-			CollaborativePruner.stats.successfulExplore += 1;
+				CollaborativePruner.updateConsistentPattern(parser.valueEvaluator, context, deriv);
+		CollaborativePruner.stats.recordExplore(context.foundConsistentDerivation);
 		LogInfo.end_track();
 	}
 
 	public boolean exploit()
 	{
 		LogInfo.begin_track("Exploit");
-		CollaborativePruner.initialize(ex, CollaborativePruner.Mode.EXPLOIT);
-		final Grammar miniGrammar = new MiniGrammar(CollaborativePruner.predictedRules);
+		final CPruneContext context = CollaborativePruner.initialize(ex, CollaborativePruner.Mode.EXPLOIT);
+		final Grammar miniGrammar = new MiniGrammar(context.predictedRules);
 		final Parser exploitParser = new FloatingParser(new Parser.Spec(miniGrammar, parser.extractor, parser.executor, parser.valueEvaluator));
 		final ParserState exploitParserState = exploitParser.newParserState(params, ex, computeExpectedCounts);
 		exploitParserState.infer();
@@ -105,11 +101,9 @@ class CPruneFloatingParserState extends ParserState
 		expectedCounts = exploitParserState.expectedCounts;
 		if (computeExpectedCounts)
 			for (final Derivation deriv : predDerivations)
-				CollaborativePruner.updateConsistentPattern(parser.valueEvaluator, ex, deriv);
-		final boolean succeeds = CollaborativePruner.foundConsistentDerivation;
-		CollaborativePruner.stats.totalExploit += 1;
-		if (succeeds)
-			CollaborativePruner.stats.successfulExploit += 1;
+				CollaborativePruner.updateConsistentPattern(parser.valueEvaluator, context, deriv);
+		final boolean succeeds = context.foundConsistentDerivation;
+		CollaborativePruner.stats.recordExploit(succeeds);
 		LogInfo.end_track();
 		return succeeds;
 	}
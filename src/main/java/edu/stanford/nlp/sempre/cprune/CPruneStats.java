@@ -1,17 +1,31 @@
 package edu.stanford.nlp.sempre.cprune;
 
 /**
- * Stores various statistic.
+ * Stores various statistic. Counters may be updated from several learner threads.
  */
 public class CPruneStats
 {
-	public String iter;
-	public int totalExplore = 0;
-	public int successfulExplore = 0;
-	public int totalExploit = 0;
-	public int successfulExploit = 0;
+	public volatile String iter;
+	public volatile int totalExplore = 0;
+	public volatile int successfulExplore = 0;
+	public volatile int totalExploit = 0;
+	public volatile int successfulExploit = 0;
 
-	public void reset(final String iter_)
+	public synchronized void recordExplore(final boolean successful)
+	{
+		totalExplore++;
+		if (successful)
+			successfulExplore++;
+	}
+
+	public synchronized void recordExploit(final boolean successful)
+	{
+		totalExploit++;
+		if (successful)
+			successfulExploit++;
+	}
+
+	public synchronized void reset(final String iter_)
 	{
 		iter = iter_;
 		totalExplore = 0;
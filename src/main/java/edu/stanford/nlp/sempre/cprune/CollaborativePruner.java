@@ -2,7 +2,7 @@ package edu.stanford.nlp.sempre.cprune;
 
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.Example;
-import edu.stanford.nlp.sempre.Rule;
+import edu.stanford.nlp.sempre.Grammar;
 import edu.stanford.nlp.sempre.ValueEvaluator;
 import fig.basic.IOUtils;
 import fig.basic.LogInfo;
@@ -12,14 +12,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Static class for collaborative pruning.
+ * Static class for collaborative pruning. Global state (consistent patterns, custom rules, neighbors) is shared across examples and is safe to use from
+ * several learner threads; example-level state lives in {@link CPruneContext}.
  */
 public class CollaborativePruner
 {
@@ -29,8 +32,10 @@ public class CollaborativePruner
 		public int verbose = 0;
 		@Option(gloss = "K = Maximum number of nearest-neighbor examples to consider (-1 to use all examples so far)")
 		public int maxNumNeighbors = -1;
-		@Option(gloss = "Load cached neighbors from this file")
+		@Option(gloss = "Load cached neighbors from this file (if null, use the built-in neighbor index)")
 		public String neighborFilePath = null;
+		@Option(gloss = "Whether the built-in neighbor index uses lemmatized tokens")
+		public boolean neighborIndexLemmas = true;
 		@Option(gloss = "Maximum number of matching patterns (default = use all patterns)")
 		public int maxPredictedPatterns = Integer.MAX_VALUE;
 		@Option(gloss = "Maximum number of derivations per example")
@@ -46,7 +51,6 @@ public class CollaborativePruner
 		EXPLORE, EXPLOIT, NONE
 	}
 
-	public static Mode mode = Mode.NONE;
 	public static CPruneStats stats = new CPruneStats();
 	public static CustomGrammar customGrammar = new CustomGrammar();
 
@@ -56,20 +60,36 @@ public class CollaborativePruner
 		throw new RuntimeException("Cannot instantiate CollaborativePruner");
 	}
 
-	// Global variables
-	// Nearest neighbors
+	// Global variables (shared by all examples; may be accessed by several learner threads)
+	private static volatile boolean initialized = false;
+	// Nearest neighbors (from neighborFilePath)
 	static Map<String, List<String>> uidToCachedNeighbors;
+	// Nearest neighbors (built-in; used when neighborFilePath is null)
+	static NeighborIndex neighborIndex;
 	// uid => pattern
-	static Map<String, FormulaPattern> consistentPattern = new HashMap<>();
+	static Map<String, FormulaPattern> consistentPattern = new ConcurrentHashMap<>();
 	// patternString => customRuleString
-	static Map<String, Set<String>> customRules = new HashMap<>();
+	static Map<String, Set<String>> customRules = new ConcurrentHashMap<>();
 	// set of patternStrings
-	static Set<String> allConsistentPatterns = new HashSet<>();
+	static Set<String> allConsistentPatterns = ConcurrentHashMap.newKeySet();
 
-	// Example-level variables
-	public static boolean foundConsistentDerivation = false;
-	public static Map<String, FormulaPattern> predictedPatterns;
-	public static List<Rule> predictedRules;
+	/**
+	 * Initialize the custom grammar and the neighbors. Only the first call has an effect.
+	 */
+	public static synchronized void init(final Grammar grammar)
+	{
+		if (initialized)
+			return;
+		customGrammar.init(grammar);
+		if (opts.neighborFilePath != null)
+			loadNeighbors();
+		else
+		{
+			LogInfo.logs("neighborFilePath is null; using the built-in neighbor index.");
+			neighborIndex = new NeighborIndex(opts.neighborIndexLemmas);
+		}
+		initialized = true;
+	}
 
 	/**
 	 * Read the cached neighbors file. Line Format: ex_id [tab] neighbor_id1,neighbor_id2,...
@@ -103,31 +123,43 @@ public class CollaborativePruner
 		LogInfo.end_track();
 	}
 
-	public static void initialize(final Example ex, final Mode mode)
+	public static CPruneContext initialize(final Example ex, final Mode mode)
 	{
-		CollaborativePruner.mode = mode;
-		predictedRules = null;
-		predictedPatterns = null;
-		foundConsistentDerivation = false;
+		final CPruneContext context = new CPruneContext(ex, mode);
 		if (mode == Mode.EXPLOIT)
-			preprocessExample(ex);
+			preprocessExample(context);
+		return context;
 	}
 
-	static void preprocessExample(final Example ex)
+	/**
+	 * Return the candidate neighbors of |ex|, most similar first.
+	 */
+	static List<String> getNeighbors(final Example ex)
+	{
+		if (uidToCachedNeighbors != null)
+		{
+			final List<String> cachedNeighbors = uidToCachedNeighbors.get(ex.id);
+			return cachedNeighbors != null ? cachedNeighbors : Collections.<String> emptyList();
+		}
+		// Only examples with a consistent pattern are indexed
+		return neighborIndex.getNeighbors(ex, opts.maxNumNeighbors);
+	}
+
+	static void preprocessExample(final CPruneContext context)
 	{
 		final Map<String, FormulaPattern> patternFreqMap = new HashMap<>();
-		final List<String> cachedNeighbors = uidToCachedNeighbors.get(ex.id);
 		int total = 0;
 
 		// Gather the neighbors
 		if (opts.maxNumNeighbors > 0)
-			for (final String nid : cachedNeighbors)
+			for (final String nid : getNeighbors(context.ex))
 			{
 				// Only get examples that have been previously processed + found a consistent formula
-				if (!consistentPattern.containsKey(nid))
+				final FormulaPattern neighborConsistentPattern = consistentPattern.get(nid);
+				if (neighborConsistentPattern == null)
 					continue;
 
-				final String neighborPattern = consistentPattern.get(nid).pattern;
+				final String neighborPattern = neighborConsistentPattern.pattern;
 				if (!patternFreqMap.containsKey(neighborPattern))
 					patternFreqMap.put(neighborPattern, new FormulaPattern(neighborPattern, 0));
 				patternFreqMap.get(neighborPattern).frequency++;
@@ -147,11 +179,11 @@ public class CollaborativePruner
 		LogInfo.begin_track("Predicted patterns");
 		int rank = 0;
 		final Set<String> predictedRulesStrings = new HashSet<>();
-		predictedPatterns = new HashMap<>();
+		context.predictedPatterns = new HashMap<>();
 		for (final Map.Entry<String, FormulaPattern> entry : patternFreqEntries)
 		{
 			final FormulaPattern newPattern = entry.getValue();
-			predictedPatterns.put(newPattern.pattern, newPattern);
+			context.predictedPatterns.put(newPattern.pattern, newPattern);
 			predictedRulesStrings.addAll(customRules.get(newPattern.pattern));
 			LogInfo.logs(rank + 1 + ". " + newPattern.pattern + " (" + newPattern.frequency + ")");
 			rank++;
@@ -159,7 +191,7 @@ public class CollaborativePruner
 				break;
 		}
 		// Gather the rules
-		predictedRules = customGrammar.getRules(predictedRulesStrings);
+		context.predictedRules = customGrammar.getRules(predictedRulesStrings);
 		LogInfo.end_track();
 	}
 
@@ -173,24 +205,23 @@ public class CollaborativePruner
 
 	public static void addRules(final String patternString, final Derivation deriv, final Example ex)
 	{
-		if (!customRules.containsKey(patternString))
-			customRules.put(patternString, new HashSet<String>());
 		final Set<String> parsedCustomRules = customGrammar.addCustomRule(deriv, ex);
-		customRules.get(patternString).addAll(parsedCustomRules);
+		customRules.computeIfAbsent(patternString, k -> ConcurrentHashMap.newKeySet()).addAll(parsedCustomRules);
 	}
 
 	/**
 	 * Get called when a (consistent) formula is found. Update the consistent patterns.
 	 */
-	public static void updateConsistentPattern(final ValueEvaluator evaluator, final Example ex, final Derivation deriv)
+	public static void updateConsistentPattern(final ValueEvaluator evaluator, final CPruneContext context, final Derivation deriv)
 	{
+		final Example ex = context.ex;
 		final String uid = ex.id;
 		if (ex.targetValue != null)
 			deriv.compatibility = evaluator.getCompatibility(ex.targetValue, deriv.value);
 
 		if (deriv.isRootCat() && deriv.compatibility == 1)
 		{
-			foundConsistentDerivation = true;
+			context.foundConsistentDerivation = true;
 			LogInfo.logs("Found consistent deriv: %s", deriv);
 
 			final String patternString = getPatternString(deriv);
@@ -200,9 +231,12 @@ public class CollaborativePruner
 			final FormulaPattern oldConsistentPattern = consistentPattern.get(uid);
 			if (oldConsistentPattern == null || newConsistentPattern.score > oldConsistentPattern.score)
 			{
+				// Rules must be registered before the pattern becomes visible to other examples
 				addRules(patternString, deriv, ex);
-				consistentPattern.put(uid, newConsistentPattern);
 				allConsistentPatterns.add(patternString);
+				consistentPattern.put(uid, newConsistentPattern);
+				if (neighborIndex != null)
+					neighborIndex.add(ex);
 			}
 		}
 	}
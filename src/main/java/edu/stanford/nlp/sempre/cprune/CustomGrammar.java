@@ -40,7 +40,7 @@ public class CustomGrammar extends Grammar
 	// customRuleString => Binarized rules
 	Map<String, Set<Rule>> customBinarizedRules = new HashMap<>();
 
-	public void init(final Grammar initGrammar)
+	public synchronized void init(final Grammar initGrammar)
 	{
 		baseRules = new ArrayList<>();
 		for (final Rule rule : initGrammar.getRules())
@@ -49,7 +49,7 @@ public class CustomGrammar extends Grammar
 		freshCatIndex = initGrammar.getFreshCatIndex();
 	}
 
-	public List<Rule> getRules(final Collection<String> customRuleStrings)
+	public synchronized List<Rule> getRules(final Collection<String> customRuleStrings)
 	{
 		final Set<Rule> ruleSet = new LinkedHashSet<>();
 		ruleSet.addAll(baseRules);
@@ -58,7 +58,8 @@ public class CustomGrammar extends Grammar
 		return new ArrayList<>(ruleSet);
 	}
 
-	public Set<String> addCustomRule(final Derivation deriv, final Example ex)
+	// Synchronized: interpretRule() writes into the shared |rules| field.
+	public synchronized Set<String> addCustomRule(final Derivation deriv, final Example ex)
 	{
 		final String indexedSymbolicFormula = getIndexedSymbolicFormula(deriv);
 		if (customRules.containsKey(indexedSymbolicFormula))
@@ -0,0 +1,156 @@
+package edu.stanford.nlp.sempre.cprune;
+
+import edu.stanford.nlp.sempre.Example;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Built-in nearest-neighbor index over utterance tokens (TF-IDF weighting, cosine similarity).
+ * <p>
+ * Replaces the precomputed neighbor file: examples are indexed as soon as they have a consistent pattern, and queries return the most similar indexed
+ * examples. Adding and querying can happen concurrently from several learner threads.
+ */
+public class NeighborIndex
+{
+	// uid => token => count
+	private final Map<String, Map<String, Integer>> documents = new HashMap<>();
+	// token => uids
+	private final Map<String, Set<String>> postings = new HashMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final boolean useLemmas;
+
+	public NeighborIndex(final boolean useLemmas_)
+	{
+		useLemmas = useLemmas_;
+	}
+
+	public int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documents.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean contains(final String uid)
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documents.containsKey(uid);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Index the utterance of |ex|. Does nothing if the example is already indexed.
+	 */
+	public void add(final Example ex)
+	{
+		final Map<String, Integer> termCounts = getTermCounts(ex);
+		lock.writeLock().lock();
+		try
+		{
+			if (documents.containsKey(ex.id))
+				return;
+			documents.put(ex.id, termCounts);
+			for (final String term : termCounts.keySet())
+				postings.computeIfAbsent(term, k -> new HashSet<>()).add(ex.id);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the uids of at most |k| indexed examples most similar to |ex| (most similar first), excluding |ex| itself. Examples sharing no token with |ex| are
+	 * never returned.
+	 */
+	public List<String> getNeighbors(final Example ex, final int k)
+	{
+		final Map<String, Integer> queryCounts = getTermCounts(ex);
+		final List<String> neighbors = new ArrayList<>();
+		lock.readLock().lock();
+		try
+		{
+			final int numDocs = documents.size();
+			final Map<String, Double> dotProducts = new HashMap<>();
+			for (final Map.Entry<String, Integer> entry : queryCounts.entrySet())
+			{
+				final Set<String> uids = postings.get(entry.getKey());
+				if (uids == null)
+					continue;
+				final double idf = idf(numDocs, uids.size());
+				for (final String uid : uids)
+					if (!uid.equals(ex.id))
+						dotProducts.merge(uid, entry.getValue() * documents.get(uid).get(entry.getKey()) * idf * idf, Double::sum);
+			}
+
+			final List<Map.Entry<String, Double>> scored = new ArrayList<>(dotProducts.size());
+			for (final Map.Entry<String, Double> entry : dotProducts.entrySet())
+			{
+				// The query norm is shared by all candidates and does not affect the ranking.
+				entry.setValue(entry.getValue() / norm(documents.get(entry.getKey()), numDocs));
+				scored.add(entry);
+			}
+			// Break ties by uid so that the result does not depend on hashing order
+			scored.sort((a, b) -> a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey()) : Double.compare(b.getValue(), a.getValue()));
+			for (final Map.Entry<String, Double> entry : scored)
+			{
+				if (neighbors.size() >= k)
+					break;
+				neighbors.add(entry.getKey());
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+		return neighbors;
+	}
+
+	// ============================================================
+	// Private methods
+	// ============================================================
+
+	private Map<String, Integer> getTermCounts(final Example ex)
+	{
+		final Map<String, Integer> termCounts = new HashMap<>();
+		final List<String> tokens = useLemmas ? ex.getLemmaTokens() : ex.getTokens();
+		for (final String token : tokens)
+			termCounts.merge(token.toLowerCase(), 1, Integer::sum);
+		return termCounts;
+	}
+
+	// Caller must hold the lock.
+	private double norm(final Map<String, Integer> termCounts, final int numDocs)
+	{
+		double sum = 0;
+		for (final Map.Entry<String, Integer> entry : termCounts.entrySet())
+		{
+			final double weight = entry.getValue() * idf(numDocs, postings.get(entry.getKey()).size());
+			sum += weight * weight;
+		}
+		return Math.sqrt(sum);
+	}
+
+	private static double idf(final int numDocs, final int docFreq)
+	{
+		return Math.log((1.0 + numDocs) / (1.0 + docFreq)) + 1;
+	}
+}
@@ -4,8 +4,6 @@ import fig.basic.IOUtils;
 import fig.basic.LogInfo;
 import fig.basic.Option;
 import fig.exec.Execution;
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -34,41 +32,53 @@ public class BuildCanonicalIdMap implements Runnable
 	public String rawPath;
 	@Option(required = true)
 	public String canonicalIdMapPath;
+	@Option(gloss = "Number of threads to parse the input with")
+	public int numThreads = Runtime.getRuntime().availableProcessors();
 
 	Set<String> allowableIds = new HashSet<>();
 
 	PrintWriter out;
 	int numMids = 0;
 
+	// Current block of triples corresponds to a single mid.
+	String mid = null;
+	final List<String> ids = new ArrayList<>();
+
 	void computeAllowableIds()
 	{
 		// Compute allowable ids
 		LogInfo.begin_track("Compute allowable ids");
-		try
+		TtlReader.read(rawPath, maxInputLines, numThreads, AllowableIdsChunk::new, chunk -> allowableIds.addAll(chunk.allowableIds));
+		LogInfo.logs("%d allowable ids", allowableIds.size());
+		LogInfo.end_track();
+	}
+
+	private static class AllowableIdsChunk implements TtlReader.ChunkHandler
+	{
+		final Set<String> allowableIds = new HashSet<>();
+
+		public void triple(final String arg1, final String property, final String arg2)
 		{
-			final BufferedReader in = IOUtils.openIn(rawPath);
-			String line;
-			int numInputLines = 0;
-			while (numInputLines < maxInputLines && (line = in.readLine()) != null)
-			{
-				numInputLines++;
-				if (numInputLines % 10000000 == 0)
-					LogInfo.logs("Read %s lines, %d allowable ids", numInputLines, allowableIds.size());
-				final String[] tokens = Utils.parseTriple(line);
-				if (tokens == null)
-					continue;
-				final String arg1 = tokens[0];
-				if (!arg1.startsWith("fb:g.") && !arg1.startsWith("fb:m."))
-					allowableIds.add(arg1);
-			}
-			LogInfo.logs("%d allowable ids", allowableIds.size());
-			in.close();
+			if (!arg1.startsWith("fb:g.") && !arg1.startsWith("fb:m."))
+				allowableIds.add(arg1);
 		}
-		catch (final IOException e)
+	}
+
+	// The (mid, id) keys of one chunk, in order.
+	private static class KeysChunk implements TtlReader.ChunkHandler
+	{
+		final List<String> mids = new ArrayList<>();
+		final List<String> ids = new ArrayList<>();
+
+		public void triple(final String arg1, final String property, final String arg2)
 		{
-			throw new RuntimeException(e);
+			if (!arg1.startsWith("fb:m."))
+				return;
+			if (!property.equals("fb:type.object.key"))
+				return;
+			mids.add(arg1);
+			ids.add(Utils.stringToRdf(arg2));
 		}
-		LogInfo.end_track();
 	}
 
 	void flush(final String mid, final List<String> ids)
@@ -104,60 +114,32 @@ public class BuildCanonicalIdMap implements Runnable
 
 		// Map to ids
 		out = IOUtils.openOutHard(canonicalIdMapPath);
-		try
-		{
-			final BufferedReader in = IOUtils.openIn(rawPath);
-			String line;
-			int numInputLines = 0;
-
-			// Current block of triples corresponds to a single mid.
-			String mid = null;
-			final List<String> ids = new ArrayList<>();
 
-			while (numInputLines < maxInputLines && (line = in.readLine()) != null)
+		TtlReader.read(rawPath, maxInputLines, numThreads, KeysChunk::new, chunk -> {
+			for (int i = 0; i < chunk.mids.size(); i++)
 			{
-				numInputLines++;
-				if (numInputLines % 10000000 == 0)
-					LogInfo.logs("Read %s lines, %d entities", numInputLines, numMids);
-				final String[] tokens = Utils.parseTriple(line);
-				if (tokens == null)
-					continue;
-				final String arg1 = tokens[0];
-				final String property = tokens[1];
-				String arg2 = tokens[2];
-
-				if (!arg1.startsWith("fb:m."))
-					continue;
-				if (!property.equals("fb:type.object.key"))
-					continue;
-
 				// Flush last block
-				if (!arg1.equals(mid))
+				if (!chunk.mids.get(i).equals(mid))
 				{
 					flush(mid, ids);
 
 					// Reset
-					mid = arg1;
+					mid = chunk.mids.get(i);
 					ids.clear();
 				}
 
 				// Record information
-				arg2 = Utils.stringToRdf(arg2);
-				ids.add(arg2);
+				ids.add(chunk.ids.get(i));
 			}
-			in.close();
-			flush(mid, ids);
-		}
-		catch (final IOException e)
-		{
-			throw new RuntimeException(e);
-		}
+		});
+		flush(mid, ids);
+		LogInfo.logs("%d entities", numMids);
 
 		out.close();
 	}
 
 	public static void main(final String[] args)
 	{
-		Execution.run(args, new BuildCanonicalIdMap());
+		Execution.run(args, "BuildCanonicalIdMapMain", new BuildCanonicalIdMap(), "TtlReader", TtlReader.opts);
 	}
 }
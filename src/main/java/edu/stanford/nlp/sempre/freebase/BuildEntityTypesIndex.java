@@ -0,0 +1,60 @@
+package edu.stanford.nlp.sempre.freebase;
+
+import fig.basic.IOUtils;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import fig.exec.Execution;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Input: entity types cache (FreebaseTypeLookup.entityTypesPath, e.g., the output of BuildTypesMap) fb:en.arnold_schwarzenegger fb:people.person,fb:government.politician
+ * Output: EntityTypesIndex to be used as FreebaseTypeLookup.entityTypesIndexPath
+ */
+public class BuildEntityTypesIndex implements Runnable
+{
+	@Option(required = true, gloss = "Input (entity types cache)")
+	public String inPath;
+	@Option(required = true, gloss = "Output")
+	public String outPath;
+
+	public void run()
+	{
+		// As in FileStringCache, a later line for the same entity overrides earlier ones.
+		final Map<String, String> entityTypes = new HashMap<>();
+		LogInfo.begin_track("Reading %s", inPath);
+		try (BufferedReader in = IOUtils.openIn(inPath))
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				final String[] tokens = line.split("\t", 2);
+				if (tokens.length == 2)
+					entityTypes.put(tokens[0], tokens[1]);
+			}
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		LogInfo.end_track();
+
+		LogInfo.begin_track("Writing to %s", outPath);
+		try
+		{
+			EntityTypesIndex.write(entityTypes, outPath);
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		LogInfo.end_track();
+	}
+
+	public static void main(final String[] args)
+	{
+		Execution.run(args, new BuildEntityTypesIndex());
+	}
+}
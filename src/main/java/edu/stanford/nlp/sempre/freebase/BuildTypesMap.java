@@ -6,9 +6,8 @@ import fig.basic.MapUtils;
 import fig.basic.Option;
 import fig.basic.StrUtils;
 import fig.exec.Execution;
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,36 +28,33 @@ public class BuildTypesMap implements Runnable
 	public String outPath;
 	@Option(gloss = "keep only fb:en.*")
 	public boolean keepOnlyEnIds = true;
+	@Option(gloss = "Number of threads to parse the input with")
+	public int numThreads = Runtime.getRuntime().availableProcessors();
 
 	Map<String, List<String>> types = new LinkedHashMap<>();
 
-	public void run()
+	// Types of the entities in one chunk of the input
+	private class TypesChunk implements TtlReader.ChunkHandler
 	{
-		LogInfo.begin_track("Reading %s", inPath);
-		try
-		{
-			final BufferedReader in = IOUtils.openIn(inPath);
-			String line;
-			int numLines = 0;
-			while ((line = in.readLine()) != null)
-			{
-				final String[] triple = Utils.parseTriple(line);
-				if (++numLines % 100000000 == 0)
-					LogInfo.logs("%d lines", numLines);
-				if (triple == null)
-					continue;
-				if (!triple[1].equals("fb:type.object.type"))
-					continue;
-				if (keepOnlyEnIds && !triple[0].startsWith("fb:en."))
-					continue;
-				MapUtils.addToList(types, triple[0], triple[2]);
-			}
-			in.close();
-		}
-		catch (final IOException e)
+		final Map<String, List<String>> types = new LinkedHashMap<>();
+
+		public void triple(final String arg1, final String property, final String arg2)
 		{
-			throw new RuntimeException(e);
+			if (!property.equals("fb:type.object.type"))
+				return;
+			if (keepOnlyEnIds && !arg1.startsWith("fb:en."))
+				return;
+			MapUtils.addToList(types, arg1, arg2);
 		}
+	}
+
+	public void run()
+	{
+		LogInfo.begin_track("Reading %s", inPath);
+		TtlReader.read(inPath, maxInputLines, numThreads, TypesChunk::new, chunk -> {
+			for (final Map.Entry<String, List<String>> e : chunk.types.entrySet())
+				types.computeIfAbsent(e.getKey(), entity -> new ArrayList<>()).addAll(e.getValue());
+		});
 		LogInfo.end_track();
 
 		LogInfo.begin_track("Writing to %s", outPath);
@@ -71,6 +67,6 @@ public class BuildTypesMap implements Runnable
 
 	public static void main(final String[] args)
 	{
-		Execution.run(args, new BuildTypesMap());
+		Execution.run(args, "BuildTypesMapMain", new BuildTypesMap(), "TtlReader", TtlReader.opts);
 	}
 }
@@ -5,9 +5,8 @@ import fig.basic.LogInfo;
 import fig.basic.MapUtils;
 import fig.basic.Option;
 import fig.exec.Execution;
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Map;
 
 /**
@@ -27,63 +26,62 @@ public class CanonicalizeIds implements Runnable
 	public String rawPath;
 	@Option(required = true, gloss = "Canonicalized Freebase triples")
 	public String canonicalizedPath;
+	@Option(gloss = "Number of threads to parse the input with")
+	public int numThreads = Runtime.getRuntime().availableProcessors();
 
-	public void run()
+	// Canonicalized triples of one chunk of the input
+	private static class ConvertChunk implements TtlReader.ChunkHandler
 	{
-		final Map<String, String> canonicalIdMap = Utils.readCanonicalIdMap(canonicalIdMapPath, maxInputLines);
+		final Map<String, String> canonicalIdMap;
+		final StringWriter buffer = new StringWriter();
+		final PrintWriter out = new PrintWriter(buffer);
 
-		// Do conversion
-		LogInfo.begin_track("Convert");
-		final PrintWriter out = IOUtils.openOutHard(canonicalizedPath);
-		out.println(Utils.ttlPrefix);
-		try
+		ConvertChunk(final Map<String, String> canonicalIdMap)
 		{
-			final BufferedReader in = IOUtils.openIn(rawPath);
-			String line;
-			int numInputLines = 0;
-			while (numInputLines < maxInputLines && (line = in.readLine()) != null)
-			{
-				numInputLines++;
-				if (numInputLines % 10000000 == 0)
-					LogInfo.logs("Read %s lines", numInputLines);
-				final String[] tokens = Utils.parseTriple(line);
-				if (tokens == null)
-					continue;
-				String arg1 = tokens[0];
-				String property = tokens[1];
-				String arg2 = tokens[2];
+			this.canonicalIdMap = canonicalIdMap;
+		}
 
-				// Do some simple filtering
-				if (!property.startsWith("fb:"))
-					continue;
-				if (property.contains(".."))
-					continue; // Freebase dumps started containing paths through CVTs, which we don't need
-				if (property.equals("fb:type.type.instance"))
-					continue; // Already have type.object.type, don't need reverse map explicitly
-				if (arg2.startsWith("\"") && !(arg2.endsWith("@en") || arg2.contains("^^xsd:")))
-					continue; // Strings must be in English or xsd values (boolean, int, float, datetime)
+		public void triple(String arg1, String property, String arg2)
+		{
+			// Do some simple filtering
+			if (!property.startsWith("fb:"))
+				return;
+			if (property.contains(".."))
+				return; // Freebase dumps started containing paths through CVTs, which we don't need
+			if (property.equals("fb:type.type.instance"))
+				return; // Already have type.object.type, don't need reverse map explicitly
+			if (arg2.startsWith("\"") && !(arg2.endsWith("@en") || arg2.contains("^^xsd:")))
+				return; // Strings must be in English or xsd values (boolean, int, float, datetime)
 
-				arg2 = Utils.quoteValues(arg2); // Fix numerical values
+			arg2 = Utils.quoteValues(arg2); // Fix numerical values
 
-				// Convert everything to use canonical ids.
-				arg1 = MapUtils.get(canonicalIdMap, arg1, arg1);
-				property = MapUtils.get(canonicalIdMap, property, property);
-				arg2 = MapUtils.get(canonicalIdMap, arg2, arg2);
+			// Convert everything to use canonical ids.
+			arg1 = MapUtils.get(canonicalIdMap, arg1, arg1);
+			property = MapUtils.get(canonicalIdMap, property, property);
+			arg2 = MapUtils.get(canonicalIdMap, arg2, arg2);
 
-				Utils.writeTriple(out, arg1, property, arg2);
-			}
-			in.close();
-		}
-		catch (final IOException e)
-		{
-			throw new RuntimeException(e);
+			Utils.writeTriple(out, arg1, property, arg2);
 		}
+	}
+
+	public void run()
+	{
+		final Map<String, String> canonicalIdMap = Utils.readCanonicalIdMap(canonicalIdMapPath, maxInputLines);
+
+		// Do conversion; |canonicalIdMap| is only read from here on, so the chunks can share it.
+		LogInfo.begin_track("Convert");
+		final PrintWriter out = IOUtils.openOutHard(canonicalizedPath);
+		out.println(Utils.ttlPrefix);
+		TtlReader.read(rawPath, maxInputLines, numThreads, () -> new ConvertChunk(canonicalIdMap), chunk -> {
+			chunk.out.flush();
+			out.write(chunk.buffer.toString());
+		});
 		out.close();
 		LogInfo.end_track();
 	}
 
 	public static void main(final String[] args)
 	{
-		Execution.run(args, new CanonicalizeIds());
+		Execution.run(args, "CanonicalizeIdsMain", new CanonicalizeIds(), "TtlReader", TtlReader.opts);
 	}
 }
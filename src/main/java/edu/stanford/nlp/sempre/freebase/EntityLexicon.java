@@ -27,6 +27,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.queryparser.classic.ParseException;
 
@@ -53,13 +54,17 @@ public final class EntityLexicon
 		public String mid2idPath;
 		@Option(gloss = "Path to entity popularity file")
 		public String entityPopularityPath;
+		@Option(gloss = "Number of Lucene queries whose results are cached per search strategy (0 to disable)")
+		public int searchCacheSize = FbEntitySearcher.DEFAULT_CACHE_SIZE;
+		@Option(gloss = "Log the Lucene cache statistics every this many lookups (0 to disable)")
+		public int searchCacheStatsInterval = 0;
 	}
 
 	public static Options opts = new Options();
 
 	private static EntityLexicon entityLexicon;
 
-	public static EntityLexicon getInstance()
+	public static synchronized EntityLexicon getInstance()
 	{
 		if (entityLexicon == null)
 			entityLexicon = new EntityLexicon();
@@ -68,6 +73,7 @@ public final class EntityLexicon
 
 	FbEntitySearcher exactSearcher; // Lucene
 	FbEntitySearcher inexactSearcher; // Lucene
+	private final AtomicInteger numSearches = new AtomicInteger();
 
 	FreebaseSearch freebaseSearch; // Google's API
 	StringCache mid2idCache; // Google's API spits back mids, which we need to convert to ids
@@ -85,13 +91,9 @@ public final class EntityLexicon
 		switch (strategy)
 		{
 			case exact:
-				if (exactSearcher == null)
-					exactSearcher = new FbEntitySearcher(opts.exactMatchIndex, opts.numOfDocs, "exact");
-				return lookupEntries(exactSearcher, query);
+				return lookupEntries(getExactSearcher(), query);
 			case inexact:
-				if (inexactSearcher == null)
-					inexactSearcher = new FbEntitySearcher(opts.inexactMatchIndex, opts.numOfDocs, "inexact");
-				return lookupEntries(inexactSearcher, query);
+				return lookupEntries(getInexactSearcher(), query);
 			case fbsearch:
 				if (freebaseSearch == null)
 					freebaseSearch = new FreebaseSearch();
@@ -103,6 +105,20 @@ public final class EntityLexicon
 		}
 	}
 
+	private synchronized FbEntitySearcher getExactSearcher() throws IOException
+	{
+		if (exactSearcher == null)
+			exactSearcher = new FbEntitySearcher(opts.exactMatchIndex, opts.numOfDocs, "exact", opts.searchCacheSize);
+		return exactSearcher;
+	}
+
+	private synchronized FbEntitySearcher getInexactSearcher() throws IOException
+	{
+		if (inexactSearcher == null)
+			inexactSearcher = new FbEntitySearcher(opts.inexactMatchIndex, opts.numOfDocs, "inexact", opts.searchCacheSize);
+		return inexactSearcher;
+	}
+
 	private void loadEntityPopularity()
 	{
 		entityPopularityMap = new HashMap<>();
@@ -151,6 +167,8 @@ public final class EntityLexicon
 		final List<EntityLexicalEntry> res = new ArrayList<>();
 		textDesc = textDesc.replaceAll("\\?", "\\\\?").toLowerCase();
 		final List<Document> docs = searcher.searchDocs(textDesc);
+		if (opts.searchCacheStatsInterval > 0 && numSearches.incrementAndGet() % opts.searchCacheStatsInterval == 0)
+			searcher.logCacheStats();
 		for (final Document doc : docs)
 		{
 
@@ -0,0 +1,259 @@
+package edu.stanford.nlp.sempre.freebase;
+
+import fig.basic.LogInfo;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact index from entities to their Freebase types, built by BuildEntityTypesIndex from the entity types cache (entity \t comma-separated types). Each
+ * distinct set of types is stored once and entities point to it by id. Entities are kept sorted as UTF-8 bytes, so a lookup is a binary search over a few flat
+ * arrays, which are either loaded onto the heap or memory-mapped.
+ *
+ * File layout (big-endian): magic, version, types (count, then length-prefixed UTF-8 strings), type sets (count, offsets, type ids), entities (count, key offsets, type set ids,
+ * key bytes).
+ */
+public final class EntityTypesIndex
+{
+	private static final int MAGIC = 0x45544958; // ETIX
+	private static final int VERSION = 1;
+
+	public static final int NOT_FOUND = -1;
+
+	private final List<Set<String>> typeSets; // Unmodifiable
+	private final int numEntities;
+	private final IntBuffer keyOffsets;
+	private final IntBuffer entityTypeSets;
+	private final ByteBuffer keys;
+
+	private EntityTypesIndex(final ByteBuffer buffer)
+	{
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			throw new RuntimeException("Not an entity types index (or wrong version)");
+
+		final String[] types = new String[buffer.getInt()];
+		for (int i = 0; i < types.length; i++)
+			types[i] = readString(buffer);
+
+		final int[] setOffsets = new int[buffer.getInt() + 1];
+		for (int i = 0; i < setOffsets.length; i++)
+			setOffsets[i] = buffer.getInt();
+		final int[] setTypes = new int[setOffsets[setOffsets.length - 1]];
+		for (int i = 0; i < setTypes.length; i++)
+			setTypes[i] = buffer.getInt();
+		typeSets = new ArrayList<>(setOffsets.length - 1);
+		for (int s = 0; s + 1 < setOffsets.length; s++)
+		{
+			final Set<String> set = new LinkedHashSet<>();
+			for (int i = setOffsets[s]; i < setOffsets[s + 1]; i++)
+				set.add(types[setTypes[i]]);
+			typeSets.add(Collections.unmodifiableSet(set));
+		}
+
+		numEntities = buffer.getInt();
+		keyOffsets = slice(buffer, 4 * (numEntities + 1)).asIntBuffer();
+		entityTypeSets = slice(buffer, 4 * numEntities).asIntBuffer();
+		keys = slice(buffer, keyOffsets.get(numEntities));
+	}
+
+	private static ByteBuffer slice(final ByteBuffer buffer, final int length)
+	{
+		final ByteBuffer result = buffer.slice();
+		result.limit(length);
+		buffer.position(buffer.position() + length);
+		return result;
+	}
+
+	private static String readString(final ByteBuffer buffer)
+	{
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Load the index at |path| onto the heap, or memory-map it if |mmap| is set.
+	public static EntityTypesIndex read(final String path, final boolean mmap)
+	{
+		LogInfo.begin_track("EntityTypesIndex.read(%s, mmap=%s)", path, mmap);
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel())
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new RuntimeException("Entity types index is too large (" + channel.size() + " bytes): " + path);
+			ByteBuffer buffer;
+			if (mmap)
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			else
+			{
+				buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+				{
+				}
+				buffer.flip();
+			}
+			final EntityTypesIndex index = new EntityTypesIndex(buffer);
+			LogInfo.logs("%d entities, %d distinct type sets", index.numEntities, index.numTypeSets());
+			return index;
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			LogInfo.end_track();
+		}
+	}
+
+	public int numEntities()
+	{
+		return numEntities;
+	}
+
+	public int numTypeSets()
+	{
+		return typeSets.size();
+	}
+
+	// Return the id of the type set of |entity|, or NOT_FOUND.
+	public int getTypeSet(final String entity)
+	{
+		final byte[] key = entity.getBytes(StandardCharsets.UTF_8);
+		int lo = 0, hi = numEntities - 1;
+		while (lo <= hi)
+		{
+			final int mid = lo + hi >>> 1;
+			final int cmp = compareKey(mid, key);
+			if (cmp < 0)
+				lo = mid + 1;
+			else
+				if (cmp > 0)
+					hi = mid - 1;
+				else
+					return entityTypeSets.get(mid);
+		}
+		return NOT_FOUND;
+	}
+
+	public Set<String> getTypes(final int typeSet)
+	{
+		return typeSets.get(typeSet);
+	}
+
+	// Compare the |i|-th key with |key| as unsigned bytes.
+	private int compareKey(final int i, final byte[] key)
+	{
+		final int start = keyOffsets.get(i), length = keyOffsets.get(i + 1) - start;
+		final int n = Math.min(length, key.length);
+		for (int j = 0; j < n; j++)
+		{
+			final int cmp = (keys.get(start + j) & 0xff) - (key[j] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return length - key.length;
+	}
+
+	////////////////////////////////////////////////////////////
+
+	// Write the index for |entityTypes| (entity => comma-separated types) to |path|.
+	public static void write(final Map<String, String> entityTypes, final String path) throws IOException
+	{
+		final Map<String, Integer> typeIds = new HashMap<>();
+		final List<String> types = new ArrayList<>();
+		final Map<List<Integer>, Integer> typeSetIds = new HashMap<>();
+		final List<List<Integer>> typeSets = new ArrayList<>();
+
+		// Sort entities by their UTF-8 bytes
+		final byte[][] keys = new byte[entityTypes.size()][];
+		int n = 0;
+		for (final String entity : entityTypes.keySet())
+			keys[n++] = entity.getBytes(StandardCharsets.UTF_8);
+		Arrays.sort(keys, EntityTypesIndex::compareBytes);
+
+		final int[] entityTypeSets = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			final List<Integer> typeSet = new ArrayList<>();
+			for (final String type : entityTypes.get(new String(keys[i], StandardCharsets.UTF_8)).split(","))
+			{
+				Integer id = typeIds.get(type);
+				if (id == null)
+				{
+					id = types.size();
+					typeIds.put(type, id);
+					types.add(type);
+				}
+				if (!typeSet.contains(id))
+					typeSet.add(id);
+			}
+			Integer typeSetId = typeSetIds.get(typeSet);
+			if (typeSetId == null)
+			{
+				typeSetId = typeSets.size();
+				typeSetIds.put(typeSet, typeSetId);
+				typeSets.add(typeSet);
+			}
+			entityTypeSets[i] = typeSetId;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(types.size());
+			for (final String type : types)
+			{
+				final byte[] bytes = type.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(typeSets.size());
+			int offset = 0;
+			out.writeInt(offset);
+			for (final List<Integer> typeSet : typeSets)
+				out.writeInt(offset += typeSet.size());
+			for (final List<Integer> typeSet : typeSets)
+				for (final int type : typeSet)
+					out.writeInt(type);
+
+			out.writeInt(keys.length);
+			offset = 0;
+			out.writeInt(offset);
+			for (final byte[] key : keys)
+				out.writeInt(offset += key.length);
+			for (final int typeSet : entityTypeSets)
+				out.writeInt(typeSet);
+			for (final byte[] key : keys)
+				out.write(key);
+		}
+		LogInfo.logs("Wrote %d entities, %d types, %d distinct type sets to %s", keys.length, types.size(), typeSets.size(), path);
+	}
+
+	private static int compareBytes(final byte[] a, final byte[] b)
+	{
+		final int n = Math.min(a.length, b.length);
+		for (int j = 0; j < n; j++)
+		{
+			final int cmp = (a[j] & 0xff) - (b[j] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return a.length - b.length;
+	}
+}
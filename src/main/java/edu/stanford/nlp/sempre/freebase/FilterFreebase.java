@@ -7,18 +7,20 @@ import edu.stanford.nlp.sempre.Formulas;
 import fig.basic.IOUtils;
 import fig.basic.LispTree;
 import fig.basic.LogInfo;
+import fig.basic.MapUtils;
 import fig.basic.Option;
 import fig.basic.TDoubleMap;
 import fig.exec.Execution;
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -32,6 +34,8 @@ public class FilterFreebase implements Runnable
 	public String inPath;
 	@Option
 	public int maxInputLines = Integer.MAX_VALUE;
+	@Option(gloss = "Number of threads to parse the input with")
+	public int numThreads = Runtime.getRuntime().availableProcessors();
 	@Option(gloss = "Examples files (keep properties that show up in these files)")
 	public List<String> examplesPaths = new ArrayList<>();
 
@@ -118,96 +122,94 @@ public class FilterFreebase implements Runnable
 		LogInfo.end_track();
 	}
 
-	private void filterTuples()
+	// Output of one chunk of the input. |keepProperties|, |keepTypes| and (in the second pass) |seenEntities| are only read, so the chunks can share them.
+	private class FilterChunk implements TtlReader.ChunkHandler
 	{
-		LogInfo.begin_track("filterTuples");
-		final TDoubleMap<String> propertyCounts = new TDoubleMap<>();
-
-		final PrintWriter out = IOUtils.openOutHard(Execution.getFile("0.ttl"));
-		out.println(Utils.ttlPrefix);
+		final boolean secondPass;
+		final StringWriter buffer = new StringWriter();
+		final PrintWriter out = new PrintWriter(buffer);
+		int numOutputLines = 0;
+		// In order of first occurrence, so that ties in the property statistics are ordered as when reading sequentially.
+		final Map<String, Integer> propertyCounts = new LinkedHashMap<>();
+		final Set<String> seenEntities = new HashSet<>();
+
+		FilterChunk(final boolean secondPass)
+		{
+			this.secondPass = secondPass;
+		}
 
-		try
+		public void triple(final String arg1, final String property, final String arg2)
 		{
-			final BufferedReader in = IOUtils.openIn(inPath);
-			String line;
-			int numInputLines = 0;
-			int numOutputLines = 0;
-			while (numInputLines < maxInputLines && (line = in.readLine()) != null)
+			if (secondPass)
 			{
-				numInputLines++;
-				if (numInputLines % 10000000 == 0)
-					LogInfo.logs("filterTuples: Read %s lines, written %d lines", numInputLines, numOutputLines);
-				final String[] tokens = Utils.parseTriple(line);
-				if (tokens == null)
-					continue;
-				final String arg1 = tokens[0];
-				final String property = tokens[1];
-				final String arg2 = tokens[2];
-				if (!keepAllProperties && !keepProperties.contains(property))
-					continue;
-
-				if (keepGeneralPropertiesOnlyForSeenEntities)
-				{
-					seenEntities.add(arg1);
-					seenEntities.add(arg2);
-				}
-
-				// Additional filtering of characters that Virtuoso can't index (we would need to be escape these).
-				if (Utils.isUrl(arg2))
-					continue;
-				if (Utils.identifierContainsStrangeCharacters(arg1) || Utils.identifierContainsStrangeCharacters(arg2))
-					continue;
+				if (!generalProperties.contains(property))
+					return;
+				if (!FilterFreebase.this.seenEntities.contains(arg1))
+					return;
 
-				Utils.writeTriple(out, arg1, property, arg2);
+				// Only keep types that matter
+				if (keepTypes.size() != 0 && property.equals("fb:type.object.type") && !keepTypes.contains(arg2))
+					return;
 
-				propertyCounts.incr(property, 1);
+				Utils.writeTriple(out, arg1, property, arg2);
 				numOutputLines++;
+				return;
+			}
+
+			if (!keepAllProperties && !keepProperties.contains(property))
+				return;
+
+			if (keepGeneralPropertiesOnlyForSeenEntities)
+			{
+				seenEntities.add(arg1);
+				seenEntities.add(arg2);
 			}
+
+			// Additional filtering of characters that Virtuoso can't index (we would need to be escape these).
+			if (Utils.isUrl(arg2))
+				return;
+			if (Utils.identifierContainsStrangeCharacters(arg1) || Utils.identifierContainsStrangeCharacters(arg2))
+				return;
+
+			Utils.writeTriple(out, arg1, property, arg2);
+
+			MapUtils.incr(propertyCounts, property, 1);
+			numOutputLines++;
 		}
-		catch (final IOException e)
+
+		// Append the output of this chunk to |out|.
+		int writeTo(final PrintWriter out)
 		{
-			throw new RuntimeException(e);
+			this.out.flush();
+			out.write(buffer.toString());
+			return numOutputLines;
 		}
+	}
+
+	private void filterTuples()
+	{
+		LogInfo.begin_track("filterTuples");
+		final TDoubleMap<String> propertyCounts = new TDoubleMap<>();
+
+		final PrintWriter out = IOUtils.openOutHard(Execution.getFile("0.ttl"));
+		out.println(Utils.ttlPrefix);
+
+		final int[] numOutputLines = { 0 };
+		TtlReader.read(inPath, maxInputLines, numThreads, () -> new FilterChunk(false), chunk -> {
+			numOutputLines[0] += chunk.writeTo(out);
+			for (final Map.Entry<String, Integer> e : chunk.propertyCounts.entrySet())
+				propertyCounts.incr(e.getKey(), e.getValue());
+			seenEntities.addAll(chunk.seenEntities);
+		});
+		LogInfo.logs("filterTuples: written %d lines", numOutputLines[0]);
 
 		// Make a second pass to only output general properties.
 		if (keepGeneralPropertiesOnlyForSeenEntities)
 		{
 			LogInfo.begin_track("Second pass to output general properties for the %d seen entities", seenEntities.size());
-			try
-			{
-				final BufferedReader in = IOUtils.openIn(inPath);
-				String line;
-				int numInputLines = 0;
-				int numOutputLines = 0;
-				while (numInputLines < maxInputLines && (line = in.readLine()) != null)
-				{
-					numInputLines++;
-					if (numInputLines % 10000000 == 0)
-						LogInfo.logs("filterTuples: Read %s lines, written %d lines", numInputLines, numOutputLines);
-					final String[] tokens = Utils.parseTriple(line);
-					if (tokens == null)
-						continue;
-					final String arg1 = tokens[0];
-					final String property = tokens[1];
-					final String arg2 = tokens[2];
-					if (!generalProperties.contains(property))
-						continue;
-					if (!seenEntities.contains(arg1))
-						continue;
-
-					// Only keep types that matter
-					if (keepTypes.size() != 0 && property.equals("fb:type.object.type") && !keepTypes.contains(arg2))
-						continue;
-
-					Utils.writeTriple(out, arg1, property, arg2);
-
-					numOutputLines++;
-				}
-			}
-			catch (final IOException e)
-			{
-				throw new RuntimeException(e);
-			}
+			numOutputLines[0] = 0;
+			TtlReader.read(inPath, maxInputLines, numThreads, () -> new FilterChunk(true), chunk -> numOutputLines[0] += chunk.writeTo(out));
+			LogInfo.logs("filterTuples: written %d lines", numOutputLines[0]);
 			LogInfo.end_track();
 		}
 
@@ -232,6 +234,6 @@ public class FilterFreebase implements Runnable
 
 	public static void main(final String[] args)
 	{
-		Execution.run(args, new FilterFreebase());
+		Execution.run(args, "FilterFreebaseMain", new FilterFreebase(), "TtlReader", TtlReader.opts);
 	}
 }
@@ -6,13 +6,18 @@ import edu.stanford.nlp.sempre.TypeLookup;
 import edu.stanford.nlp.sempre.cache.StringCache;
 import edu.stanford.nlp.sempre.cache.StringCacheUtils;
 import fig.basic.Option;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Provides types of Freebase entities and properties. For entities, look them up (requires access to the cache file). For properties, just look them up in the
- * FreebaseInfo schema.
+ * Provides types of Freebase entities and properties. For entities, look them up (requires access to the cache file, or the compact index built from it by
+ * BuildEntityTypesIndex). For properties, just look them up in the FreebaseInfo schema.
  */
 public class FreebaseTypeLookup implements TypeLookup
 {
@@ -20,36 +25,92 @@ public class FreebaseTypeLookup implements TypeLookup
 	{
 		@Option(gloss = "Cache path to the types path")
 		public String entityTypesPath;
+
+		@Option(gloss = "Entity types index built by BuildEntityTypesIndex (used instead of entityTypesPath if set)")
+		public String entityTypesIndexPath;
+
+		@Option(gloss = "Memory-map the entity types index rather than loading it onto the heap")
+		public boolean mmapEntityTypesIndex = false;
 	}
 
 	public static Options opts = new Options();
 
 	// Given those ids, we retrieve the set of types
 	private static StringCache entityTypesCache;
+	private static EntityTypesIndex entityTypesIndex;
+
+	// Entity SemTypes (with supertypes removed), computed once per distinct set of types.
+	// Assumes the type hierarchy doesn't change once entity types are looked up.
+	private static AtomicReferenceArray<SemType> typeSetSemTypes; // type set in the index => SemType
+	private static final Map<String, SemType> typesStrSemTypes = new ConcurrentHashMap<>(); // comma-separated types => SemType
+
+	private static synchronized EntityTypesIndex getEntityTypesIndex()
+	{
+		if (entityTypesIndex == null)
+		{
+			entityTypesIndex = EntityTypesIndex.read(opts.entityTypesIndexPath, opts.mmapEntityTypesIndex);
+			typeSetSemTypes = new AtomicReferenceArray<>(entityTypesIndex.numTypeSets());
+		}
+		return entityTypesIndex;
+	}
+
+	private static synchronized StringCache getEntityTypesCache()
+	{
+		if (entityTypesCache == null)
+			entityTypesCache = StringCacheUtils.create(opts.entityTypesPath);
+		return entityTypesCache;
+	}
+
+	// Comma-separated types of |entity| from the cache.
+	private static String getTypesStr(final String entity)
+	{
+		if (opts.entityTypesPath == null)
+			return FreebaseInfo.ENTITY;
+		final String typesStr = getEntityTypesCache().get(entity);
+		return typesStr != null ? typesStr : FreebaseInfo.ENTITY;
+	}
 
 	public Set<String> getEntityTypes(final String entity)
 	{
+		if (opts.entityTypesIndexPath != null)
+		{
+			final EntityTypesIndex index = getEntityTypesIndex();
+			final int typeSet = index.getTypeSet(entity);
+			return typeSet == EntityTypesIndex.NOT_FOUND ? Collections.singleton(FreebaseInfo.ENTITY) : index.getTypes(typeSet);
+		}
+
 		if (opts.entityTypesPath == null)
 			return Collections.singleton(FreebaseInfo.ENTITY);
 
 		// Read types from cache
-		if (entityTypesCache == null)
-			entityTypesCache = StringCacheUtils.create(opts.entityTypesPath);
 		final Set<String> types = new HashSet<>();
-		final String typesStr = entityTypesCache.get(entity);
-		if (typesStr != null)
-			Collections.addAll(types, typesStr.split(","));
-		else
-			types.add(FreebaseInfo.ENTITY);
+		Collections.addAll(types, getTypesStr(entity).split(","));
 		return types;
 	}
 
 	@Override
 	public SemType getEntityType(final String entity)
 	{
-		final Set<String> types = getEntityTypes(entity);
-		// Remove supertypes
-		// TODO(pliang): this is inefficient!
+		if (opts.entityTypesIndexPath != null)
+		{
+			final int typeSet = getEntityTypesIndex().getTypeSet(entity);
+			if (typeSet != EntityTypesIndex.NOT_FOUND)
+			{
+				SemType type = typeSetSemTypes.get(typeSet);
+				if (type == null)
+				{
+					type = removeSupertypes(entityTypesIndex.getTypes(typeSet));
+					typeSetSemTypes.set(typeSet, type);
+				}
+				return type;
+			}
+			return typesStrSemTypes.computeIfAbsent(FreebaseInfo.ENTITY, typesStr -> removeSupertypes(Collections.singleton(typesStr)));
+		}
+		return typesStrSemTypes.computeIfAbsent(getTypesStr(entity), typesStr -> removeSupertypes(Arrays.asList(typesStr.split(","))));
+	}
+
+	private static SemType removeSupertypes(final Collection<String> types)
+	{
 		final Set<String> resultTypes = new HashSet<>(types);
 		for (final String entityType : types)
 			for (final String supertype : SemTypeHierarchy.singleton.getSupertypes(entityType))
@@ -39,25 +39,33 @@ import fig.basic.Ref;
 import fig.basic.StatFig;
 import fig.basic.StopWatch;
 import java.io.BufferedReader;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -91,6 +99,18 @@ public class SparqlExecutor extends Executor
 		@Option(gloss = "Save all SPARQL queries in a file so we don't have to hit the SPARQL endpoint too often")
 		public String cachePath;
 
+		@Option(gloss = "Cache a compact encoding of the extracted values rather than the raw XML (cache entries with XML are still read)")
+		public boolean cacheValues = false;
+
+		@Option(gloss = "If cacheValues, also save the raw XML of each query here")
+		public String xmlCachePath;
+
+		@Option(gloss = "Parse the XML results with a streaming parser (directly from the connection if the XML need not be kept) rather than building a DOM")
+		public boolean streamingResults = true;
+
+		@Option(gloss = "Number of (formula, offset, maxResults) conversions to SPARQL to remember (0 to disable)")
+		public int converterCacheSize = 10000;
+
 		@Option(gloss = "URL where the SPARQL server lives")
 		public String endpointUrl;
 
@@ -114,7 +134,26 @@ public class SparqlExecutor extends Executor
 	public static Options opts = new Options();
 
 	private final FreebaseInfo fbInfo;
-	private final StringCache query2xmlCache;
+	private final StringCache query2xmlCache; // XML or encoded values (if cacheValues)
+	private final StringCache query2rawXmlCache; // Only if cacheValues and xmlCachePath
+
+	// (formula, offset, maxResults) => Converter or BadFormulaException
+	private final Map<List<Object>, Object> converterCache = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<List<Object>, Object> eldest)
+		{
+			return size() > opts.converterCacheSize;
+		}
+	};
+
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+	static
+	{
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
 
 	// Statistics on Sparql requests
 	private static class SparqlStats
@@ -130,6 +169,7 @@ public class SparqlExecutor extends Executor
 	{
 		fbInfo = FreebaseInfo.getSingleton();
 		query2xmlCache = StringCacheUtils.create(opts.cachePath);
+		query2rawXmlCache = opts.cacheValues && opts.xmlCachePath != null ? StringCacheUtils.create(opts.xmlCachePath) : null;
 	}
 
 	public class ServerResponse
@@ -144,7 +184,13 @@ public class SparqlExecutor extends Executor
 			this.error = error;
 		}
 
+		ServerResponse(final List<String[]> rows)
+		{
+			this.rows = rows;
+		}
+
 		String xml;
+		List<String[]> rows; // Extracted from the XML (see ValuesExtractor)
 		ErrorValue error;
 		long timeMs;
 		boolean cached; // Whether things were cached
@@ -154,6 +200,12 @@ public class SparqlExecutor extends Executor
 	// Make a request to the given SPARQL endpoint.
 	// Return the XML.
 	public ServerResponse makeRequest(final String queryStr, final String endpointUrl)
+	{
+		return makeRequest(queryStr, endpointUrl, null);
+	}
+
+	// If |extractor| is given, parse the results while reading them instead of returning the XML.
+	private ServerResponse makeRequest(final String queryStr, final String endpointUrl, final ValuesExtractor extractor)
 	{
 		if (endpointUrl == null)
 			throw new RuntimeException("No SPARQL endpoint url specified");
@@ -166,6 +218,9 @@ public class SparqlExecutor extends Executor
 			conn.setReadTimeout(opts.readTimeoutMs);
 			final InputStream in = conn.getInputStream();
 
+			if (extractor != null)
+				return readResults(new BufferedReader(new LineBreakStrippingReader(new InputStreamReader(in))), extractor);
+
 			// Read the response
 			final StringBuilder buf = new StringBuilder();
 			final BufferedReader reader = new BufferedReader(new InputStreamReader(in));
@@ -198,6 +253,78 @@ public class SparqlExecutor extends Executor
 		}
 	}
 
+	// Same checks as on the XML string, but on the first few characters of |in|.
+	private ServerResponse readResults(final BufferedReader in, final ValuesExtractor extractor) throws IOException
+	{
+		final String htmlPrefix = "<!DOCTYPE html>";
+		final char[] start = new char[htmlPrefix.length()];
+		in.mark(start.length);
+		int n = 0, k;
+		while (n < start.length && (k = in.read(start, n, start.length - n)) != -1)
+			n += k;
+		if (n == 0)
+			return new ServerResponse(ErrorValue.empty);
+		if (htmlPrefix.equals(new String(start, 0, n)))
+			return new ServerResponse(ErrorValue.badFormat);
+		in.reset();
+
+		final List<String[]> rows = extractor.parse(in);
+		return rows == null ? new ServerResponse(ErrorValue.badFormat) : new ServerResponse(rows);
+	}
+
+	// makeRequest() drops the line breaks of the XML (which also affects multi-line literals); do the same while streaming.
+	private static class LineBreakStrippingReader extends FilterReader
+	{
+		LineBreakStrippingReader(final Reader in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int c;
+			while ((c = in.read()) == '\n' || c == '\r')
+			{
+			}
+			return c;
+		}
+
+		@Override
+		public int read(final char[] buf, final int offset, final int length) throws IOException
+		{
+			int n;
+			do
+			{
+				n = in.read(buf, offset, length);
+				if (n <= 0)
+					return n;
+				int m = 0;
+				for (int i = 0; i < n; i++)
+					if (buf[offset + i] != '\n' && buf[offset + i] != '\r')
+						buf[offset + m++] = buf[offset + i];
+				n = m;
+			}
+			while (n == 0);
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException
+		{
+			long skipped = 0;
+			while (skipped < n && read() != -1)
+				skipped++;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+	}
+
 	// For debugging only
 	// Document extends Node
 	public static void printDocument(final Node node, final OutputStream out)
@@ -221,9 +348,20 @@ public class SparqlExecutor extends Executor
 	}
 
 	// Return
-	//  - XML
+	//  - XML or the rows extracted by |extractor|
 	//  - Whether to print out details (coincides with whether this query was cached).
 	public ServerResponse runQueryToGetXml(final String queryStr, final Formula formula)
+	{
+		return runQuery(queryStr, formula, null);
+	}
+
+	private ServerResponse runQuery(final String queryStr, final Formula formula, final ValuesExtractor extractor)
+	{
+		return runQuery(queryStr, formula, extractor, null);
+	}
+
+	// If the query isn't cached and |prefetched| is given, its response is used instead of making the request.
+	private ServerResponse runQuery(final String queryStr, final Formula formula, final ValuesExtractor extractor, final Future<ServerResponse> prefetched)
 	{
 		if (opts.verbose >= 3)
 			LogInfo.logs("SparqlExecutor.execute: %s", queryStr);
@@ -235,7 +373,7 @@ public class SparqlExecutor extends Executor
 		// Try to look the query up in the cache.
 		if (useCache)
 		{
-			// Contents either encodes an error or not.
+			// Contents either encodes an error, values or XML.
 			final String contents = query2xmlCache.get(queryStr);
 			if (contents != null)
 			{
@@ -243,7 +381,10 @@ public class SparqlExecutor extends Executor
 				if (error != null)
 					response = new ServerResponse(error);
 				else
-					response = new ServerResponse(contents);
+					if (contents.startsWith(VALUES_PREFIX))
+						response = new ServerResponse(decodeRows(contents));
+					else
+						response = new ServerResponse(contents);
 				response.cached = true;
 			}
 		}
@@ -260,20 +401,117 @@ public class SparqlExecutor extends Executor
 					LogInfo.logs("%s", queryStr);
 			}
 
-			// Make actual request
-			final StopWatch watch = new StopWatch();
-			watch.start();
-			response = makeRequest(queryStr, opts.endpointUrl);
-			watch.stop();
-			response.timeMs = watch.getCurrTimeLong();
+			response = prefetched != null ? await(prefetched) : fetch(queryStr, extractor);
 			response.beginTrack = true;
 
+			if (query2rawXmlCache != null && response.xml != null)
+				query2rawXmlCache.put(queryStr, response.xml);
 			if (useCache)
-				query2xmlCache.put(queryStr, response.error != null ? response.error.toString() : response.xml);
+				if (response.error != null)
+					query2xmlCache.put(queryStr, response.error.toString());
+				else
+					if (opts.cacheValues && extractor != null)
+					{
+						if (response.rows == null)
+							response.rows = extractor.parse(response.xml);
+						query2xmlCache.put(queryStr, response.rows != null ? encodeRows(response.rows) : ErrorValue.badFormat.toString());
+					}
+					else
+						if (response.xml != null)
+							query2xmlCache.put(queryStr, response.xml);
 		}
 		return response;
 	}
 
+	// Make actual request, streaming the results if we don't have to keep the XML.
+	private ServerResponse fetch(final String queryStr, final ValuesExtractor extractor)
+	{
+		final boolean keepXml = extractor == null || !opts.streamingResults || query2xmlCache != null && !opts.cacheValues || query2rawXmlCache != null;
+		final StopWatch watch = new StopWatch();
+		watch.start();
+		final ServerResponse response = makeRequest(queryStr, opts.endpointUrl, keepXml ? null : extractor);
+		watch.stop();
+		response.timeMs = watch.getCurrTimeLong();
+		return response;
+	}
+
+	// Encoding of the rows extracted from the XML in the cache: VALUES_PREFIX, number of rows, number of cells per row, cells (all tab-separated).
+	private static final String VALUES_PREFIX = "VALUES\t";
+
+	private static String encodeRows(final List<String[]> rows)
+	{
+		final StringBuilder buf = new StringBuilder(VALUES_PREFIX);
+		buf.append(rows.size()).append('\t').append(rows.isEmpty() ? 0 : rows.get(0).length);
+		for (final String[] row : rows)
+			for (final String cell : row)
+			{
+				buf.append('\t');
+				if (cell == null)
+				{
+					buf.append("\\N");
+					continue;
+				}
+				for (int i = 0; i < cell.length(); i++)
+				{
+					final char c = cell.charAt(i);
+					if (c == '\\')
+						buf.append("\\\\");
+					else
+						if (c == '\t')
+							buf.append("\\t");
+						else
+							if (c == '\n')
+								buf.append("\\n");
+							else
+								if (c == '\r')
+									buf.append("\\r");
+								else
+									buf.append(c);
+				}
+			}
+		return buf.toString();
+	}
+
+	private static List<String[]> decodeRows(final String contents)
+	{
+		final String[] tokens = contents.split("\t", -1);
+		final int numRows = Integer.parseInt(tokens[1]);
+		final int numCells = Integer.parseInt(tokens[2]);
+		final List<String[]> rows = new ArrayList<>(numRows);
+		int t = 3;
+		for (int r = 0; r < numRows; r++)
+		{
+			final String[] row = new String[numCells];
+			for (int j = 0; j < numCells; j++)
+			{
+				final String cell = tokens[t++];
+				if (cell.equals("\\N"))
+					continue;
+				final StringBuilder buf = new StringBuilder(cell.length());
+				for (int i = 0; i < cell.length(); i++)
+				{
+					char c = cell.charAt(i);
+					if (c == '\\')
+					{
+						c = cell.charAt(++i);
+						if (c == 't')
+							c = '\t';
+						else
+							if (c == 'n')
+								c = '\n';
+							else
+								if (c == 'r')
+									c = '\r';
+					}
+					buf.append(c);
+				}
+				row[j] = buf.toString();
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
 	public static NodeList extractResultsFromXml(final ServerResponse response)
 	{
 		return extractResultsFromXml(response.xml);
@@ -316,6 +554,43 @@ public class SparqlExecutor extends Executor
 	}
 
 	public synchronized Response execute(final Formula formula, final int offset, final int maxResults)
+	{
+		return execute(formula, offset, maxResults, null);
+	}
+
+	// The requests for the queries that aren't cached are sent concurrently (on the batch threads), and the formulas are then executed one at a time with
+	// their results.
+	@Override
+	public synchronized List<Response> executeBatch(final List<Formula> formulas, final ContextValue context)
+	{
+		if (Executor.opts.batchThreads <= 1 || formulas.size() <= 1)
+			return super.executeBatch(formulas, context);
+		final Map<String, Future<ServerResponse>> prefetched = new HashMap<>();
+		for (final Formula formula : formulas)
+		{
+			final Converter converter;
+			try
+			{
+				converter = getConverter(formula, 0, opts.maxResults);
+			}
+			catch (final BadFormulaException e)
+			{
+				continue;
+			}
+			final String queryStr = converter.queryStr;
+			if (prefetched.containsKey(queryStr) || query2xmlCache != null && query2xmlCache.get(queryStr) != null)
+				continue;
+			final ValuesExtractor extractor = new ValuesExtractor(formula, converter);
+			prefetched.put(queryStr, submit(() -> fetch(queryStr, extractor)));
+		}
+		final List<Response> responses = new ArrayList<>(formulas.size());
+		for (final Formula formula : formulas)
+			responses.add(execute(formula, 0, opts.maxResults, prefetched));
+		return responses;
+	}
+
+	// Each prefetched response is used once (it's removed from |prefetched|).
+	private Response execute(final Formula formula, final int offset, final int maxResults, final Map<String, Future<ServerResponse>> prefetched)
 	{
 		if (opts.verbose >= 3)
 			LogInfo.logs("SparqlExecutor.execute: %s", formula);
@@ -326,7 +601,7 @@ public class SparqlExecutor extends Executor
 		Converter converter;
 		try
 		{
-			converter = new Converter(formula, offset, maxResults);
+			converter = getConverter(formula, offset, maxResults);
 		}
 		catch (final BadFormulaException e)
 		{
@@ -334,7 +609,8 @@ public class SparqlExecutor extends Executor
 			return new Response(ErrorValue.badFormula(e), stats);
 		}
 
-		final ServerResponse serverResponse = runQueryToGetXml(converter.queryStr, formula);
+		final ValuesExtractor extractor = new ValuesExtractor(formula, converter);
+		final ServerResponse serverResponse = runQuery(converter.queryStr, formula, extractor, prefetched != null ? prefetched.remove(converter.queryStr) : null);
 		stats.add(prefix + "cached", serverResponse.cached);
 		if (!serverResponse.cached)
 			stats.add(prefix + "time", serverResponse.timeMs);
@@ -371,11 +647,20 @@ public class SparqlExecutor extends Executor
 		if (!serverResponse.cached)
 			stats.add(prefix + "error", false);
 
-		// Extract the results from XML now.
-		final NodeList results = extractResultsFromXml(serverResponse.xml);
-		if (results == null)
+		// Extract the results from XML now (unless that has already happened).
+		List<String[]> rows = serverResponse.rows;
+		if (rows == null)
+			if (opts.streamingResults)
+				rows = extractor.parse(serverResponse.xml);
+			else
+			{
+				final NodeList results = extractResultsFromXml(serverResponse.xml);
+				if (results != null)
+					rows = extractor.parse(results);
+			}
+		if (rows == null)
 			return new Response(ErrorValue.badFormat, stats);
-		final Value value = new ValuesExtractor(serverResponse.beginTrack, formula, converter).extract(results);
+		final Value value = extractor.extract(serverResponse.beginTrack, rows);
 
 		if (serverResponse.beginTrack && opts.verbose >= 1)
 			LogInfo.end_track();
@@ -383,6 +668,30 @@ public class SparqlExecutor extends Executor
 		return new Response(value, stats);
 	}
 
+	// Return the (memoised) conversion of |formula| to SPARQL.
+	private Converter getConverter(final Formula formula, final int offset, final int maxResults) throws BadFormulaException
+	{
+		if (opts.converterCacheSize <= 0)
+			return new Converter(formula, offset, maxResults);
+		final List<Object> key = Arrays.asList(formula, offset, maxResults);
+		Object converter = converterCache.get(key);
+		if (converter == null)
+		{
+			try
+			{
+				converter = new Converter(formula, offset, maxResults);
+			}
+			catch (final BadFormulaException e)
+			{
+				converter = e;
+			}
+			converterCache.put(key, converter);
+		}
+		if (converter instanceof BadFormulaException)
+			throw (BadFormulaException) converter;
+		return (Converter) converter;
+	}
+
 	////////////////////////////////////////////////////////////
 	// Convert a Formula into a SparqlExpr.
 	class Converter
@@ -1022,15 +1331,13 @@ public class SparqlExecutor extends Executor
 	// Take results of executing an SparqlExpr and produce a List of values.
 	class ValuesExtractor
 	{
-		final boolean beginTrack;
 		final Formula formula;
 		final List<String> selectVars;
 		final List<String> units;
 		final List<String> header;
 
-		public ValuesExtractor(final boolean beginTrack, final Formula formula, final Converter converter)
+		public ValuesExtractor(final Formula formula, final Converter converter)
 		{
-			this.beginTrack = beginTrack;
 			this.formula = formula;
 
 			selectVars = Lists.newArrayList();
@@ -1046,25 +1353,26 @@ public class SparqlExecutor extends Executor
 			}
 		}
 
-		// |results| is (result (binding (uri ...)) ...) or (result (binding (literal ...)) ...)
-		Value extract(final NodeList results)
+		// Each row of the results is an array of cells: for each variable in selectVars, an |id| (only for entities) and a |description| (name or the literal
+		// value), i.e., row[2 * j] and row[2 * j + 1] for variable j.
+		Value extract(final boolean beginTrack, final List<String[]> rows)
 		{
 			// For each result (row in a table)...
 			if (beginTrack && opts.verbose >= 2)
 			{
-				LogInfo.begin_track("%d results", results.getLength());
+				LogInfo.begin_track("%d results", rows.size());
 				if (opts.returnTable)
 					LogInfo.logs("Header: %s", header);
 			}
 
 			final List<Value> firstValues = new ArrayList<>(); // If not returning a table
-			final List<List<Value>> rows = new ArrayList<>(); // If returning table
+			final List<List<Value>> tableRows = new ArrayList<>(); // If returning table
 
-			for (int i = 0; i < results.getLength(); i++)
+			for (int i = 0; i < rows.size(); i++)
 			{
-				final List<Value> row = nodeToValue(results.item(i));
+				final List<Value> row = cellsToValues(rows.get(i));
 				if (opts.returnTable)
-					rows.add(row);
+					tableRows.add(row);
 				else
 					firstValues.add(row.get(0));
 				if (beginTrack && opts.verbose >= 2)
@@ -1074,53 +1382,107 @@ public class SparqlExecutor extends Executor
 				LogInfo.end_track();
 
 			if (opts.returnTable)
-				return new TableValue(header, rows);
+				return new TableValue(header, tableRows);
 			else
 				return new ListValue(firstValues);
 		}
 
-		private List<Value> nodeToValue(final Node result)
+		// Column of the binding named |name| (bindings of ?xname give the description of ?x).
+		private int column(final String name)
 		{
-			final NodeList bindings = ((Element) result).getElementsByTagName("binding");
+			final String var = "?" + name;
+			if (var.endsWith("name"))
+				return selectVars.indexOf(var.substring(0, var.length() - 4));
+			else
+				return selectVars.indexOf(var);
+		}
 
-			// For each variable in selectVars, we're going to keep track of an |id|
-			// (only for entities) and |description| (name or the literal value).
-			final List<String> ids = Lists.newArrayList();
-			final List<String> descriptions = Lists.newArrayList();
-			for (int j = 0; j < selectVars.size(); j++)
+		// |results| is (result (binding (uri ...)) ...) or (result (binding (literal ...)) ...)
+		List<String[]> parse(final NodeList results)
+		{
+			final List<String[]> rows = new ArrayList<>(results.getLength());
+			for (int i = 0; i < results.getLength(); i++)
 			{
-				ids.add(null);
-				descriptions.add(null);
-			}
+				final NodeList bindings = ((Element) results.item(i)).getElementsByTagName("binding");
+				final String[] row = new String[2 * selectVars.size()];
 
-			// For each binding j (contributes some information to one column)...
-			for (int j = 0; j < bindings.getLength(); j++)
-			{
-				final Element binding = (Element) bindings.item(j);
+				// For each binding j (contributes some information to one column)...
+				for (int j = 0; j < bindings.getLength(); j++)
+				{
+					final Element binding = (Element) bindings.item(j);
+					final int col = column(binding.getAttribute("name"));
 
-				final String var = "?" + binding.getAttribute("name");
-				int col;
-				if (var.endsWith("name"))
-					col = selectVars.indexOf(var.substring(0, var.length() - 4));
-				else
-					col = selectVars.indexOf(var);
+					final String uri = getTagValue("uri", binding);
+					if (uri != null)
+						row[2 * col] = FreebaseInfo.uri2id(uri);
+
+					final String literal = getTagValue("literal", binding);
+					if (literal != null)
+						row[2 * col + 1] = literal;
+				}
+				rows.add(row);
+			}
+			return rows;
+		}
 
-				final String uri = getTagValue("uri", binding);
-				if (uri != null)
-					ids.set(col, FreebaseInfo.uri2id(uri));
+		// Same as above, but read the XML with a streaming parser. Return null if the XML is malformed.
+		List<String[]> parse(final String xml)
+		{
+			return parse(new StringReader(xml));
+		}
 
-				final String literal = getTagValue("literal", binding);
-				if (literal != null)
-					descriptions.set(col, literal);
+		List<String[]> parse(final Reader in)
+		{
+			final List<String[]> rows = new ArrayList<>();
+			try
+			{
+				final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+				String[] row = null;
+				int col = -1;
+				while (reader.hasNext())
+				{
+					if (reader.next() != XMLStreamConstants.START_ELEMENT)
+						continue;
+					final String tag = reader.getLocalName();
+					if (tag.equals("result"))
+					{
+						row = new String[2 * selectVars.size()];
+						rows.add(row);
+					}
+					else
+						if (tag.equals("binding"))
+							col = column(reader.getAttributeValue(null, "name"));
+						else
+							if (tag.equals("uri") || tag.equals("literal"))
+							{
+								final String text = reader.getElementText();
+								if (row == null || text.isEmpty())
+									continue;
+								if (tag.equals("uri"))
+									row[2 * col] = FreebaseInfo.uri2id(text);
+								else
+									row[2 * col + 1] = text;
+							}
+				}
+				reader.close();
 			}
+			catch (final XMLStreamException e)
+			{
+				LogInfo.errors("XML: %s", e);
+				return null;
+			}
+			return rows;
+		}
 
+		private List<Value> cellsToValues(final String[] cells)
+		{
 			// Go through the selected variables and build the actual value
 			final List<Value> row = Lists.newArrayList();
 			for (int j = 0; j < selectVars.size(); j++)
 			{
 				final String unit = units.get(j);
-				final String id = ids.get(j);
-				final String description = descriptions.get(j);
+				final String id = cells[2 * j];
+				final String description = cells[2 * j + 1];
 
 				// Convert the string representation back to a value based on the unit.
 				Value value = null;
@@ -258,7 +258,7 @@ class SparqlStatement implements SparqlExpr
 		return SparqlUtils.plainStr(arg1) + " " + relation + " " + SparqlUtils.plainStr(arg2);
 	}
 
-	private DateValue advance(final DateValue date)
+	static DateValue advance(final DateValue date)
 	{
 		// TODO(pliang): deal with carrying over
 		if (date.day != -1)
@@ -0,0 +1,353 @@
+package edu.stanford.nlp.sempre.freebase;
+
+import edu.stanford.nlp.sempre.DateValue;
+import fig.basic.IOUtils;
+import fig.basic.LogInfo;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index over the triples of canonicalized ttl files (e.g., the output of FilterFreebase). Terms (entities, properties and literals) are
+ * dictionary-encoded as ints, and the triples are kept in three sorted permutations (SPO, POS, OSP). Each permutation is stored as an offset array over its
+ * first component and two int columns, so any pattern with a bound component is answered with a binary search and no per-triple objects.
+ */
+public final class TripleStore
+{
+	public static final int UNBOUND = -1;
+
+	// Kinds of terms
+	public static final byte ENTITY = 0;
+	public static final byte TEXT = 1;
+	public static final byte NUMBER = 2;
+	public static final byte DATE = 3;
+	public static final byte BOOLEAN = 4;
+
+	public interface TripleConsumer
+	{
+		void accept(int arg1, int property, int arg2);
+	}
+
+	// Triples sorted by (first, second, third), with the first component factored out.
+	private static final class Permutation
+	{
+		final int[] offsets; // Triples with first component a are at [offsets[a], offsets[a + 1])
+		final int[] second;
+		final int[] third;
+
+		Permutation(final int numTerms, final int[] first, final int[] second, final int[] third, final int n)
+		{
+			final int[] counts = new int[numTerms + 1];
+			for (int i = 0; i < n; i++)
+				counts[first[i] + 1]++;
+			for (int a = 0; a < numTerms; a++)
+				counts[a + 1] += counts[a];
+
+			// Bucket by first component, then sort (second, third) packed into a long within each bucket.
+			final long[] keys = new long[n];
+			final int[] next = Arrays.copyOf(counts, numTerms);
+			for (int i = 0; i < n; i++)
+				keys[next[first[i]]++] = (long) second[i] << 32 | third[i];
+
+			// Sort and remove duplicate triples
+			offsets = new int[numTerms + 1];
+			int size = 0;
+			for (int a = 0; a < numTerms; a++)
+			{
+				offsets[a] = size;
+				Arrays.sort(keys, counts[a], counts[a + 1]);
+				for (int i = counts[a]; i < counts[a + 1]; i++)
+					if (i == counts[a] || keys[i] != keys[i - 1])
+						keys[size++] = keys[i];
+			}
+			offsets[numTerms] = size;
+
+			this.second = new int[size];
+			this.third = new int[size];
+			for (int i = 0; i < size; i++)
+			{
+				this.second[i] = (int) (keys[i] >>> 32);
+				this.third[i] = (int) keys[i];
+			}
+		}
+
+		// First index in the range of |a| whose second component is >= |b|.
+		int lowerBound(final int a, final int b)
+		{
+			int lo = offsets[a], hi = offsets[a + 1];
+			while (lo < hi)
+			{
+				final int mid = lo + hi >>> 1;
+				if (second[mid] < b)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		// Call |consumer| with (a, second, third) for each triple starting with a (and b if bound).
+		void match(final int a, final int b, final Permutation.Consumer consumer)
+		{
+			final int end = offsets[a + 1];
+			for (int i = b == UNBOUND ? offsets[a] : lowerBound(a, b); i < end && (b == UNBOUND || second[i] == b); i++)
+				consumer.accept(second[i], third[i]);
+		}
+
+		interface Consumer
+		{
+			void accept(int second, int third);
+		}
+	}
+
+	private final String[] terms;
+	private final Map<String, Integer> termIds;
+	private final byte[] kinds;
+	private final double[] numbers; // Numeric value of numbers and booleans, sortable key of dates (see dateKey)
+
+	private final Permutation spo;
+	private final Permutation pos;
+	private final Permutation osp;
+
+	private TripleStore(final String[] terms, final Map<String, Integer> termIds, final int[] s, final int[] p, final int[] o, final int n)
+	{
+		this.terms = terms;
+		this.termIds = termIds;
+		kinds = new byte[terms.length];
+		numbers = new double[terms.length];
+		for (int i = 0; i < terms.length; i++)
+			parseLiteral(i);
+		spo = new Permutation(terms.length, s, p, o, n);
+		pos = new Permutation(terms.length, p, o, s, n);
+		osp = new Permutation(terms.length, o, s, p, n);
+	}
+
+	public static TripleStore read(final String path)
+	{
+		return read(Arrays.asList(path));
+	}
+
+	public static TripleStore read(final List<String> paths)
+	{
+		final Map<String, Integer> termIds = new HashMap<>();
+		int[] s = new int[1024], p = new int[1024], o = new int[1024];
+		int n = 0;
+		for (final String path : paths)
+		{
+			LogInfo.begin_track("TripleStore.read(%s)", path);
+			try (BufferedReader in = IOUtils.openInHard(path))
+			{
+				String line;
+				while ((line = in.readLine()) != null)
+				{
+					final String[] tokens = Utils.parseTriple(line);
+					if (tokens == null)
+						continue;
+					if (n == s.length)
+					{
+						s = Arrays.copyOf(s, 2 * n);
+						p = Arrays.copyOf(p, 2 * n);
+						o = Arrays.copyOf(o, 2 * n);
+					}
+					s[n] = intern(termIds, tokens[0]);
+					p[n] = intern(termIds, tokens[1]);
+					o[n] = intern(termIds, tokens[2]);
+					n++;
+					if (n % 10000000 == 0)
+						LogInfo.logs("Read %d triples, %d terms", n, termIds.size());
+				}
+			}
+			catch (final IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+			LogInfo.end_track();
+		}
+
+		final String[] terms = new String[termIds.size()];
+		for (final Map.Entry<String, Integer> e : termIds.entrySet())
+			terms[e.getValue()] = e.getKey();
+		final TripleStore store = new TripleStore(terms, termIds, s, p, o, n);
+		LogInfo.logs("TripleStore: %d triples, %d terms", store.size(), store.numTerms());
+		return store;
+	}
+
+	private static int intern(final Map<String, Integer> termIds, final String term)
+	{
+		Integer id = termIds.get(term);
+		if (id == null)
+		{
+			id = termIds.size();
+			termIds.put(term, id);
+		}
+		return id;
+	}
+
+	private void parseLiteral(final int id)
+	{
+		final String term = terms[id];
+		if (!term.startsWith("\""))
+		{
+			kinds[id] = ENTITY;
+			numbers[id] = Double.NaN;
+			return;
+		}
+		final String contents = literalContents(term);
+		final int typeIndex = term.lastIndexOf("^^");
+		final String type = typeIndex > term.lastIndexOf('"') ? term.substring(typeIndex + 2) : "";
+		kinds[id] = TEXT;
+		numbers[id] = Double.NaN;
+		if (type.equals("xsd:boolean"))
+		{
+			kinds[id] = BOOLEAN;
+			numbers[id] = Boolean.parseBoolean(contents) ? 1 : 0;
+		}
+		else
+			if (type.contains("date") || type.contains("gYear"))
+			{
+				kinds[id] = DATE;
+				final DateValue date = parseDate(contents);
+				if (date != null)
+					numbers[id] = dateKey(date);
+			}
+			else
+				if (type.startsWith("xsd:"))
+					try
+					{
+						numbers[id] = Double.parseDouble(contents);
+						kinds[id] = NUMBER;
+					}
+					catch (final NumberFormatException e)
+					{
+						// Keep it as text
+					}
+	}
+
+	private static DateValue parseDate(final String contents)
+	{
+		try
+		{
+			return DateValue.parseDateValue(contents);
+		}
+		catch (final RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	// "1.57"^^xsd:double => 1.57, "Obama"@en => Obama
+	public static String literalContents(final String term)
+	{
+		final int end = term.lastIndexOf('"');
+		return end > 0 ? term.substring(1, end) : term;
+	}
+
+	// Key that orders dates the way xsd:datetime does (missing months and days are the first of the month or year).
+	public static double dateKey(final DateValue date)
+	{
+		return date.year * 10000.0 + Math.max(date.month, 1) * 100 + Math.max(date.day, 1);
+	}
+
+	public static int dateKeyYear(final double key)
+	{
+		return (int) Math.floor(key / 10000);
+	}
+
+	public int numTerms()
+	{
+		return terms.length;
+	}
+
+	public int size()
+	{
+		return spo.second.length;
+	}
+
+	// Return the id of |term| or UNBOUND if it doesn't occur in any triple.
+	public int getId(final String term)
+	{
+		final Integer id = termIds.get(term);
+		return id == null ? UNBOUND : id;
+	}
+
+	public String getTerm(final int id)
+	{
+		return terms[id];
+	}
+
+	public byte getKind(final int id)
+	{
+		return kinds[id];
+	}
+
+	public double getNumber(final int id)
+	{
+		return numbers[id];
+	}
+
+	private boolean contains(final int id)
+	{
+		return id >= 0 && id < terms.length;
+	}
+
+	// Call |consumer| on each triple matching the pattern, where any of the components may be UNBOUND.
+	public void match(final int arg1, final int property, final int arg2, final TripleConsumer consumer)
+	{
+		if (arg1 != UNBOUND && !contains(arg1) || property != UNBOUND && !contains(property) || arg2 != UNBOUND && !contains(arg2))
+			return;
+		if (arg1 != UNBOUND)
+		{
+			if (arg2 != UNBOUND && property == UNBOUND)
+				osp.match(arg2, arg1, (s, p) -> consumer.accept(s, p, arg2));
+			else
+				spo.match(arg1, property, (p, o) -> {
+					if (arg2 == UNBOUND || o == arg2)
+						consumer.accept(arg1, p, o);
+				});
+		}
+		else
+			if (property != UNBOUND)
+				pos.match(property, arg2, (o, s) -> consumer.accept(s, property, o));
+			else
+				if (arg2 != UNBOUND)
+					osp.match(arg2, UNBOUND, (s, p) -> consumer.accept(s, p, arg2));
+				else
+					for (int s = 0; s < terms.length; s++)
+					{
+						final int arg1Id = s;
+						spo.match(s, UNBOUND, (p, o) -> consumer.accept(arg1Id, p, o));
+					}
+	}
+
+	// Return the objects of (arg1, property, ?).
+	public int[] getArg2s(final int arg1, final int property)
+	{
+		if (!contains(arg1) || !contains(property))
+			return new int[0];
+		final int start = spo.lowerBound(arg1, property);
+		final int end = spo.lowerBound(arg1, property + 1);
+		return Arrays.copyOfRange(spo.third, start, end);
+	}
+
+	// Return the subjects of (?, property, arg2).
+	public int[] getArg1s(final int property, final int arg2)
+	{
+		if (!contains(property) || !contains(arg2))
+			return new int[0];
+		final int start = pos.lowerBound(property, arg2);
+		final int end = pos.lowerBound(property, arg2 + 1);
+		return Arrays.copyOfRange(pos.third, start, end);
+	}
+
+	// Return the first object of (arg1, property, ?), or UNBOUND.
+	public int getFirstArg2(final int arg1, final int property)
+	{
+		if (!contains(arg1) || !contains(property))
+			return UNBOUND;
+		final int i = spo.lowerBound(arg1, property);
+		return i < spo.offsets[arg1 + 1] && spo.second[i] == property ? spo.third[i] : UNBOUND;
+	}
+}
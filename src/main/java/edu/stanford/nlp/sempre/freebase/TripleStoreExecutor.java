@@ -0,0 +1,971 @@
+package edu.stanford.nlp.sempre.freebase;
+
+import edu.stanford.nlp.sempre.AggregateFormula;
+import edu.stanford.nlp.sempre.ArithmeticFormula;
+import edu.stanford.nlp.sempre.BadFormulaException;
+import edu.stanford.nlp.sempre.BooleanValue;
+import edu.stanford.nlp.sempre.ContextValue;
+import edu.stanford.nlp.sempre.DateValue;
+import edu.stanford.nlp.sempre.ErrorValue;
+import edu.stanford.nlp.sempre.Executor;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.Formulas;
+import edu.stanford.nlp.sempre.JoinFormula;
+import edu.stanford.nlp.sempre.LambdaFormula;
+import edu.stanford.nlp.sempre.ListValue;
+import edu.stanford.nlp.sempre.MarkFormula;
+import edu.stanford.nlp.sempre.MergeFormula;
+import edu.stanford.nlp.sempre.NameValue;
+import edu.stanford.nlp.sempre.NotFormula;
+import edu.stanford.nlp.sempre.NumberValue;
+import edu.stanford.nlp.sempre.ReverseFormula;
+import edu.stanford.nlp.sempre.StringValue;
+import edu.stanford.nlp.sempre.SuperlativeFormula;
+import edu.stanford.nlp.sempre.Value;
+import edu.stanford.nlp.sempre.ValueFormula;
+import edu.stanford.nlp.sempre.VariableFormula;
+import fig.basic.Evaluation;
+import fig.basic.LispTree;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import fig.basic.OptionsParser;
+import fig.basic.StopWatch;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Execute a Formula directly against an in-memory TripleStore (e.g., a subset of Freebase produced by FilterFreebase) rather than a SPARQL endpoint.
+ * Denotations are computed bottom-up over the dictionary-encoded ids of the store. The semantics follow SparqlExecutor: results are distinct, dates are
+ * compared as xsd:datetime (with the same conventions for partial dates), count counts distinct values, (argmax 1 1 ...) keeps ties and the other superlatives
+ * order by degree. Units of numbers come from the schema triples (fb:type.property.unit) kept in the store.
+ */
+public class TripleStoreExecutor extends Executor
+{
+	public static class Options
+	{
+		@Option(gloss = "Canonicalized ttl files (e.g., output of FilterFreebase) to load")
+		public List<String> ttlPaths = new ArrayList<>();
+
+		@Option(gloss = "Maximum number of results to return")
+		public int maxResults = 10;
+
+		@Option(gloss = "Whether to include entity names (mostly for readability)")
+		public boolean includeEntityNames = true;
+
+		@Option
+		public int verbose = 1;
+	}
+
+	public static Options opts = new Options();
+
+	private static final String UNIT = "fb:type.property.unit";
+
+	private final TripleStore store;
+	private final int nameProperty;
+	private final int unitProperty;
+
+	public TripleStoreExecutor()
+	{
+		this(TripleStore.read(opts.ttlPaths));
+	}
+
+	public TripleStoreExecutor(final TripleStore store)
+	{
+		this.store = store;
+		nameProperty = store.getId(FreebaseInfo.NAME);
+		unitProperty = store.getId(UNIT);
+	}
+
+	public TripleStore getStore()
+	{
+		return store;
+	}
+
+	@Override
+	public Response execute(final Formula formula, final ContextValue context)
+	{
+		return execute(formula, 0, opts.maxResults);
+	}
+
+	public Response execute(final Formula formula, final int offset, final int maxResults)
+	{
+		final String prefix = "exec-";
+		final Evaluation stats = new Evaluation();
+		final StopWatch watch = new StopWatch();
+		watch.start();
+		Value value;
+		try
+		{
+			value = new Evaluator().denotation(formula, offset, maxResults);
+			stats.add(prefix + "error", false);
+		}
+		catch (final BadFormulaException e)
+		{
+			value = ErrorValue.badFormula(e);
+			stats.add(prefix + "error", true);
+		}
+		watch.stop();
+		stats.add(prefix + "time", watch.getCurrTimeLong());
+		if (opts.verbose >= 3)
+			LogInfo.logs("TripleStoreExecutor.execute: %s => %s", formula, value);
+		return new Response(value, stats);
+	}
+
+	////////////////////////////////////////////////////////////
+	// Denotations
+
+	// Denotation of a unary: either an explicit list of ids or a filter (e.g., (< (number 3)) or (not ...)), which can only be intersected with something else.
+	private static final class Unary
+	{
+		final int[] ids; // Distinct, in the order they were found; null for a filter
+		final IntPredicate filter;
+		final String unit; // Unit of the numbers in |ids| that come from the store (determined by the property they were reached by)
+		private int[] sortedIds;
+
+		Unary(final int[] ids, final String unit)
+		{
+			this.ids = ids;
+			filter = null;
+			this.unit = unit;
+		}
+
+		Unary(final IntPredicate filter, final String unit)
+		{
+			ids = null;
+			this.filter = filter;
+			this.unit = unit;
+		}
+
+		boolean contains(final int id)
+		{
+			if (ids == null)
+				return filter.test(id);
+			if (sortedIds == null)
+			{
+				sortedIds = ids.clone();
+				Arrays.sort(sortedIds);
+			}
+			return Arrays.binarySearch(sortedIds, id) >= 0;
+		}
+	}
+
+	// Denotation of a binary restricted to what we need: distinct (head, modifier) pairs.
+	private static final class Pairs
+	{
+		int[] heads = new int[8];
+		int[] modifiers = new int[8];
+		int size;
+		String headUnit;
+		String modifierUnit;
+		private final Set<Long> seen = new HashSet<>();
+
+		Pairs(final String headUnit, final String modifierUnit)
+		{
+			this.headUnit = headUnit;
+			this.modifierUnit = modifierUnit;
+		}
+
+		void add(final int head, final int modifier)
+		{
+			if (!seen.add(key(head, modifier)))
+				return;
+			if (size == heads.length)
+			{
+				heads = Arrays.copyOf(heads, 2 * size);
+				modifiers = Arrays.copyOf(modifiers, 2 * size);
+			}
+			heads[size] = head;
+			modifiers[size] = modifier;
+			size++;
+		}
+
+		boolean contains(final int head, final int modifier)
+		{
+			return seen.contains(key(head, modifier));
+		}
+
+		private static long key(final int head, final int modifier)
+		{
+			return (long) head << 32 | modifier & 0xffffffffL;
+		}
+	}
+
+	// Accumulates distinct ids in the order they are added.
+	private static final class IdList
+	{
+		private int[] ids = new int[8];
+		private int size;
+		private final Set<Integer> seen = new HashSet<>();
+
+		void add(final int id)
+		{
+			if (!seen.add(id))
+				return;
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, 2 * size);
+			ids[size++] = id;
+		}
+
+		void addAll(final int[] ids)
+		{
+			for (final int id : ids)
+				add(id);
+		}
+
+		int[] toArray()
+		{
+			return Arrays.copyOf(ids, size);
+		}
+	}
+
+	////////////////////////////////////////////////////////////
+	// Evaluate a formula. Values that are not in the store (constants and the results of aggregation and arithmetic) get ids starting at store.numTerms().
+	private final class Evaluator
+	{
+		private final List<Value> extraValues = new ArrayList<>();
+		private final Map<Value, Integer> extraIds = new HashMap<>();
+
+		Value denotation(Formula formula, final int offset, final int maxResults)
+		{
+			// As in SparqlExecutor, the first column of the result is the outermost lambda variable (if any).
+			Unary result;
+			if (formula instanceof LambdaFormula)
+			{
+				final LambdaFormula lambda = (LambdaFormula) formula;
+				formula = lambda.body;
+				while (formula instanceof LambdaFormula)
+					formula = ((LambdaFormula) formula).body;
+				if (formula != lambda.body)
+					throw new BadFormulaException("Multiple outer lambdas are not supported: " + lambda);
+				final Pairs pairs = relate(formula, lambda.var, Collections.<String, Integer> emptyMap());
+				final IdList ids = new IdList();
+				for (int i = 0; i < pairs.size; i++)
+					ids.add(pairs.modifiers[i]);
+				result = new Unary(ids.toArray(), pairs.modifierUnit);
+			}
+			else
+				result = eval(formula, Collections.<String, Integer> emptyMap());
+
+			final int[] ids = explicit(result, formula);
+			final List<Value> values = new ArrayList<>();
+			for (int i = offset; i < ids.length && values.size() < maxResults; i++)
+				values.add(toValue(ids[i], result.unit));
+			return new ListValue(values);
+		}
+
+		private Unary eval(final Formula formula, final Map<String, Integer> env)
+		{
+			if (formula instanceof ValueFormula)
+				return single(valueToId(((ValueFormula<?>) formula).value), null);
+
+			if (formula instanceof VariableFormula)
+			{
+				final Integer id = env.get(((VariableFormula) formula).name);
+				if (id == null)
+					throw new BadFormulaException("Unbound variable: " + formula);
+				return single(id, null);
+			}
+
+			if (formula instanceof JoinFormula)
+			{
+				final JoinFormula join = (JoinFormula) formula;
+				return join(join.relation, eval(join.child, env), env);
+			}
+
+			if (formula instanceof MergeFormula)
+			{
+				final MergeFormula merge = (MergeFormula) formula;
+				final Unary child1 = eval(merge.child1, env);
+				final Unary child2 = eval(merge.child2, env);
+				if (merge.mode == MergeFormula.Mode.and)
+					return and(child1, child2);
+				return or(Arrays.asList(child1, child2));
+			}
+
+			if (formula instanceof NotFormula)
+			{
+				final Unary child = eval(((NotFormula) formula).child, env);
+				return new Unary(id -> !child.contains(id), null);
+			}
+
+			if (formula instanceof MarkFormula)
+			{
+				final MarkFormula mark = (MarkFormula) formula;
+				if (!Formulas.containsFreeVar(mark.body, new VariableFormula(mark.var)))
+					return eval(mark.body, env);
+				final Pairs pairs = relate(mark.body, mark.var, env);
+				final IdList ids = new IdList();
+				for (int i = 0; i < pairs.size; i++)
+					if (pairs.heads[i] == pairs.modifiers[i])
+						ids.add(pairs.heads[i]);
+				return new Unary(ids.toArray(), pairs.headUnit);
+			}
+
+			if (formula instanceof SuperlativeFormula)
+				return superlative((SuperlativeFormula) formula, env);
+
+			if (formula instanceof AggregateFormula)
+				return aggregate((AggregateFormula) formula, env);
+
+			if (formula instanceof ArithmeticFormula)
+				return arithmetic((ArithmeticFormula) formula, env);
+
+			throw new BadFormulaException("Unhandled formula: " + formula);
+		}
+
+		private Unary join(final Formula relation, final Unary child, final Map<String, Integer> env)
+		{
+			final String property = propertyOf(relation);
+			if (property != null)
+				return joinProperty(property, child);
+
+			if (relation instanceof LambdaFormula)
+			{
+				// (lambda x body) applied to child: union of body[x := c] over c in child
+				final LambdaFormula lambda = (LambdaFormula) relation;
+				if (child.ids != null)
+				{
+					final List<Unary> results = new ArrayList<>();
+					for (final int id : child.ids)
+						results.add(eval(lambda.body, bind(env, lambda.var, id)));
+					return or(results);
+				}
+				final Pairs pairs = relate(lambda.body, lambda.var, env);
+				final IdList ids = new IdList();
+				for (int i = 0; i < pairs.size; i++)
+					if (child.contains(pairs.modifiers[i]))
+						ids.add(pairs.heads[i]);
+				return new Unary(ids.toArray(), pairs.headUnit);
+			}
+
+			if (relation instanceof ReverseFormula && ((ReverseFormula) relation).child instanceof LambdaFormula)
+			{
+				// (reverse (lambda x body)) applied to child: all x such that body[x] intersects child
+				final LambdaFormula lambda = (LambdaFormula) ((ReverseFormula) relation).child;
+				final Pairs pairs = relate(lambda.body, lambda.var, env);
+				final IdList ids = new IdList();
+				for (int i = 0; i < pairs.size; i++)
+					if (child.contains(pairs.heads[i]))
+						ids.add(pairs.modifiers[i]);
+				return new Unary(ids.toArray(), pairs.modifierUnit);
+			}
+
+			throw new BadFormulaException("Unhandled relation: " + relation);
+		}
+
+		private Unary joinProperty(final String property, final Unary child)
+		{
+			final boolean reverse = FreebaseInfo.isReverseProperty(property);
+			final String base = reverse ? property.substring(1) : property;
+			if (isComparison(base))
+				return compare(base, child, reverse);
+
+			final int p = store.getId(base);
+			final String unit = reverse ? propertyUnit(p) : null;
+			final IdList ids = new IdList();
+			if (p == TripleStore.UNBOUND)
+				return new Unary(ids.toArray(), unit);
+
+			if (child.ids == null)
+				// Scan all the pairs of the property
+				store.match(TripleStore.UNBOUND, p, TripleStore.UNBOUND, (s, q, o) -> {
+					if (child.contains(reverse ? s : o))
+						ids.add(reverse ? o : s);
+				});
+			else
+			{
+				// Look up entities in the index; numbers and dates that are not in the store are matched by value (e.g., a year matches any date in it).
+				final List<Integer> constants = new ArrayList<>();
+				for (final int id : child.ids)
+					if (!isExtra(id))
+						ids.addAll(reverse ? store.getArg2s(id, p) : store.getArg1s(p, id));
+					else
+						if (!reverse && (kind(id) == TripleStore.NUMBER || kind(id) == TripleStore.DATE))
+							constants.add(id);
+				if (!constants.isEmpty())
+					store.match(TripleStore.UNBOUND, p, TripleStore.UNBOUND, (s, q, o) -> {
+						for (final int c : constants)
+							if (test("=", o, c))
+								ids.add(s);
+					});
+			}
+			return new Unary(ids.toArray(), unit);
+		}
+
+		// (< (number 3)): everything less than some element of |child|.
+		private Unary compare(final String op, final Unary child, final boolean reverse)
+		{
+			final int[] constants = explicit(child, op);
+			return new Unary(id -> {
+				for (final int c : constants)
+					if (reverse ? test(op, c, id) : test(op, id, c))
+						return true;
+				return false;
+			}, child.unit);
+		}
+
+		private Unary and(final Unary child1, final Unary child2)
+		{
+			final String unit = child1.unit != null ? child1.unit : child2.unit;
+			if (child1.ids == null && child2.ids == null)
+				return new Unary(id -> child1.contains(id) && child2.contains(id), unit);
+			final Unary explicit = child1.ids != null ? child1 : child2;
+			final Unary other = explicit == child1 ? child2 : child1;
+			final IdList ids = new IdList();
+			for (final int id : explicit.ids)
+				if (other.contains(id))
+					ids.add(id);
+			return new Unary(ids.toArray(), unit);
+		}
+
+		private Unary or(final List<Unary> children)
+		{
+			String unit = null;
+			boolean isFilter = false;
+			for (final Unary child : children)
+			{
+				if (unit == null)
+					unit = child.unit;
+				isFilter |= child.ids == null;
+			}
+			if (isFilter)
+				return new Unary(id -> {
+					for (final Unary child : children)
+						if (child.contains(id))
+							return true;
+					return false;
+				}, unit);
+			final IdList ids = new IdList();
+			for (final Unary child : children)
+				ids.addAll(child.ids);
+			return new Unary(ids.toArray(), unit);
+		}
+
+		private Unary superlative(final SuperlativeFormula formula, final Map<String, Integer> env)
+		{
+			final int rank = Formulas.getInt(formula.rank);
+			final int count = Formulas.getInt(formula.count);
+			final boolean isMax = formula.mode == SuperlativeFormula.Mode.argmax;
+			final Unary heads = eval(formula.head, env);
+			final Pairs degrees = pairsGivenHeads(formula.relation, explicit(heads, formula.head), env);
+
+			final List<Integer> indices = new ArrayList<>();
+			for (int i = 0; i < degrees.size; i++)
+				if (!Double.isNaN(number(degrees.modifiers[i])))
+					indices.add(i);
+
+			final IdList ids = new IdList();
+			if (rank == 1 && count == 1)
+			{
+				// Keep all the ties at the top
+				double best = isMax ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+				for (final int i : indices)
+					best = isMax ? Math.max(best, number(degrees.modifiers[i])) : Math.min(best, number(degrees.modifiers[i]));
+				for (final int i : indices)
+					if (number(degrees.modifiers[i]) == best)
+						ids.add(degrees.heads[i]);
+			}
+			else
+			{
+				// Sort (head, degree) pairs by degree and take [rank - 1, rank - 1 + count)
+				indices.sort((i, j) -> isMax ? Double.compare(number(degrees.modifiers[j]), number(degrees.modifiers[i])) : Double.compare(number(degrees.modifiers[i]), number(degrees.modifiers[j])));
+				for (int k = rank - 1; k >= 0 && k < indices.size() && k < rank - 1 + count; k++)
+					ids.add(degrees.heads[indices.get(k)]);
+			}
+			return new Unary(ids.toArray(), heads.unit);
+		}
+
+		private Unary aggregate(final AggregateFormula formula, final Map<String, Integer> env)
+		{
+			final Unary child = eval(formula.child, env);
+			final int[] ids = explicit(child, formula.child);
+			if (formula.mode == AggregateFormula.Mode.count)
+				return single(extraId(new NumberValue(ids.length)), null);
+
+			int best = TripleStore.UNBOUND;
+			double sum = 0;
+			int n = 0;
+			for (final int id : ids)
+			{
+				final double x = number(id);
+				if (Double.isNaN(x))
+					continue;
+				if (best == TripleStore.UNBOUND || formula.mode == AggregateFormula.Mode.max && x > number(best) || formula.mode == AggregateFormula.Mode.min && x < number(best))
+					best = id;
+				sum += x;
+				n++;
+			}
+			final String unit = best == TripleStore.UNBOUND ? unitOr(child.unit) : numberUnit(best, child.unit);
+			if (n == 0)
+				return single(extraId(new NumberValue(Double.NaN, unit)), null);
+			switch (formula.mode)
+			{
+				case min:
+				case max:
+					return single(best, child.unit);
+				case sum:
+					return single(extraId(new NumberValue(sum, unit)), null);
+				case avg:
+					return single(extraId(new NumberValue(sum / n, unit)), null);
+				default:
+					throw new BadFormulaException("Unhandled aggregate: " + formula.mode);
+			}
+		}
+
+		private Unary arithmetic(final ArithmeticFormula formula, final Map<String, Integer> env)
+		{
+			final Unary child1 = eval(formula.child1, env);
+			final Unary child2 = eval(formula.child2, env);
+			final IdList ids = new IdList();
+			for (final int id1 : explicit(child1, formula.child1))
+				for (final int id2 : explicit(child2, formula.child2))
+				{
+					final Value value = arithmetic(formula.mode, id1, child1.unit, id2);
+					if (value != null)
+						ids.add(extraId(value));
+				}
+			return new Unary(ids.toArray(), null);
+		}
+
+		// Same conventions as SparqlExecutor: date - date is the difference in years and date + number adds years; the unit of the result is that of the first
+		// argument for addition and subtraction.
+		private Value arithmetic(final ArithmeticFormula.Mode mode, final int id1, final String unit1, final int id2)
+		{
+			final double x = number(id1), y = number(id2);
+			if (Double.isNaN(x) || Double.isNaN(y))
+				return null;
+			if (kind(id1) == TripleStore.DATE)
+			{
+				if (mode == ArithmeticFormula.Mode.sub && kind(id2) == TripleStore.DATE)
+					return new NumberValue(TripleStore.dateKeyYear(x) - TripleStore.dateKeyYear(y), NumberValue.yearUnit);
+				if (mode == ArithmeticFormula.Mode.add && kind(id2) == TripleStore.NUMBER)
+				{
+					final DateValue date = toDate(id1);
+					return date == null ? null : new DateValue(date.year + (int) y, date.month, date.day);
+				}
+				return null;
+			}
+			if (kind(id1) != TripleStore.NUMBER || kind(id2) != TripleStore.NUMBER)
+				return null;
+			switch (mode)
+			{
+				case add:
+					return new NumberValue(x + y, numberUnit(id1, unit1));
+				case sub:
+					return new NumberValue(x - y, numberUnit(id1, unit1));
+				case mul:
+					return new NumberValue(x * y);
+				case div:
+					return new NumberValue(x / y);
+				default:
+					throw new BadFormulaException("Unhandled arithmetic: " + mode);
+			}
+		}
+
+		////////////////////////////////////////////////////////////
+		// Binaries
+
+		// All the (head, modifier) pairs of |relation| for the given heads (e.g., the degrees of a superlative).
+		private Pairs pairsGivenHeads(final Formula relation, final int[] heads, final Map<String, Integer> env)
+		{
+			final String property = propertyOf(relation);
+			if (property != null && !isComparison(property))
+			{
+				final boolean reverse = FreebaseInfo.isReverseProperty(property);
+				final int p = store.getId(reverse ? property.substring(1) : property);
+				final Pairs pairs = new Pairs(null, reverse ? null : propertyUnit(p));
+				for (final int head : heads)
+					if (!isExtra(head))
+						for (final int modifier : reverse ? store.getArg1s(p, head) : store.getArg2s(head, p))
+							pairs.add(head, modifier);
+				return pairs;
+			}
+
+			if (relation instanceof ReverseFormula && ((ReverseFormula) relation).child instanceof LambdaFormula)
+			{
+				final LambdaFormula lambda = (LambdaFormula) ((ReverseFormula) relation).child;
+				final Pairs pairs = new Pairs(null, null);
+				for (final int head : heads)
+				{
+					final Unary modifiers = eval(lambda.body, bind(env, lambda.var, head));
+					if (pairs.modifierUnit == null)
+						pairs.modifierUnit = modifiers.unit;
+					for (final int modifier : explicit(modifiers, lambda.body))
+						pairs.add(head, modifier);
+				}
+				return pairs;
+			}
+
+			if (relation instanceof LambdaFormula)
+			{
+				final LambdaFormula lambda = (LambdaFormula) relation;
+				final Unary headSet = new Unary(heads, null);
+				final Pairs all = relate(lambda.body, lambda.var, env);
+				final Pairs pairs = new Pairs(all.headUnit, all.modifierUnit);
+				for (int i = 0; i < all.size; i++)
+					if (headSet.contains(all.heads[i]))
+						pairs.add(all.heads[i], all.modifiers[i]);
+				return pairs;
+			}
+
+			throw new BadFormulaException("Unhandled relation: " + relation);
+		}
+
+		// Pairs (h, x) such that h is in the denotation of |body| when |var| is bound to x.
+		private Pairs relate(final Formula body, final String var, final Map<String, Integer> env)
+		{
+			final VariableFormula variable = new VariableFormula(var);
+			if (!Formulas.containsFreeVar(body, variable))
+				throw new BadFormulaException("Unbounded denotation: " + var + " does not occur in " + body);
+
+			if (body instanceof JoinFormula)
+			{
+				final JoinFormula join = (JoinFormula) body;
+				if (Formulas.containsFreeVar(join.relation, variable))
+					throw new BadFormulaException("Unhandled lambda body: " + body);
+
+				if (join.child.equals(variable))
+				{
+					// All pairs of a property
+					final String property = propertyOf(join.relation);
+					if (property == null || isComparison(property) || isComparison(property.substring(1)))
+						throw new BadFormulaException("Unbounded denotation: " + body);
+					final boolean reverse = FreebaseInfo.isReverseProperty(property);
+					final int p = store.getId(reverse ? property.substring(1) : property);
+					final Pairs pairs = new Pairs(reverse ? propertyUnit(p) : null, reverse ? null : propertyUnit(p));
+					if (p != TripleStore.UNBOUND)
+						store.match(TripleStore.UNBOUND, p, TripleStore.UNBOUND, (s, q, o) -> {
+							if (reverse)
+								pairs.add(o, s);
+							else
+								pairs.add(s, o);
+						});
+					return pairs;
+				}
+
+				// Join each intermediate value separately
+				final Pairs childPairs = relate(join.child, var, env);
+				final Map<Integer, Unary> joined = new HashMap<>();
+				final Pairs pairs = new Pairs(null, childPairs.modifierUnit);
+				for (int i = 0; i < childPairs.size; i++)
+				{
+					final Unary heads = joined.computeIfAbsent(childPairs.heads[i], id -> join(join.relation, single(id, childPairs.headUnit), env));
+					if (pairs.headUnit == null)
+						pairs.headUnit = heads.unit;
+					for (final int head : explicit(heads, body))
+						pairs.add(head, childPairs.modifiers[i]);
+				}
+				return pairs;
+			}
+
+			if (body instanceof MergeFormula)
+			{
+				final MergeFormula merge = (MergeFormula) body;
+				final boolean uses1 = Formulas.containsFreeVar(merge.child1, variable);
+				final boolean uses2 = Formulas.containsFreeVar(merge.child2, variable);
+				if (merge.mode == MergeFormula.Mode.and && (!uses1 || !uses2))
+				{
+					// Restrict the heads with the part that doesn't depend on |var|
+					final Unary restriction = eval(uses1 ? merge.child2 : merge.child1, env);
+					final Pairs all = relate(uses1 ? merge.child1 : merge.child2, var, env);
+					final Pairs pairs = new Pairs(all.headUnit != null ? all.headUnit : restriction.unit, all.modifierUnit);
+					for (int i = 0; i < all.size; i++)
+						if (restriction.contains(all.heads[i]))
+							pairs.add(all.heads[i], all.modifiers[i]);
+					return pairs;
+				}
+				final Pairs pairs1 = relate(merge.child1, var, env);
+				final Pairs pairs2 = relate(merge.child2, var, env);
+				final Pairs pairs = new Pairs(pairs1.headUnit != null ? pairs1.headUnit : pairs2.headUnit, pairs1.modifierUnit != null ? pairs1.modifierUnit : pairs2.modifierUnit);
+				for (int i = 0; i < pairs1.size; i++)
+					if (merge.mode == MergeFormula.Mode.or || pairs2.contains(pairs1.heads[i], pairs1.modifiers[i]))
+						pairs.add(pairs1.heads[i], pairs1.modifiers[i]);
+				if (merge.mode == MergeFormula.Mode.or)
+					for (int i = 0; i < pairs2.size; i++)
+						pairs.add(pairs2.heads[i], pairs2.modifiers[i]);
+				return pairs;
+			}
+
+			throw new BadFormulaException("Unhandled lambda body: " + body);
+		}
+
+		////////////////////////////////////////////////////////////
+		// Values
+
+		private Unary single(final int id, final String unit)
+		{
+			return new Unary(new int[] { id }, unit);
+		}
+
+		private int[] explicit(final Unary unary, final Object formula)
+		{
+			if (unary.ids == null)
+				throw new BadFormulaException("Unbounded denotation: " + formula);
+			return unary.ids;
+		}
+
+		private Map<String, Integer> bind(final Map<String, Integer> env, final String var, final int id)
+		{
+			final Map<String, Integer> newEnv = new HashMap<>(env);
+			newEnv.put(var, id);
+			return newEnv;
+		}
+
+		private int valueToId(final Value value)
+		{
+			String term = null;
+			if (value instanceof NameValue)
+				term = ((NameValue) value)._id;
+			else
+				if (value instanceof StringValue)
+					term = SparqlUtils.plainStr(new ValueFormula<>(value));
+				else
+					if (value instanceof BooleanValue)
+						term = "\"" + ((BooleanValue) value).value + "\"^^xsd:boolean";
+			final int id = term == null ? TripleStore.UNBOUND : store.getId(term);
+			return id != TripleStore.UNBOUND ? id : extraId(value);
+		}
+
+		private int extraId(final Value value)
+		{
+			Integer id = extraIds.get(value);
+			if (id == null)
+			{
+				id = store.numTerms() + extraValues.size();
+				extraIds.put(value, id);
+				extraValues.add(value);
+			}
+			return id;
+		}
+
+		private boolean isExtra(final int id)
+		{
+			return id >= store.numTerms();
+		}
+
+		private Value extraValue(final int id)
+		{
+			return extraValues.get(id - store.numTerms());
+		}
+
+		private byte kind(final int id)
+		{
+			if (!isExtra(id))
+				return store.getKind(id);
+			final Value value = extraValue(id);
+			if (value instanceof NumberValue)
+				return TripleStore.NUMBER;
+			if (value instanceof DateValue)
+				return TripleStore.DATE;
+			if (value instanceof StringValue)
+				return TripleStore.TEXT;
+			if (value instanceof BooleanValue)
+				return TripleStore.BOOLEAN;
+			return TripleStore.ENTITY;
+		}
+
+		// Numeric value used for comparisons and aggregation (NaN if there is none).
+		private double number(final int id)
+		{
+			if (!isExtra(id))
+				return store.getNumber(id);
+			final Value value = extraValue(id);
+			if (value instanceof NumberValue)
+				return ((NumberValue) value)._value;
+			if (value instanceof DateValue)
+				return TripleStore.dateKey((DateValue) value);
+			if (value instanceof BooleanValue)
+				return ((BooleanValue) value).value ? 1 : 0;
+			return Double.NaN;
+		}
+
+		private String text(final int id)
+		{
+			if (kind(id) != TripleStore.TEXT)
+				return null;
+			return isExtra(id) ? ((StringValue) extraValue(id)).value : TripleStore.literalContents(store.getTerm(id));
+		}
+
+		private DateValue toDate(final int id)
+		{
+			if (isExtra(id))
+				return (DateValue) extraValue(id);
+			try
+			{
+				return DateValue.parseDateValue(TripleStore.literalContents(store.getTerm(id)));
+			}
+			catch (final RuntimeException e)
+			{
+				return null;
+			}
+		}
+
+		private String numberUnit(final int id, final String unit)
+		{
+			if (isExtra(id) && extraValue(id) instanceof NumberValue)
+				return ((NumberValue) extraValue(id))._unit;
+			return unitOr(unit);
+		}
+
+		private Value toValue(final int id, final String unit)
+		{
+			if (isExtra(id))
+				return extraValue(id);
+			final String term = store.getTerm(id);
+			final byte kind = store.getKind(id);
+			if (kind == TripleStore.ENTITY)
+				return new NameValue(term, opts.includeEntityNames ? name(id) : null);
+			if (kind == TripleStore.TEXT)
+				return new StringValue(TripleStore.literalContents(term));
+			if (kind == TripleStore.NUMBER)
+				return new NumberValue(store.getNumber(id), unitOr(unit));
+			if (kind == TripleStore.DATE)
+				return toDate(id);
+			return new BooleanValue(store.getNumber(id) != 0);
+		}
+
+		private String name(final int id)
+		{
+			final int name = store.getFirstArg2(id, nameProperty);
+			return name == TripleStore.UNBOUND ? null : TripleStore.literalContents(store.getTerm(name));
+		}
+
+		// Compare |id1| (op) |id2| the way the SPARQL filter generated by SparqlExecutor would.
+		private boolean test(final String op, final int id1, final int id2)
+		{
+			if (SparqlStatement.isSpecialFunction(op))
+			{
+				final String s1 = text(id1), s2 = text(id2);
+				if (s1 == null || s2 == null)
+					return false;
+				return op.equals("STRSTARTS") ? s1.startsWith(s2) : s1.endsWith(s2);
+			}
+
+			final byte kind1 = kind(id1), kind2 = kind(id2);
+			if (kind1 == TripleStore.ENTITY || kind2 == TripleStore.ENTITY || kind1 == TripleStore.TEXT || kind2 == TripleStore.TEXT)
+			{
+				if (op.equals("="))
+					return id1 == id2;
+				if (op.equals("!="))
+					return id1 != id2;
+				final String s1 = text(id1), s2 = text(id2);
+				return s1 != null && s2 != null && compare(op, s1.compareTo(s2), 0);
+			}
+
+			if (kind1 == TripleStore.DATE != (kind2 == TripleStore.DATE))
+				return false;
+			final double x = number(id1), y = number(id2);
+			if (Double.isNaN(x) || Double.isNaN(y))
+				return false;
+
+			// A date constant denotes an interval: (= (date 2000 -1 -1)) means >= 2000-01-01 and < 2001-01-01.
+			if (kind2 == TripleStore.DATE && isExtra(id2))
+			{
+				final double end = TripleStore.dateKey(SparqlStatement.advance((DateValue) extraValue(id2)));
+				if (op.equals("="))
+					return x >= y && x < end;
+				if (op.equals("<="))
+					return x < end;
+				if (op.equals(">"))
+					return x >= end;
+			}
+			return compare(op, Double.compare(x, y), 0);
+		}
+
+		private boolean compare(final String op, final int a, final int b)
+		{
+			switch (op)
+			{
+				case "=":
+					return a == b;
+				case "!=":
+					return a != b;
+				case "<":
+					return a < b;
+				case "<=":
+					return a <= b;
+				case ">":
+					return a > b;
+				case ">=":
+					return a >= b;
+				default:
+					throw new BadFormulaException("Unhandled comparison: " + op);
+			}
+		}
+	}
+
+	////////////////////////////////////////////////////////////
+
+	// fb:people.person.height_meters => fb:people.person.height_meters, (reverse fb:x) => !fb:x; null if the relation is not a property.
+	private static String propertyOf(final Formula relation)
+	{
+		if (relation instanceof ValueFormula && ((ValueFormula<?>) relation).value instanceof NameValue)
+			return ((NameValue) ((ValueFormula<?>) relation).value)._id;
+		if (relation instanceof ReverseFormula)
+		{
+			final String property = propertyOf(((ReverseFormula) relation).child);
+			if (property == null)
+				return null;
+			return FreebaseInfo.isReverseProperty(property) ? property.substring(1) : "!" + property;
+		}
+		return null;
+	}
+
+	private static boolean isComparison(final String property)
+	{
+		return SparqlStatement.isOperator(property) || SparqlStatement.isSpecialFunction(property);
+	}
+
+	private static String unitOr(final String unit)
+	{
+		return unit != null ? unit : NumberValue.unitless;
+	}
+
+	// Unit of the second argument of |property| (e.g., fb:en.meter), or unitless.
+	private String propertyUnit(final int property)
+	{
+		final int unit = store.getFirstArg2(property, unitProperty);
+		return unit == TripleStore.UNBOUND ? NumberValue.unitless : store.getTerm(unit);
+	}
+
+	////////////////////////////////////////////////////////////
+
+	public static class MainOptions
+	{
+		@Option(gloss = "Formula to execute")
+		public String formula;
+		@Option(gloss = "File containing formulas to execute")
+		public String formulasPath;
+	}
+
+	public static void main(final String[] args)
+	{
+		final OptionsParser parser = new OptionsParser();
+		final MainOptions mainOpts = new MainOptions();
+		parser.registerAll(new Object[] { "TripleStoreExecutor", TripleStoreExecutor.opts, "main", mainOpts });
+		parser.parse(args);
+
+		LogInfo.begin_track("main()");
+		final TripleStoreExecutor executor = new TripleStoreExecutor();
+
+		if (mainOpts.formula != null)
+			LogInfo.logs("%s", executor.execute(Formulas.fromLispTree(LispTree.proto.parseFromString(mainOpts.formula)), null).value);
+
+		if (mainOpts.formulasPath != null)
+		{
+			final Iterator<LispTree> trees = LispTree.proto.parseFromFile(mainOpts.formulasPath);
+			while (trees.hasNext())
+				LogInfo.logs("%s", executor.execute(Formulas.fromLispTree(trees.next()), null).value);
+		}
+
+		LogInfo.end_track();
+	}
+}
@@ -0,0 +1,226 @@
+package edu.stanford.nlp.sempre.freebase;
+
+import fig.basic.IOUtils;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Reads a ttl file in line-aligned chunks on several threads. The triples of each chunk (as parsed by Utils.parseTriple) go to a fresh ChunkHandler on a worker
+ * thread, so aggregation is thread-local. The handlers are then merged one at a time, in file order, on the calling thread, so a tool that writes its output
+ * during the merge produces exactly what reading the file sequentially would. Uncompressed files are memory-mapped. Other files (e.g., .gz) are read by the
+ * calling thread and parsed in parallel.
+ */
+public final class TtlReader
+{
+	public static class Options
+	{
+		@Option(gloss = "Size in bytes of the chunks of an uncompressed ttl file (each chunk ends at the next line)")
+		public int chunkBytes = 1 << 24;
+		@Option(gloss = "Number of lines in the chunks of a compressed ttl file, or of any file read with maxInputLines")
+		public int chunkLines = 100000;
+	}
+
+	public static Options opts = new Options();
+
+	private TtlReader()
+	{
+	}
+
+	// Receives the triples of one chunk, in order.
+	public interface ChunkHandler
+	{
+		void triple(String arg1, String property, String arg2);
+	}
+
+	private static final int LOG_LINES = 10000000;
+
+	private static final class Chunk<H>
+	{
+		final H handler;
+		final int numLines;
+
+		Chunk(final H handler, final int numLines)
+		{
+			this.handler = handler;
+			this.numLines = numLines;
+		}
+	}
+
+	// Reads |path| (at most |maxInputLines| lines) with |numThreads| threads.
+	public static <H extends ChunkHandler> void read(final String path, final int maxInputLines, final int numThreads, final Supplier<H> newHandler, final Consumer<H> merge)
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(numThreads, 1));
+		final Merger<H> merger = new Merger<>(Math.max(numThreads, 1), merge);
+		try
+		{
+			// With a line limit, chunk by lines so the limit is exact.
+			if (maxInputLines == Integer.MAX_VALUE && !path.endsWith(".gz") && !path.endsWith(".bz2") && Files.isRegularFile(Paths.get(path)))
+				readMapped(path, executor, newHandler, merger);
+			else
+				readStream(path, maxInputLines, executor, newHandler, merger);
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static <H extends ChunkHandler> void readMapped(final String path, final ExecutorService executor, final Supplier<H> newHandler, final Merger<H> merger) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			long start = 0;
+			while (start < size)
+			{
+				final long end = nextLineStart(channel, Math.min(start + opts.chunkBytes, size));
+				final long chunkStart = start;
+				merger.add(executor.submit(() -> {
+					final String text = StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, end - chunkStart)).toString();
+					final BufferedReader in = new BufferedReader(new StringReader(text));
+					final H handler = newHandler.get();
+					int numLines = 0;
+					String line;
+					while ((line = in.readLine()) != null)
+					{
+						numLines++;
+						parse(line, handler);
+					}
+					return new Chunk<>(handler, numLines);
+				}));
+				start = end;
+			}
+			merger.finish(); // Before closing the channel
+		}
+	}
+
+	// Position just after the first newline at or after |position| (or the end of the file).
+	private static long nextLineStart(final FileChannel channel, long position) throws IOException
+	{
+		final long size = channel.size();
+		final ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (position < size)
+		{
+			buffer.clear();
+			final int n = channel.read(buffer, position);
+			for (int i = 0; i < n; i++)
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			position += n;
+		}
+		return size;
+	}
+
+	private static <H extends ChunkHandler> void readStream(final String path, final int maxInputLines, final ExecutorService executor, final Supplier<H> newHandler, final Merger<H> merger) throws IOException
+	{
+		try (BufferedReader in = IOUtils.openIn(path))
+		{
+			final int chunkLines = opts.chunkLines;
+			int numInputLines = 0;
+			List<String> lines = new ArrayList<>(chunkLines);
+			String line;
+			while (numInputLines < maxInputLines && (line = in.readLine()) != null)
+			{
+				numInputLines++;
+				lines.add(line);
+				if (lines.size() == chunkLines || numInputLines == maxInputLines)
+				{
+					merger.add(submitLines(lines, executor, newHandler));
+					lines = new ArrayList<>(chunkLines);
+				}
+			}
+			if (!lines.isEmpty())
+				merger.add(submitLines(lines, executor, newHandler));
+		}
+		merger.finish();
+	}
+
+	private static <H extends ChunkHandler> Future<Chunk<H>> submitLines(final List<String> lines, final ExecutorService executor, final Supplier<H> newHandler)
+	{
+		return executor.submit(() -> {
+			final H handler = newHandler.get();
+			for (final String line : lines)
+				parse(line, handler);
+			return new Chunk<>(handler, lines.size());
+		});
+	}
+
+	private static void parse(final String line, final ChunkHandler handler)
+	{
+		final String[] tokens = Utils.parseTriple(line);
+		if (tokens != null)
+			handler.triple(tokens[0], tokens[1], tokens[2]);
+	}
+
+	// Merges finished chunks in file order, keeping a bounded number of chunks in flight.
+	private static final class Merger<H>
+	{
+		private final int maxPending;
+		private final Consumer<H> merge;
+		private final Deque<Future<Chunk<H>>> pending = new ArrayDeque<>();
+		private long numLines = 0;
+
+		Merger(final int numThreads, final Consumer<H> merge)
+		{
+			maxPending = 2 * numThreads;
+			this.merge = merge;
+		}
+
+		void add(final Future<Chunk<H>> chunk)
+		{
+			pending.addLast(chunk);
+			while (pending.size() > maxPending)
+				mergeFirst();
+		}
+
+		void finish()
+		{
+			while (!pending.isEmpty())
+				mergeFirst();
+		}
+
+		private void mergeFirst()
+		{
+			final Chunk<H> chunk;
+			try
+			{
+				chunk = pending.removeFirst().get();
+			}
+			catch (final InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			catch (final ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause());
+			}
+			merge.accept(chunk.handler);
+			if ((numLines + chunk.numLines) / LOG_LINES > numLines / LOG_LINES)
+				LogInfo.logs("Read %s lines", numLines + chunk.numLines);
+			numLines += chunk.numLines;
+		}
+	}
+}
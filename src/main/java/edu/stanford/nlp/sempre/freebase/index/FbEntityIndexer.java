@@ -5,6 +5,13 @@ import fig.basic.LogInfo;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
@@ -20,11 +27,23 @@ import org.apache.lucene.util.Version;
 
 public class FbEntityIndexer
 {
+	// Lines handed to an indexing thread at a time
+	private static final int BATCH_SIZE = 10000;
 
 	private final IndexWriter indexer;
 	private final String nameFile;
+	private final int numThreads;
 
 	public FbEntityIndexer(final String namefile, final String outputDir, final String indexingStrategy) throws IOException
+	{
+		this(namefile, outputDir, indexingStrategy, 1);
+	}
+
+	/**
+	 * With |numThreads| > 1, the name file is read by the calling thread and the documents are built and added by a pool of indexing threads (IndexWriter is
+	 * thread-safe). The order of the documents in the index then differs from the order in the file.
+	 */
+	public FbEntityIndexer(final String namefile, final String outputDir, final String indexingStrategy, final int numThreads) throws IOException
 	{
 
 		if (!indexingStrategy.equals("exact") && !indexingStrategy.equals("inexact"))
@@ -36,6 +55,7 @@ public class FbEntityIndexer
 		indexer = new IndexWriter(new SimpleFSDirectory(new File(outputDir)), config);
 
 		nameFile = namefile;
+		this.numThreads = numThreads;
 	}
 
 	/**
@@ -50,32 +70,16 @@ public class FbEntityIndexer
 		final BufferedReader reader = IOUtils.getBufferedFileReader(nameFile);
 		String line;
 		int indexed = 0;
-		while ((line = reader.readLine()) != null)
-		{
-
-			final String[] tokens = line.split("\t");
-
-			final String mid = tokens[0];
-			final String id = tokens[1];
-			if (id.startsWith("fb:user.") || id.startsWith("fb:base."))
-				continue;
-			final String popularity = tokens[2];
-			final String text = tokens[3].toLowerCase();
-
-			// add to index
-			final Document doc = new Document();
-			doc.add(new StringField(FbIndexField.MID.fieldName(), mid, Field.Store.YES));
-			doc.add(new StringField(FbIndexField.ID.fieldName(), id, Field.Store.YES));
-			doc.add(new StoredField(FbIndexField.POPULARITY.fieldName(), popularity));
-			doc.add(new TextField(FbIndexField.TEXT.fieldName(), text, Field.Store.YES));
-			if (tokens.length > 4)
-				doc.add(new StoredField(FbIndexField.TYPES.fieldName(), tokens[4]));
-			indexer.addDocument(doc);
-			indexed++;
-
-			if (indexed % 1000000 == 0)
-				LogInfo.log("Number of lines: " + indexed);
-		}
+		if (numThreads > 1)
+			indexed = indexParallel(reader);
+		else
+			while ((line = reader.readLine()) != null)
+				if (indexLine(line))
+				{
+					indexed++;
+					if (indexed % 1000000 == 0)
+						LogInfo.log("Number of lines: " + indexed);
+				}
 		reader.close();
 		LogInfo.log("Indexed lines: " + indexed);
 
@@ -84,9 +88,89 @@ public class FbEntityIndexer
 		LogInfo.end_track("Indexing");
 	}
 
+	private int indexParallel(final BufferedReader reader) throws IOException
+	{
+		LogInfo.logs("Indexing with %d threads", numThreads);
+		final AtomicInteger indexed = new AtomicInteger();
+		// Bounded queue: when all threads are busy, the reading thread indexes the batch itself instead of reading further ahead.
+		final ExecutorService pool = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(2 * numThreads), new ThreadPoolExecutor.CallerRunsPolicy());
+		final List<Throwable> errors = new ArrayList<>();
+		List<String> batch = new ArrayList<>(BATCH_SIZE);
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			batch.add(line);
+			if (batch.size() == BATCH_SIZE)
+			{
+				submit(pool, batch, indexed, errors);
+				batch = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+		submit(pool, batch, indexed, errors);
+		pool.shutdown();
+		try
+		{
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+		catch (final InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+		synchronized (errors)
+		{
+			if (!errors.isEmpty())
+				throw new RuntimeException("Indexing failed", errors.get(0));
+		}
+		return indexed.get();
+	}
+
+	private void submit(final ExecutorService pool, final List<String> batch, final AtomicInteger indexed, final List<Throwable> errors)
+	{
+		pool.execute(() -> {
+			try
+			{
+				for (final String line : batch)
+					if (indexLine(line) && indexed.incrementAndGet() % 1000000 == 0)
+						LogInfo.log("Number of lines: " + indexed.get());
+			}
+			catch (final Throwable t)
+			{
+				synchronized (errors)
+				{
+					errors.add(t);
+				}
+			}
+		});
+	}
+
+	// Return whether the line was added to the index.
+	private boolean indexLine(final String line) throws IOException
+	{
+		final String[] tokens = line.split("\t");
+
+		final String mid = tokens[0];
+		final String id = tokens[1];
+		if (id.startsWith("fb:user.") || id.startsWith("fb:base."))
+			return false;
+		final String popularity = tokens[2];
+		final String text = tokens[3].toLowerCase();
+
+		// add to index
+		final Document doc = new Document();
+		doc.add(new StringField(FbIndexField.MID.fieldName(), mid, Field.Store.YES));
+		doc.add(new StringField(FbIndexField.ID.fieldName(), id, Field.Store.YES));
+		doc.add(new StoredField(FbIndexField.POPULARITY.fieldName(), popularity));
+		doc.add(new TextField(FbIndexField.TEXT.fieldName(), text, Field.Store.YES));
+		if (tokens.length > 4)
+			doc.add(new StoredField(FbIndexField.TYPES.fieldName(), tokens[4]));
+		indexer.addDocument(doc);
+		return true;
+	}
+
+	// Usage: FbEntityIndexer <name file> <output dir> <exact|inexact> [number of threads]
 	public static void main(final String[] args) throws IOException
 	{
-		final FbEntityIndexer fbni = new FbEntityIndexer(args[0], args[1], args[2]);
+		final FbEntityIndexer fbni = new FbEntityIndexer(args[0], args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : 1);
 		fbni.index();
 	}
 }
@@ -1,14 +1,19 @@
 package edu.stanford.nlp.sempre.freebase.index;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import fig.basic.LogInfo;
 import fig.basic.StopWatch;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
@@ -22,15 +27,29 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
 
+/**
+ * Searches the Lucene index of Freebase entity names.
+ * <p>
+ * Safe to use from several threads: the IndexSearcher is shared (Lucene searchers are thread-safe), each thread gets its own QueryParser (which is not), and
+ * the top documents of recent queries are kept in a bounded concurrent cache.
+ */
 public class FbEntitySearcher
 {
+	public static final int DEFAULT_CACHE_SIZE = 10000;
 
-	private final QueryParser queryParser;
+	private final ThreadLocal<QueryParser> queryParser;
 	private final IndexSearcher indexSearcher;
-	private int numOfDocs = 50;
+	private final int numOfDocs;
 	private final String searchStrategy;
+	// query => top documents
+	private final Cache<String, List<Document>> cache;
 
 	public FbEntitySearcher(final String indexDir, final int numOfDocs, final String searchingStrategy) throws IOException
+	{
+		this(indexDir, numOfDocs, searchingStrategy, DEFAULT_CACHE_SIZE);
+	}
+
+	public FbEntitySearcher(final String indexDir, final int numOfDocs, final String searchingStrategy, final int cacheSize) throws IOException
 	{
 
 		LogInfo.begin_track("Constructing Searcher");
@@ -38,41 +57,77 @@ public class FbEntitySearcher
 			throw new RuntimeException("Bad searching strategy: " + searchingStrategy);
 		searchStrategy = searchingStrategy;
 
-		queryParser = new QueryParser(Version.LUCENE_44, FbIndexField.TEXT.fieldName(), searchingStrategy.equals("exact") ? new KeywordAnalyzer() : new StandardAnalyzer(Version.LUCENE_44));
+		final Analyzer analyzer = searchingStrategy.equals("exact") ? new KeywordAnalyzer() : new StandardAnalyzer(Version.LUCENE_44);
+		queryParser = ThreadLocal.withInitial(() -> new QueryParser(Version.LUCENE_44, FbIndexField.TEXT.fieldName(), analyzer));
 		LogInfo.log("Opening index dir: " + indexDir);
 		final IndexReader indexReader = DirectoryReader.open(FSDirectory.open(new File(indexDir)));
 		indexSearcher = new IndexSearcher(indexReader);
 		LogInfo.log("Opened index with " + indexReader.numDocs() + " documents.");
 
 		this.numOfDocs = numOfDocs;
+		cache = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build() : null;
 		LogInfo.end_track();
 	}
 
-	public synchronized List<Document> searchDocs(String question) throws IOException, ParseException
+	/**
+	 * Return the top documents for |question| (already normalized by the caller). The returned list is shared through the cache and must not be modified.
+	 */
+	public List<Document> searchDocs(final String question) throws IOException, ParseException
 	{
+		if (cache == null)
+			return doSearchDocs(question);
+		List<Document> res = cache.getIfPresent(question);
+		if (res == null)
+		{
+			res = doSearchDocs(question);
+			cache.put(question, res);
+		}
+		return res;
+	}
 
-		final List<Document> res = new LinkedList<>();
+	private List<Document> doSearchDocs(String question) throws IOException, ParseException
+	{
 		if (searchStrategy.equals("exact"))
 			question = "\"" + question + "\"";
 
 		final ScoreDoc[] hits = getHits(question);
 
+		final List<Document> res = new ArrayList<>(hits.length);
 		for (final ScoreDoc hit : hits)
 		{
 			final int docId = hit.doc;
 			final Document doc = indexSearcher.doc(docId);
 			res.add(doc);
 		}
-		return res;
+		return Collections.unmodifiableList(res);
 	}
 
 	private ScoreDoc[] getHits(final String question) throws IOException, ParseException
 	{
-		final Query luceneQuery = queryParser.parse(question);
+		final Query luceneQuery = queryParser.get().parse(question);
 		final ScoreDoc[] hits = indexSearcher.search(luceneQuery, numOfDocs).scoreDocs;
 		return hits;
 	}
 
+	public String getSearchStrategy()
+	{
+		return searchStrategy;
+	}
+
+	// Return null if caching is disabled.
+	public CacheStats getCacheStats()
+	{
+		return cache == null ? null : cache.stats();
+	}
+
+	public void logCacheStats()
+	{
+		final CacheStats stats = getCacheStats();
+		if (stats == null)
+			return;
+		LogInfo.logs("FbEntitySearcher(%s) cache: size=%d, hits=%d, misses=%d, hitRate=%.3f, evictions=%d", searchStrategy, cache.size(), stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount());
+	}
+
 	public static void main(final String[] args) throws IOException, ParseException
 	{
 
@@ -99,6 +154,7 @@ public class FbEntitySearcher
 			for (final Document doc : docs)
 				LogInfo.log("Mid: " + doc.get(FbIndexField.MID.fieldName()) + "\t" + "id: " + doc.get(FbIndexField.ID.fieldName()) + "\t" + "types: " + doc.get(FbIndexField.TYPES.fieldName()) + "\t" + "Name: " + doc.get(FbIndexField.TEXT.fieldName()) + "\t" + "Popularity: " + doc.get(FbIndexField.POPULARITY.fieldName()));
 			LogInfo.logs("Number of docs: %s, Time: %s", docs.size(), watch);
+			searcher.logCacheStats();
 		}
 	}
 }
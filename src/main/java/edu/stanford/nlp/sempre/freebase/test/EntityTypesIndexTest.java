@@ -0,0 +1,102 @@
+package edu.stanford.nlp.sempre.freebase.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+
+import edu.stanford.nlp.sempre.SemTypeHierarchy;
+import edu.stanford.nlp.sempre.freebase.BuildEntityTypesIndex;
+import edu.stanford.nlp.sempre.freebase.EntityTypesIndex;
+import edu.stanford.nlp.sempre.freebase.FreebaseInfo;
+import edu.stanford.nlp.sempre.freebase.FreebaseTypeLookup;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+/**
+ * Test the compact entity types index against the entity types cache it is built from.
+ */
+public class EntityTypesIndexTest
+{
+	private static Path buildIndex(final Path dir) throws IOException
+	{
+		final Path cache = dir.resolve("entity-types.cache");
+		Files.write(cache, Arrays.asList( //
+				"fb:en.barack_obama\tfb:people.person,fb:common.topic", //
+				"fb:en.michelle_obama\tfb:people.person,fb:common.topic", //
+				"fb:en.chicago\tfb:location.location", //
+				"fb:en.zürich\tfb:location.citytown", //
+				"fb:en.chicago\tfb:location.citytown,fb:location.location"), StandardCharsets.UTF_8); // Overrides the earlier line
+		final BuildEntityTypesIndex builder = new BuildEntityTypesIndex();
+		builder.inPath = cache.toString();
+		builder.outPath = dir.resolve("entity-types.index").toString();
+		builder.run();
+		return cache;
+	}
+
+	@Test
+	public void index() throws IOException
+	{
+		final Path dir = Files.createTempDirectory("entity-types");
+		buildIndex(dir);
+		for (final boolean mmap : new boolean[] { false, true })
+		{
+			final EntityTypesIndex index = EntityTypesIndex.read(dir.resolve("entity-types.index").toString(), mmap);
+			assertEquals(4, index.numEntities());
+			assertEquals(3, index.numTypeSets());
+			assertEquals(index.getTypeSet("fb:en.barack_obama"), index.getTypeSet("fb:en.michelle_obama"));
+			assertEquals(new HashSet<>(Arrays.asList("fb:people.person", "fb:common.topic")), index.getTypes(index.getTypeSet("fb:en.barack_obama")));
+			assertEquals(new HashSet<>(Arrays.asList("fb:location.citytown", "fb:location.location")), index.getTypes(index.getTypeSet("fb:en.chicago")));
+			assertEquals(Collections.singleton("fb:location.citytown"), index.getTypes(index.getTypeSet("fb:en.zürich")));
+			assertEquals(EntityTypesIndex.NOT_FOUND, index.getTypeSet("fb:en.nobody"));
+			assertEquals(EntityTypesIndex.NOT_FOUND, index.getTypeSet("fb:en.barack_obam"));
+		}
+	}
+
+	@Test
+	public void typeLookup() throws IOException
+	{
+		final Path dir = Files.createTempDirectory("entity-types");
+		final Path cache = buildIndex(dir);
+		SemTypeHierarchy.singleton.addEntitySupertypes("fb:people.person");
+		SemTypeHierarchy.singleton.addSupertype("fb:location.citytown", "fb:location.location");
+
+		final String[] entities = { "fb:en.barack_obama", "fb:en.michelle_obama", "fb:en.chicago", "fb:en.zürich", "fb:en.nobody" };
+		final String oldTypesPath = FreebaseTypeLookup.opts.entityTypesPath, oldIndexPath = FreebaseTypeLookup.opts.entityTypesIndexPath;
+		try
+		{
+			final FreebaseTypeLookup lookup = new FreebaseTypeLookup();
+			FreebaseTypeLookup.opts.entityTypesPath = cache.toString();
+			final String[] expected = new String[entities.length];
+			final List<Set<String>> expectedTypes = new ArrayList<>();
+			for (int i = 0; i < entities.length; i++)
+			{
+				expected[i] = lookup.getEntityType(entities[i]).toString();
+				expectedTypes.add(lookup.getEntityTypes(entities[i]));
+			}
+			assertEquals("fb:people.person", expected[0]);
+			assertEquals("fb:location.citytown", expected[2]);
+			assertEquals(FreebaseInfo.ENTITY, expected[4]);
+
+			FreebaseTypeLookup.opts.entityTypesIndexPath = dir.resolve("entity-types.index").toString();
+			for (int i = 0; i < entities.length; i++)
+			{
+				assertEquals(expected[i], lookup.getEntityType(entities[i]).toString());
+				assertEquals(expectedTypes.get(i), lookup.getEntityTypes(entities[i]));
+			}
+			assertSame(lookup.getEntityType(entities[0]), lookup.getEntityType(entities[1]));
+		}
+		finally
+		{
+			FreebaseTypeLookup.opts.entityTypesPath = oldTypesPath;
+			FreebaseTypeLookup.opts.entityTypesIndexPath = oldIndexPath;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package edu.stanford.nlp.sempre.freebase.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.Formulas;
+import edu.stanford.nlp.sempre.ListValue;
+import edu.stanford.nlp.sempre.NameValue;
+import edu.stanford.nlp.sempre.Value;
+import edu.stanford.nlp.sempre.freebase.SparqlExecutor;
+import fig.basic.LispTree;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.testng.annotations.Test;
+
+/**
+ * Test the extraction and caching of SPARQL results, using a local server that answers every query with the same results.
+ */
+public class SparqlResultsTest
+{
+	private static final String RESULTS = "<?xml version=\"1.0\"?>\n" //
+			+ "<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n" //
+			+ " <head><variable name=\"VAR\"/><variable name=\"VARname\"/></head>\n" //
+			+ " <results distinct=\"false\" ordered=\"true\">\n" //
+			+ "  <result><binding name=\"VAR\"><uri>http://rdf.freebase.com/ns/en.malia_obama</uri></binding>" //
+			+ "<binding name=\"VARname\"><literal xml:lang=\"en\">Malia Ann\n Obama</literal></binding></result>\n" //
+			+ "  <result><binding name=\"VAR\"><uri>http://rdf.freebase.com/ns/en.sasha_obama</uri></binding>" //
+			+ "<binding name=\"VARname\"><literal>Sasha &amp; Natasha</literal></binding></result>\n" //
+			+ " </results>\n" //
+			+ "</sparql>\n";
+
+	private static HttpServer startServer(final AtomicInteger numRequests) throws IOException
+	{
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/sparql", exchange ->
+		{
+			numRequests.incrementAndGet();
+			// Name the results after the first selected variable.
+			final String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+			final Matcher matcher = Pattern.compile("SELECT.*?\\?(\\w+)").matcher(query);
+			final String var = matcher.find() ? matcher.group(1) : "x";
+			final byte[] body = RESULTS.replace("VAR", var).getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(body);
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private static void checkValue(final Value value)
+	{
+		final ListValue list = (ListValue) value;
+		assertEquals(2, list.values.size());
+		assertEquals("fb:en.malia_obama", ((NameValue) list.values.get(0))._id);
+		assertEquals("Malia Ann Obama", ((NameValue) list.values.get(0))._description); // Line breaks are dropped
+		assertEquals("fb:en.sasha_obama", ((NameValue) list.values.get(1))._id);
+		assertEquals("Sasha & Natasha", ((NameValue) list.values.get(1))._description);
+	}
+
+	@Test
+	public void results() throws IOException
+	{
+		final AtomicInteger numRequests = new AtomicInteger();
+		final HttpServer server = startServer(numRequests);
+		final SparqlExecutor.Options opts = SparqlExecutor.opts;
+		final String oldEndpointUrl = opts.endpointUrl, oldCachePath = opts.cachePath;
+		final boolean oldCacheValues = opts.cacheValues, oldStreamingResults = opts.streamingResults;
+		try
+		{
+			opts.endpointUrl = "http://localhost:" + server.getAddress().getPort() + "/sparql";
+			final Formula formula = Formulas.fromLispTree(LispTree.proto.parseFromString("(!fb:people.person.children fb:en.barack_obama)"));
+
+			// DOM and streaming parsers
+			opts.cacheValues = false;
+			opts.streamingResults = false;
+			checkValue(new SparqlExecutor().execute(formula, null).value);
+			opts.streamingResults = true;
+			checkValue(new SparqlExecutor().execute(formula, null).value);
+			assertEquals(2, numRequests.get());
+
+			// Cache the values: the second executor doesn't hit the server.
+			final Path cache = Files.createTempFile("sparql", ".cache");
+			opts.cachePath = cache.toString();
+			opts.cacheValues = true;
+			checkValue(new SparqlExecutor().execute(formula, null).value);
+			checkValue(new SparqlExecutor().execute(formula, null).value);
+			assertEquals(3, numRequests.get());
+			final String contents = new String(Files.readAllBytes(cache), StandardCharsets.UTF_8);
+			assertTrue(contents, contents.contains("\tVALUES\t") && !contents.contains("<sparql"));
+
+			// Cached XML is still read.
+			opts.cacheValues = false;
+			final Path xmlCache = Files.createTempFile("sparql", ".cache");
+			opts.cachePath = xmlCache.toString();
+			checkValue(new SparqlExecutor().execute(formula, null).value);
+			opts.cacheValues = true;
+			checkValue(new SparqlExecutor().execute(formula, null).value);
+			assertEquals(4, numRequests.get());
+		}
+		finally
+		{
+			opts.endpointUrl = oldEndpointUrl;
+			opts.cachePath = oldCachePath;
+			opts.cacheValues = oldCacheValues;
+			opts.streamingResults = oldStreamingResults;
+			server.stop(0);
+		}
+	}
+}
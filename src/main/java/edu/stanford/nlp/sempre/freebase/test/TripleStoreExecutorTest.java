@@ -0,0 +1,168 @@
+package edu.stanford.nlp.sempre.freebase.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import edu.stanford.nlp.sempre.ErrorValue;
+import edu.stanford.nlp.sempre.Formulas;
+import edu.stanford.nlp.sempre.ListValue;
+import edu.stanford.nlp.sempre.NameValue;
+import edu.stanford.nlp.sempre.Value;
+import edu.stanford.nlp.sempre.freebase.TripleStore;
+import edu.stanford.nlp.sempre.freebase.TripleStoreExecutor;
+import fig.basic.LispTree;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+/**
+ * Test execution of Formulas on a small in-memory TripleStore.
+ */
+public class TripleStoreExecutorTest
+{
+	private static final List<String> TRIPLES = Arrays.asList( //
+			"@prefix fb: <http://rdf.freebase.com/ns/>.", //
+			"fb:people.person.height_meters\tfb:type.property.unit\tfb:en.meter.", //
+			"fb:en.barack_obama\tfb:type.object.name\t\"Barack Obama\"@en.", //
+			"fb:en.michelle_obama\tfb:type.object.name\t\"Michelle Obama\"@en.", //
+			"fb:en.barack_obama\tfb:type.object.type\tfb:people.person.", //
+			"fb:en.michelle_obama\tfb:type.object.type\tfb:people.person.", //
+			"fb:en.sasha_obama\tfb:type.object.type\tfb:people.person.", //
+			"fb:en.malia_obama\tfb:type.object.type\tfb:people.person.", //
+			"fb:en.barack_obama\tfb:people.person.children\tfb:en.sasha_obama.", //
+			"fb:en.barack_obama\tfb:people.person.children\tfb:en.malia_obama.", //
+			"fb:en.michelle_obama\tfb:people.person.children\tfb:en.sasha_obama.", //
+			"fb:en.michelle_obama\tfb:people.person.children\tfb:en.malia_obama.", //
+			"fb:en.barack_obama\tfb:people.person.date_of_birth\t\"1961-08-04\"^^xsd:datetime.", //
+			"fb:en.michelle_obama\tfb:people.person.date_of_birth\t\"1964-01-17\"^^xsd:datetime.", //
+			"fb:en.malia_obama\tfb:people.person.date_of_birth\t\"1998-07-04\"^^xsd:datetime.", //
+			"fb:en.sasha_obama\tfb:people.person.date_of_birth\t\"2001-06-10\"^^xsd:datetime.", //
+			"fb:en.barack_obama\tfb:people.person.height_meters\t\"1.85\"^^xsd:double.", //
+			"fb:en.michelle_obama\tfb:people.person.height_meters\t\"1.8\"^^xsd:double.", //
+			"fb:en.malia_obama\tfb:people.person.height_meters\t\"1.85\"^^xsd:double.", //
+			"fb:en.barack_obama\tfb:people.person.spouse_s\tfb:m.marriage.", // CVT
+			"fb:en.michelle_obama\tfb:people.person.spouse_s\tfb:m.marriage.", //
+			"fb:m.marriage\tfb:people.marriage.spouse\tfb:en.barack_obama.", //
+			"fb:m.marriage\tfb:people.marriage.spouse\tfb:en.michelle_obama.", //
+			"fb:m.marriage\tfb:people.marriage.from\t\"1992-10-03\"^^xsd:datetime.", //
+			"fb:en.barack_obama\tfb:people.person.children\tfb:en.sasha_obama." // Duplicate
+	);
+
+	private static TripleStoreExecutor executor;
+
+	private static synchronized TripleStoreExecutor getExecutor() throws IOException
+	{
+		if (executor == null)
+		{
+			final Path path = Files.createTempFile("triples", ".ttl");
+			Files.write(path, TRIPLES, StandardCharsets.UTF_8);
+			executor = new TripleStoreExecutor(TripleStore.read(path.toString()));
+		}
+		return executor;
+	}
+
+	private static Value execute(final String formula) throws IOException
+	{
+		return getExecutor().execute(Formulas.fromLispTree(LispTree.proto.parseFromString(formula)), null).value;
+	}
+
+	private static void check(final String formula, final String... expected) throws IOException
+	{
+		final Value value = execute(formula);
+		assertTrue(formula + " => " + value, value instanceof ListValue);
+		final Set<Value> expectedValues = new HashSet<>();
+		for (final String s : expected)
+			expectedValues.add(Value.fromString(s));
+		final List<Value> values = ((ListValue) value).values;
+		assertEquals(formula + " => " + value, expectedValues.size(), values.size());
+		assertEquals(formula + " => " + value, expectedValues, new HashSet<>(values));
+	}
+
+	@Test
+	public void store() throws IOException
+	{
+		final TripleStore store = getExecutor().getStore();
+		assertEquals(TRIPLES.size() - 2, store.size()); // Without the prefix and the duplicate
+		final int obama = store.getId("fb:en.barack_obama");
+		final int children = store.getId("fb:people.person.children");
+		assertEquals(2, store.getArg2s(obama, children).length);
+		assertEquals(2, store.getArg1s(children, store.getId("fb:en.sasha_obama")).length);
+		final int[] count = new int[1];
+		store.match(obama, TripleStore.UNBOUND, store.getId("fb:m.marriage"), (s, p, o) -> count[0]++);
+		assertEquals(1, count[0]);
+	}
+
+	@Test
+	public void joins() throws IOException
+	{
+		check("fb:en.barack_obama", "(name fb:en.barack_obama)");
+		check("(fb:people.person.children fb:en.sasha_obama)", "(name fb:en.barack_obama)", "(name fb:en.michelle_obama)");
+		check("(!fb:people.person.children fb:en.barack_obama)", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("((reverse fb:people.person.children) fb:en.barack_obama)", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("(!fb:people.person.height_meters fb:en.barack_obama)", "(number 1.85 fb:en.meter)");
+		check("(fb:people.person.height_meters (number 1.85))", "(name fb:en.barack_obama)", "(name fb:en.malia_obama)");
+		check("(!fb:people.person.date_of_birth fb:en.malia_obama)", "(date 1998 7 4)");
+		// Through a CVT
+		check("(and (fb:type.object.type fb:people.person) (!fb:people.marriage.spouse (!fb:people.person.spouse_s fb:en.barack_obama)))", "(name fb:en.barack_obama)", "(name fb:en.michelle_obama)");
+		check("(!fb:people.marriage.from (and (fb:people.marriage.spouse fb:en.barack_obama) (fb:people.marriage.spouse fb:en.michelle_obama)))", "(date 1992 10 3)");
+		check("(or fb:en.sasha_obama (!fb:people.person.children fb:en.michelle_obama))", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("(and (!fb:people.person.children fb:en.barack_obama) (not fb:en.sasha_obama))", "(name fb:en.malia_obama)");
+		assertEquals("Barack Obama", ((NameValue) ((ListValue) execute("fb:en.barack_obama")).values.get(0))._description);
+	}
+
+	@Test
+	public void comparisons() throws IOException
+	{
+		check("(and (fb:type.object.type fb:people.person) (fb:people.person.date_of_birth (date 1998 -1 -1)))", "(name fb:en.malia_obama)");
+		check("(and (fb:type.object.type fb:people.person) (fb:people.person.date_of_birth (> (date 1998 -1 -1))))", "(name fb:en.sasha_obama)");
+		check("(and (fb:type.object.type fb:people.person) (fb:people.person.date_of_birth (<= (date 1964 -1 -1))))", "(name fb:en.barack_obama)", "(name fb:en.michelle_obama)");
+		check("(fb:people.person.height_meters (< (number 1.85)))", "(name fb:en.michelle_obama)");
+		check("(fb:people.person.height_meters (>= (number 1.85)))", "(name fb:en.barack_obama)", "(name fb:en.malia_obama)");
+	}
+
+	@Test
+	public void aggregates() throws IOException
+	{
+		check("(count (!fb:people.person.children fb:en.barack_obama))", "(number 2)");
+		check("(count (fb:people.person.children (!fb:people.person.children fb:en.barack_obama)))", "(number 2)");
+		check("(max (!fb:people.person.height_meters (fb:type.object.type fb:people.person)))", "(number 1.85 fb:en.meter)");
+		check("(sum (!fb:people.person.height_meters (!fb:people.person.children fb:en.barack_obama)))", "(number 1.85 fb:en.meter)");
+		check("(min (!fb:people.person.date_of_birth (fb:type.object.type fb:people.person)))", "(date 1961 8 4)");
+		check("(- (!fb:people.person.date_of_birth fb:en.sasha_obama) (!fb:people.person.date_of_birth fb:en.barack_obama))", "(number 40 fb:en.year)");
+		check("(+ (number 1) (number 2))", "(number 3)");
+	}
+
+	@Test
+	public void superlatives() throws IOException
+	{
+		// argmax 1 1 keeps ties
+		check("(argmax 1 1 (fb:type.object.type fb:people.person) fb:people.person.height_meters)", "(name fb:en.barack_obama)", "(name fb:en.malia_obama)");
+		check("(argmin 1 1 (fb:type.object.type fb:people.person) fb:people.person.date_of_birth)", "(name fb:en.barack_obama)");
+		check("(argmax 2 1 (fb:type.object.type fb:people.person) fb:people.person.date_of_birth)", "(name fb:en.malia_obama)");
+		check("(argmax 1 2 (fb:type.object.type fb:people.person) fb:people.person.date_of_birth)", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("(argmax 1 1 (fb:type.object.type fb:people.person) (reverse (lambda x (count (!fb:people.person.children (var x))))))", "(name fb:en.barack_obama)", "(name fb:en.michelle_obama)");
+	}
+
+	@Test
+	public void lambdas() throws IOException
+	{
+		check("((lambda x (!fb:people.person.children (var x))) fb:en.barack_obama)", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("((reverse (lambda x (fb:people.person.children (var x)))) fb:en.michelle_obama)", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("(lambda x (fb:people.person.children (var x)))", "(name fb:en.sasha_obama)", "(name fb:en.malia_obama)");
+		check("(mark x (fb:people.person.spouse_s (fb:people.marriage.spouse (var x))))", "(name fb:en.barack_obama)", "(name fb:en.michelle_obama)");
+	}
+
+	@Test
+	public void errors() throws IOException
+	{
+		assertTrue(execute("(not fb:en.barack_obama)") instanceof ErrorValue);
+		assertTrue(execute("(< (number 3))") instanceof ErrorValue);
+		check("(fb:people.person.children fb:en.nobody)");
+	}
+}
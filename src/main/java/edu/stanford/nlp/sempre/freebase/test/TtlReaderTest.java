@@ -0,0 +1,172 @@
+package edu.stanford.nlp.sempre.freebase.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import edu.stanford.nlp.sempre.freebase.BuildCanonicalIdMap;
+import edu.stanford.nlp.sempre.freebase.BuildTypesMap;
+import edu.stanford.nlp.sempre.freebase.CanonicalizeIds;
+import edu.stanford.nlp.sempre.freebase.FilterFreebase;
+import edu.stanford.nlp.sempre.freebase.TtlReader;
+import fig.exec.Execution;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.testng.annotations.Test;
+
+/**
+ * Test that the Freebase preprocessing tools write the same files whether TtlReader reads their input on one thread or in small chunks on several threads.
+ */
+public class TtlReaderTest
+{
+	// A raw Freebase dump: blocks of triples per mid, with keys, types, names, numbers and triples that the tools filter out.
+	private static List<String> rawLines()
+	{
+		final List<String> lines = new ArrayList<>();
+		lines.add("@prefix ns: <http://rdf.freebase.com/ns/>.");
+		lines.add("ns:people.person\tns:type.object.type\tns:type.type.");
+		lines.add("ns:location.location\tns:type.object.type\tns:type.type.");
+		for (int i = 0; i < 60; i++)
+		{
+			final String mid = "ns:m.0e" + i;
+			if (i % 5 != 0)
+				lines.add(mid + "\tns:type.object.key\t\"/wikipedia/en/Entity_" + i + "\".");
+			if (i % 3 != 0)
+				lines.add(mid + "\tns:type.object.key\t\"/en/entity_" + i + "\".");
+			if (i % 7 == 0)
+				lines.add(mid + "\tns:type.object.key\t\"/people/person\".");
+			lines.add(mid + "\tns:type.object.type\t" + (i % 2 == 0 ? "ns:people.person" : "ns:location.location") + ".");
+			lines.add(mid + "\tns:type.object.name\t\"Entity " + i + "\"@en.");
+			lines.add(mid + "\tns:type.object.name\t\"Entité " + i + "\"@fr.");
+			lines.add(mid + "\tns:people.person.height_meters\t1." + i + ".");
+			lines.add(mid + "\tns:people.person.age\t" + i + ".");
+			lines.add(mid + "\tns:location.location.contains\tns:m.0e" + (i + 1) + ".");
+			if (i % 4 == 0)
+			{
+				lines.add(mid + "\tns:common.topic.official_website\t<http://example.com/" + i + ">.");
+				lines.add(mid + "\tns:common.topic.alias\tns:m.$0e" + i + ".");
+				lines.add(mid + "\tns:people.person.spouse_s..people.marriage.spouse\tns:m.0e" + (i + 2) + ".");
+				lines.add("ns:people.person\tns:type.type.instance\t" + mid + ".");
+				lines.add(mid + "\trdf:type\tns:common.topic.");
+				lines.add("not a triple");
+			}
+		}
+		return lines;
+	}
+
+	private static File gzip(final File file) throws IOException
+	{
+		final File gz = new File(file.getPath() + ".gz");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz.toPath())))
+		{
+			Files.copy(file.toPath(), out);
+		}
+		return gz;
+	}
+
+	// Run the pipeline (canonical id map, canonicalized dump, types map, filtered dump) and return the contents of the output files.
+	private static Map<String, byte[]> runTools(final File raw, final boolean gz, final int maxInputLines, final int numThreads) throws IOException
+	{
+		final File dir = Files.createTempDirectory("sempre-ttl").toFile();
+		final String input = gz ? gzip(raw).getPath() : raw.getPath();
+
+		final BuildCanonicalIdMap buildCanonicalIdMap = new BuildCanonicalIdMap();
+		buildCanonicalIdMap.rawPath = input;
+		buildCanonicalIdMap.canonicalIdMapPath = new File(dir, "canonicalIdMap").getPath();
+		buildCanonicalIdMap.maxInputLines = maxInputLines;
+		buildCanonicalIdMap.numThreads = numThreads;
+		buildCanonicalIdMap.run();
+
+		final CanonicalizeIds canonicalizeIds = new CanonicalizeIds();
+		canonicalizeIds.rawPath = input;
+		canonicalizeIds.canonicalIdMapPath = buildCanonicalIdMap.canonicalIdMapPath;
+		canonicalizeIds.canonicalizedPath = new File(dir, "canonicalized.ttl").getPath();
+		canonicalizeIds.maxInputLines = maxInputLines;
+		canonicalizeIds.numThreads = numThreads;
+		canonicalizeIds.run();
+		final File canonicalized = new File(canonicalizeIds.canonicalizedPath);
+		final String canonicalizedInput = gz ? gzip(canonicalized).getPath() : canonicalized.getPath();
+
+		final BuildTypesMap buildTypesMap = new BuildTypesMap();
+		buildTypesMap.inPath = canonicalizedInput;
+		buildTypesMap.outPath = new File(dir, "types").getPath();
+		buildTypesMap.keepOnlyEnIds = false;
+		buildTypesMap.maxInputLines = maxInputLines;
+		buildTypesMap.numThreads = numThreads;
+		buildTypesMap.run();
+
+		final File keepProperties = new File(dir, "keep");
+		Files.write(keepProperties.toPath(), Arrays.asList("fb:people.person.height_meters", "fb:location.location.contains", "fb:common.topic.alias"), StandardCharsets.UTF_8);
+		final File execDir = new File(dir, "exec");
+		execDir.mkdirs();
+		final String oldExecDir = Execution.execDir;
+		try
+		{
+			Execution.execDir = execDir.getPath();
+			final FilterFreebase filterFreebase = new FilterFreebase();
+			filterFreebase.inPath = canonicalizedInput;
+			filterFreebase.keepPropertiesPaths = Arrays.asList(keepProperties.getPath());
+			filterFreebase.keepGeneralPropertiesOnlyForSeenEntities = true;
+			filterFreebase.maxInputLines = maxInputLines;
+			filterFreebase.numThreads = numThreads;
+			filterFreebase.run();
+		}
+		finally
+		{
+			Execution.execDir = oldExecDir;
+		}
+
+		final Map<String, byte[]> outputs = new LinkedHashMap<>();
+		for (final File file : new File[] { new File(buildCanonicalIdMap.canonicalIdMapPath), canonicalized, new File(buildTypesMap.outPath), new File(execDir, "0.ttl"), new File(execDir, "propertyCounts") })
+			outputs.put(file.getName(), Files.readAllBytes(file.toPath()));
+		return outputs;
+	}
+
+	@Test
+	public void sameAsSequential() throws IOException
+	{
+		final File raw = File.createTempFile("raw", ".ttl");
+		raw.deleteOnExit();
+		final List<String> lines = rawLines();
+		Files.write(raw.toPath(), lines, StandardCharsets.UTF_8);
+
+		final int chunkBytes = TtlReader.opts.chunkBytes, chunkLines = TtlReader.opts.chunkLines;
+		try
+		{
+			for (final boolean gz : new boolean[] { false, true })
+				for (final int maxInputLines : new int[] { Integer.MAX_VALUE, lines.size() / 2 })
+				{
+					final String message = (gz ? "gz" : "plain") + " maxInputLines=" + maxInputLines + ": ";
+					// One chunk (the default chunks are larger than the file) on one thread
+					TtlReader.opts.chunkBytes = chunkBytes;
+					TtlReader.opts.chunkLines = chunkLines;
+					final Map<String, byte[]> expected = runTools(raw, gz, maxInputLines, 1);
+					// Chunks of a few lines (byte chunks end in the middle of lines) on several threads
+					TtlReader.opts.chunkBytes = 100;
+					TtlReader.opts.chunkLines = 3;
+					final Map<String, byte[]> actual = runTools(raw, gz, maxInputLines, 4);
+
+					assertEquals(expected.keySet(), actual.keySet());
+					for (final String name : expected.keySet())
+					{
+						assertTrue(message + name + " is empty", expected.get(name).length > 0);
+						assertEquals(message + name, new String(expected.get(name), StandardCharsets.UTF_8), new String(actual.get(name), StandardCharsets.UTF_8));
+						assertTrue(message + name, Arrays.equals(expected.get(name), actual.get(name)));
+					}
+				}
+		}
+		finally
+		{
+			TtlReader.opts.chunkBytes = chunkBytes;
+			TtlReader.opts.chunkLines = chunkLines;
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package edu.stanford.nlp.sempre.interactive;
+
+import edu.stanford.nlp.sempre.Metrics;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends lines to log files (query, response and citation logs, induced grammar) from a single background thread, so that request threads never open or
+ * sync files themselves.
+ * <p>
+ * append() only enqueues the line (blocking if the bounded queue is full). The writer thread keeps recently used files open, writes everything that has queued
+ * up in one batch, and syncs the written files to disk together (group commit), at most every syncInterval milliseconds. Files that grow past maxFileBytes are
+ * rotated to path.1, path.2, ... Lines for the same file are written in the order they were appended.
+ * <p>
+ * Failed writes, syncs and closes are reported with LogInfo.errors and counted (getNumFailures(), and the sempre_append_log_failures_total metric); lines that
+ * could not be written are not counted as written. The queue depth and the append-to-write latency are exported in Metrics.
+ */
+public class AsyncAppendLog
+{
+	public static class Options
+	{
+		@Option(gloss = "Maximum number of lines waiting to be written")
+		public int queueSize = 10000;
+		@Option(gloss = "Sync the log files to disk at most this often (in milliseconds; 0 to sync after every batch)")
+		public int syncInterval = 1000;
+		@Option(gloss = "Rotate a log file once it is larger than this many bytes (0 to never rotate)")
+		public long maxFileBytes = 0;
+		@Option(gloss = "Number of rotated files to keep for each log")
+		public int maxRotatedFiles = 10;
+		@Option(gloss = "Maximum number of log files kept open")
+		public int maxOpenFiles = 64;
+	}
+
+	public static Options opts = new Options();
+
+	private static AsyncAppendLog singleton;
+
+	public static synchronized AsyncAppendLog getSingleton()
+	{
+		if (singleton == null)
+		{
+			singleton = new AsyncAppendLog();
+			Runtime.getRuntime().addShutdownHook(new Thread(singleton::close));
+		}
+		return singleton;
+	}
+
+	// A line to write, or a marker asking the writer to sync everything written so far (and stop if |close|).
+	private static class Entry
+	{
+		final String path;
+		final String line;
+		final long enqueueTime = System.nanoTime();
+		final CountDownLatch done;
+		final boolean close;
+
+		Entry(final String path, final String line)
+		{
+			this.path = path;
+			this.line = line;
+			done = null;
+			close = false;
+		}
+
+		Entry(final boolean close)
+		{
+			path = null;
+			line = null;
+			done = new CountDownLatch(1);
+			this.close = close;
+		}
+	}
+
+	private static class LogFile
+	{
+		final File file;
+		FileOutputStream stream;
+		Writer out;
+		long size;
+		boolean unsynced;
+
+		LogFile(final File file) throws IOException
+		{
+			this.file = file;
+			open();
+		}
+
+		void open() throws IOException
+		{
+			final File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+			stream = new FileOutputStream(file, true);
+			out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+			size = file.length();
+		}
+
+		void sync() throws IOException
+		{
+			out.flush();
+			if (unsynced)
+				stream.getFD().sync();
+			unsynced = false;
+		}
+
+		void close() throws IOException
+		{
+			sync();
+			out.close();
+		}
+	}
+
+	private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(opts.queueSize);
+	private final Thread writerThread;
+	private volatile boolean closed;
+
+	// Only accessed by the writer thread; least recently used first
+	private final Map<String, LogFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+	private long lastSyncTime = System.nanoTime();
+
+	// Statistics
+	private final AtomicLong numLinesWritten = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong(); // nanoseconds from append() to written
+	private volatile long maxLatency;
+	private final AtomicLong numSyncs = new AtomicLong();
+	private final AtomicLong numFailures = new AtomicLong();
+
+	public AsyncAppendLog()
+	{
+		writerThread = new Thread(this::writeLoop, "AsyncAppendLog");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Append |line| to the file at |path| (creating the file and its directories if needed).
+	 */
+	public void append(final String path, final String line)
+	{
+		if (closed)
+		{
+			// Late writes (e.g., during shutdown) go straight to the file
+			appendNow(path, line);
+			return;
+		}
+		try
+		{
+			queue.put(new Entry(path, line));
+			Metrics.appendLogQueueDepth.get().add(1);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			appendNow(path, line);
+		}
+	}
+
+	/**
+	 * Wait until everything appended so far has been written and synced.
+	 */
+	public void flush()
+	{
+		if (!closed)
+			sendMarker(false);
+	}
+
+	/**
+	 * Write and sync everything that is queued, then close the files and stop the writer thread. Later appends are written synchronously.
+	 */
+	public synchronized void close()
+	{
+		if (closed)
+			return;
+		closed = true;
+		sendMarker(true);
+		try
+		{
+			writerThread.join();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		// Lines appended while the writer was stopping
+		final List<Entry> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		for (final Entry entry : remaining)
+			if (entry.done == null)
+			{
+				Metrics.appendLogQueueDepth.get().add(-1);
+				appendNow(entry.path, entry.line);
+			}
+			else
+				entry.done.countDown();
+		logStats();
+	}
+
+	public int getQueueDepth()
+	{
+		return queue.size();
+	}
+
+	public long getNumLinesWritten()
+	{
+		return numLinesWritten.get();
+	}
+
+	// Average time between append() and the line being written to the file
+	public double getMeanLatencyMs()
+	{
+		final long n = numLinesWritten.get();
+		return n == 0 ? 0 : totalLatency.get() / 1e6 / n;
+	}
+
+	public double getMaxLatencyMs()
+	{
+		return maxLatency / 1e6;
+	}
+
+	public long getNumSyncs()
+	{
+		return numSyncs.get();
+	}
+
+	// Number of failed writes, syncs and closes
+	public long getNumFailures()
+	{
+		return numFailures.get();
+	}
+
+	public void logStats()
+	{
+		LogInfo.logs("AsyncAppendLog: queueDepth=%d, linesWritten=%d, meanLatency=%.3fms, maxLatency=%.3fms, syncs=%d, failures=%d", getQueueDepth(), getNumLinesWritten(), getMeanLatencyMs(), getMaxLatencyMs(), getNumSyncs(), getNumFailures());
+	}
+
+	// ============================================================
+	// Private methods
+	// ============================================================
+
+	private void sendMarker(final boolean close)
+	{
+		final Entry marker = new Entry(close);
+		try
+		{
+			queue.put(marker);
+			marker.done.await();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void appendNow(final String path, final String line)
+	{
+		final File file = new File(path);
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		try (final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)))
+		{
+			out.println(line);
+			if (out.checkError())
+				throw new IOException("write error");
+			numLinesWritten.incrementAndGet();
+		}
+		catch (final IOException e)
+		{
+			failed("write", path, e);
+		}
+	}
+
+	private void failed(final String operation, final String path, final IOException e)
+	{
+		numFailures.incrementAndGet();
+		Metrics.appendLogFailures.get(operation).inc();
+		LogInfo.errors("AsyncAppendLog: %s of %s failed: %s", operation, path, e);
+	}
+
+	private void writeLoop()
+	{
+		final List<Entry> batch = new ArrayList<>();
+		while (true)
+		{
+			try
+			{
+				final Entry first = queue.poll(opts.syncInterval > 0 ? opts.syncInterval : 1000, TimeUnit.MILLISECONDS);
+				if (first != null)
+				{
+					batch.add(first);
+					queue.drainTo(batch);
+				}
+			}
+			catch (final InterruptedException e)
+			{
+				// Keep going: the writer only stops on a close marker
+			}
+
+			for (final Entry entry : batch)
+			{
+				if (entry.done != null)
+				{
+					syncAll();
+					if (entry.close)
+						closeAll();
+					entry.done.countDown();
+					if (entry.close)
+						return;
+					continue;
+				}
+				Metrics.appendLogQueueDepth.get().add(-1);
+				write(entry);
+			}
+			batch.clear();
+
+			if (System.nanoTime() - lastSyncTime >= opts.syncInterval * 1000000L)
+				syncAll();
+		}
+	}
+
+	private void write(final Entry entry)
+	{
+		try
+		{
+			final String text = entry.line + "\n";
+			final long numBytes = text.getBytes(StandardCharsets.UTF_8).length;
+			final LogFile logFile = getLogFile(entry.path);
+			if (opts.maxFileBytes > 0 && logFile.size > 0 && logFile.size + numBytes > opts.maxFileBytes)
+			{
+				logFile.close();
+				rotate(logFile.file);
+				logFile.open();
+			}
+			logFile.out.write(text);
+			logFile.size += numBytes;
+			logFile.unsynced = true;
+		}
+		catch (final IOException e)
+		{
+			failed("write", entry.path, e);
+			// Reopen the file for the next line
+			final LogFile logFile = openFiles.remove(entry.path);
+			if (logFile != null && logFile.out != null)
+				try
+				{
+					logFile.out.close();
+				}
+				catch (final IOException closeError)
+				{
+					// The write failure is already reported
+				}
+			return;
+		}
+		final long latency = System.nanoTime() - entry.enqueueTime;
+		numLinesWritten.incrementAndGet();
+		totalLatency.addAndGet(latency);
+		if (latency > maxLatency)
+			maxLatency = latency;
+		Metrics.appendLogLatency.get().record(latency);
+	}
+
+	private LogFile getLogFile(final String path) throws IOException
+	{
+		LogFile logFile = openFiles.get(path);
+		if (logFile == null)
+		{
+			// Close the least recently used file if there are too many
+			if (openFiles.size() >= opts.maxOpenFiles)
+			{
+				final Iterator<LogFile> it = openFiles.values().iterator();
+				final LogFile eldest = it.next();
+				it.remove();
+				try
+				{
+					eldest.close();
+				}
+				catch (final IOException e)
+				{
+					failed("close", eldest.file.getPath(), e);
+				}
+			}
+			logFile = new LogFile(new File(path));
+			openFiles.put(path, logFile);
+		}
+		return logFile;
+	}
+
+	// path.(n-1) => path.n, ..., path => path.1
+	private static void rotate(final File file)
+	{
+		final String path = file.getPath();
+		new File(path + "." + opts.maxRotatedFiles).delete();
+		for (int i = opts.maxRotatedFiles - 1; i >= 1; i--)
+		{
+			final File older = new File(path + "." + i);
+			if (older.exists())
+				older.renameTo(new File(path + "." + (i + 1)));
+		}
+		if (opts.maxRotatedFiles > 0)
+			file.renameTo(new File(path + ".1"));
+		else
+			file.delete();
+	}
+
+	private void syncAll()
+	{
+		boolean synced = false;
+		for (final LogFile logFile : openFiles.values())
+			try
+			{
+				synced |= logFile.unsynced;
+				logFile.sync();
+			}
+			catch (final IOException e)
+			{
+				failed("sync", logFile.file.getPath(), e);
+			}
+		lastSyncTime = System.nanoTime();
+		if (synced)
+			numSyncs.incrementAndGet();
+	}
+
+	private void closeAll()
+	{
+		for (final LogFile logFile : openFiles.values())
+			try
+			{
+				logFile.close();
+			}
+			catch (final IOException e)
+			{
+				failed("close", logFile.file.getPath(), e);
+			}
+		openFiles.clear();
+	}
+}
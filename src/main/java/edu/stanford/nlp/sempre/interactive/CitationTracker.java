@@ -101,8 +101,6 @@ public class CitationTracker
 		final String head = getHead(rule);
 		final String author = getAuthor(rule);
 		final String logPath = Paths.get(InteractiveUtils.opts.citationPath, encode(author), encode(head) + ".json.log").toString();
-		final File file = new File(logPath);
-		file.getParentFile().mkdirs();
 
 		final Map<String, Object> jsonMap = new LinkedHashMap<>();
 		jsonMap.put("user", uid);
@@ -113,10 +111,7 @@ public class CitationTracker
 		jsonMap.put("author", author);
 
 		final String jsonStr = Json.writeValueAsStringHard(jsonMap);
-		try (final PrintWriter out = IOUtils.openOutAppendHard(file))
-		{
-			out.println(jsonStr);
-		}
+		AsyncAppendLog.getSingleton().append(logPath, jsonStr);
 	}
 
 	public void citeAll(final Derivation deriv)
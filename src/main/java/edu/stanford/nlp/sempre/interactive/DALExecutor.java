@@ -94,6 +94,13 @@ public class DALExecutor extends Executor
 		}
 	}
 
+	// Each execution builds its own World from the context, so the formulas can be executed in parallel.
+	@Override
+	public List<Response> executeBatch(final List<Formula> formulas, final ContextValue context)
+	{
+		return executeInParallel(formulas, context);
+	}
+
 	@SuppressWarnings("rawtypes")
 	private void performActions(final ActionFormula f, final World world)
 	{
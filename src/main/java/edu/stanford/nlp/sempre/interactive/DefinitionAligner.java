@@ -66,8 +66,8 @@ public class DefinitionAligner
 			deriv = def;
 			this.start = start;
 			this.end = end;
-			deriv.grammarInfo._start = start;
-			deriv.grammarInfo._end = end;
+			deriv.getGrammarInfo()._start = start;
+			deriv.getGrammarInfo()._end = end;
 		}
 
 		Derivation deriv;
@@ -64,17 +64,17 @@ public class GrammarInducer
 	{
 		// grammarInfo start and end is used to indicate partial, when using aligner
 		boolean allHead = false;
-		if (def.grammarInfo._start == -1)
+		if (def.getGrammarInfo()._start == -1)
 		{
-			def.grammarInfo._start = 0;
-			def.grammarInfo._end = headTokens.size();
+			def.getGrammarInfo()._start = 0;
+			def.getGrammarInfo()._end = headTokens.size();
 			allHead = true;
 		}
 
 		// dont want weird cat unary rules with strange semantics
 		if (headTokens == null || headTokens.isEmpty())
 			throw new RuntimeException("The head is empty, refusing to define.");
-		chartList.removeIf(d -> d.start == def.grammarInfo._start && d.end == def.grammarInfo._end);
+		chartList.removeIf(d -> d.start == def.getGrammarInfo()._start && d.end == def.getGrammarInfo()._end);
 		this.def = def;
 
 		this.headTokens = headTokens;
@@ -199,7 +199,7 @@ public class GrammarInducer
 
 	private String varName(final Derivation anchored)
 	{
-		final int s = def.grammarInfo._start;
+		final int s = def.getGrammarInfo()._start;
 		return getNormalCat(anchored) + (anchored.start - s) + "_" + (anchored.end - s);
 	}
 
@@ -219,8 +219,8 @@ public class GrammarInducer
 		final String key = catFormulaKey(deriv);
 		if (chartMap.containsKey(key))
 		{
-			deriv.grammarInfo.matches.addAll(chartMap.get(key));
-			deriv.grammarInfo.matched = true;
+			deriv.getGrammarInfo().matches.addAll(chartMap.get(key));
+			deriv.getGrammarInfo().matched = true;
 			matches.addAll(chartMap.get(key));
 		}
 		for (final Derivation d : deriv.children)
@@ -337,24 +337,24 @@ public class GrammarInducer
 		{
 			// LogInfo.logs("Found match %s, %s, %s", catFormulaKey(deriv),
 			// replaceMap, deriv);
-			deriv.grammarInfo._formula = new VariableFormula(replaceMap.get(catFormulaKey(deriv)));
+			deriv.getGrammarInfo()._formula = new VariableFormula(replaceMap.get(catFormulaKey(deriv)));
 			return;
 		}
 		if (deriv.children.size() == 0)
-			deriv.grammarInfo._formula = deriv.formula;
+			deriv.getGrammarInfo()._formula = deriv.formula;
 
 		for (final Derivation c : deriv.children)
 			buildFormula(c, replaceMap);
-		// deriv.grammarInfo.start = Math.min(deriv.grammarInfo.start,
-		// c.grammarInfo.start);
-		// deriv.grammarInfo.end = Math.max(deriv.grammarInfo.end,
-		// c.grammarInfo.end);
+		// deriv.getGrammarInfo().start = Math.min(deriv.getGrammarInfo().start,
+		// c.getGrammarInfo().start);
+		// deriv.getGrammarInfo().end = Math.max(deriv.getGrammarInfo().end,
+		// c.getGrammarInfo().end);
 		final Rule rule = deriv.rule;
 		final List<Derivation> args = deriv.children;
 
 		// cant use the standard DerivationStream because formula is final
 		if (rule == null || rule.sem == null)
-			deriv.grammarInfo._formula = deriv.formula;
+			deriv.getGrammarInfo()._formula = deriv.formula;
 		else
 			if (rule.sem instanceof ApplyFn)
 			{
@@ -365,18 +365,18 @@ public class GrammarInducer
 						throw new RuntimeException("Expected LambdaFormula, but got " + f);
 					final Formula after = renameBoundVars(f, new HashSet<>());
 					// LogInfo.logs("renameBoundVar %s === %s", after, f);
-					f = Formulas.lambdaApply((LambdaFormula) after, arg.grammarInfo._formula);
+					f = Formulas.lambdaApply((LambdaFormula) after, arg.getGrammarInfo()._formula);
 				}
-				deriv.grammarInfo._formula = f;
+				deriv.getGrammarInfo()._formula = f;
 			}
 			else
 				if (rule.sem instanceof IdentityFn)
-					deriv.grammarInfo._formula = args.get(0).grammarInfo._formula;
+					deriv.getGrammarInfo()._formula = args.get(0).getGrammarInfo()._formula;
 				else
 					if (rule.sem instanceof BlockFn)
-						deriv.grammarInfo._formula = new ActionFormula(((BlockFn) rule.sem).mode, args.stream().map(d -> d.grammarInfo._formula).collect(Collectors.toList()));
+						deriv.getGrammarInfo()._formula = new ActionFormula(((BlockFn) rule.sem).mode, args.stream().map(d -> d.getGrammarInfo()._formula).collect(Collectors.toList()));
 					else
-						deriv.grammarInfo._formula = deriv.formula;
+						deriv.getGrammarInfo()._formula = deriv.formula;
 	}
 
 	private String newName(final String s)
@@ -412,7 +412,7 @@ public class GrammarInducer
 
 	private SemanticFn getSemantics(final Derivation def, final List<Derivation> packings)
 	{
-		Formula baseFormula = def.grammarInfo._formula;
+		Formula baseFormula = def.getGrammarInfo()._formula;
 		if (opts.verbose > 0)
 			LogInfo.logs("getSemantics %s", baseFormula);
 		if (packings.size() == 0)
@@ -446,7 +446,7 @@ public class GrammarInducer
 			for (int i = deriv.start + 1; i < deriv.end; i++)
 				rhs.set(i, null);
 		}
-		return rhs.subList(def.grammarInfo._start, def.grammarInfo._end).stream().filter(s -> s != null).collect(Collectors.toList());
+		return rhs.subList(def.getGrammarInfo()._start, def.getGrammarInfo()._end).stream().filter(s -> s != null).collect(Collectors.toList());
 	}
 
 	public static enum ParseStatus
@@ -9,6 +9,7 @@ import edu.stanford.nlp.sempre.DerivationStream;
 import edu.stanford.nlp.sempre.Example;
 import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.Json;
+import edu.stanford.nlp.sempre.Metrics;
 import edu.stanford.nlp.sempre.Params;
 import edu.stanford.nlp.sempre.Parser;
 import edu.stanford.nlp.sempre.ParserState;
@@ -321,7 +322,8 @@ class InteractiveBeamParserState extends ChartParserState
 			if (mode == Mode.full)
 			{
 				StopWatchSet.begin(rule.getSemRepn());
-				final DerivationStream results = rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, ImmutableList.copyOf(children)));
+				final long ruleStart = System.nanoTime();
+				final DerivationStream results = Metrics.recordRule(rule, ruleStart, rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, ImmutableList.copyOf(children))));
 				StopWatchSet.end();
 				while (results.hasNext())
 				{
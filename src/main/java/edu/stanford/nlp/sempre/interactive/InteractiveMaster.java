@@ -13,12 +13,10 @@ import edu.stanford.nlp.sempre.Parser;
 import edu.stanford.nlp.sempre.Rule;
 import edu.stanford.nlp.sempre.RuleSource;
 import edu.stanford.nlp.sempre.Session;
-import fig.basic.IOUtils;
 import fig.basic.LispTree;
 import fig.basic.LogInfo;
 import fig.basic.Option;
 import fig.basic.Ref;
-import java.io.PrintWriter;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -242,11 +240,11 @@ public class InteractiveMaster extends Master
 									// builder.parser.parse(builder.params, refExHead.value, false);
 									// write out the grammar
 									if (session.isWritingGrammar())
-										try (final PrintWriter out = IOUtils.openOutAppendHard(Paths.get(InteractiveMaster.opts.intOutputPath, "grammar.log.json").toString()))
-										{
-											for (final Rule rule : inducedRules)
-												out.println(rule.toJson());
-										}
+									{
+										final String grammarLogPath = Paths.get(InteractiveMaster.opts.intOutputPath, "grammar.log.json").toString();
+										for (final Rule rule : inducedRules)
+											AsyncAppendLog.getSingleton().append(grammarLogPath, rule.toJson());
+									}
 								}
 								else
 									LogInfo.logs("No rule induced for head %s", head);
@@ -259,11 +257,10 @@ public class InteractiveMaster extends Master
 							{
 								LogInfo.logs("Printing and overriding grammar and parameters...");
 								builder.params.write(Paths.get(InteractiveMaster.opts.intOutputPath, "params.params").toString());
-								try (final PrintWriter out = IOUtils.openOutAppendHard(Paths.get(InteractiveMaster.opts.intOutputPath + "grammar.final.json").toString()))
-								{
-									for (final Rule rule : builder.grammar.getRules())
-										out.println(rule.toJson());
-								}
+								final String grammarPath = Paths.get(InteractiveMaster.opts.intOutputPath + "grammar.final.json").toString();
+								for (final Rule rule : builder.grammar.getRules())
+									AsyncAppendLog.getSingleton().append(grammarPath, rule.toJson());
+								AsyncAppendLog.getSingleton().flush();
 								LogInfo.logs("Done printing and overriding grammar and parameters...");
 							}
 							else
@@ -5,15 +5,18 @@ import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import edu.stanford.nlp.sempre.CandidateStream;
+import edu.stanford.nlp.sempre.Deadline;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.ErrorValue;
 import edu.stanford.nlp.sempre.Example;
 import edu.stanford.nlp.sempre.Json;
 import edu.stanford.nlp.sempre.Master;
+import edu.stanford.nlp.sempre.Metrics;
+import edu.stanford.nlp.sempre.ParseListener;
 import edu.stanford.nlp.sempre.Session;
 import edu.stanford.nlp.sempre.StringValue;
 import edu.stanford.nlp.sempre.Value;
-import fig.basic.IOUtils;
 import fig.basic.LogInfo;
 import fig.basic.MapUtils;
 import fig.basic.Option;
@@ -65,13 +68,17 @@ public class InteractiveServer
 		public String fullResponseLogPath;
 		@Option
 		public int maxExecutionTime = 10; // in seconds
+		@Option(gloss = "Seconds to wait after maxExecutionTime for the parser to return its partial results before cancelling the query")
+		public int executionGracePeriod = 5;
+		@Option(gloss = "Number of candidates sent each time the parser has more of them, with format=stream")
+		public int streamCandidates = 10;
 	}
 
 	public static Options opts = new Options();
-	private static Object queryLogLock = new Object();
-	private static Object responseLogLock = new Object();
 	private static AtomicLong queryCounter = new AtomicLong();
 	Master master;
+	// Shared by all requests; each query runs here with a Deadline so the parser stops on its own
+	private final ExecutorService queryPool;
 
 	class Handler implements HttpHandler
 	{
@@ -143,9 +150,12 @@ public class InteractiveServer
 			if (uriPath.equals("/sempre"))
 				handleQuery(sessionId);
 			else
-			{
-				// getFile(opts.basePath + uriPath); security
-			}
+				if (uriPath.equals("/metrics"))
+					getMetrics();
+				else
+				{
+					// getFile(opts.basePath + uriPath); security
+				}
 			exchange.close();
 		}
 
@@ -174,6 +184,16 @@ public class InteractiveServer
 			exchange.sendResponseHeaders(200, 0);
 		}
 
+		// Prometheus text format, or JSON with format=json
+		void getMetrics() throws IOException
+		{
+			final boolean json = "json".equals(reqParams.get("format"));
+			setHeaders(json ? "application/json" : "text/plain; version=0.0.4");
+			final PrintWriter out = new PrintWriter(new OutputStreamWriter(exchange.getResponseBody()));
+			out.print(json ? Metrics.toJson() + "\n" : Metrics.toPrometheus());
+			out.close();
+		}
+
 		Map<String, Object> makeJson(final Master.Response response)
 		{
 			final Map<String, Object> json = new HashMap<>();
@@ -196,44 +216,65 @@ public class InteractiveServer
 					}
 
 					for (final Derivation deriv : allCandidates)
-					{
-						final Map<String, Object> item = new HashMap<>();
-						final Value value = deriv.getValue();
-						if (value instanceof StringValue)
-							item.put("value", ((StringValue) value).value);
-						else
-							if (value instanceof ErrorValue)
-								item.put("value", ((ErrorValue) value).sortString());
-							else
-								if (value != null)
-									item.put("value", value.sortString());
-								else
-									item.put("value", "[[]]");
-						item.put("score", deriv.getScore());
-						item.put("prob", deriv.getProb());
-						item.put("anchored", deriv.allAnchored); // used only anchored rules
-						item.put("formula", deriv.formula.toLispTree().toString());
-						items.add(item);
-					}
+						items.add(makeCandidateJson(deriv));
 				}
 			}
 
 			return json;
 		}
 
+		Object makeCandidateJson(final Derivation deriv)
+		{
+			final Map<String, Object> item = new HashMap<>();
+			final Value value = deriv.getValue();
+			if (value instanceof StringValue)
+				item.put("value", ((StringValue) value).value);
+			else
+				if (value instanceof ErrorValue)
+					item.put("value", ((ErrorValue) value).sortString());
+				else
+					if (value != null)
+						item.put("value", value.sortString());
+					else
+						item.put("value", "[[]]");
+			item.put("score", deriv.getScore());
+			item.put("prob", deriv.getProb());
+			item.put("anchored", deriv.allAnchored); // used only anchored rules
+			item.put("formula", deriv.formula.toLispTree().toString());
+			return item;
+		}
+
 		// This should be concurrent
-		Master.Response processQuery(final Session session, final String query)
+		// With a |stream| (null if none), the candidates are sent while parsing and the query is cancelled if the client disconnects.
+		Master.Response processQuery(final Session session, final String query, final Deadline deadline, final CandidateStream stream)
 		{
 			String message = null;
 			Master.Response response = master.new Response();
-			final ExecutorService executor = Executors.newSingleThreadExecutor();
-			final Future<Master.Response> future = executor.submit(() -> master.processQuery(session, query));
+			final Future<Master.Response> future = queryPool.submit(() -> {
+				Deadline.setCurrent(deadline);
+				ParseListener.setCurrent(stream);
+				try
+				{
+					return master.processQuery(session, query);
+				}
+				finally
+				{
+					ParseListener.clearCurrent();
+					Deadline.clearCurrent();
+				}
+			});
 			final long startTime = System.nanoTime();
 			try
 			{
 				// most exceptions should be handled in InteractiveMaster
 				// so the response can be more specific
-				response = future.get(opts.maxExecutionTime, TimeUnit.SECONDS);
+				// The parser returns its partial results once the deadline expires; only give up if it does not within the grace period.
+				response = future.get(opts.maxExecutionTime + opts.executionGracePeriod, TimeUnit.SECONDS);
+				if (stream != null && stream.isDisconnected())
+					response.lines.add("Client disconnected, partial results");
+				else
+					if (deadline.isExpired())
+						response.lines.add(String.format("Exceeded the maximum allowed time: %ss, partial results", opts.maxExecutionTime));
 			}
 			catch (final Throwable e)
 			{
@@ -246,11 +287,13 @@ public class InteractiveServer
 			}
 			finally
 			{
+				deadline.expire();
 				future.cancel(true);
-				executor.shutdown();
 				final long endTime = System.nanoTime();
 				response.stats.put("walltime", (endTime - startTime) / 1.0e9);
 				response.stats.put("count", queryCounter.get());
+				if (stream != null)
+					response.stats.put("first_candidate_time", stream.getFirstCandidateTime());
 			}
 			return response;
 		}
@@ -259,13 +302,13 @@ public class InteractiveServer
 		{
 			String query = reqParams.get("q");
 			final long queryNumber = queryCounter.incrementAndGet();
+			Metrics.requests.get("InteractiveServer").inc();
 			final Session session = master.getSession(sessionId);
 			session.reqParams = reqParams;
 			session.remoteHost = remoteHost;
 			session.format = "json";
 
 			final LocalDateTime queryTime = LocalDateTime.now();
-			synchronized (queryLogLock)
 			{ // write the query log
 				final Map<String, Object> jsonMap = new LinkedHashMap<>();
 				jsonMap.put("count", queryNumber);
@@ -288,13 +331,29 @@ public class InteractiveServer
 			logs("Server.handleQuery %s: %s", session.id, query);
 
 			// Print header
-			setHeaders("application/json");
+			// With format=stream, the candidates are sent as server-sent events while parsing, followed by the usual response (see CandidateStream)
+			final Deadline deadline = Deadline.afterSeconds(opts.maxExecutionTime);
+			CandidateStream stream = null;
+			if ("stream".equals(reqParams.get("format")))
+			{
+				exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+				setHeaders("text/event-stream");
+				stream = new CandidateStream("InteractiveServer", exchange.getResponseBody(), deadline, opts.streamCandidates, this::makeCandidateJson);
+			}
+			else
+				setHeaders("application/json");
 
 			Master.Response masterResponse = null;
 			if (query != null)
-				masterResponse = processQuery(session, query);
+				masterResponse = processQuery(session, query, deadline, stream);
 
 			Map<String, Object> responseMap = null;
+			if (stream != null)
+			{
+				responseMap = makeJson(masterResponse);
+				stream.close(responseMap);
+			}
+			else
 			{
 				final PrintWriter out = new PrintWriter(new OutputStreamWriter(exchange.getResponseBody()));
 				if (masterResponse != null)
@@ -307,7 +366,6 @@ public class InteractiveServer
 				out.close();
 			}
 
-			synchronized (responseLogLock)
 			{ // write the response log log
 				final Map<String, Object> jsonMap = new LinkedHashMap<>();
 				final LocalDateTime responseTime = LocalDateTime.now();
@@ -339,20 +397,10 @@ public class InteractiveServer
 			}
 		}
 
+		// Written asynchronously, so the request does not wait for the file
 		void logLine(final String path, final String line)
 		{
-			PrintWriter out;
-			try
-			{
-				out = IOUtils.openOutAppend(path);
-				out.println(line);
-				out.close();
-			}
-			catch (final IOException e)
-			{
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			AsyncAppendLog.getSingleton().append(path, line);
 		}
 	}
 
@@ -363,6 +411,7 @@ public class InteractiveServer
 	public InteractiveServer(final Master master)
 	{
 		this.master = master;
+		queryPool = Executors.newFixedThreadPool(opts.numThreads);
 	}
 
 	public void run()
@@ -387,6 +436,9 @@ public class InteractiveServer
 			server.stop(0);
 			LogInfo.log("Shutting down executor pool...");
 			pool.shutdown();
+			queryPool.shutdown();
+			LogInfo.log("Flushing logs...");
+			AsyncAppendLog.getSingleton().close();
 			LogInfo.end_threads();
 		}
 		catch (final IOException e)
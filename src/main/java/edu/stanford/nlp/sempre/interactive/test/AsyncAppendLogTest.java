@@ -0,0 +1,141 @@
+package edu.stanford.nlp.sempre.interactive.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import edu.stanford.nlp.sempre.Metrics;
+import edu.stanford.nlp.sempre.interactive.AsyncAppendLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+
+/**
+ * Test the background log writer: ordering, rotation, flushing and failures.
+ */
+public class AsyncAppendLogTest
+{
+	private static List<String> read(final File file) throws IOException
+	{
+		return file.exists() ? Files.readAllLines(file.toPath(), StandardCharsets.UTF_8) : new ArrayList<>();
+	}
+
+	@Test
+	public void ordering() throws IOException, InterruptedException
+	{
+		final File dir = Files.createTempDirectory("sempre-log").toFile();
+		final File a = new File(dir, "a.log"), b = new File(dir, "sub/b.log");
+		final AsyncAppendLog log = new AsyncAppendLog();
+		// Two threads append to both files
+		final List<Thread> threads = new ArrayList<>();
+		for (final String name : new String[] { "x", "y" })
+			threads.add(new Thread(() ->
+			{
+				for (int i = 0; i < 1000; i++)
+					log.append((i % 2 == 0 ? a : b).getPath(), name + i);
+			}));
+		for (final Thread thread : threads)
+			thread.start();
+		for (final Thread thread : threads)
+			thread.join();
+		log.close();
+
+		assertEquals(2000, log.getNumLinesWritten());
+		assertEquals(0, log.getNumFailures());
+		for (final File file : new File[] { a, b })
+		{
+			final List<String> lines = read(file);
+			assertEquals(1000, lines.size());
+			// Each thread's lines are in the order they were appended
+			for (final String name : new String[] { "x", "y" })
+			{
+				int last = -1;
+				for (final String line : lines)
+					if (line.startsWith(name))
+					{
+						final int i = Integer.parseInt(line.substring(1));
+						assertTrue(line, i > last);
+						last = i;
+					}
+			}
+		}
+	}
+
+	@Test
+	public void rotation() throws IOException
+	{
+		final long maxFileBytes = AsyncAppendLog.opts.maxFileBytes;
+		final int maxRotatedFiles = AsyncAppendLog.opts.maxRotatedFiles;
+		try
+		{
+			AsyncAppendLog.opts.maxFileBytes = 40; // 5 lines of 8 bytes
+			AsyncAppendLog.opts.maxRotatedFiles = 2;
+			final File file = new File(Files.createTempDirectory("sempre-log").toFile(), "rotated.log");
+			final AsyncAppendLog log = new AsyncAppendLog();
+			for (int i = 0; i < 23; i++)
+				log.append(file.getPath(), String.format("line%03d", i));
+			log.close();
+
+			// path.2, path.1 and path hold the last 13 lines, oldest first; the rest were rotated out
+			final List<String> lines = new ArrayList<>();
+			for (final File part : new File[] { new File(file.getPath() + ".2"), new File(file.getPath() + ".1"), file })
+			{
+				assertTrue(part.length() <= 40);
+				lines.addAll(read(part));
+			}
+			assertTrue(!new File(file.getPath() + ".3").exists());
+			assertEquals(13, lines.size());
+			for (int i = 0; i < lines.size(); i++)
+				assertEquals(String.format("line%03d", i + 10), lines.get(i));
+		}
+		finally
+		{
+			AsyncAppendLog.opts.maxFileBytes = maxFileBytes;
+			AsyncAppendLog.opts.maxRotatedFiles = maxRotatedFiles;
+		}
+	}
+
+	@Test
+	public void flush() throws IOException
+	{
+		final int syncInterval = AsyncAppendLog.opts.syncInterval;
+		try
+		{
+			AsyncAppendLog.opts.syncInterval = 60000; // Only flush() and close() write the batch out
+			final File file = new File(Files.createTempDirectory("sempre-log").toFile(), "flushed.log");
+			final AsyncAppendLog log = new AsyncAppendLog();
+			log.append(file.getPath(), "first");
+			log.flush();
+			assertEquals(1, read(file).size());
+			for (int i = 0; i < 100; i++)
+				log.append(file.getPath(), "line" + i);
+			log.close();
+			assertEquals(101, read(file).size());
+			// Late lines are written directly
+			log.append(file.getPath(), "last");
+			assertEquals("last", read(file).get(101));
+		}
+		finally
+		{
+			AsyncAppendLog.opts.syncInterval = syncInterval;
+		}
+	}
+
+	@Test
+	public void failures() throws IOException
+	{
+		final File dir = Files.createTempDirectory("sempre-log").toFile();
+		final long metricFailures = Metrics.appendLogFailures.get("write").get();
+		final AsyncAppendLog log = new AsyncAppendLog();
+		log.append(dir.getPath(), "cannot write to a directory");
+		log.append(new File(dir, "ok.log").getPath(), "ok");
+		log.close();
+		assertEquals(1, log.getNumFailures());
+		assertEquals(1, log.getNumLinesWritten());
+		assertEquals(metricFailures + 1, Metrics.appendLogFailures.get("write").get());
+		assertEquals(0, Metrics.appendLogQueueDepth.get().get());
+	}
+}
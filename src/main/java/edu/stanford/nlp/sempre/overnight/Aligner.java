@@ -20,9 +20,13 @@ public class Aligner
 {
 
 	private final Map<String, Counter<String>> model = new HashMap<>();
+	// Used instead of |model| when the aligner is read from a compiled phrase table (source => target => prob)
+	private CompiledPhraseTable compiledModel;
 
 	public double getCondProb(final String target, final String source)
 	{
+		if (compiledModel != null)
+			return compiledModel.get(source, target);
 		if (model.containsKey(source))
 			if (model.get(source).containsKey(target))
 				return model.get(source).getCount(target);
@@ -31,6 +35,8 @@ public class Aligner
 
 	public int size()
 	{
+		if (compiledModel != null)
+			return compiledModel.size();
 		return model.size();
 	}
 
@@ -101,10 +107,15 @@ public class Aligner
 		return utterance;
 	}
 
-	//read from serialized file
+	//read from serialized file (text, or compiled with CompilePhraseTable)
 	public static Aligner read(final String path)
 	{
 		final Aligner res = new Aligner();
+		if (CompiledPhraseTable.isCompiled(path))
+		{
+			res.compiledModel = CompiledPhraseTable.open(path);
+			return res;
+		}
 		for (final String line : edu.stanford.nlp.io.IOUtils.readLines(path))
 		{
 			final String[] tokens = line.split("\t");
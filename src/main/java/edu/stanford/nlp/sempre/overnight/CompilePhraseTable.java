@@ -0,0 +1,88 @@
+package edu.stanford.nlp.sempre.overnight;
+
+import fig.basic.IOUtils;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import fig.exec.Execution;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Convert a text phrase table into the binary format read by CompiledPhraseTable. Input formats:
+ * <ul>
+ * <li>ppdb: a PPDB file, read exactly as PPDBModel reads it (including the stemmed entries)</li>
+ * <li>tsv: key [tab] target [tab] score, a phrase alignment file read as OvernightFeatureComputer reads it (entries below the threshold are dropped, and the
+ * last remaining entry of a duplicate pair wins)</li>
+ * <li>alignments: the same columns, the output of Aligner read as Aligner.read reads it (duplicate pairs are summed)</li>
+ * </ul>
+ * The output can be given directly to PPDBModel.ppdbModelPath, OvernightFeatureComputer.phraseAlignmentPath (tsv) or OvernightFeatureComputer.wordAlignmentPath
+ * (alignments).
+ */
+public class CompilePhraseTable implements Runnable
+{
+	@Option(required = true, gloss = "Input text phrase table")
+	public String inPath;
+	@Option(required = true, gloss = "Output compiled phrase table")
+	public String outPath;
+	@Option(gloss = "Input format (ppdb, tsv or alignments)")
+	public String format = "tsv";
+	@Option(gloss = "tsv: keep only entries with at least this score (as OvernightFeatureComputer.phraseTableThreshold)")
+	public double threshold = OvernightFeatureComputer.opts.phraseTableThreshold;
+
+	@Override
+	public void run()
+	{
+		LogInfo.begin_track("Reading %s (%s)", inPath, format);
+		final Map<String, Map<String, Double>> table;
+		if (format.equals("ppdb"))
+			table = PPDBModel.loadPPDBModel(inPath);
+		else
+			if (format.equals("tsv"))
+				table = readTsv(inPath, threshold);
+			else
+				if (format.equals("alignments"))
+					table = readAlignments(inPath);
+				else
+					throw new RuntimeException("Unknown format: " + format);
+		LogInfo.end_track();
+		CompiledPhraseTable.write(table, outPath);
+	}
+
+	// Same as OvernightFeatureComputer.loadPhraseTable
+	static Map<String, Map<String, Double>> readTsv(final String path, final double threshold)
+	{
+		final Map<String, Map<String, Double>> table = new HashMap<>();
+		for (final String line : IOUtils.readLinesHard(path))
+		{
+			final String[] tokens = line.split("\t");
+			if (tokens.length != 3)
+				throw new RuntimeException("Bad phrase table line: " + line);
+			final Map<String, Double> targets = table.computeIfAbsent(tokens[0], k -> new HashMap<>());
+			final double value = Double.parseDouble(tokens[2]);
+			if (value >= threshold)
+				targets.put(tokens[1], value);
+		}
+		LogInfo.logs("Number of keys=%s", table.size());
+		return table;
+	}
+
+	// Same as Aligner.read
+	static Map<String, Map<String, Double>> readAlignments(final String path)
+	{
+		final Map<String, Map<String, Double>> table = new HashMap<>();
+		for (final String line : IOUtils.readLinesHard(path))
+		{
+			final String[] tokens = line.split("\t");
+			if (tokens.length != 3)
+				throw new RuntimeException("Bad alignment line: " + line);
+			table.computeIfAbsent(tokens[0], k -> new HashMap<>()).merge(tokens[1], Double.parseDouble(tokens[2]), Double::sum);
+		}
+		LogInfo.logs("Number of keys=%s", table.size());
+		return table;
+	}
+
+	public static void main(final String[] args)
+	{
+		Execution.run(args, new CompilePhraseTable());
+	}
+}
@@ -0,0 +1,362 @@
+package edu.stanford.nlp.sempre.overnight;
+
+import fig.basic.LogInfo;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only phrase table (key =&gt; target =&gt; score) stored in a compact binary file and memory-mapped on open. This is a drop-in replacement for the
+ * text tables read by PPDBModel, OvernightFeatureComputer (phrase alignments) and Aligner: the text file is converted once with CompilePhraseTable, and
+ * lookups then return exactly the same values without building any map on the heap.
+ * <p>
+ * File layout (big-endian):
+ *
+ * <pre>
+ * header:   magic, flags, numKeys, numTargets, numEntries, numKeyBytes, numTargetBytes, 0   (8 ints)
+ * keys:     int[numKeys + 1] offsets, byte[numKeyBytes] UTF-8      (sorted by unsigned bytes)
+ * targets:  int[numTargets + 1] offsets, byte[numTargetBytes] UTF-8 (sorted by unsigned bytes)
+ * rows:     int[numKeys + 1] offsets into the entry arrays (CSR)
+ * entries:  int[numEntries] target ids (sorted within each row), float[numEntries] or double[numEntries] scores
+ * </pre>
+ *
+ * Scores are stored as floats when all of them are exactly representable (e.g., PPDB indicators and co-occurrence counts), and as doubles otherwise (e.g.,
+ * normalized alignment probabilities). Lookups are thread-safe.
+ */
+public class CompiledPhraseTable
+{
+	public static final int MAGIC = 0x53505431; // "SPT1"
+	private static final int FLAG_DOUBLE_SCORES = 1;
+	private static final int HEADER_BYTES = 8 * Integer.BYTES;
+
+	public final String path;
+	private final int numKeys, numTargets, numEntries;
+	private final boolean doubleScores;
+	private final ByteBuffer keyOffsets, keyBytes, targetOffsets, targetBytes, rowOffsets, entryTargets, scores;
+
+	private CompiledPhraseTable(final String path_) throws IOException
+	{
+		path = path_;
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel())
+		{
+			final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Not a compiled phrase table: " + path);
+			doubleScores = (header.getInt(4) & FLAG_DOUBLE_SCORES) != 0;
+			numKeys = header.getInt(8);
+			numTargets = header.getInt(12);
+			numEntries = header.getInt(16);
+			final int numKeyBytes = header.getInt(20), numTargetBytes = header.getInt(24);
+
+			// Each section is mapped separately so that the whole file may exceed 2GB.
+			// The mappings stay valid after the channel is closed.
+			long pos = HEADER_BYTES;
+			keyOffsets = channel.map(FileChannel.MapMode.READ_ONLY, pos, (numKeys + 1L) * Integer.BYTES);
+			pos += keyOffsets.capacity();
+			keyBytes = channel.map(FileChannel.MapMode.READ_ONLY, pos, numKeyBytes);
+			pos += numKeyBytes;
+			targetOffsets = channel.map(FileChannel.MapMode.READ_ONLY, pos, (numTargets + 1L) * Integer.BYTES);
+			pos += targetOffsets.capacity();
+			targetBytes = channel.map(FileChannel.MapMode.READ_ONLY, pos, numTargetBytes);
+			pos += numTargetBytes;
+			rowOffsets = channel.map(FileChannel.MapMode.READ_ONLY, pos, (numKeys + 1L) * Integer.BYTES);
+			pos += rowOffsets.capacity();
+			entryTargets = channel.map(FileChannel.MapMode.READ_ONLY, pos, (long) numEntries * Integer.BYTES);
+			pos += entryTargets.capacity();
+			scores = channel.map(FileChannel.MapMode.READ_ONLY, pos, (long) numEntries * (doubleScores ? Double.BYTES : Float.BYTES));
+		}
+	}
+
+	/**
+	 * Memory-map the compiled phrase table at |path|. Pages are only read from disk when they are looked up.
+	 */
+	public static CompiledPhraseTable open(final String path)
+	{
+		try
+		{
+			final CompiledPhraseTable table = new CompiledPhraseTable(path);
+			LogInfo.logs("CompiledPhraseTable: mapped %s (%d keys, %d targets, %d entries)", path, table.numKeys, table.numTargets, table.numEntries);
+			return table;
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Return whether |path| is a compiled phrase table (as opposed to a text table).
+	 */
+	public static boolean isCompiled(final String path)
+	{
+		try (DataInputStream in = new DataInputStream(new FileInputStream(path)))
+		{
+			return in.readInt() == MAGIC;
+		}
+		catch (final IOException e)
+		{
+			return false;
+		}
+	}
+
+	public int size()
+	{
+		return numKeys;
+	}
+
+	public boolean containsKey(final String key)
+	{
+		return findKey(key) >= 0;
+	}
+
+	/**
+	 * Return the score of (|key|, |target|), or 0 if there is no such entry.
+	 */
+	public double get(final String key, final String target)
+	{
+		final int keyId = findKey(key);
+		if (keyId < 0)
+			return 0d;
+		final int targetId = find(targetOffsets, targetBytes, numTargets, target.getBytes(StandardCharsets.UTF_8));
+		if (targetId < 0)
+			return 0d;
+		int lo = rowOffsets.getInt(keyId * Integer.BYTES), hi = rowOffsets.getInt((keyId + 1) * Integer.BYTES) - 1;
+		while (lo <= hi)
+		{
+			final int mid = lo + hi >>> 1;
+			final int id = entryTargets.getInt(mid * Integer.BYTES);
+			if (id < targetId)
+				lo = mid + 1;
+			else
+				if (id > targetId)
+					hi = mid - 1;
+				else
+					return score(mid);
+		}
+		return 0d;
+	}
+
+	/**
+	 * Return all targets of |key| (in byte order), or an empty list if the key is absent.
+	 */
+	public List<String> getTargets(final String key)
+	{
+		final int keyId = findKey(key);
+		if (keyId < 0)
+			return Collections.emptyList();
+		final int start = rowOffsets.getInt(keyId * Integer.BYTES), end = rowOffsets.getInt((keyId + 1) * Integer.BYTES);
+		final List<String> targets = new ArrayList<>(end - start);
+		for (int i = start; i < end; i++)
+			targets.add(decode(targetOffsets, targetBytes, entryTargets.getInt(i * Integer.BYTES)));
+		return targets;
+	}
+
+	/**
+	 * Return the scores of all targets of |key|, in the same order as getTargets(key).
+	 */
+	public double[] getScores(final String key)
+	{
+		final int keyId = findKey(key);
+		if (keyId < 0)
+			return new double[0];
+		final int start = rowOffsets.getInt(keyId * Integer.BYTES), end = rowOffsets.getInt((keyId + 1) * Integer.BYTES);
+		final double[] result = new double[end - start];
+		for (int i = start; i < end; i++)
+			result[i - start] = score(i);
+		return result;
+	}
+
+	// ============================================================
+	// Lookup helpers
+	// ============================================================
+
+	private int findKey(final String key)
+	{
+		return find(keyOffsets, keyBytes, numKeys, key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private double score(final int entry)
+	{
+		return doubleScores ? scores.getDouble(entry * Double.BYTES) : scores.getFloat(entry * Float.BYTES);
+	}
+
+	// Binary search for |query| in a sorted string dictionary; return its id or -1.
+	private static int find(final ByteBuffer offsets, final ByteBuffer bytes, final int n, final byte[] query)
+	{
+		int lo = 0, hi = n - 1;
+		while (lo <= hi)
+		{
+			final int mid = lo + hi >>> 1;
+			final int cmp = compare(bytes, offsets.getInt(mid * Integer.BYTES), offsets.getInt((mid + 1) * Integer.BYTES), query);
+			if (cmp < 0)
+				lo = mid + 1;
+			else
+				if (cmp > 0)
+					hi = mid - 1;
+				else
+					return mid;
+		}
+		return -1;
+	}
+
+	private static int compare(final ByteBuffer bytes, final int start, final int end, final byte[] query)
+	{
+		final int len = end - start, n = Math.min(len, query.length);
+		for (int i = 0; i < n; i++)
+		{
+			final int cmp = (bytes.get(start + i) & 0xff) - (query[i] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return len - query.length;
+	}
+
+	private static String decode(final ByteBuffer offsets, final ByteBuffer bytes, final int id)
+	{
+		final int start = offsets.getInt(id * Integer.BYTES), end = offsets.getInt((id + 1) * Integer.BYTES);
+		final byte[] buf = new byte[end - start];
+		final ByteBuffer view = bytes.duplicate();
+		view.position(start);
+		view.get(buf);
+		return new String(buf, StandardCharsets.UTF_8);
+	}
+
+	// ============================================================
+	// Writing
+	// ============================================================
+
+	/**
+	 * Write |table| (key =&gt; target =&gt; score) to |path| in the compiled format.
+	 */
+	public static void write(final Map<String, ? extends Map<String, Double>> table, final String path)
+	{
+		LogInfo.begin_track("CompiledPhraseTable.write(%s)", path);
+		// Dictionaries
+		final byte[][] keys = sortedBytes(table.keySet());
+		final Set<String> targetSet = new HashSet<>();
+		boolean doubleScores = false;
+		int numEntries = 0;
+		for (final Map<String, Double> row : table.values())
+		{
+			targetSet.addAll(row.keySet());
+			numEntries += row.size();
+			for (final double score : row.values())
+				if ((float) score != score)
+					doubleScores = true;
+		}
+		final byte[][] targets = sortedBytes(targetSet);
+		final Map<String, Integer> targetIds = new HashMap<>();
+		for (int i = 0; i < targets.length; i++)
+			targetIds.put(new String(targets[i], StandardCharsets.UTF_8), i);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(doubleScores ? FLAG_DOUBLE_SCORES : 0);
+			out.writeInt(keys.length);
+			out.writeInt(targets.length);
+			out.writeInt(numEntries);
+			out.writeInt(totalLength(keys));
+			out.writeInt(totalLength(targets));
+			out.writeInt(0);
+			writeDictionary(out, keys);
+			writeDictionary(out, targets);
+
+			// Rows: sort the targets of each key by id
+			final int[][] rowTargets = new int[keys.length][];
+			int offset = 0;
+			out.writeInt(0);
+			for (int k = 0; k < keys.length; k++)
+			{
+				final Map<String, Double> row = table.get(new String(keys[k], StandardCharsets.UTF_8));
+				final int[] ids = new int[row.size()];
+				int i = 0;
+				for (final String target : row.keySet())
+					ids[i++] = targetIds.get(target);
+				Arrays.sort(ids);
+				rowTargets[k] = ids;
+				offset += ids.length;
+				out.writeInt(offset);
+			}
+			for (final int[] ids : rowTargets)
+				for (final int id : ids)
+					out.writeInt(id);
+			for (int k = 0; k < keys.length; k++)
+			{
+				final Map<String, Double> row = table.get(new String(keys[k], StandardCharsets.UTF_8));
+				for (final int id : rowTargets[k])
+				{
+					final double score = row.get(new String(targets[id], StandardCharsets.UTF_8));
+					if (doubleScores)
+						out.writeDouble(score);
+					else
+						out.writeFloat((float) score);
+				}
+			}
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		LogInfo.logs("%d keys, %d targets, %d entries, %s scores", keys.length, targets.length, numEntries, doubleScores ? "double" : "float");
+		LogInfo.end_track();
+	}
+
+	private static byte[][] sortedBytes(final Collection<String> strings)
+	{
+		final byte[][] result = new byte[strings.size()][];
+		int i = 0;
+		for (final String s : strings)
+			result[i++] = s.getBytes(StandardCharsets.UTF_8);
+		Arrays.sort(result, (a, b) -> {
+			final int n = Math.min(a.length, b.length);
+			for (int j = 0; j < n; j++)
+			{
+				final int cmp = (a[j] & 0xff) - (b[j] & 0xff);
+				if (cmp != 0)
+					return cmp;
+			}
+			return a.length - b.length;
+		});
+		return result;
+	}
+
+	private static int totalLength(final byte[][] strings)
+	{
+		long total = 0;
+		for (final byte[] s : strings)
+			total += s.length;
+		if (total > Integer.MAX_VALUE)
+			throw new RuntimeException("String dictionary too large: " + total + " bytes");
+		return (int) total;
+	}
+
+	private static void writeDictionary(final DataOutputStream out, final byte[][] strings) throws IOException
+	{
+		int offset = 0;
+		out.writeInt(0);
+		for (final byte[] s : strings)
+		{
+			offset += s.length;
+			out.writeInt(offset);
+		}
+		for (final byte[] s : strings)
+			out.write(s);
+	}
+}
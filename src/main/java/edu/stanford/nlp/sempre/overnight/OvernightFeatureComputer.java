@@ -60,7 +60,7 @@ public class OvernightFeatureComputer implements FeatureComputer
 
 		@Option(gloss = "Path to alignment file")
 		public String wordAlignmentPath;
-		@Option(gloss = "Path to phrase alignment file")
+		@Option(gloss = "Path to phrase alignment file (text, or compiled with CompilePhraseTable)")
 		public String phraseAlignmentPath;
 		@Option(gloss = "Threshold for phrase table co-occurrence")
 		public int phraseTableThreshold = 3;
@@ -70,6 +70,7 @@ public class OvernightFeatureComputer implements FeatureComputer
 
 	private static Aligner aligner;
 	private static Map<String, Map<String, Double>> phraseTable;
+	private static CompiledPhraseTable compiledPhraseTable;
 	public final SimpleLexicon simpleLexicon = SimpleLexicon.getSingleton();
 
 	@Override
@@ -308,8 +309,11 @@ public class OvernightFeatureComputer implements FeatureComputer
 
 		if (!opts.featureDomains.contains("alignment"))
 			return;
-		if (phraseTable == null)
-			phraseTable = loadPhraseTable();
+		if (phraseTable == null && compiledPhraseTable == null)
+			if (CompiledPhraseTable.isCompiled(opts.phraseAlignmentPath))
+				compiledPhraseTable = CompiledPhraseTable.open(opts.phraseAlignmentPath);
+			else
+				phraseTable = loadPhraseTable();
 
 		//get the tokens
 		final List<String> derivTokens = Arrays.asList(deriv.canonicalUtterance.split("\\s+"));
@@ -323,13 +327,23 @@ public class OvernightFeatureComputer implements FeatureComputer
 				if (entities.contains(lhs))
 					continue; //optimization
 
-				if (phraseTable.containsKey(lhs))
+				if (compiledPhraseTable != null)
 				{
-					final Map<String, Double> rhsCandidates = phraseTable.get(lhs);
-					final Set<String> intersection = Sets.intersection(rhsCandidates.keySet(), inputSubspans);
-					for (final String rhs : intersection)
-						addAndFilterLexicalFeature(deriv, "alignment", rhs, lhs);
+					// The table may have been compiled with a lower threshold (CompilePhraseTable.threshold); apply this one too
+					final List<String> rhsCandidates = compiledPhraseTable.getTargets(lhs);
+					final double[] values = compiledPhraseTable.getScores(lhs);
+					for (int k = 0; k < values.length; k++)
+						if (values[k] >= opts.phraseTableThreshold && inputSubspans.contains(rhsCandidates.get(k)))
+							addAndFilterLexicalFeature(deriv, "alignment", rhsCandidates.get(k), lhs);
 				}
+				else
+					if (phraseTable.containsKey(lhs))
+					{
+						final Map<String, Double> rhsCandidates = phraseTable.get(lhs);
+						final Set<String> intersection = Sets.intersection(rhsCandidates.keySet(), inputSubspans);
+						for (final String rhs : intersection)
+							addAndFilterLexicalFeature(deriv, "alignment", rhs, lhs);
+					}
 			}
 	}
 
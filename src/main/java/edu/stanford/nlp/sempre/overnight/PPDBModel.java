@@ -18,7 +18,7 @@ public final class PPDBModel
 {
 	public static class Options
 	{
-		@Option(gloss = "Path to file with alignment table")
+		@Option(gloss = "Path to file with alignment table (text, or compiled with CompilePhraseTable)")
 		public String ppdbModelPath = "regex/regex-ppdb.txt";
 
 		@Option(gloss = "Using ppdb format")
@@ -30,6 +30,8 @@ public final class PPDBModel
 	public static PPDBModel model;
 
 	Map<String, Map<String, Double>> table;
+	// Used instead of |table| when ppdbModelPath points to a compiled phrase table
+	CompiledPhraseTable compiledTable;
 
 	// We should only have one paraphrase model
 	public static PPDBModel getSingleton()
@@ -41,13 +43,16 @@ public final class PPDBModel
 
 	private PPDBModel()
 	{
-		table = loadPPDBModel(opts.ppdbModelPath);
+		if (CompiledPhraseTable.isCompiled(opts.ppdbModelPath))
+			compiledTable = CompiledPhraseTable.open(opts.ppdbModelPath);
+		else
+			table = loadPPDBModel(opts.ppdbModelPath);
 	}
 
 	/**
 	 * Loading ppdb model from file
 	 */
-	private Map<String, Map<String, Double>> loadPPDBModel(final String path)
+	static Map<String, Map<String, Double>> loadPPDBModel(final String path)
 	{
 		LogInfo.begin_track("Loading ppdb model");
 		final Map<String, Map<String, Double>> res = new HashMap<>();
@@ -77,7 +82,7 @@ public final class PPDBModel
 		return res;
 	}
 
-	private void putParaphraseEntry(final Map<String, Map<String, Double>> res, final String first, final String second)
+	private static void putParaphraseEntry(final Map<String, Map<String, Double>> res, final String first, final String second)
 	{
 		MapUtils.putIfAbsent(res, first, new HashMap<>());
 		res.get(first).put(second, 1.0);
@@ -85,11 +90,15 @@ public final class PPDBModel
 
 	public boolean containsKey(final String key)
 	{
+		if (compiledTable != null)
+			return compiledTable.containsKey(key);
 		return table.containsKey(key);
 	}
 
 	public Double get(final String key, final String token)
 	{
+		if (compiledTable != null)
+			return compiledTable.get(key, token);
 		if (!table.containsKey(key) || !table.get(key).containsKey(token))
 			return 0.0;
 		return table.get(key).get(token);
@@ -0,0 +1,109 @@
+package edu.stanford.nlp.sempre.overnight.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import edu.stanford.nlp.sempre.overnight.CompilePhraseTable;
+import edu.stanford.nlp.sempre.overnight.CompiledPhraseTable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+/**
+ * Test that compiled phrase tables give the same lookups as the in-memory maps they are built from.
+ */
+public class CompiledPhraseTableTest
+{
+	private static CompiledPhraseTable compile(final Map<String, Map<String, Double>> table) throws IOException
+	{
+		final File file = File.createTempFile("phrase-table", ".bin");
+		file.deleteOnExit();
+		CompiledPhraseTable.write(table, file.getPath());
+		assertTrue(CompiledPhraseTable.isCompiled(file.getPath()));
+		return CompiledPhraseTable.open(file.getPath());
+	}
+
+	private static void put(final Map<String, Map<String, Double>> table, final String key, final String target, final double score)
+	{
+		table.computeIfAbsent(key, k -> new HashMap<>()).put(target, score);
+	}
+
+	@Test
+	public void lookupTest() throws IOException
+	{
+		final Map<String, Map<String, Double>> table = new HashMap<>();
+		put(table, "born", "birthplace", 1.0);
+		put(table, "born", "born in", 1.0);
+		put(table, "city", "town", 1.0);
+		put(table, "caf\u00e9", "coffee shop", 1.0);
+		table.put("empty", new HashMap<>());
+		final CompiledPhraseTable compiled = compile(table);
+
+		assertEquals(4, compiled.size());
+		for (final Map.Entry<String, Map<String, Double>> row : table.entrySet())
+		{
+			assertTrue(compiled.containsKey(row.getKey()));
+			for (final Map.Entry<String, Double> entry : row.getValue().entrySet())
+				assertEquals(entry.getValue(), compiled.get(row.getKey(), entry.getKey()), 0);
+		}
+		assertFalse(compiled.containsKey("town"));
+		assertEquals(0.0, compiled.get("city", "born in"), 0);
+		assertEquals(0.0, compiled.get("bor", "birthplace"), 0);
+		assertEquals(Arrays.asList("birthplace", "born in"), compiled.getTargets("born"));
+		assertEquals(0, compiled.getTargets("empty").size());
+	}
+
+	@Test
+	public void doubleScoresTest() throws IOException
+	{
+		// Normalized probabilities are not exactly representable as floats
+		final Map<String, Map<String, Double>> table = new HashMap<>();
+		put(table, "a", "b", 1.0 / 3);
+		put(table, "a", "c", 2.0 / 3);
+		put(table, "b", "a", 0.1);
+		final CompiledPhraseTable compiled = compile(table);
+		assertEquals(1.0 / 3, compiled.get("a", "b"), 0);
+		assertEquals(2.0 / 3, compiled.get("a", "c"), 0);
+		assertEquals(0.1, compiled.get("b", "a"), 0);
+	}
+
+	private static CompiledPhraseTable compileTsv(final String format, final String... lines) throws IOException
+	{
+		final File in = File.createTempFile("phrase-table", ".tsv"), out = File.createTempFile("phrase-table", ".bin");
+		in.deleteOnExit();
+		out.deleteOnExit();
+		Files.write(in.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+		final CompilePhraseTable compiler = new CompilePhraseTable();
+		compiler.inPath = in.getPath();
+		compiler.outPath = out.getPath();
+		compiler.format = format;
+		compiler.threshold = 0.5;
+		compiler.run();
+		return CompiledPhraseTable.open(out.getPath());
+	}
+
+	@Test
+	public void duplicatePairsTest() throws IOException
+	{
+		final String[] lines = { "a\tb\t0.3", "a\tb\t0.4", "c\td\t0.6", "c\td\t0.4", "e\tf\t0.6", "e\tf\t0.7" };
+
+		// Phrase alignments: entries below the threshold are dropped and the last remaining one wins, as in OvernightFeatureComputer
+		final CompiledPhraseTable phrases = compileTsv("tsv", lines);
+		assertTrue(phrases.containsKey("a"));
+		assertEquals(0, phrases.getTargets("a").size());
+		assertEquals(0.6, phrases.get("c", "d"), 0);
+		assertEquals(0.7, phrases.get("e", "f"), 0);
+
+		// Word alignments: duplicates are summed, as in Aligner.read
+		final CompiledPhraseTable alignments = compileTsv("alignments", lines);
+		assertEquals(0.3 + 0.4, alignments.get("a", "b"), 0);
+		assertEquals(0.6 + 0.4, alignments.get("c", "d"), 0);
+		assertEquals(0.6 + 0.7, alignments.get("e", "f"), 0);
+	}
+}
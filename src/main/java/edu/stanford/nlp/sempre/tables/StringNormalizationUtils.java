@@ -142,8 +142,8 @@ public final class StringNormalizationUtils
 		try
 		{
 			if (opts.numberCanStartAnywhere)
-				s = s.replaceAll("^[^0-9.]*", "");
-			final Number parsed = numberFormat.parse(s.replace(" ", ""));
+				s = stripNonNumberPrefix(s);
+			final Number parsed = numberFormat.parse(removeSpaces(s));
 			return new NumberValue(parsed.doubleValue());
 		}
 		catch (final ParseException e)
@@ -157,15 +157,15 @@ public final class StringNormalizationUtils
 	 */
 	public static NumberValue parseNum2Lenient(String s)
 	{
-		s = s.replace(" ", "");
+		s = removeSpaces(s);
 		if (opts.numberCanStartAnywhere)
-			s = s.replaceAll("^[^0-9.]*", "");
+			s = stripNonNumberPrefix(s);
 		final ParsePosition parsePosition = new ParsePosition(0);
 		Number parsed = numberFormat.parse(s, parsePosition);
 		if (parsed == null)
 			return null;
 		s = s.substring(parsePosition.getIndex());
-		s = s.replaceAll("^[^0-9.]*", "");
+		s = stripNonNumberPrefix(s);
 		parsePosition.setIndex(0);
 		parsed = numberFormat.parse(s, parsePosition);
 		if (parsed == null)
@@ -173,6 +173,27 @@ public final class StringNormalizationUtils
 		return new NumberValue(parsed.doubleValue());
 	}
 
+	// Same as s.replace(" ", "")
+	private static String removeSpaces(final String s)
+	{
+		if (s.indexOf(' ') < 0)
+			return s;
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) != ' ')
+				sb.append(s.charAt(i));
+		return sb.toString();
+	}
+
+	// Same as s.replaceAll("^[^0-9.]*", "")
+	private static String stripNonNumberPrefix(final String s)
+	{
+		int i = 0;
+		while (i < s.length() && !(s.charAt(i) >= '0' && s.charAt(i) <= '9' || s.charAt(i) == '.'))
+			i++;
+		return s.substring(i);
+	}
+
 	/**
 	 * Convert string to number. Partial match is not allowed: "9,000 cakes" --> null
 	 */
@@ -312,7 +333,7 @@ public final class StringNormalizationUtils
 	 */
 	public static String escapeTSV(final String x)
 	{
-		return x.replace("\\", "\\\\").replace("\n", "\\n").replace("|", "\\p").replaceAll("\\s", " ").trim();
+		return WHITESPACE_CHAR.matcher(x.replace("\\", "\\\\").replace("\n", "\\n").replace("|", "\\p")).replaceAll(" ").trim();
 	}
 
 	public static String unescapeTSV(final String x)
@@ -325,7 +346,7 @@ public final class StringNormalizationUtils
 	 */
 	public static String whitespaceNormalize(final String x)
 	{
-		return x.replaceAll("\\s", " ").trim();
+		return WHITESPACE_CHAR.matcher(x).replaceAll(" ").trim();
 	}
 
 	/**
@@ -333,7 +354,15 @@ public final class StringNormalizationUtils
 	 */
 	public static String collapseNormalize(final String x)
 	{
-		return Normalizer.normalize(x, Normalizer.Form.NFD).replaceAll("[^A-Za-z0-9]", "").toLowerCase();
+		final String decomposed = decompose(x);
+		final StringBuilder sb = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++)
+		{
+			final char c = decomposed.charAt(i);
+			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')
+				sb.append(c);
+		}
+		return sb.toString().toLowerCase();
 	}
 
 	/**
@@ -371,16 +400,89 @@ public final class StringNormalizationUtils
 		return null;
 	}
 
-	/**
-	 * Character normalization.
-	 */
-	public static String characterNormalize(String string)
+	// Characters replaced by characterNormalize (after decomposition); null = keep the character
+	private static final String[] CHARACTER_REPLACEMENTS = new String[0x30FC];
+
+	static
 	{
 		// Remove diacritics // (Sorry European people)
-		string = Normalizer.normalize(string, Normalizer.Form.NFD).replaceAll("[\u0300-\u036F]", "");
+		for (char c = '\u0300'; c <= '\u036F'; c++)
+			CHARACTER_REPLACEMENTS[c] = "";
 		// Special symbols
-		string = string.replaceAll("‚", ",").replaceAll("„", ",,").replaceAll("[·・]", ".").replaceAll("…", "...").replaceAll("ˆ", "^").replaceAll("˜", "~").replaceAll("‹", "<").replaceAll("›", ">").replaceAll("[‘’´`]", "'").replaceAll("[“”«»]", "\"").replaceAll("[•†‡]", "").replaceAll("[-‐‑–—]", "-");
-		return string.replaceAll("\\s+", " ").trim();
+		setReplacement("‚", ",");
+		setReplacement("„", ",,");
+		setReplacement("·・", ".");
+		setReplacement("…", "...");
+		setReplacement("ˆ", "^");
+		setReplacement("˜", "~");
+		setReplacement("‹", "<");
+		setReplacement("›", ">");
+		setReplacement("‘’´`", "'");
+		setReplacement("“”«»", "\"");
+		setReplacement("•†‡", "");
+		setReplacement("-‐‑–—", "-");
+	}
+
+	private static void setReplacement(final String characters, final String replacement)
+	{
+		for (final char c : characters.toCharArray())
+			CHARACTER_REPLACEMENTS[c] = replacement;
+	}
+
+	// Characters matched by \s in regular expressions
+	private static boolean isWhitespace(final char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	// Canonical decomposition (which does not change ASCII strings)
+	private static String decompose(final String string)
+	{
+		for (int i = 0; i < string.length(); i++)
+			if (string.charAt(i) >= 0x80)
+				return Normalizer.normalize(string, Normalizer.Form.NFD);
+		return string;
+	}
+
+	public static final Pattern WHITESPACE_CHAR = Pattern.compile("\\s");
+	public static final Pattern WHITESPACES = Pattern.compile("\\s+");
+	private static final Pattern CITATION = Pattern.compile("\\[(nb ?)?\\d+\\]");
+	private static final Pattern TRAILING_STARS = Pattern.compile("\\*+$");
+	private static final Pattern OUTSIDE_QUOTE = Pattern.compile("^\"(.*)\"$");
+	private static final Pattern DIACRITICS = Pattern.compile("[\u0300-\u036F]");
+	private static final Pattern TRAILING_CITATIONS = Pattern.compile("((?<!^)\\[[^\\]]*\\]|\\[\\d+\\]|[•♦†‡*#+])*$");
+	private static final Pattern TRAILING_PARENTHESES = Pattern.compile("(?<!^)(\\s*\\([^)]*\\))*$");
+	private static final Pattern OUTERMOST_QUOTE = Pattern.compile("^\"([^\"]*)\"$");
+	private static final Pattern SINGLE_QUOTES = Pattern.compile("[‘’´`]");
+	private static final Pattern DOUBLE_QUOTES = Pattern.compile("[“”]");
+	private static final Pattern DASHES = Pattern.compile("[‐‑‒–—−]");
+
+	/**
+	 * Character normalization: remove diacritics, replace special symbols, and collapse whitespaces. This is done in a single pass over the decomposed string.
+	 */
+	public static String characterNormalize(final String string)
+	{
+		final String decomposed = decompose(string);
+		final StringBuilder sb = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++)
+		{
+			final char c = decomposed.charAt(i);
+			if (isWhitespace(c))
+			{
+				// Replacements never produce spaces, so a space at the end is part of the current run
+				if (sb.length() == 0 || sb.charAt(sb.length() - 1) != ' ')
+					sb.append(' ');
+			}
+			else
+			{
+				final String replacement = c < CHARACTER_REPLACEMENTS.length ? CHARACTER_REPLACEMENTS[c] : null;
+				if (replacement == null)
+					sb.append(c);
+				else
+					sb.append(replacement);
+			}
+		}
+		return sb.toString().trim();
 	}
 
 	/**
@@ -389,12 +491,15 @@ public final class StringNormalizationUtils
 	public static String simpleNormalize(String string)
 	{
 		string = characterNormalize(string);
+		// The patterns below all need one of these characters
+		if (string.indexOf('[') < 0 && string.indexOf('*') < 0 && string.indexOf('"') < 0)
+			return string;
 		// Citation
-		string = string.replaceAll("\\[(nb ?)?\\d+\\]", "");
-		string = string.replaceAll("\\*+$", "");
+		string = CITATION.matcher(string).replaceAll("");
+		string = TRAILING_STARS.matcher(string).replaceAll("");
 		// Outside Quote
-		string = string.replaceAll("^\"(.*)\"$", "$1");
-		return string.replaceAll("\\s+", " ").trim();
+		string = OUTSIDE_QUOTE.matcher(string).replaceAll("$1");
+		return WHITESPACES.matcher(string).replaceAll(" ").trim();
 	}
 
 	/**
@@ -409,14 +514,14 @@ public final class StringNormalizationUtils
 		{
 			oldString = string;
 			// Remove citations
-			string = string.trim().replaceAll("((?<!^)\\[[^\\]]*\\]|\\[\\d+\\]|[•♦†‡*#+])*$", "");
+			string = TRAILING_CITATIONS.matcher(string.trim()).replaceAll("");
 			// Remove details in parenthesis
-			string = string.trim().replaceAll("(?<!^)(\\s*\\([^)]*\\))*$", "");
+			string = TRAILING_PARENTHESES.matcher(string.trim()).replaceAll("");
 			// Remove outermost quotation mark
-			string = string.trim().replaceAll("^\"([^\"]*)\"$", "$1");
+			string = OUTERMOST_QUOTE.matcher(string.trim()).replaceAll("$1");
 		} while (!oldString.equals(string));
 		// Collapse whitespaces
-		return string.replaceAll("\\s+", " ").trim();
+		return WHITESPACES.matcher(string).replaceAll(" ").trim();
 	}
 
 	/**
@@ -425,25 +530,25 @@ public final class StringNormalizationUtils
 	public static String officialEvaluatorNormalize(String string)
 	{
 		// Remove diacritics
-		string = Normalizer.normalize(string, Normalizer.Form.NFD).replaceAll("[\u0300-\u036F]", "");
+		string = DIACRITICS.matcher(decompose(string)).replaceAll("");
 		// Normalize quotes and dashes
-		string = string.replaceAll("[‘’´`]", "'").replaceAll("[“”]", "\"").replaceAll("[‐‑‒–—−]", "-");
+		string = DASHES.matcher(DOUBLE_QUOTES.matcher(SINGLE_QUOTES.matcher(string).replaceAll("'")).replaceAll("\"")).replaceAll("-");
 		String oldString;
 		do
 		{
 			oldString = string;
 			// Remove citations
-			string = string.trim().replaceAll("((?<!^)\\[[^\\]]*\\]|\\[\\d+\\]|[•♦†‡*#+])*$", "");
+			string = TRAILING_CITATIONS.matcher(string.trim()).replaceAll("");
 			// Remove details in parenthesis
-			string = string.trim().replaceAll("(?<!^)(\\s*\\([^)]*\\))*$", "");
+			string = TRAILING_PARENTHESES.matcher(string.trim()).replaceAll("");
 			// Remove outermost quotation mark
-			string = string.trim().replaceAll("^\"([^\"]*)\"$", "$1");
+			string = OUTERMOST_QUOTE.matcher(string.trim()).replaceAll("$1");
 		} while (!oldString.equals(string));
 		// Remove final '.'
 		if (string.endsWith("."))
 			string = string.substring(0, string.length() - 1);
 		// Collapse whitespaces and convert to lower case
-		string = string.replaceAll("\\s+", " ").toLowerCase().trim();
+		string = WHITESPACES.matcher(string).replaceAll(" ").toLowerCase().trim();
 		return string;
 	}
 
@@ -16,6 +16,7 @@ public class TableCellProperties
 	public final String originalString;
 	public final NameValue nameValue;
 	public final Multimap<Value, Value> metadata;
+	private volatile String normalizedString; // simpleNormalize(originalString).toLowerCase(), computed on first use
 
 	public TableCellProperties(final String id, final String originalString)
 	{
@@ -34,6 +35,14 @@ public class TableCellProperties
 		metadata = ArrayListMultimap.create(old.metadata);
 	}
 
+	/** Lower-cased simpleNormalize(originalString). Computed once, since features ask for it on every example. */
+	public String getNormalizedString()
+	{
+		if (normalizedString == null)
+			normalizedString = StringNormalizationUtils.simpleNormalize(originalString).toLowerCase();
+		return normalizedString;
+	}
+
 	@Override
 	public boolean equals(final Object o)
 	{
@@ -1,5 +1,9 @@
 package edu.stanford.nlp.sempre.tables;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import edu.stanford.nlp.sempre.BadFormulaException;
 import edu.stanford.nlp.sempre.CanonicalNames;
 import edu.stanford.nlp.sempre.Formula;
@@ -12,6 +16,7 @@ import edu.stanford.nlp.sempre.NameValue;
 import edu.stanford.nlp.sempre.NumberValue;
 import edu.stanford.nlp.sempre.TableValue;
 import edu.stanford.nlp.sempre.Value;
+import edu.stanford.nlp.sempre.Values;
 import edu.stanford.nlp.sempre.tables.lambdadcs.ExecutorCache;
 import edu.stanford.nlp.sempre.tables.lambdadcs.InfiniteUnaryDenotation;
 import edu.stanford.nlp.sempre.tables.lambdadcs.LambdaDCSException;
@@ -21,6 +26,7 @@ import edu.stanford.nlp.sempre.tables.serialize.TableReader;
 import edu.stanford.nlp.sempre.tables.serialize.TableWriter;
 import fig.basic.Evaluation;
 import fig.basic.Fmt;
+import fig.basic.IOUtils;
 import fig.basic.LispTree;
 import fig.basic.LogInfo;
 import fig.basic.Option;
@@ -28,7 +34,11 @@ import fig.basic.Pair;
 import fig.basic.StopWatchSet;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,6 +46,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A knowledge graph constructed from a table. - Each row becomes an entity - Each cell becomes an entity - Each column becomes a property between a row and a
@@ -55,6 +66,11 @@ public class TableKnowledgeGraph extends KnowledgeGraph implements FuzzyMatchabl
 		public String baseCSVDir = null;
 		@Option(gloss = "Whether to cache TableKnowledgeGraph")
 		public boolean cacheTableKnowledgeGraphs = true;
+		@Option(gloss = "Maximum total number of cells in the cached TableKnowledgeGraphs (least recently used graphs are evicted)")
+		public long maxCachedCells = 10000000;
+		@Option(gloss = "Directory for snapshots of analyzed tables, which are read instead of the CSV files on later runs (null = no snapshots). "
+				+ "Delete the snapshots after changing the cell normalization options.")
+		public String snapshotDir = null;
 		@Option(gloss = "Forbid row.row.next on multiple rows")
 		public boolean forbidNextOnManyRows = true;
 		@Option(gloss = "Set up executor cache for each graph (must manually clear, or else will get memory overflow)")
@@ -161,7 +177,12 @@ public class TableKnowledgeGraph extends KnowledgeGraph implements FuzzyMatchabl
 		// Generate cell properties by analyzing cell content in each column
 		for (final TableColumn column : columns)
 			StringNormalizationUtils.analyzeColumn(column);
-		// Collect cell properties for public access
+		collectCellProperties();
+	}
+
+	// Collect cell properties for public access, and precompute what is needed for fuzzy matching and execution.
+	private void collectCellProperties()
+	{
 		cellProperties = new HashSet<>(cellIdToTableCellProperties.values());
 		cellParts = new HashSet<>();
 		partIdToOriginalString = new HashMap<>();
@@ -185,31 +206,59 @@ public class TableKnowledgeGraph extends KnowledgeGraph implements FuzzyMatchabl
 		this(filename, new TableReader(filename));
 	}
 
-	// Cache (don't create multiple graphs for the same CSV or TSV file)
-	static final Map<String, TableKnowledgeGraph> filenameToGraph = new HashMap<>();
+	// Cache (don't create multiple graphs for the same CSV or TSV file).
+	// Graphs are weighted by their number of cells; different files are loaded in parallel.
+	private static volatile Cache<String, TableKnowledgeGraph> graphCache;
 
-	public static synchronized TableKnowledgeGraph fromRootedFilename(final String filename)
+	private static Cache<String, TableKnowledgeGraph> getGraphCache()
 	{
-		// Get from cache if possible
-		TableKnowledgeGraph graph = filenameToGraph.get(filename);
-		if (graph == null)
-		{
-			if (opts.verbose >= 1)
-				LogInfo.logs("create new TableKnowledgeGraph from filename = %s", filename);
-			StopWatchSet.begin("TableKnowledgeGraph.new");
-			try
+		if (graphCache == null)
+			synchronized (TableKnowledgeGraph.class)
 			{
-				graph = new TableKnowledgeGraph(filename);
+				if (graphCache == null)
+					graphCache = CacheBuilder.newBuilder().maximumWeight(opts.maxCachedCells).weigher((final String filename, final TableKnowledgeGraph graph) -> graph.numRows() * graph.numColumns() + 1).build();
 			}
-			catch (final IOException e)
+		return graphCache;
+	}
+
+	public static TableKnowledgeGraph fromRootedFilename(final String filename)
+	{
+		if (!opts.cacheTableKnowledgeGraphs)
+			return load(filename);
+		try
+		{
+			// Get from cache if possible
+			return getGraphCache().get(filename, () -> load(filename));
+		}
+		catch (final ExecutionException | UncheckedExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static TableKnowledgeGraph load(final String filename)
+	{
+		if (opts.verbose >= 1)
+			LogInfo.logs("create new TableKnowledgeGraph from filename = %s", filename);
+		StopWatchSet.begin("TableKnowledgeGraph.new");
+		try
+		{
+			TableKnowledgeGraph graph = readSnapshot(filename);
+			if (graph == null)
 			{
-				throw new RuntimeException(e);
+				graph = new TableKnowledgeGraph(filename);
+				writeSnapshot(graph);
 			}
+			return graph;
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
 			StopWatchSet.end();
-			if (opts.cacheTableKnowledgeGraphs)
-				filenameToGraph.put(filename, graph);
 		}
-		return graph;
 	}
 
 	public static TableKnowledgeGraph fromFilename(final String filename)
@@ -292,6 +341,142 @@ public class TableKnowledgeGraph extends KnowledgeGraph implements FuzzyMatchabl
 		executorCache = opts.individualExecutorCache ? new ExecutorCache() : null;
 	}
 
+	// ============================================================
+	// Snapshots
+	// ============================================================
+
+	/**
+	 * Construct a TableKnowledgeGraph from a snapshot written by toSnapshotLispTree(), without reading the table file or analyzing the cells.
+	 */
+	private TableKnowledgeGraph(final String filename, final LispTree snapshot)
+	{
+		this.filename = filename;
+		rows = new ArrayList<>();
+		columns = new ArrayList<>();
+		rowIdToTableRow = new HashMap<>();
+		relationIdToTableColumn = new HashMap<>();
+		cellIdToTableCellProperties = new HashMap<>();
+		// Header row
+		final LispTree columnsTree = snapshot.child(2);
+		for (int i = 1; i < columnsTree.children.size(); i++)
+		{
+			final TableColumn column = new TableColumn(columnsTree.child(i).child(0).value, columnsTree.child(i).child(1).value, columns.size());
+			columns.add(column);
+			relationIdToTableColumn.put(column.relationNameValue._id, column);
+		}
+		// Cells with their normalizations
+		final LispTree cellsTree = snapshot.child(3);
+		for (int i = 1; i < cellsTree.children.size(); i++)
+		{
+			final LispTree cellTree = cellsTree.child(i);
+			final TableCellProperties properties = new TableCellProperties(cellTree.child(0).value, cellTree.child(1).value);
+			for (int j = 2; j < cellTree.children.size(); j++)
+				properties.metadata.put(Values.fromLispTree(cellTree.child(j).child(0)), Values.fromLispTree(cellTree.child(j).child(1)));
+			cellIdToTableCellProperties.put(properties.id, properties);
+		}
+		// Content rows
+		final LispTree rowsTree = snapshot.child(4);
+		for (int i = 1; i < rowsTree.children.size(); i++)
+		{
+			final LispTree rowTree = rowsTree.child(i);
+			final TableRow currentRow = new TableRow(opts.rowIndexStartsAt1 ? rows.size() + 1 : rows.size());
+			rowIdToTableRow.put(currentRow.nameValue._id, currentRow);
+			rows.add(currentRow);
+			for (int j = 0; j < columns.size(); j++)
+				TableCell.createAndAddTo(cellIdToTableCellProperties.get(rowTree.child(j).value), columns.get(j), currentRow);
+		}
+		collectCellProperties();
+	}
+
+	/**
+	 * The analyzed table: (snapshot (source filename length lastModified) (columns (originalString columnName) ...) (cells (id originalString (property
+	 * value) ...) ...) (rows (cellId ...) ...))
+	 */
+	public LispTree toSnapshotLispTree()
+	{
+		final File source = new File(filename);
+		final LispTree tree = LispTree.proto.newList();
+		tree.addChild("snapshot");
+		tree.addChild(LispTree.proto.newList().addChild("source").addChild(filename).addChild("" + source.length()).addChild("" + source.lastModified()));
+		final LispTree columnsTree = LispTree.proto.newList().addChild("columns");
+		for (final TableColumn column : columns)
+			columnsTree.addChild(LispTree.proto.newList(column.originalString, column.columnName));
+		tree.addChild(columnsTree);
+		final LispTree cellsTree = LispTree.proto.newList().addChild("cells");
+		for (final TableCellProperties properties : cellIdToTableCellProperties.values())
+		{
+			final LispTree cellTree = LispTree.proto.newList(properties.id, properties.originalString);
+			for (final Map.Entry<Value, Value> entry : properties.metadata.entries())
+				cellTree.addChild(LispTree.proto.newList(toSnapshotLispTree(entry.getKey()), toSnapshotLispTree(entry.getValue())));
+			cellsTree.addChild(cellTree);
+		}
+		tree.addChild(cellsTree);
+		final LispTree rowsTree = LispTree.proto.newList().addChild("rows");
+		for (final TableRow row : rows)
+		{
+			final LispTree rowTree = LispTree.proto.newList();
+			for (final TableCell cell : row.children)
+				rowTree.addChild(cell.properties.id);
+			rowsTree.addChild(rowTree);
+		}
+		tree.addChild(rowsTree);
+		return tree;
+	}
+
+	// NumberValue.toLispTree() rounds (Fmt.D); snapshots keep every digit.
+	private static LispTree toSnapshotLispTree(final Value value)
+	{
+		if (!(value instanceof NumberValue))
+			return value.toLispTree();
+		final NumberValue number = (NumberValue) value;
+		final LispTree tree = LispTree.proto.newList().addChild("number").addChild(Double.toString(number._value));
+		if (!number._unit.equals(NumberValue.unitless))
+			tree.addChild(number._unit);
+		return tree;
+	}
+
+	// The file name keeps the table name readable; the hash of the full path keeps different paths (e.g., a/b_c.csv and a_b/c.csv) apart.
+	private static File getSnapshotFile(final String filename)
+	{
+		final String name = new File(filename).getName().replaceAll("[^A-Za-z0-9._-]", "_");
+		final String hash = Hashing.murmur3_128().hashString(filename, StandardCharsets.UTF_8).toString();
+		return new File(opts.snapshotDir, name + "." + hash + ".snapshot");
+	}
+
+	// Return null if there is no snapshot, or if the table file has changed since the snapshot was written.
+	private static TableKnowledgeGraph readSnapshot(final String filename)
+	{
+		if (opts.snapshotDir == null)
+			return null;
+		final File snapshotFile = getSnapshotFile(filename);
+		if (!snapshotFile.isFile())
+			return null;
+		final LispTree snapshot = LispTree.proto.parseFromFile(snapshotFile.getPath()).next();
+		final LispTree sourceTree = snapshot.child(1);
+		final File source = new File(filename);
+		if (!filename.equals(sourceTree.child(1).value) || source.length() != Long.parseLong(sourceTree.child(2).value) || source.lastModified() != Long.parseLong(sourceTree.child(3).value))
+		{
+			LogInfo.logs("Ignoring outdated snapshot %s", snapshotFile);
+			return null;
+		}
+		return new TableKnowledgeGraph(filename, snapshot);
+	}
+
+	private static void writeSnapshot(final TableKnowledgeGraph graph) throws IOException
+	{
+		if (opts.snapshotDir == null)
+			return;
+		final File snapshotFile = getSnapshotFile(graph.filename);
+		snapshotFile.getParentFile().mkdirs();
+		// Write to a temporary file first, so that other processes never read a partial snapshot
+		final File tempFile = File.createTempFile(snapshotFile.getName(), ".tmp", snapshotFile.getParentFile());
+		final PrintWriter out = IOUtils.openOutHard(tempFile.getPath());
+		graph.toSnapshotLispTree().print(Integer.MAX_VALUE, Integer.MAX_VALUE, out);
+		out.println();
+		out.close();
+		Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
 	// ============================================================
 	// Convert to other formats
 	// ============================================================
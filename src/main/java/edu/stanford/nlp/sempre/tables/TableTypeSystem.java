@@ -1,7 +1,6 @@
 package edu.stanford.nlp.sempre.tables;
 
 import edu.stanford.nlp.sempre.CanonicalNames;
-import edu.stanford.nlp.sempre.FuncSemType;
 import edu.stanford.nlp.sempre.NameValue;
 import edu.stanford.nlp.sempre.SemType;
 import edu.stanford.nlp.sempre.Value;
@@ -193,7 +192,7 @@ public abstract class TableTypeSystem
 			if (rowPropertyType != null)
 				return rowPropertyType;
 			final String fieldName = getIdAfterPeriod(property, ROW_PROPERTY_NAME_PREFIX);
-			return new FuncSemType(SemType.newUnionSemType(getCellType(fieldName), CELL_GENERIC_TYPE), ROW_SEMTYPE);
+			return SemType.newFuncSemType(SemType.newUnionSemType(getCellType(fieldName), CELL_GENERIC_TYPE), ROW_SEMTYPE);
 		}
 		if (property.startsWith(CELL_PROPERTY_NAME_PREFIX))
 		{
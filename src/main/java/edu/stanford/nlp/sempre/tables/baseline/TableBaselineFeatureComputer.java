@@ -4,6 +4,7 @@ import edu.stanford.nlp.sempre.DateValue;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.Example;
 import edu.stanford.nlp.sempre.FeatureComputer;
+import edu.stanford.nlp.sempre.FeatureContext;
 import edu.stanford.nlp.sempre.FeatureExtractor;
 import edu.stanford.nlp.sempre.ListValue;
 import edu.stanford.nlp.sempre.NameValue;
@@ -37,12 +38,18 @@ public class TableBaselineFeatureComputer implements FeatureComputer
 
 	@Override
 	public void extractLocal(final Example ex, final Derivation deriv)
+	{
+		extractLocal(ex, deriv, null);
+	}
+
+	@Override
+	public void extractLocal(final Example ex, final Derivation deriv, final FeatureContext context)
 	{
 		if (!deriv.isRoot(ex.numTokens()))
 			return;
 		if (!FeatureExtractor.containsDomain("table-baseline"))
 			return;
-		final List<PhraseInfo> phraseInfos = PhraseInfo.getPhraseInfos(ex);
+		final List<PhraseInfo> phraseInfos = PhraseInfo.getPhraseInfos(ex, context);
 		// Find the list of all entities mentioned in the question
 		final Set<String> mentionedEntities = new HashSet<>(), mentionedProperties = new HashSet<>();
 		for (final PhraseInfo phraseInfo : phraseInfos)
@@ -13,6 +13,7 @@ import edu.stanford.nlp.sempre.FloatingRuleUtils;
 import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.Grammar;
 import edu.stanford.nlp.sempre.ListValue;
+import edu.stanford.nlp.sempre.Metrics;
 import edu.stanford.nlp.sempre.PairListValue;
 import edu.stanford.nlp.sempre.Params;
 import edu.stanford.nlp.sempre.Parser;
@@ -480,7 +481,8 @@ class DPDParserState extends ParserState
 			}
 
 		// Call the semantic function on the children and read the results
-		final DerivationStream results = rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, children));
+		final long ruleStart = System.nanoTime();
+		final DerivationStream results = Metrics.recordRule(rule, ruleStart, rule.sem.call(ex, new SemanticFn.CallInfo(rule.lhs, start, end, rule, children)));
 		while (results.hasNext())
 		{
 			Derivation newDeriv = results.next();
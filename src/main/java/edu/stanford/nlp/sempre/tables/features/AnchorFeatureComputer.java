@@ -62,7 +62,7 @@ public class AnchorFeatureComputer implements FeatureComputer
 		for (final TableColumn column : graph.columns)
 			for (final TableCell cell : column.children)
 			{
-				final String s = StringNormalizationUtils.simpleNormalize(cell.properties.originalString).toLowerCase();
+				final String s = cell.properties.getNormalizedString();
 				if (s.contains(phrase) && !cell.properties.id.equals(predicate._id))
 					matches.add(s);
 			}
@@ -4,6 +4,7 @@ import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.ErrorValue;
 import edu.stanford.nlp.sempre.Example;
 import edu.stanford.nlp.sempre.FeatureComputer;
+import edu.stanford.nlp.sempre.FeatureContext;
 import edu.stanford.nlp.sempre.FeatureExtractor;
 import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.JoinFormula;
@@ -39,6 +40,12 @@ public class PhraseDenotationFeatureComputer implements FeatureComputer
 
 	@Override
 	public void extractLocal(final Example ex, final Derivation deriv)
+	{
+		extractLocal(ex, deriv, null);
+	}
+
+	@Override
+	public void extractLocal(final Example ex, final Derivation deriv, final FeatureContext context)
 	{
 		if (!(FeatureExtractor.containsDomain("custom-denotation") || FeatureExtractor.containsDomain("phrase-denotation") || FeatureExtractor.containsDomain("headword-denotation")))
 			return;
@@ -47,7 +54,7 @@ public class PhraseDenotationFeatureComputer implements FeatureComputer
 			return;
 		final Collection<String> denotationTypes = tableTypes(deriv);
 		extractCustomDenotationFeatures(ex, deriv, denotationTypes);
-		extractPhraseDenotationFeatures(ex, deriv, denotationTypes);
+		extractPhraseDenotationFeatures(ex, deriv, denotationTypes, context);
 		extractHeadwordDenotationFeatures(ex, deriv, denotationTypes);
 	}
 
@@ -140,11 +147,11 @@ public class PhraseDenotationFeatureComputer implements FeatureComputer
 	// Phrase - Denotation
 	// ============================================================
 
-	private void extractPhraseDenotationFeatures(final Example ex, final Derivation deriv, final Collection<String> denotationTypes)
+	private void extractPhraseDenotationFeatures(final Example ex, final Derivation deriv, final Collection<String> denotationTypes, final FeatureContext context)
 	{
 		if (!FeatureExtractor.containsDomain("phrase-denotation"))
 			return;
-		final List<PhraseInfo> phraseInfos = PhraseInfo.getPhraseInfos(ex);
+		final List<PhraseInfo> phraseInfos = PhraseInfo.getPhraseInfos(ex, context);
 		if (opts.verbose >= 2)
 			LogInfo.logs("%s %s %s", deriv.value, deriv.type, denotationTypes);
 		for (final String denotationType : denotationTypes)
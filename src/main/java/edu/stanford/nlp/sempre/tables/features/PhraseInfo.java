@@ -5,6 +5,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import edu.stanford.nlp.sempre.ContextValue;
 import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.FeatureContext;
 import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.FuzzyMatchFn.FuzzyMatchFnMode;
 import edu.stanford.nlp.sempre.LanguageInfo;
@@ -106,18 +107,23 @@ public class PhraseInfo
 		return "\"" + text + "\"";
 	}
 
-	// Caching
+	public static List<PhraseInfo> computePhraseInfos(final Example ex)
+	{
+		final List<PhraseInfo> phraseInfos = new ArrayList<>();
+		final List<String> tokens = ex.languageInfo.tokens;
+		for (int s = 1; s <= opts.maxPhraseLength; s++)
+			for (int i = 0; i <= tokens.size() - s; i++)
+				phraseInfos.add(new PhraseInfo(ex, i, i + s));
+		return phraseInfos;
+	}
+
+	// Caching (only used when there is no FeatureContext)
 	private static final LoadingCache<Example, List<PhraseInfo>> cache = CacheBuilder.newBuilder().maximumSize(20).build(new CacheLoader<Example, List<PhraseInfo>>()
 	{
 		@Override
 		public List<PhraseInfo> load(final Example ex) throws Exception
 		{
-			final List<PhraseInfo> phraseInfos = new ArrayList<>();
-			final List<String> tokens = ex.languageInfo.tokens;
-			for (int s = 1; s <= opts.maxPhraseLength; s++)
-				for (int i = 0; i <= tokens.size() - s; i++)
-					phraseInfos.add(new PhraseInfo(ex, i, i + s));
-			return phraseInfos;
+			return computePhraseInfos(ex);
 		}
 	});
 
@@ -133,4 +139,14 @@ public class PhraseInfo
 		}
 	}
 
+	/**
+	 * Get the phrases of the example, computed once per FeatureContext. Fall back to the global cache if |context| is null.
+	 */
+	public static List<PhraseInfo> getPhraseInfos(final Example ex, final FeatureContext context)
+	{
+		if (context == null)
+			return getPhraseInfos(ex);
+		return context.get(PhraseInfo.class, PhraseInfo::computePhraseInfos);
+	}
+
 }
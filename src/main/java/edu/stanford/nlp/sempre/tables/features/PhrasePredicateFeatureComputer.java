@@ -3,6 +3,7 @@ package edu.stanford.nlp.sempre.tables.features;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.Example;
 import edu.stanford.nlp.sempre.FeatureComputer;
+import edu.stanford.nlp.sempre.FeatureContext;
 import edu.stanford.nlp.sempre.FeatureExtractor;
 import edu.stanford.nlp.sempre.tables.features.PredicateInfo.PredicateType;
 import fig.basic.LogInfo;
@@ -59,14 +60,22 @@ public class PhrasePredicateFeatureComputer implements FeatureComputer
 
 	@Override
 	public void extractLocal(final Example ex, final Derivation deriv)
+	{
+		extractLocal(ex, deriv, null);
+	}
+
+	@Override
+	public void extractLocal(final Example ex, final Derivation deriv, final FeatureContext context)
 	{
 		if (!(FeatureExtractor.containsDomain("phrase-predicate") || FeatureExtractor.containsDomain("phrase-formula") || FeatureExtractor.containsDomain("phrase-category")))
 			return;
 		// Only compute features at the root, except when the partial option is set.
 		if (!opts.defineOnPartialDerivs && !deriv.isRoot(ex.numTokens()))
 			return;
-		final List<PhraseInfo> phraseInfos = PhraseInfo.getPhraseInfos(ex);
-		final List<PredicateInfo> predicateInfos = PredicateInfo.getPredicateInfos(ex, deriv);
+		final List<PhraseInfo> phraseInfos = PhraseInfo.getPhraseInfos(ex, context);
+		final List<PredicateInfo> predicateInfos = PredicateInfo.getPredicateInfos(ex, deriv, context);
+		// phrase => predicate => lexicalized feature name, shared by all derivations of the example
+		final Map<PhraseInfo, Map<PredicateInfo, String>> names = context == null ? null : context.get(PhrasePredicateFeatureComputer.class, e -> new HashMap<>());
 		if (opts.verbose >= 2)
 		{
 			LogInfo.logs("Example: %s", ex.utterance);
@@ -93,12 +102,12 @@ public class PhrasePredicateFeatureComputer implements FeatureComputer
 				for (final PhraseInfo phraseInfo : phraseInfos)
 					for (final Map.Entry<PredicateInfo, Integer> entry : predicateInfoCounts.entrySet())
 						if (entry.getValue() != 0)
-							extractMatch(ex, deriv, phraseInfo, entry.getKey(), entry.getValue());
+							extractMatch(ex, deriv, names, phraseInfo, entry.getKey(), entry.getValue());
 			}
 			else
 				for (final PhraseInfo phraseInfo : phraseInfos)
 					for (final PredicateInfo predicateInfo : predicateInfos)
-						extractMatch(ex, deriv, phraseInfo, predicateInfo, 1);
+						extractMatch(ex, deriv, names, phraseInfo, predicateInfo, 1);
 		if (FeatureExtractor.containsDomain("missing-predicate"))
 			extractMissing(ex, deriv, phraseInfos, predicateInfos);
 	}
@@ -107,15 +116,15 @@ public class PhrasePredicateFeatureComputer implements FeatureComputer
 	// Matching
 	// ============================================================
 
-	private void extractMatch(final Example ex, final Derivation deriv, final PhraseInfo phraseInfo, final PredicateInfo predicateInfo, final double factor)
+	private void extractMatch(final Example ex, final Derivation deriv, final Map<PhraseInfo, Map<PredicateInfo, String>> names, final PhraseInfo phraseInfo, final PredicateInfo predicateInfo, final double factor)
 	{
 		if (predicateInfo.originalString != null)
-			extractMatch(ex, deriv, phraseInfo, phraseInfo.lemmaText, "", predicateInfo, predicateInfo.originalString, "(o)", factor);
+			extractMatch(ex, deriv, names, phraseInfo, phraseInfo.lemmaText, "", predicateInfo, predicateInfo.originalString, "(o)", factor);
 		else
-			extractMatch(ex, deriv, phraseInfo, phraseInfo.lemmaText, "", predicateInfo, predicateInfo.predicate, "(i)", factor);
+			extractMatch(ex, deriv, names, phraseInfo, phraseInfo.lemmaText, "", predicateInfo, predicateInfo.predicate, "(i)", factor);
 	}
 
-	private void extractMatch(final Example ex, final Derivation deriv, final PhraseInfo phraseInfo, final String phraseString, final String phraseType, final PredicateInfo predicateInfo, final String predicateString, final String predicateType, final double factor)
+	private void extractMatch(final Example ex, final Derivation deriv, final Map<PhraseInfo, Map<PredicateInfo, String>> names, final PhraseInfo phraseInfo, final String phraseString, final String phraseType, final PredicateInfo predicateInfo, final String predicateString, final String predicateType, final double factor)
 	{
 		if (FeatureExtractor.containsDomain("phrase-predicate") && opts.unlexicalizedPhrasePredicate)
 			if (phraseString.equals(predicateString))
@@ -133,7 +142,7 @@ public class PhrasePredicateFeatureComputer implements FeatureComputer
 						defineFeatures(ex, deriv, phraseInfo, predicateInfo, phraseType + "=*_" + predicateType, phraseString, predicateString, factor);
 				}
 		if (FeatureExtractor.containsDomain("phrase-predicate") && opts.lexicalizedPhrasePredicate && phraseInfo.end - phraseInfo.start <= maxNforLexicalizeAllPairs && (!PhraseInfo.opts.forbidBorderStopWordInLexicalizedFeatures || !phraseInfo.isBorderStopWord))
-			deriv.addFeature("p-p", phraseType + phraseString + ";" + predicateType + predicateString, factor);
+			deriv.addFeature("p-p", getLexicalizedName(names, phraseInfo, phraseString, phraseType, predicateInfo, predicateString, predicateType), factor);
 		if (FeatureExtractor.containsDomain("phrase-category") && predicateInfo.type == PredicateType.BINARY && (!PhraseInfo.opts.forbidBorderStopWordInLexicalizedFeatures || !phraseInfo.isBorderStopWord))
 		{
 			final ColumnCategoryInfo catInfo = ColumnCategoryInfo.getSingleton();
@@ -148,6 +157,21 @@ public class PhrasePredicateFeatureComputer implements FeatureComputer
 		}
 	}
 
+	// The name only depends on the (phrase, predicate) pair, so it is built once per example when |names| is available.
+	private static String getLexicalizedName(final Map<PhraseInfo, Map<PredicateInfo, String>> names, final PhraseInfo phraseInfo, final String phraseString, final String phraseType, final PredicateInfo predicateInfo, final String predicateString, final String predicateType)
+	{
+		if (names == null)
+			return phraseType + phraseString + ";" + predicateType + predicateString;
+		final Map<PredicateInfo, String> predicateToName = names.computeIfAbsent(phraseInfo, k -> new HashMap<>());
+		String name = predicateToName.get(predicateInfo);
+		if (name == null)
+		{
+			name = phraseType + phraseString + ";" + predicateType + predicateString;
+			predicateToName.put(predicateInfo, name);
+		}
+		return name;
+	}
+
 	private void defineFeatures(final Example ex, final Derivation deriv, final PhraseInfo phraseInfo, final PredicateInfo predicateInfo, final String featurePrefix, final String phraseString, final String predicateString, final double factor)
 	{
 		defineFeatures(ex, deriv, phraseInfo, predicateInfo, featurePrefix, factor);
@@ -7,6 +7,7 @@ import edu.stanford.nlp.sempre.ContextValue;
 import edu.stanford.nlp.sempre.DateValue;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.FeatureContext;
 import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.JoinFormula;
 import edu.stanford.nlp.sempre.LambdaFormula;
@@ -158,10 +159,20 @@ public class PredicateInfo
 	// ============================================================
 
 	public static List<PredicateInfo> getPredicateInfos(final Example ex, final Derivation deriv)
+	{
+		return getPredicateInfos(ex, deriv, null);
+	}
+
+	/**
+	 * Same as getPredicateInfos(ex, deriv), but PredicateInfo objects are shared among all derivations of the FeatureContext (if not null), so the
+	 * original strings and lemmas of each predicate are only computed once per example.
+	 */
+	public static List<PredicateInfo> getPredicateInfos(final Example ex, final Derivation deriv, final FeatureContext featureContext)
 	{
 		Collection<PredicateInfo> predicates;
 		final Formula formula = deriv.formula;
-		final FormulaTraverser traverser = new FormulaTraverser(ex);
+		final Map<String, PredicateInfo> interned = featureContext == null ? null : featureContext.get(PredicateInfo.class, e -> new HashMap<>());
+		final FormulaTraverser traverser = new FormulaTraverser(ex, interned);
 		traverser.traverse(formula);
 		predicates = traverser.predicates;
 		final List<PredicateInfo> answer = new ArrayList<>();
@@ -175,11 +186,26 @@ public class PredicateInfo
 	{
 		public final Collection<PredicateInfo> predicates;
 		private final ContextValue context;
+		private final Map<String, PredicateInfo> interned; // predicate => PredicateInfo (null = do not share)
 
-		public FormulaTraverser(final Example ex)
+		public FormulaTraverser(final Example ex, final Map<String, PredicateInfo> interned_)
 		{
 			predicates = opts.allowRepeats ? new ArrayList<>() : new HashSet<>();
 			context = ex.context;
+			interned = interned_;
+		}
+
+		private PredicateInfo newPredicateInfo(final String predicate)
+		{
+			if (interned == null)
+				return new PredicateInfo(predicate, context);
+			PredicateInfo info = interned.get(predicate);
+			if (info == null)
+			{
+				info = new PredicateInfo(predicate, context);
+				interned.put(predicate, info);
+			}
+			return info;
 		}
 
 		public void traverse(final Formula formula)
@@ -190,27 +216,27 @@ public class PredicateInfo
 				if (value instanceof NumberValue)
 				{
 					final NumberValue number = (NumberValue) value;
-					predicates.add(new PredicateInfo("number", context));
-					predicates.add(new PredicateInfo(Fmt.D(number._value), context));
+					predicates.add(newPredicateInfo("number"));
+					predicates.add(newPredicateInfo(Fmt.D(number._value)));
 
 				}
 				else
 					if (value instanceof DateValue)
 					{
 						final DateValue date = (DateValue) value;
-						predicates.add(new PredicateInfo("date", context));
+						predicates.add(newPredicateInfo("date"));
 						// Use prefixes to distinguish from numbers
-						predicates.add(new PredicateInfo("y:" + Fmt.D(date.year), context));
-						predicates.add(new PredicateInfo("m:" + Fmt.D(date.month), context));
-						predicates.add(new PredicateInfo("d:" + Fmt.D(date.day), context));
+						predicates.add(newPredicateInfo("y:" + Fmt.D(date.year)));
+						predicates.add(newPredicateInfo("m:" + Fmt.D(date.month)));
+						predicates.add(newPredicateInfo("d:" + Fmt.D(date.day)));
 
 					}
 					else
 						if (value instanceof StringValue)
 						{
 							final StringValue string = (StringValue) value;
-							predicates.add(new PredicateInfo("string", context));
-							predicates.add(new PredicateInfo(string.value, context));
+							predicates.add(newPredicateInfo("string"));
+							predicates.add(newPredicateInfo(string.value));
 
 						}
 						else
@@ -218,7 +244,7 @@ public class PredicateInfo
 							{
 								final NameValue name = (NameValue) value;
 								final String id = name._id;
-								predicates.add(new PredicateInfo(id, context));
+								predicates.add(newPredicateInfo(id));
 							}
 
 			}
@@ -242,7 +268,7 @@ public class PredicateInfo
 						}
 						else
 						{
-							predicates.add(new PredicateInfo("reverse", context));
+							predicates.add(newPredicateInfo("reverse"));
 							traverse(reverse.child);
 						}
 
@@ -251,7 +277,7 @@ public class PredicateInfo
 						if (formula instanceof MergeFormula)
 						{
 							final MergeFormula merge = (MergeFormula) formula;
-							predicates.add(new PredicateInfo(merge.mode.toString(), context));
+							predicates.add(newPredicateInfo(merge.mode.toString()));
 							traverse(merge.child1);
 							traverse(merge.child2);
 
@@ -260,7 +286,7 @@ public class PredicateInfo
 							if (formula instanceof AggregateFormula)
 							{
 								final AggregateFormula aggregate = (AggregateFormula) formula;
-								predicates.add(new PredicateInfo(aggregate.mode.toString(), context));
+								predicates.add(newPredicateInfo(aggregate.mode.toString()));
 								traverse(aggregate.child);
 
 							}
@@ -268,7 +294,7 @@ public class PredicateInfo
 								if (formula instanceof SuperlativeFormula)
 								{
 									final SuperlativeFormula superlative = (SuperlativeFormula) formula;
-									predicates.add(new PredicateInfo(superlative.mode.toString(), context));
+									predicates.add(newPredicateInfo(superlative.mode.toString()));
 									// Skip the "(number 1) (number 1)" part
 									traverse(superlative.head);
 									traverse(superlative.relation);
@@ -278,7 +304,7 @@ public class PredicateInfo
 									if (formula instanceof ArithmeticFormula)
 									{
 										final ArithmeticFormula arithmetic = (ArithmeticFormula) formula;
-										predicates.add(new PredicateInfo(arithmetic.mode.toString(), context));
+										predicates.add(newPredicateInfo(arithmetic.mode.toString()));
 										traverse(arithmetic.child1);
 										traverse(arithmetic.child2);
 
@@ -293,7 +319,7 @@ public class PredicateInfo
 											if (formula instanceof MarkFormula)
 											{
 												final MarkFormula mark = (MarkFormula) formula;
-												predicates.add(new PredicateInfo("mark", context));
+												predicates.add(newPredicateInfo("mark"));
 												// Skip variable
 												traverse(mark.body);
 
@@ -302,7 +328,7 @@ public class PredicateInfo
 												if (formula instanceof LambdaFormula)
 												{
 													final LambdaFormula lambda = (LambdaFormula) formula;
-													predicates.add(new PredicateInfo("lambda", context));
+													predicates.add(newPredicateInfo("lambda"));
 													// Skip variable
 													traverse(lambda.body);
 
@@ -89,12 +89,22 @@ public class LambdaDCSExecutor extends Executor
 		formula = Formulas.betaReduction(formula);
 		final Value answer = logic.execute(formula);
 		stopWatch.stop();
-		stats.addCumulative("execTime", stopWatch.ms);
+		synchronized (stats)
+		{
+			stats.addCumulative("execTime", stopWatch.ms);
+		}
 		if (stopWatch.ms >= 10 && opts.verbose >= 1)
 			LogInfo.logs("long time (%d ms): %s => %s", stopWatch.ms, formula, answer);
 		return new Response(answer);
 	}
 
+	// The formulas are executed in parallel. The threads share the ExecutorCache of the graph, so a subtree computed for one formula is reused for the others.
+	@Override
+	public List<Response> executeBatch(final List<Formula> formulas, final ContextValue context)
+	{
+		return executeInParallel(formulas, context);
+	}
+
 	public void summarize()
 	{
 		LogInfo.begin_track("LambdaDCSExecutor: summarize");
@@ -207,6 +217,16 @@ class LambdaDCSCoreLogic
 		return answer;
 	}
 
+	// The stats are shared by the threads of a batch (see LambdaDCSExecutor.executeBatch).
+	private void addCacheHit(final boolean normal, final boolean scoped)
+	{
+		synchronized (stats)
+		{
+			stats.addCumulative("normalCacheHit", normal);
+			stats.addCumulative("scopedCacheHit", scoped);
+		}
+	}
+
 	public Unarylike computeUnary(final Formula formula, final UnarylikeTypeHint typeHint)
 	{
 		assert typeHint != null;
@@ -218,8 +238,7 @@ class LambdaDCSCoreLogic
 			Object object = cache.get(graph, formula);
 			if (object != null && object instanceof Unarylike)
 			{
-				stats.addCumulative("normalCacheHit", true);
-				stats.addCumulative("scopedCacheHit", false);
+				addCacheHit(true, false);
 				return (Unarylike) object;
 			}
 			else
@@ -228,13 +247,11 @@ class LambdaDCSCoreLogic
 					object = cache.get(graph, new Pair<>(formula, typeHint.getIfSingleVar()));
 					if (object != null && object instanceof Unarylike)
 					{
-						stats.addCumulative("normalCacheHit", false);
-						stats.addCumulative("scopedCacheHit", true);
+						addCacheHit(false, true);
 						return (Unarylike) object;
 					}
 				}
-			stats.addCumulative("normalCacheHit", false);
-			stats.addCumulative("scopedCacheHit", false);
+			addCacheHit(false, false);
 		}
 
 		if (formula instanceof ValueFormula)
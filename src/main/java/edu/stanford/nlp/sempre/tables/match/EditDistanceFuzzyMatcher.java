@@ -233,6 +233,11 @@ public class EditDistanceFuzzyMatcher extends FuzzyMatcher
 		cache = new FuzzyMatchCache();
 		// aggregateCache[i,j] = all formulas matched by sentence[i'<=i:j'>=j], (i',j') != (i,j)
 		final FuzzyMatchCache aggregateCache = new FuzzyMatchCache();
+		// The collapsed form of a span is the concatenation of the collapsed forms of its tokens
+		final String[] collapsedTokens = new String[sentence.size()];
+		for (int i = 0; i < sentence.size(); i++)
+			collapsedTokens[i] = getCanonicalCollapsedForm(sentence.get(i));
+		final StringBuilder collapsedSpan = new StringBuilder();
 		for (int s = sentence.size(); s >= 1; s--)
 			for (int i = 0; i + s <= sentence.size(); i++)
 			{
@@ -241,7 +246,10 @@ public class EditDistanceFuzzyMatcher extends FuzzyMatcher
 				final Collection<Formula> formulas = new HashSet<>();
 				if (!(FuzzyMatcher.opts.ignorePunctuationBoundedQueries && !checkPunctuationBoundaries(term)))
 				{
-					final String normalized = getCanonicalCollapsedForm(term);
+					collapsedSpan.setLength(0);
+					for (int k = i; k < j; k++)
+						collapsedSpan.append(collapsedTokens[k]);
+					final String normalized = collapsedSpan.toString();
 					// Exact matches
 					final Collection<Formula> exactMatched = getFuzzyExactMatchedFormulas(normalized, mode);
 					if (exactMatched != null)
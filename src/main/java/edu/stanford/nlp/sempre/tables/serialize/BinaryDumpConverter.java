@@ -0,0 +1,79 @@
+package edu.stanford.nlp.sempre.tables.serialize;
+
+import fig.basic.LispTree;
+import fig.basic.LogInfo;
+import fig.basic.Option;
+import fig.exec.Execution;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Convert dump files written by SerializedDumper (dumped-*.gz) into binary dump files (dumped-*.bin, see BinaryExampleFile). The binary file is written next
+ * to the gzip file (or in outDir); SerializedDataset then uses it instead of the gzip file.
+ */
+public class BinaryDumpConverter implements Runnable
+{
+	@Option(required = true, gloss = "Dump files (dumped-*.gz) or directories containing them")
+	public List<String> inPaths = new ArrayList<>();
+	@Option(gloss = "Output directory (default: same directory as the input file)")
+	public String outDir = null;
+
+	@Override
+	public void run()
+	{
+		for (final String inPath : inPaths)
+		{
+			final File file = new File(inPath);
+			if (file.isDirectory())
+			{
+				final String[] filenames = file.list();
+				Arrays.sort(filenames);
+				for (final String filename : filenames)
+					if (SerializedDataset.GZ_PATTERN.matcher(filename).matches())
+						convert(new File(file, filename));
+			}
+			else
+				convert(file);
+		}
+	}
+
+	public void convert(final File inFile)
+	{
+		final String name = inFile.getName();
+		if (!name.endsWith(".gz"))
+			throw new RuntimeException("Not a dump file: " + inFile);
+		final File outFile = new File(outDir != null ? new File(outDir) : inFile.getAbsoluteFile().getParentFile(), name.substring(0, name.length() - ".gz".length()) + BinaryExampleFile.EXTENSION);
+		LogInfo.begin_track("Converting %s => %s", inFile, outFile);
+		final Iterator<LispTree> trees = LispTree.proto.parseFromFile(inFile.getPath());
+		final BinaryExampleFile.Writer writer = new BinaryExampleFile.Writer(outFile.getPath());
+		while (trees.hasNext())
+		{
+			final LispTree tree = trees.next();
+			final String label = tree.child(0).value;
+			if ("metadata".equals(label))
+				continue;
+			if (!"example".equals(label))
+				throw new RuntimeException("Not an example: " + tree);
+			writer.add(getId(tree), tree);
+		}
+		writer.close();
+		LogInfo.logs("Converted %d examples", writer.size());
+		LogInfo.end_track();
+	}
+
+	private static String getId(final LispTree tree)
+	{
+		for (int i = 1; i < tree.children.size(); i++)
+			if ("id".equals(tree.child(i).child(0).value))
+				return tree.child(i).child(1).value;
+		return null;
+	}
+
+	public static void main(final String[] args)
+	{
+		Execution.run(args, new BinaryDumpConverter());
+	}
+}
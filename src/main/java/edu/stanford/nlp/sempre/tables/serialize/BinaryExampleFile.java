@@ -0,0 +1,551 @@
+package edu.stanford.nlp.sempre.tables.serialize;
+
+import edu.stanford.nlp.sempre.ActionFormula;
+import edu.stanford.nlp.sempre.AggregateFormula;
+import edu.stanford.nlp.sempre.ArithmeticFormula;
+import edu.stanford.nlp.sempre.CallFormula;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.Formulas;
+import edu.stanford.nlp.sempre.JoinFormula;
+import edu.stanford.nlp.sempre.LambdaFormula;
+import edu.stanford.nlp.sempre.MarkFormula;
+import edu.stanford.nlp.sempre.MergeFormula;
+import edu.stanford.nlp.sempre.NameValue;
+import edu.stanford.nlp.sempre.NotFormula;
+import edu.stanford.nlp.sempre.NumberValue;
+import edu.stanford.nlp.sempre.ReverseFormula;
+import edu.stanford.nlp.sempre.SuperlativeFormula;
+import edu.stanford.nlp.sempre.Value;
+import edu.stanford.nlp.sempre.ValueFormula;
+import edu.stanford.nlp.sempre.Values;
+import edu.stanford.nlp.sempre.VariableFormula;
+import fig.basic.LispTree;
+import fig.basic.LogInfo;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary container for dumped examples (the binary counterpart of the dumped-*.gz files written by SerializedDumper), named dumped-*.bin.
+ * <p>
+ * Each example is stored as its LispTree, with every atom (token, tag, value symbol, ...) replaced by an index into a string table shared by the whole file.
+ * Formulas (the argument of formula and targetFormula) are stored as typed nodes (one opcode per Formula class, numbers as raw doubles), which are decoded
+ * straight into Formula objects instead of being parsed from a LispTree. An index at the end of the file gives the offset and ID of every example, so examples can be read in any order without reading the ones before
+ * them. The file is memory-mapped, and reads do not share any state, so examples can be decoded from several threads.
+ * <p>
+ * Layout: header (magic, version, number of examples, offset of the string table, offset of the index), examples, string table, index (offset and ID of each
+ * example). Numbers inside examples and the string table are variable-length.
+ */
+public class BinaryExampleFile
+{
+	public static final String EXTENSION = ".bin";
+
+	private static final byte[] MAGIC = "SEMPREBX".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = MAGIC.length + 4 + 4 + 8 + 8;
+	private static final int INDEX_ENTRY_SIZE = 8 + 4;
+
+	private final String path;
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final String[] strings; // strings[0] is null
+	private final int indexOffset;
+
+	public BinaryExampleFile(final String path)
+	{
+		this.path = path;
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new RuntimeException(path + " is too large to map; dump fewer examples per file (SerializedDumper.numExamplesPerFile)");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		final ByteBuffer in = buffer.duplicate();
+		final byte[] magic = new byte[MAGIC.length];
+		in.get(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new RuntimeException("Not a binary example file: " + path);
+		final int version = in.getInt();
+		if (version != VERSION)
+			throw new RuntimeException("Unsupported binary example file version " + version + " (convert the dump again): " + path);
+		size = in.getInt();
+		final long stringsOffset = in.getLong();
+		indexOffset = (int) in.getLong();
+
+		in.position((int) stringsOffset);
+		strings = new String[readVarInt(in) + 1];
+		for (int i = 1; i < strings.length; i++)
+		{
+			final byte[] bytes = new byte[readVarInt(in)];
+			in.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	public static boolean isBinary(final String path)
+	{
+		return path.endsWith(EXTENSION);
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public String getId(final int index)
+	{
+		checkIndex(index);
+		return strings[buffer.getInt(indexOffset + index * INDEX_ENTRY_SIZE + 8)];
+	}
+
+	public LispTree readTree(final int index)
+	{
+		return readTree(index, null);
+	}
+
+	/**
+	 * Read an example. If formulas is not null, each stored formula appears in the tree as a placeholder (an empty list) which formulas maps to the decoded
+	 * Formula; otherwise it appears as the formula's LispTree.
+	 */
+	public LispTree readTree(final int index, final Map<LispTree, Formula> formulas)
+	{
+		checkIndex(index);
+		final ByteBuffer in = buffer.duplicate();
+		in.position((int) buffer.getLong(indexOffset + index * INDEX_ENTRY_SIZE));
+		return readTree(in, formulas);
+	}
+
+	private void checkIndex(final int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Array size: " + size + "; No index " + index);
+	}
+
+	// Leaf: (string index) << 2; list: (number of children) << 2 | 1, followed by the children; formula: 2, followed by the formula.
+	private LispTree readTree(final ByteBuffer in, final Map<LispTree, Formula> formulas)
+	{
+		final int code = readVarInt(in);
+		switch (code & 3)
+		{
+			case LEAF:
+				return LispTree.proto.newLeaf(strings[code >>> 2]);
+			case LIST:
+				final LispTree tree = LispTree.proto.newList();
+				for (int i = code >>> 2; i > 0; i--)
+					tree.addChild(readTree(in, formulas));
+				return tree;
+			case FORMULA:
+				final Formula formula = readFormula(in);
+				if (formulas == null)
+					return formula.toLispTree();
+				final LispTree placeholder = LispTree.proto.newList();
+				formulas.put(placeholder, formula);
+				return placeholder;
+			default:
+				throw new RuntimeException("Invalid node " + code + " in " + path);
+		}
+	}
+
+	// ============================================================
+	// Formulas
+	// ============================================================
+
+	private static final int LEAF = 0, LIST = 1, FORMULA = 2;
+
+	// Formula opcodes
+	private static final int NAME = 0, NUMBER = 1, VALUE = 2, VARIABLE = 3, LAMBDA = 4, MARK = 5, NOT = 6, REVERSE = 7, CALL = 8, MERGE = 9, AGGREGATE = 10,
+			SUPERLATIVE = 11, ARITHMETIC = 12, ACTION = 13, JOIN = 14;
+
+	// Opcode, followed by the fields of the formula (strings and modes as string indices, other values as trees).
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Formula readFormula(final ByteBuffer in)
+	{
+		final int op = readVarInt(in);
+		switch (op)
+		{
+			case NAME:
+				final String id = readString(in);
+				return new ValueFormula<>(new NameValue(id, readString(in)));
+			case NUMBER:
+				final double number = in.getDouble();
+				return new ValueFormula<>(new NumberValue(number, readString(in)));
+			case VALUE:
+				return new ValueFormula<>(Values.fromLispTree(readTree(in, null)));
+			case VARIABLE:
+				return new VariableFormula(readString(in));
+			case LAMBDA:
+				final String lambdaVar = readString(in);
+				return new LambdaFormula(lambdaVar, readFormula(in));
+			case MARK:
+				final String markVar = readString(in);
+				return new MarkFormula(markVar, readFormula(in));
+			case NOT:
+				return new NotFormula(readFormula(in));
+			case REVERSE:
+				return new ReverseFormula(readFormula(in));
+			case CALL:
+				final Formula func = readFormula(in);
+				return new CallFormula(func, readFormulas(in));
+			case MERGE:
+				final MergeFormula.Mode mergeMode = readMode(in, MergeFormula.Mode.class);
+				final Formula merged = readFormula(in);
+				return new MergeFormula(mergeMode, merged, readFormula(in));
+			case AGGREGATE:
+				final AggregateFormula.Mode aggregateMode = readMode(in, AggregateFormula.Mode.class);
+				return new AggregateFormula(aggregateMode, readFormula(in));
+			case SUPERLATIVE:
+				final SuperlativeFormula.Mode superlativeMode = readMode(in, SuperlativeFormula.Mode.class);
+				final Formula rank = readFormula(in), count = readFormula(in), head = readFormula(in);
+				return new SuperlativeFormula(superlativeMode, rank, count, head, readFormula(in));
+			case ARITHMETIC:
+				final ArithmeticFormula.Mode arithmeticMode = readMode(in, ArithmeticFormula.Mode.class);
+				final Formula operand = readFormula(in);
+				return new ArithmeticFormula(arithmeticMode, operand, readFormula(in));
+			case ACTION:
+				final ActionFormula.Mode actionMode = readMode(in, ActionFormula.Mode.class);
+				return new ActionFormula(actionMode, readFormulas(in));
+			case JOIN:
+				final Formula relation = readFormula(in);
+				return new JoinFormula(relation, readFormula(in));
+			default:
+				throw new RuntimeException("Invalid formula opcode " + op + " in " + path);
+		}
+	}
+
+	private List<Formula> readFormulas(final ByteBuffer in)
+	{
+		final List<Formula> formulas = new ArrayList<>();
+		for (int i = readVarInt(in); i > 0; i--)
+			formulas.add(readFormula(in));
+		return formulas;
+	}
+
+	private <E extends Enum<E>> E readMode(final ByteBuffer in, final Class<E> modeClass)
+	{
+		return Enum.valueOf(modeClass, readString(in));
+	}
+
+	private String readString(final ByteBuffer in)
+	{
+		return strings[readVarInt(in)];
+	}
+
+	private static int readVarInt(final ByteBuffer in)
+	{
+		int value = 0;
+		for (int shift = 0;; shift += 7)
+		{
+			final byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	// ============================================================
+	// Writer
+	// ============================================================
+
+	public static class Writer implements Closeable
+	{
+		private final String path;
+		private final DataOutputStream out;
+		private long position = HEADER_SIZE;
+		private final Map<String, Integer> stringIndices = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+		private final List<Long> offsets = new ArrayList<>();
+		private final List<Integer> ids = new ArrayList<>();
+		private final byte[] varIntBuffer = new byte[5];
+
+		public Writer(final String path)
+		{
+			this.path = path;
+			strings.add(null);
+			stringIndices.put(null, 0);
+			try
+			{
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+				out.write(new byte[HEADER_SIZE]); // Filled in by close()
+			}
+			catch (final IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		public int size()
+		{
+			return offsets.size();
+		}
+
+		// Add an example (the LispTree written by SerializedDumper) with the given ID.
+		public void add(final String id, final LispTree tree)
+		{
+			offsets.add(position);
+			ids.add(stringIndex(id));
+			try
+			{
+				writeTree(tree);
+			}
+			catch (final IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void close()
+		{
+			try
+			{
+				final long stringsOffset = position;
+				writeVarInt(strings.size() - 1);
+				for (final String s : strings.subList(1, strings.size()))
+				{
+					final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+					writeVarInt(bytes.length);
+					write(bytes, bytes.length);
+				}
+				final long indexOffset = position;
+				for (int i = 0; i < offsets.size(); i++)
+				{
+					out.writeLong(offsets.get(i));
+					out.writeInt(ids.get(i));
+				}
+				out.close();
+				if (indexOffset + (long) offsets.size() * INDEX_ENTRY_SIZE > Integer.MAX_VALUE)
+					LogInfo.warnings("%s is larger than 2GB and cannot be read; dump fewer examples per file", path);
+
+				try (RandomAccessFile file = new RandomAccessFile(path, "rw"))
+				{
+					file.write(MAGIC);
+					file.writeInt(VERSION);
+					file.writeInt(offsets.size());
+					file.writeLong(stringsOffset);
+					file.writeLong(indexOffset);
+				}
+			}
+			catch (final IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		private int stringIndex(final String s)
+		{
+			Integer index = stringIndices.get(s);
+			if (index == null)
+			{
+				index = strings.size();
+				strings.add(s);
+				stringIndices.put(s, index);
+			}
+			return index;
+		}
+
+		private void writeTree(final LispTree tree) throws IOException
+		{
+			if (tree.isLeaf())
+				writeVarInt(stringIndex(tree.value) << 2 | LEAF);
+			else
+			{
+				writeVarInt(tree.children.size() << 2 | LIST);
+				final boolean hasFormula = tree.children.size() == 2 && ("formula".equals(tree.child(0).value) || "targetFormula".equals(tree.child(0).value));
+				for (final LispTree child : tree.children)
+					if (hasFormula && child == tree.child(1))
+						writeFormulaTree(child);
+					else
+						writeTree(child);
+			}
+		}
+
+		// Store the formula as a typed node, or as a plain tree if it cannot be parsed.
+		private void writeFormulaTree(final LispTree tree) throws IOException
+		{
+			final Formula formula;
+			try
+			{
+				formula = Formulas.fromLispTree(tree);
+			}
+			catch (final RuntimeException e)
+			{
+				writeTree(tree);
+				return;
+			}
+			writeVarInt(FORMULA);
+			writeFormula(formula);
+		}
+
+		@SuppressWarnings("rawtypes")
+		private void writeFormula(final Formula formula) throws IOException
+		{
+			if (formula instanceof ValueFormula)
+			{
+				final Value value = ((ValueFormula) formula).value;
+				if (value instanceof NameValue)
+				{
+					writeVarInt(NAME);
+					writeString(((NameValue) value)._id);
+					writeString(((NameValue) value)._description);
+				}
+				else
+					if (value instanceof NumberValue)
+					{
+						writeVarInt(NUMBER);
+						out.writeDouble(((NumberValue) value)._value);
+						position += 8;
+						writeString(((NumberValue) value)._unit);
+					}
+					else
+					{
+						writeVarInt(VALUE);
+						writeTree(value.toLispTree());
+					}
+			}
+			else
+				if (formula instanceof VariableFormula)
+				{
+					writeVarInt(VARIABLE);
+					writeString(((VariableFormula) formula).name);
+				}
+				else
+					if (formula instanceof LambdaFormula)
+					{
+						writeVarInt(LAMBDA);
+						writeString(((LambdaFormula) formula).var);
+						writeFormula(((LambdaFormula) formula).body);
+					}
+					else
+						if (formula instanceof MarkFormula)
+						{
+							writeVarInt(MARK);
+							writeString(((MarkFormula) formula).var);
+							writeFormula(((MarkFormula) formula).body);
+						}
+						else
+							if (formula instanceof NotFormula)
+							{
+								writeVarInt(NOT);
+								writeFormula(((NotFormula) formula).child);
+							}
+							else
+								if (formula instanceof ReverseFormula)
+								{
+									writeVarInt(REVERSE);
+									writeFormula(((ReverseFormula) formula).child);
+								}
+								else
+									if (formula instanceof CallFormula)
+									{
+										writeVarInt(CALL);
+										writeFormula(((CallFormula) formula).func);
+										writeFormulas(((CallFormula) formula).args);
+									}
+									else
+										if (formula instanceof MergeFormula)
+										{
+											final MergeFormula merge = (MergeFormula) formula;
+											writeVarInt(MERGE);
+											writeString(merge.mode.name());
+											writeFormula(merge.child1);
+											writeFormula(merge.child2);
+										}
+										else
+											if (formula instanceof AggregateFormula)
+											{
+												writeVarInt(AGGREGATE);
+												writeString(((AggregateFormula) formula).mode.name());
+												writeFormula(((AggregateFormula) formula).child);
+											}
+											else
+												if (formula instanceof SuperlativeFormula)
+												{
+													final SuperlativeFormula superlative = (SuperlativeFormula) formula;
+													writeVarInt(SUPERLATIVE);
+													writeString(superlative.mode.name());
+													writeFormula(superlative.rank);
+													writeFormula(superlative.count);
+													writeFormula(superlative.head);
+													writeFormula(superlative.relation);
+												}
+												else
+													if (formula instanceof ArithmeticFormula)
+													{
+														final ArithmeticFormula arithmetic = (ArithmeticFormula) formula;
+														writeVarInt(ARITHMETIC);
+														writeString(arithmetic.mode.name());
+														writeFormula(arithmetic.child1);
+														writeFormula(arithmetic.child2);
+													}
+													else
+														if (formula instanceof ActionFormula)
+														{
+															writeVarInt(ACTION);
+															writeString(((ActionFormula) formula).mode.name());
+															writeFormulas(((ActionFormula) formula).args);
+														}
+														else
+															if (formula instanceof JoinFormula)
+															{
+																writeVarInt(JOIN);
+																writeFormula(((JoinFormula) formula).relation);
+																writeFormula(((JoinFormula) formula).child);
+															}
+															else
+																throw new RuntimeException("Cannot store formula of class " + formula.getClass() + ": " + formula);
+		}
+
+		private void writeFormulas(final List<Formula> formulas) throws IOException
+		{
+			writeVarInt(formulas.size());
+			for (final Formula formula : formulas)
+				writeFormula(formula);
+		}
+
+		private void writeString(final String s) throws IOException
+		{
+			writeVarInt(stringIndex(s));
+		}
+
+		private void writeVarInt(int value) throws IOException
+		{
+			int n = 0;
+			while ((value & ~0x7f) != 0)
+			{
+				varIntBuffer[n++] = (byte) (value & 0x7f | 0x80);
+				value >>>= 7;
+			}
+			varIntBuffer[n++] = (byte) value;
+			write(varIntBuffer, n);
+		}
+
+		private void write(final byte[] bytes, final int length) throws IOException
+		{
+			out.write(bytes, 0, length);
+			position += length;
+		}
+	}
+}
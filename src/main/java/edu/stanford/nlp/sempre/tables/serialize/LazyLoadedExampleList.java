@@ -4,6 +4,7 @@ import edu.stanford.nlp.sempre.ContextValue;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.Example;
 import edu.stanford.nlp.sempre.FeatureVector;
+import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.Formulas;
 import edu.stanford.nlp.sempre.LanguageInfo;
 import edu.stanford.nlp.sempre.ListValue;
@@ -20,14 +21,21 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
 /**
- * Lazily read and construct examples from a dump file. The process is fast if the examples are read sequentially.
+ * Lazily read and construct examples from a dump file. The process is fast if the examples are read sequentially, or if the dump files are binary
+ * (BinaryExampleFile), which support random access.
  *
  * @author ppasupat
  */
@@ -37,11 +45,14 @@ public class LazyLoadedExampleList implements List<Example>
 	{
 		@Option(gloss = "whether to ensure thread safety (makes things slower)")
 		public boolean threadSafe = false;
+		@Option(gloss = "Number of threads for decoding binary dump files in loadAll()")
+		public int numThreads = 1;
 	}
 
 	public static Options opts = new Options();
 
 	private final List<String> paths;
+	private final List<BinaryExampleFile> binaryFiles; // null for text dump files
 	private final List<Integer> sizes;
 	private final List<Integer> offsets;
 	private final List<Integer> exampleIndexToPathIndex;
@@ -66,6 +77,7 @@ public class LazyLoadedExampleList implements List<Example>
 		this.paths = new ArrayList<>(paths);
 		this.single = single;
 		// Combined the number of examples from all files
+		binaryFiles = new ArrayList<>();
 		sizes = new ArrayList<>();
 		offsets = new ArrayList<>();
 		exampleIndexToPathIndex = new ArrayList<>();
@@ -73,7 +85,9 @@ public class LazyLoadedExampleList implements List<Example>
 		for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++)
 		{
 			final String path = paths.get(pathIndex);
-			if (single)
+			final BinaryExampleFile binaryFile = BinaryExampleFile.isBinary(path) ? new BinaryExampleFile(path) : null;
+			binaryFiles.add(binaryFile);
+			if (single && binaryFile == null)
 			{
 				sizes.add(1);
 				exampleIndexToPathIndex.add(pathIndex);
@@ -82,7 +96,7 @@ public class LazyLoadedExampleList implements List<Example>
 			}
 			else
 			{
-				final int thisSize = readSizeFromMetadata(LispTree.proto.parseFromFile(path).next());
+				final int thisSize = binaryFile != null ? binaryFile.size() : readSizeFromMetadata(LispTree.proto.parseFromFile(path).next());
 				sizes.add(thisSize);
 				for (int i = 0; i < thisSize; i++)
 					exampleIndexToPathIndex.add(pathIndex);
@@ -132,12 +146,19 @@ public class LazyLoadedExampleList implements List<Example>
 		public Example next()
 		{
 			currentIndex++;
+			final int pathIndex = exampleIndexToPathIndex.get(currentIndex);
+			if (binaryFiles.get(pathIndex) != null)
+			{
+				currentPathIndex = pathIndex;
+				trees = null;
+				return currentExample = readBinaryExample(currentIndex);
+			}
 			while (trees == null || !trees.hasNext())
 			{
 				trees = LispTree.proto.parseFromFile(paths.get(++currentPathIndex));
 				trees.next(); // Skip metadata
 			}
-			return currentExample = readExample(trees.next());
+			return currentExample = readExample(trees.next(), Collections.emptyMap());
 		}
 
 		public Example seek(final int index)
@@ -145,7 +166,14 @@ public class LazyLoadedExampleList implements List<Example>
 			if (index < 0 || index >= size)
 				throw new IndexOutOfBoundsException("Array size: " + size + "; No index " + index);
 			final int pathIndex = exampleIndexToPathIndex.get(index);
-			if (pathIndex != currentPathIndex || currentIndex > index)
+			if (binaryFiles.get(pathIndex) != null)
+			{
+				currentPathIndex = pathIndex;
+				trees = null;
+				currentIndex = index;
+				return currentExample = readBinaryExample(index);
+			}
+			if (pathIndex != currentPathIndex || trees == null || currentIndex > index)
 			{
 				currentPathIndex = pathIndex;
 				trees = LispTree.proto.parseFromFile(paths.get(currentPathIndex));
@@ -157,7 +185,7 @@ public class LazyLoadedExampleList implements List<Example>
 				currentIndex++;
 				final LispTree tree = trees.next();
 				if (currentIndex == index)
-					currentExample = readExample(tree);
+					currentExample = readExample(tree, Collections.emptyMap());
 			}
 			return currentExample;
 		}
@@ -182,13 +210,20 @@ public class LazyLoadedExampleList implements List<Example>
 	@Override
 	public Example get(final int index)
 	{
+		if (index >= 0 && index < size && binaryFiles.get(exampleIndexToPathIndex.get(index)) != null)
+			return readBinaryExample(index);
 		if (opts.threadSafe)
 			return new LazyLoadedExampleListIterator().seek(index);
-		return defaultIterator.seek(index);
+		synchronized (defaultIterator) // e.g., examples prefetched by the Learner
+		{
+			return defaultIterator.seek(index);
+		}
 	}
 
 	public List<Example> loadAll()
 	{
+		if (opts.numThreads > 1 && !binaryFiles.contains(null))
+			return loadAllParallel();
 		final List<Example> examples = new ArrayList<>();
 		final Iterator<Example> itr = iterator();
 		while (itr.hasNext())
@@ -196,27 +231,70 @@ public class LazyLoadedExampleList implements List<Example>
 		return examples;
 	}
 
-	public List<String> getAllIds()
+	// Decode the examples of binary dump files in parallel.
+	private List<Example> loadAllParallel()
 	{
-		final List<String> ids = new ArrayList<>();
-		for (final String path : paths)
-			if (single)
+		final ExecutorService pool = Executors.newFixedThreadPool(opts.numThreads);
+		try
+		{
+			final List<Future<Example>> futures = new ArrayList<>();
+			for (int i = 0; i < size; i++)
 			{
-				final Matcher matcher = SerializedDataset.GZ_PATTERN.matcher(new File(path).getName());
-				matcher.matches();
-				ids.add(matcher.group(3));
+				final int index = i;
+				futures.add(pool.submit(() -> readBinaryExample(index)));
 			}
+			final List<Example> examples = new ArrayList<>();
+			for (final Future<Example> future : futures)
+				examples.add(future.get());
+			return examples;
+		}
+		catch (final InterruptedException | ExecutionException e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	private Example readBinaryExample(final int index)
+	{
+		final int pathIndex = exampleIndexToPathIndex.get(index);
+		final Map<LispTree, Formula> formulas = new IdentityHashMap<>();
+		final LispTree tree = binaryFiles.get(pathIndex).readTree(index - offsets.get(pathIndex), formulas);
+		return readExample(tree, formulas);
+	}
+
+	public List<String> getAllIds()
+	{
+		final List<String> ids = new ArrayList<>();
+		for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++)
+		{
+			final String path = paths.get(pathIndex);
+			final BinaryExampleFile binaryFile = binaryFiles.get(pathIndex);
+			if (binaryFile != null)
+				for (int i = 0; i < binaryFile.size(); i++)
+					ids.add(binaryFile.getId(i));
 			else
-			{
-				final Iterator<LispTree> trees = LispTree.proto.parseFromFile(path);
-				while (trees.hasNext())
+				if (single)
 				{
-					final LispTree tree = trees.next();
-					final String exampleId = getExampleId(tree);
-					if (exampleId != null)
-						ids.add(exampleId);
+					final Matcher matcher = SerializedDataset.GZ_PATTERN.matcher(new File(path).getName());
+					matcher.matches();
+					ids.add(matcher.group(3));
 				}
-			}
+				else
+				{
+					final Iterator<LispTree> trees = LispTree.proto.parseFromFile(path);
+					while (trees.hasNext())
+					{
+						final LispTree tree = trees.next();
+						final String exampleId = getExampleId(tree);
+						if (exampleId != null)
+							ids.add(exampleId);
+					}
+				}
+		}
 		return ids;
 	}
 
@@ -259,7 +337,8 @@ public class LazyLoadedExampleList implements List<Example>
 		throw new RuntimeException("Example does not have an ID: " + treeS);
 	}
 
-	private Example readExample(final LispTree tree)
+	// formulas maps the formula placeholders of a binary example to the formulas decoded by BinaryExampleFile.
+	private Example readExample(final LispTree tree, final Map<LispTree, Formula> formulas)
 	{
 		final Example.Builder b = new Example.Builder();
 		if (!"example".equals(tree.child(0).value))
@@ -277,7 +356,7 @@ public class LazyLoadedExampleList implements List<Example>
 					b.setUtterance(arg.child(1).value);
 				else
 					if ("targetFormula".equals(label))
-						b.setTargetFormula(Formulas.fromLispTree(arg.child(1)));
+						b.setTargetFormula(readFormula(arg.child(1), formulas));
 					else
 						if ("targetValue".equals(label) || "targetValues".equals(label))
 						{
@@ -342,7 +421,7 @@ public class LazyLoadedExampleList implements List<Example>
 								{
 									ex.predDerivations = new ArrayList<>();
 									for (int j = 1; j < arg.children.size(); j++)
-										ex.predDerivations.add(readDerivation(arg.child(j)));
+										ex.predDerivations.add(readDerivation(arg.child(j), formulas));
 								}
 								else
 									if (!finalFields.contains(label))
@@ -354,7 +433,7 @@ public class LazyLoadedExampleList implements List<Example>
 
 	public static final String SERIALIZED_ROOT = "$SERIALIZED_ROOT";
 
-	private Derivation readDerivation(final LispTree tree)
+	private Derivation readDerivation(final LispTree tree, final Map<LispTree, Formula> formulas)
 	{
 		final Derivation.Builder b = new Derivation.Builder().cat(SERIALIZED_ROOT).start(-1).end(-1).localFeatureVector(new FeatureVector()).rule(Rule.nullRule).children(new ArrayList<Derivation>());
 		if (!"derivation".equals(tree.child(0).value))
@@ -365,7 +444,7 @@ public class LazyLoadedExampleList implements List<Example>
 			final LispTree arg = tree.child(i);
 			final String label = arg.child(0).value;
 			if ("formula".equals(label))
-				b.formula(Formulas.fromLispTree(arg.child(1)));
+				b.formula(readFormula(arg.child(1), formulas));
 			else
 				if ("type".equals(label))
 					b.type(SemType.fromLispTree(arg.child(1)));
@@ -389,6 +468,12 @@ public class LazyLoadedExampleList implements List<Example>
 		return b.createDerivation();
 	}
 
+	private static Formula readFormula(final LispTree tree, final Map<LispTree, Formula> formulas)
+	{
+		final Formula formula = formulas.get(tree);
+		return formula != null ? formula : Formulas.fromLispTree(tree);
+	}
+
 	// ============================================================
 	// Unimplemented methods
 	// ============================================================
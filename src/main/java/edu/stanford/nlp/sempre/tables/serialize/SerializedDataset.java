@@ -9,6 +9,7 @@ import fig.basic.Option;
 import fig.basic.Pair;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -28,7 +29,7 @@ public class SerializedDataset extends Dataset
 {
 	public static class Options
 	{
-		@Option(gloss = "Directory with dumped-*.gz files; to load only specific files, use Dataset.inPaths")
+		@Option(gloss = "Directory with dumped-*.gz (or dumped-*.bin) files; to load only specific files, use Dataset.inPaths")
 		public List<String> dumpDirs = new ArrayList<>();
 	}
 
@@ -68,23 +69,28 @@ public class SerializedDataset extends Dataset
 	}
 
 	public static final Pattern GZ_PATTERN = Pattern.compile("^dumped-([^-]+)(?:-(\\d+)(?:-(.*))?)?\\.gz$");
+	public static final Pattern BIN_PATTERN = Pattern.compile("^dumped-([^-]+)(?:-(\\d+)(?:-(.*))?)?\\.bin$");
 
 	public void readDirs(final Collection<String> dumpDirs)
 	{
 		// Get filenames
 		// File format is dumped-groupname[-offset][-examplename].gz
+		// Binary files (.bin) are used instead of the .gz files with the same name
 		final Set<String> filenames = new HashSet<>(), groups = new HashSet<>();
 		for (final String dumpDir : dumpDirs)
 		{
-			final String[] filenamesInDumpDir = new File(dumpDir).list();
+			final Set<String> filenamesInDumpDir = new HashSet<>(Arrays.asList(new File(dumpDir).list()));
 			for (final String filename : filenamesInDumpDir)
 			{
-				final Matcher matcher = GZ_PATTERN.matcher(filename);
-				if (matcher.matches())
+				Matcher matcher = BIN_PATTERN.matcher(filename);
+				if (!matcher.matches())
 				{
-					filenames.add(new File(dumpDir, filename).toString());
-					groups.add(matcher.group(1));
+					matcher = GZ_PATTERN.matcher(filename);
+					if (!matcher.matches() || filenamesInDumpDir.contains(filename.replaceAll("\\.gz$", BinaryExampleFile.EXTENSION)))
+						continue;
 				}
+				filenames.add(new File(dumpDir, filename).toString());
+				groups.add(matcher.group(1));
 			}
 		}
 		LogInfo.logs("Available groups: %s", groups);
@@ -94,7 +100,9 @@ public class SerializedDataset extends Dataset
 			for (final String filename : filenames)
 			{
 				final File file = new File(filename);
-				final Matcher matcher = GZ_PATTERN.matcher(file.getName());
+				Matcher matcher = GZ_PATTERN.matcher(file.getName());
+				if (!matcher.matches())
+					matcher = BIN_PATTERN.matcher(file.getName());
 				if (matcher.matches() && group.equals(matcher.group(1)))
 					filenamesForGroup.add(file.toString());
 			}
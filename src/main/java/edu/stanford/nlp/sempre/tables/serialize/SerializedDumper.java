@@ -30,6 +30,8 @@ import java.util.Random;
  * examples to dump in a streaming fashion. Syntax of the dumped files: - Filename: dumped-[prefix]-[numbering].gz - Content: - First line: (metadata (size
  * [number_of_examples])) - Each example begins with a comment (########## Example [example_id] ##########), followed by an example LispTree with the following
  * fields: id, utterance, targetFormula, targetValue, context, tokens, lemmaTokens, posTags, nerTags, nerValues, derivations (one derivation per line)
+ * <p>
+ * With the binary option, the same example LispTrees are written to dumped-[prefix]-[numbering].bin instead (see BinaryExampleFile).
  *
  * @author ppasupat
  */
@@ -47,6 +49,8 @@ public class SerializedDumper implements Runnable
 		public int numExamplesPerFile = 0;
 		@Option(gloss = "Custom dump file prefixes to use in standalone mode")
 		public String dumpedFilePrefix = "";
+		@Option(gloss = "Write binary files (dumped-*.bin, see BinaryExampleFile) instead of gzip files")
+		public boolean binary = false;
 	}
 
 	public static Options opts = new Options();
@@ -54,6 +58,7 @@ public class SerializedDumper implements Runnable
 	String prefix;
 	String filename;
 	PrintWriter out;
+	BinaryExampleFile.Writer binaryOut;
 	int numExamples = -1, currentIndex = 0;
 
 	public SerializedDumper(final String prefix, final int numExamples)
@@ -71,13 +76,16 @@ public class SerializedDumper implements Runnable
 
 	public void openFile(final String filenameSuffix)
 	{
-		if (out != null)
+		if (out != null || binaryOut != null)
 			closeFile();
-		filename = Execution.getFile("dumped-" + filenameSuffix + ".gz");
+		filename = Execution.getFile("dumped-" + filenameSuffix + (opts.binary ? BinaryExampleFile.EXTENSION : ".gz"));
 		LogInfo.logs("Opening %s", filename);
 		if (new File(filename).exists())
 			LogInfo.warnings("File %s exists; will overwrite!", filename);
-		out = IOUtils.openOutHard(filename);
+		if (opts.binary)
+			binaryOut = new BinaryExampleFile.Writer(filename);
+		else
+			out = IOUtils.openOutHard(filename);
 	}
 
 	public void closeFile()
@@ -88,6 +96,12 @@ public class SerializedDumper implements Runnable
 			LogInfo.logs("Finished dumping to %s", filename);
 			out = null;
 		}
+		if (binaryOut != null)
+		{
+			binaryOut.close();
+			LogInfo.logs("Finished dumping to %s", filename);
+			binaryOut = null;
+		}
 	}
 
 	public void dumpExample(final Example ex)
@@ -115,9 +129,14 @@ public class SerializedDumper implements Runnable
 				openFile(String.format("%s-%06d", prefix, currentIndex));
 				writeMetadataLispTree(Math.min(opts.numExamplesPerFile, numExamples - currentIndex));
 			}
-		out.printf("########## Example %s ##########\n", ex.id);
-		writeExampleLispTree(exampleToLispTree(ex, derivations));
-		out.flush();
+		if (binaryOut != null)
+			binaryOut.add(ex.id, exampleToLispTree(ex, derivations));
+		else
+		{
+			out.printf("########## Example %s ##########\n", ex.id);
+			writeExampleLispTree(exampleToLispTree(ex, derivations));
+			out.flush();
+		}
 		currentIndex++;
 		if (currentIndex == numExamples || opts.numExamplesPerFile > 0 && currentIndex % opts.numExamplesPerFile == 0)
 			closeFile();
@@ -292,6 +311,8 @@ public class SerializedDumper implements Runnable
 
 	private void writeMetadataLispTree(final int size)
 	{
+		if (binaryOut != null)
+			return; // Binary files keep their own index
 		final LispTree tree = LispTree.proto.newList();
 		tree.addChild("metadata");
 		tree.addChild(LispTree.proto.newList("size", "" + size));
@@ -0,0 +1,141 @@
+package edu.stanford.nlp.sempre.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import edu.stanford.nlp.sempre.Derivation;
+import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.tables.serialize.BinaryDumpConverter;
+import edu.stanford.nlp.sempre.tables.serialize.BinaryExampleFile;
+import edu.stanford.nlp.sempre.tables.serialize.LazyLoadedExampleList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.testng.annotations.Test;
+
+/**
+ * Test that examples read from binary dump files (BinaryExampleFile) are the examples read from the text dump files they were converted from.
+ */
+public class BinaryExampleFileTest
+{
+	private static final List<String> FORMULAS = Arrays.asList( //
+			"(!fb:row.row.name (argmax 1 1 (fb:type.object.type fb:type.row) (reverse (lambda r (!fb:cell.cell.number (!fb:row.row.score (var r)))))))", //
+			"(sum (!fb:cell.cell.number (fb:row.row.next (fb:type.object.type fb:type.row))))", //
+			"(- (count (fb:type.object.type fb:type.row)) (number 3.14159265358979 fb:en.meter))", //
+			"(and (fb:type.object.type fb:type.row) (not (fb:row.row.name (name fb:cell.a_b \"A (b)\"))))", //
+			"(mark x (fb:row.row.next (var x)))", //
+			"(call .concat (string \"a \\\"b\\\"\") (string c))", //
+			"(fb:cell.cell.date (date 1993 3 -1))", //
+			"(:s (: add red top) (:loop (number 2) (: remove this)))", //
+			"fb:cell.a_b");
+
+	private static final List<String> TYPES = Arrays.asList("fb:type.row", "(union fb:type.number fb:type.cell)", "(-> fb:type.row fb:type.cell)");
+
+	// Write a text dump with the given examples; example i has a few of the formulas above.
+	private static File writeDump(final File dir, final String name, final int start, final int end) throws IOException
+	{
+		final File file = new File(dir, name);
+		try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)))
+		{
+			out.println("(metadata (size " + (end - start) + "))");
+			for (int i = start; i < end; i++)
+			{
+				out.println("(example");
+				out.println("  (id nt-" + i + ")");
+				out.println("  (utterance \"what is (row) " + i + "?\")");
+				out.println("  (targetFormula " + FORMULAS.get(i % FORMULAS.size()) + ")");
+				out.println("  (targetValue (list (number " + i + ".5) (name fb:cell.x \"X\")))");
+				out.println("  (tokens (what is \"(\" row \")\" " + i + " ?))");
+				out.println("  (posTags (WP VBZ -LRB- NN -RRB- CD .))");
+				out.println("  (derivations");
+				for (int j = 0; j < i % 4; j++)
+				{
+					final String formula = FORMULAS.get((i + j) % FORMULAS.size());
+					final String type = TYPES.get(j % TYPES.size());
+					out.println("    (derivation (formula " + formula + ") (value (list (number " + (i * 0.1 + j) + "))) (type " + type + ") (canonicalUtterance \"d " + j + "\"))");
+				}
+				out.println("  )");
+				out.println(")");
+			}
+		}
+		return file;
+	}
+
+	private static void assertExampleEquals(final Example expected, final Example actual)
+	{
+		assertEquals(expected.id, actual.id);
+		assertEquals(expected.utterance, actual.utterance);
+		assertEquals(expected.targetFormula, actual.targetFormula);
+		assertEquals(expected.targetValue, actual.targetValue);
+		assertEquals(expected.getTokens(), actual.getTokens());
+		assertEquals(expected.languageInfo.posTags, actual.languageInfo.posTags);
+		assertEquals(expected.predDerivations.size(), actual.predDerivations.size());
+		for (int j = 0; j < expected.predDerivations.size(); j++)
+		{
+			final Derivation e = expected.predDerivations.get(j), a = actual.predDerivations.get(j);
+			assertEquals(e.formula, a.formula);
+			assertEquals(e.value, a.value);
+			assertEquals(e.type.toString(), a.type.toString());
+			assertEquals(e.canonicalUtterance, a.canonicalUtterance);
+		}
+	}
+
+	@Test
+	public void roundTrip() throws IOException
+	{
+		final File dir = Files.createTempDirectory("sempre-dump").toFile();
+		final List<String> textPaths = Arrays.asList(writeDump(dir, "dumped-train-0.gz", 0, 13).getPath(), writeDump(dir, "dumped-train-1.gz", 13, 30).getPath());
+		final List<String> binaryPaths = new ArrayList<>();
+		final BinaryDumpConverter converter = new BinaryDumpConverter();
+		for (final String path : textPaths)
+		{
+			converter.convert(new File(path));
+			binaryPaths.add(path.replaceAll("\\.gz$", BinaryExampleFile.EXTENSION));
+		}
+		final LazyLoadedExampleList text = new LazyLoadedExampleList(textPaths, Integer.MAX_VALUE);
+		final LazyLoadedExampleList binary = new LazyLoadedExampleList(binaryPaths, Integer.MAX_VALUE);
+		assertEquals(30, binary.size());
+		assertEquals(text.getAllIds(), binary.getAllIds());
+
+		// Random access across both files
+		final List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < binary.size(); i++)
+			order.add(i);
+		Collections.shuffle(order, new Random(1));
+		for (final int i : order)
+			assertExampleEquals(text.get(i), binary.get(i));
+
+		// Numbers are not rounded, and formulas read from the binary file are the ones parsed from the text
+		final Example example = binary.get(2);
+		assertEquals(Formula.fromString(FORMULAS.get(2)), example.targetFormula);
+
+		// Sequential and parallel loading
+		final int numThreads = LazyLoadedExampleList.opts.numThreads;
+		try
+		{
+			LazyLoadedExampleList.opts.numThreads = 4;
+			final List<Example> expected = text.loadAll(), actual = binary.loadAll();
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++)
+				assertExampleEquals(expected.get(i), actual.get(i));
+		}
+		finally
+		{
+			LazyLoadedExampleList.opts.numThreads = numThreads;
+		}
+
+		// Without a formula map, formulas come back as LispTrees
+		final BinaryExampleFile file = new BinaryExampleFile(binaryPaths.get(1));
+		assertEquals(Formula.fromString(FORMULAS.get(13 % FORMULAS.size())), Formula.fromString(file.readTree(0).child(3).child(1).toString()));
+	}
+}
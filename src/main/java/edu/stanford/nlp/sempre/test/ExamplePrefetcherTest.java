@@ -0,0 +1,175 @@
+package edu.stanford.nlp.sempre.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.ExamplePrefetcher;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+/**
+ * Test the background example prefetcher: ordering, the size limit and failures.
+ */
+public class ExamplePrefetcherTest
+{
+	private static final long EXAMPLE_BYTES = 1024 + 64 * 4; // Estimated size of each example (an utterance of 4 characters)
+
+	// A list that takes |millis| to get each example, counting the calls to get().
+	private static class SlowList extends AbstractList<Example>
+	{
+		final List<Example> examples = new ArrayList<>();
+		final AtomicInteger numGets = new AtomicInteger();
+		final int millis;
+
+		SlowList(final int size, final int millis_)
+		{
+			millis = millis_;
+			for (int i = 0; i < size; i++)
+				examples.add(new Example.Builder().setId("ex" + i).setUtterance(String.format("u%03d", i)).createExample());
+		}
+
+		@Override
+		public Example get(final int index)
+		{
+			numGets.incrementAndGet();
+			sleep(millis);
+			return examples.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return examples.size();
+		}
+	}
+
+	private static void sleep(final int millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (final InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void ordering()
+	{
+		// Example 0 is only returned once example 1 has been gotten on another thread, and later examples take less time than earlier ones
+		final CountDownLatch secondStarted = new CountDownLatch(1);
+		final SlowList examples = new SlowList(40, 0)
+		{
+			@Override
+			public Example get(final int index)
+			{
+				if (index == 1)
+					secondStarted.countDown();
+				if (index == 0)
+					try
+					{
+						assertTrue(secondStarted.await(10, TimeUnit.SECONDS));
+					}
+					catch (final InterruptedException e)
+					{
+						throw new RuntimeException(e);
+					}
+				sleep((40 - index) % 7);
+				return examples.get(index);
+			}
+		};
+		final ExamplePrefetcher prefetcher = new ExamplePrefetcher(examples, 8, Long.MAX_VALUE, 4);
+		try
+		{
+			for (final Example ex : examples.examples)
+			{
+				assertTrue(prefetcher.hasNext());
+				assertSame(ex, prefetcher.next());
+			}
+			assertFalse(prefetcher.hasNext());
+			assertEquals(0, secondStarted.getCount());
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void sizeLimit()
+	{
+		// Up to 3 examples waiting (2.5 examples, plus the one that goes over), though the depth allows 10
+		checkSizeLimit(EXAMPLE_BYTES * 5 / 2, 3);
+		// Less than one example: one at a time
+		checkSizeLimit(0, 1);
+	}
+
+	private static void checkSizeLimit(final long maxBytes, final int maxWaiting)
+	{
+		final SlowList examples = new SlowList(30, 2);
+		final ExamplePrefetcher prefetcher = new ExamplePrefetcher(examples, 10, maxBytes, 4);
+		try
+		{
+			int numConsumed = 0;
+			while (prefetcher.hasNext())
+			{
+				sleep(20); // Let the background threads get what they were given
+				assertTrue(maxBytes + ": " + (examples.numGets.get() - numConsumed) + " examples waiting", examples.numGets.get() - numConsumed <= maxWaiting);
+				assertSame(examples.examples.get(numConsumed), prefetcher.next());
+				numConsumed++;
+			}
+			assertEquals(examples.size(), numConsumed);
+			assertEquals(examples.size(), examples.numGets.get());
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void failure()
+	{
+		final SlowList examples = new SlowList(10, 0)
+		{
+			@Override
+			public Example get(final int index)
+			{
+				if (index == 5)
+					throw new IllegalStateException("Cannot read example 5");
+				return examples.get(index);
+			}
+		};
+		final ExamplePrefetcher prefetcher = new ExamplePrefetcher(examples, 4, Long.MAX_VALUE, 2);
+		try
+		{
+			for (int i = 0; i < 5; i++)
+				assertSame(examples.examples.get(i), prefetcher.next());
+			try
+			{
+				prefetcher.next();
+				fail("next() should fail");
+			}
+			catch (final RuntimeException e)
+			{
+				assertTrue(e.getCause() instanceof IllegalStateException);
+				assertEquals("Cannot read example 5", e.getCause().getMessage());
+			}
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+	}
+}
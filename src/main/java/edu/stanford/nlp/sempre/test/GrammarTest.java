@@ -1,7 +1,15 @@
 package edu.stanford.nlp.sempre.test;
 
 import edu.stanford.nlp.sempre.Grammar;
+import edu.stanford.nlp.sempre.Parser;
 import edu.stanford.nlp.sempre.Rule;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -48,4 +56,51 @@ public class GrammarTest
 		Assert.assertTrue(isValidBinaryGrammar(g));
 	}
 
+	private static List<String> ruleStrings(final List<Rule> rules)
+	{
+		final List<String> result = new ArrayList<>();
+		for (final Rule rule : rules)
+			result.add(rule.toLispTree().toString());
+		return result;
+	}
+
+	private static Grammar readCompiled(final Path dir, final Path main)
+	{
+		Grammar.opts.inPaths = Collections.singletonList(main.toString());
+		Grammar.opts.compiledPath = dir.resolve("grammar.bin").toString();
+		try
+		{
+			final Grammar g = new Grammar();
+			g.read();
+			return g;
+		}
+		finally
+		{
+			Grammar.opts.inPaths = new ArrayList<>();
+			Grammar.opts.compiledPath = null;
+		}
+	}
+
+	@Test
+	public void testCompiledGrammar() throws IOException
+	{
+		final Path dir = Files.createTempDirectory("compiled-grammar");
+		final Path main = dir.resolve("main.grammar"), included = dir.resolve("included.grammar");
+		Files.write(main, Arrays.asList("(def @num (number 3))", "(include included.grammar)", "(rule $ROOT ($X) (IdentityFn))", "(rule $X ($A (the optional) $B $C) (IdentityFn) (floating 1))", "(for @x (a b c) (rule $A (@x) (ConstantFn (string @x))))"), StandardCharsets.UTF_8);
+		Files.write(included, Arrays.asList("(rule $B (b) (ConstantFn @num))", "(rule $C ($B) (IdentityFn))"), StandardCharsets.UTF_8);
+
+		final Grammar source = readCompiled(dir, main); // Reads the files and writes the snapshot
+		final Grammar compiled = readCompiled(dir, main);
+		Assert.assertEquals(ruleStrings(compiled.getRules()), ruleStrings(source.getRules()));
+		Assert.assertEquals(compiled.getFreshCatIndex(), source.getFreshCatIndex());
+		Assert.assertEquals(ruleStrings(compiled.getCompiled().getCatUnaryRules()), ruleStrings(Parser.sortCatUnaryRules(source.getRules())));
+		Assert.assertEquals(compiled.getRules().get(compiled.getRules().size() - 4).getInfoTag("floating"), 1.0);
+		Assert.assertNotNull(compiled.getCompiled().takeTrie().next("$A"));
+
+		// Changing an included file invalidates the snapshot
+		Files.write(included, Arrays.asList("(rule $B (b) (ConstantFn @num))", "(rule $C (c) (IdentityFn))"), StandardCharsets.UTF_8);
+		final Grammar changed = readCompiled(dir, main);
+		Assert.assertNotEquals(ruleStrings(changed.getRules()), ruleStrings(source.getRules()));
+		Assert.assertEquals(ruleStrings(readCompiled(dir, main).getRules()), ruleStrings(changed.getRules()));
+	}
 }
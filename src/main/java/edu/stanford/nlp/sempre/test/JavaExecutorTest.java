@@ -1,12 +1,17 @@
 package edu.stanford.nlp.sempre.test;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
 
+import edu.stanford.nlp.sempre.ErrorValue;
+import edu.stanford.nlp.sempre.Executor;
 import edu.stanford.nlp.sempre.Formula;
 import edu.stanford.nlp.sempre.JavaExecutor;
 import edu.stanford.nlp.sempre.NumberValue;
 import edu.stanford.nlp.sempre.Value;
 import edu.stanford.nlp.sempre.Values;
+import java.util.ArrayList;
+import java.util.List;
 import org.testng.annotations.Test;
 
 /**
@@ -64,4 +69,30 @@ public class JavaExecutorTest
 		assertEquals(V("(list (number 4))"), executor.execute(F("(call select (list (number 1) (number 4)) (lambda x (call == (number 0) (call % (var x) (number 2)))))"), null).value);
 		// assertEquals(V("(list (number 5))"), executor.execute(F("(call reduce (list (number 1) (number 4)) +)")).value);  // Not implemented yet
 	}
+
+	@Test
+	public void batch()
+	{
+		final int oldBatchThreads = Executor.opts.batchThreads;
+		try
+		{
+			final List<Formula> formulas = new ArrayList<>();
+			for (int i = 0; i < 100; i++)
+				formulas.add(F("(call + (number " + i % 10 + ") (number 5))")); // Repeated formulas are executed once
+			formulas.add(F("(call .nonexistent (string hello))"));
+			for (final int batchThreads : new int[] { 1, 4 })
+			{
+				Executor.opts.batchThreads = batchThreads;
+				final List<Executor.Response> responses = executor.executeBatch(formulas, null);
+				assertEquals(formulas.size(), responses.size());
+				for (int i = 0; i < 100; i++)
+					assertEquals(V(i % 10 + 5), responses.get(i).value);
+				assertTrue(responses.get(100).value instanceof ErrorValue);
+			}
+		}
+		finally
+		{
+			Executor.opts.batchThreads = oldBatchThreads;
+		}
+	}
 }
@@ -0,0 +1,95 @@
+package edu.stanford.nlp.sempre.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import edu.stanford.nlp.sempre.Builder;
+import edu.stanford.nlp.sempre.Dataset;
+import edu.stanford.nlp.sempre.FeatureExtractor;
+import edu.stanford.nlp.sempre.JavaExecutor;
+import edu.stanford.nlp.sempre.Learner;
+import edu.stanford.nlp.sempre.Parser;
+import fig.basic.Evaluation;
+import fig.basic.Pair;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+/**
+ * Test the Learner loop.
+ */
+public class LearnerTest
+{
+	private static final List<String> FIGS = Arrays.asList("correct", "oracle", "partCorrect", "numCandidates");
+
+	// "and" is either plus or times; the training examples are all products.
+	private static Dataset makeDataset() throws IOException
+	{
+		final Dataset dataset = new Dataset();
+		dataset.readFromPathPairs(Arrays.asList( //
+				Pair.newPair("train", writeExamples("2 and 3", 6, "3 and 4", 12, "1 and 5", 5)), //
+				Pair.newPair("dev", writeExamples("4 and 5", 20, "2 and 2", 4, "6 and 1", 7))));
+		return dataset;
+	}
+
+	// Arguments: utterance, value, utterance, value...
+	private static String writeExamples(final Object... examples) throws IOException
+	{
+		final File file = File.createTempFile("learner", ".examples");
+		file.deleteOnExit();
+		final List<String> lines = new ArrayList<>();
+		for (int i = 0; i < examples.length; i += 2)
+			lines.add("(example (utterance \"" + examples[i] + "\") (targetValue (number " + examples[i + 1] + ")))");
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+		return file.getPath();
+	}
+
+	private static Map<String, List<Evaluation>> learn(final boolean asyncEvaluation) throws IOException
+	{
+		final boolean oldAsyncEvaluation = Learner.opts.asyncEvaluation;
+		try
+		{
+			Learner.opts.asyncEvaluation = asyncEvaluation;
+			final Builder builder = new Builder();
+			builder.grammar = TestUtils.makeArithmeticGrammar();
+			builder.executor = new JavaExecutor();
+			builder.buildUnspecified();
+			final Map<String, List<Evaluation>> evaluations = new HashMap<>();
+			new Learner(builder.parser, builder.params, makeDataset()).learn(3, evaluations);
+			return evaluations;
+		}
+		finally
+		{
+			Learner.opts.asyncEvaluation = oldAsyncEvaluation;
+		}
+	}
+
+	// Evaluating dev in the background (on a copy of the weights) gives the same evaluations as evaluating it between training iterations.
+	@Test
+	public void asyncEvaluation() throws IOException
+	{
+		Parser.opts.coarsePrune = false;
+		FeatureExtractor.opts.featureDomains.add("rule");
+		final Map<String, List<Evaluation>> sync = learn(false);
+		final Map<String, List<Evaluation>> async = learn(true);
+		assertEquals(sync.keySet(), async.keySet());
+		for (final String group : sync.keySet())
+		{
+			assertEquals(group, sync.get(group).size(), async.get(group).size());
+			for (int iter = 0; iter < sync.get(group).size(); iter++)
+				for (final String fig : FIGS)
+				{
+					final String message = group + " iter=" + iter + " " + fig;
+					assertEquals(message, sync.get(group).get(iter).getFig(fig).mean(), async.get(group).get(iter).getFig(fig).mean(), 1e-9);
+				}
+		}
+		// Learning got dev right in the end
+		assertEquals(2.0 / 3, sync.get("dev").get(3).getFig("correct").mean(), 1e-9);
+	}
+}
@@ -0,0 +1,162 @@
+package edu.stanford.nlp.sempre.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import edu.stanford.nlp.sempre.Derivation;
+import edu.stanford.nlp.sempre.DerivationStream;
+import edu.stanford.nlp.sempre.IdentityFn;
+import edu.stanford.nlp.sempre.Metrics;
+import edu.stanford.nlp.sempre.MultipleDerivationStream;
+import edu.stanford.nlp.sempre.Rule;
+import edu.stanford.nlp.sempre.SingleDerivationStream;
+import fig.basic.LispTree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+/**
+ * Test counters, histograms and their export.
+ */
+public class MetricsTest
+{
+	@Test
+	public void histogramQuantiles()
+	{
+		final Metrics.Histogram histogram = Metrics.histograms("test_histogram_seconds", null, "Test").get();
+		for (long nanos = 1; nanos <= 100000; nanos++)
+			histogram.record(nanos * 1000);
+		assertEquals(100000, histogram.getCount());
+		assertEquals(0.1, histogram.getMaxSeconds(), 1e-12);
+		// Quantiles are upper bounds within 12.5%
+		for (final double q : new double[] { 0.01, 0.5, 0.9, 0.99, 1 })
+		{
+			final double exact = q * 0.1;
+			final double estimate = histogram.getQuantileSeconds(q);
+			assertTrue(q + ": " + estimate, estimate >= exact && estimate <= exact * 1.125);
+		}
+	}
+
+	@Test
+	public void export()
+	{
+		final Metrics.Family<Metrics.Counter> counters = Metrics.counters("test_events_total", "kind", "Test \"events\"");
+		counters.get("a").inc();
+		counters.get("a").inc();
+		counters.get("b\"c").add(5);
+		Metrics.histograms("test_latency_seconds", "op", "Test").get("read").record(2000000000L);
+		Metrics.gauges("test_queue_depth", null, "Test").get().add(3);
+		Metrics.gauges("test_queue_depth", null, "Test").get().add(-1);
+
+		final String text = Metrics.toPrometheus();
+		assertTrue(text, text.contains("# TYPE test_events_total counter\n"));
+		assertTrue(text, text.contains("test_events_total{kind=\"a\"} 2\n"));
+		assertTrue(text, text.contains("test_events_total{kind=\"b\\\"c\"} 5\n"));
+		assertTrue(text, text.contains("# TYPE test_latency_seconds summary\n"));
+		assertTrue(text, text.contains("test_latency_seconds{op=\"read\",quantile=\"0.5\"} 2\n"));
+		assertTrue(text, text.contains("test_latency_seconds_count{op=\"read\"} 1\n"));
+		assertTrue(text, text.contains("# TYPE test_queue_depth gauge\ntest_queue_depth 2\n"));
+
+		@SuppressWarnings("unchecked")
+		final List<Map<String, Object>> events = (List<Map<String, Object>>) Metrics.toJsonMap().get("test_events_total");
+		assertEquals(2, events.size());
+		assertEquals("a", events.get(0).get("kind"));
+		assertEquals(2L, events.get(0).get("count"));
+	}
+
+	private static Rule rule(final String lhs, final String rhs)
+	{
+		final IdentityFn sem = new IdentityFn();
+		sem.init(LispTree.proto.parseFromString("(IdentityFn)"));
+		return new Rule(lhs, Arrays.asList(rhs), sem);
+	}
+
+	private static void sleep(final long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (final InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	// Semantic functions that build their derivations lazily do their work while the stream is read: that time counts too, in the sum.
+	@Test
+	public void lazyRuleTime()
+	{
+		final Rule rule = rule("$Test", "lazy");
+		final Metrics.Histogram histogram = Metrics.ruleTime.get(Metrics.ruleLabel(rule));
+		final long count = histogram.getCount();
+		final double sum = histogram.getSumSeconds();
+		final DerivationStream results = Metrics.recordRule(rule, System.nanoTime(), new SingleDerivationStream()
+		{
+			@Override
+			public Derivation createDerivation()
+			{
+				sleep(50);
+				return null;
+			}
+		});
+		// The call is recorded right away
+		assertEquals(count + 1, histogram.getCount());
+		while (results.hasNext())
+			results.next();
+		assertEquals(count + 1, histogram.getCount());
+		assertTrue(histogram.getSumSeconds() - sum >= 0.05);
+	}
+
+	// Streams left unfinished (e.g., on the agenda of ReinforcementParser when the parse ends) count for what was read of them.
+	@Test
+	public void partlyReadRuleTime()
+	{
+		final Rule rule = rule("$Test", "partial");
+		final Metrics.Histogram histogram = Metrics.ruleTime.get(Metrics.ruleLabel(rule));
+		final Metrics.Histogram semFnHistogram = Metrics.semFnTime.get(rule.getSemRepn());
+		final double sum = histogram.getSumSeconds(), semFnSum = semFnHistogram.getSumSeconds();
+		final DerivationStream results = Metrics.recordRule(rule, System.nanoTime(), new MultipleDerivationStream()
+		{
+			@Override
+			public Derivation createDerivation()
+			{
+				sleep(20);
+				return new Derivation.Builder().cat("$Test").start(0).end(1).rule(rule).children(new ArrayList<Derivation>()).createDerivation();
+			}
+		});
+		// Endless stream: read two derivations (three created), then drop it
+		assertTrue(results.hasNext());
+		results.next();
+		results.peek();
+		results.next();
+		assertTrue(histogram.getSumSeconds() - sum >= 0.06);
+		assertTrue(semFnHistogram.getSumSeconds() - semFnSum >= 0.06);
+	}
+
+	@Test
+	public void ruleLabels()
+	{
+		final int maxRuleMetrics = Metrics.opts.maxRuleMetrics;
+		try
+		{
+			Metrics.reset();
+			Metrics.opts.maxRuleMetrics = 2;
+			final Rule a = rule("$A", "a");
+			final String label = Metrics.ruleLabel(a);
+			assertTrue(label, label.matches("[0-9a-f]{16} .*\\$A.*"));
+			// The same rule built again gets the same label
+			assertEquals(label, Metrics.ruleLabel(rule("$A", "a")));
+			Metrics.ruleLabel(rule("$B", "b"));
+			assertEquals(Metrics.OTHER_RULES, Metrics.ruleLabel(rule("$C", "c")));
+			assertEquals(label, Metrics.ruleLabel(a));
+		}
+		finally
+		{
+			Metrics.opts.maxRuleMetrics = maxRuleMetrics;
+			Metrics.reset();
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package edu.stanford.nlp.sempre.test;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
 
 import edu.stanford.nlp.sempre.BeamParser;
+import edu.stanford.nlp.sempre.Deadline;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.ExactValueEvaluator;
 import edu.stanford.nlp.sempre.Example;
@@ -12,13 +15,17 @@ import edu.stanford.nlp.sempre.FloatingParser;
 import edu.stanford.nlp.sempre.Grammar;
 import edu.stanford.nlp.sempre.JavaExecutor;
 import edu.stanford.nlp.sempre.Params;
+import edu.stanford.nlp.sempre.ParseListener;
 import edu.stanford.nlp.sempre.Parser;
 import edu.stanford.nlp.sempre.ParserState;
 import edu.stanford.nlp.sempre.ReinforcementParser;
 import edu.stanford.nlp.sempre.Value;
 import edu.stanford.nlp.sempre.ValueEvaluator;
 import fig.basic.LogInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.testng.annotations.Test;
 
@@ -154,6 +161,113 @@ public class ParserTest
 		checkNumDerivations(parser, "ignore", null, 3 + 3 * 3);
 	}
 
+	@Test
+	public void checkBeamDeadline()
+	{
+		Parser.opts.coarsePrune = false;
+		final Parser parser = new BeamParser(ABCTest().getParserSpec());
+		final Deadline deadline = Deadline.afterSeconds(60);
+		assertTrue(deadline.isTimed());
+		assertFalse(Deadline.NONE.isTimed());
+		assertFalse(Deadline.untilExpired().isTimed()); // Executes all the derivations at once, as without a deadline
+		Deadline.setCurrent(deadline);
+		try
+		{
+			Example ex = TestUtils.makeSimpleExample("a b c a b c", null);
+			ParserState state = parser.parse(new Params(), ex, false);
+			assertFalse(state.timedOut);
+			assertEquals(42, ex.getPredDerivations().size());
+
+			// Expired: only the full span is built, from an empty chart
+			deadline.expire();
+			ex = TestUtils.makeSimpleExample("a b c a b c", null);
+			state = parser.parse(new Params(), ex, false);
+			assertTrue(state.timedOut);
+			assertTrue(ex.getPredDerivations().size() < 42);
+		}
+		finally
+		{
+			Deadline.clearCurrent();
+		}
+	}
+
+	@Test(groups = "floating")
+	public void checkParseListener()
+	{
+		final List<String> stages = new ArrayList<>();
+		final ParseListener listener = new ParseListener(5)
+		{
+			@Override
+			public void onCandidates(final Example ex, final String stage, final List<Derivation> candidates)
+			{
+				stages.add(stage);
+				assertTrue(candidates.size() <= 5);
+				for (int i = 0; i < candidates.size(); i++)
+				{
+					assertTrue(candidates.get(i).isExecuted());
+					if (i > 0)
+						assertTrue(candidates.get(i - 1).getScore() >= candidates.get(i).getScore());
+				}
+			}
+		};
+		ParseListener.setCurrent(listener);
+		try
+		{
+			// Beam: root derivations only once the full span is built
+			Parser.opts.coarsePrune = false;
+			new BeamParser(ABCTest().getParserSpec()).parse(new Params(), TestUtils.makeSimpleExample("a b c a b c", null), false);
+			assertEquals(Arrays.asList("span 6"), stages);
+
+			// Floating: after each size that built more root derivations
+			stages.clear();
+			FloatingParser.opts.defaultIsFloating = true;
+			FloatingParser.opts.useSizeInsteadOfDepth = true;
+			FloatingParser.opts.maxDepth = 4;
+			final Example ex = TestUtils.makeSimpleExample("ignore", null);
+			new FloatingParser(ABCTest().getParserSpec()).parse(new Params(), ex, false);
+			assertEquals(Arrays.asList("size 2", "size 4"), stages);
+			assertEquals(3 + 3 * 3, ex.getPredDerivations().size());
+
+			// Not called while learning
+			stages.clear();
+			new FloatingParser(ABCTest().getParserSpec()).parse(new Params(), TestUtils.makeSimpleExample("ignore", null), true);
+			assertTrue(stages.isEmpty());
+		}
+		finally
+		{
+			ParseListener.clearCurrent();
+		}
+	}
+
+	@Test
+	public void checkCubePruning()
+	{
+		Parser.opts.coarsePrune = false;
+		BeamParser.opts.cubePrune = true;
+		final int beamSize = Parser.opts.beamSize;
+		try
+		{
+			// Beams are large enough to hold everything: same derivations as without cube pruning
+			ParseTest p;
+			p = ABCTest();
+			p.test(new BeamParser(p.getParserSpec()));
+			p = ArithmeticTest();
+			p.test(new BeamParser(p.getParserSpec()));
+
+			// With one derivation per cell, most combinations of children are never composed
+			Parser.opts.beamSize = 1;
+			final Parser parser = new BeamParser(ABCTest().getParserSpec());
+			final ParserState state = parser.parse(new Params(), TestUtils.makeSimpleExample("a b c a b c", null), false);
+			assertEquals(1, state.predDerivations.size());
+			assertTrue(state.evaluation.getFig("cubeAvoidedCompositions").min() > 0);
+		}
+		finally
+		{
+			BeamParser.opts.cubePrune = false;
+			Parser.opts.beamSize = beamSize;
+		}
+	}
+
 	// TODO(chaganty): verify that things are ranked appropriately
 	public void checkRankingArithmetic(final Parser parser)
 	{
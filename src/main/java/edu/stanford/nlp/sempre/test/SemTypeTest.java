@@ -1,10 +1,15 @@
 package edu.stanford.nlp.sempre.test;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
 
+import edu.stanford.nlp.sempre.CanonicalNames;
 import edu.stanford.nlp.sempre.SemType;
 import edu.stanford.nlp.sempre.SemTypeHierarchy;
 import fig.basic.LispTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.testng.annotations.Test;
 
 /**
@@ -71,6 +76,60 @@ public class SemTypeTest
 		verifyMeet("(-> (union city country) person)", "(-> city (union person dog))", "(-> city person)");
 	}
 
+	@Test
+	public void internedSemType()
+	{
+		SemTypeHierarchy.opts.failOnUnknownTypes = false;
+		assertSame(T("city"), SemType.newAtomicSemType("city"));
+		assertSame(T("(union city country)"), SemType.newUnionSemType("city", "country"));
+		assertSame(T("(-> fb:type.int city)"), SemType.newFuncSemType("fb:type.int", "city"));
+		assertSame(T("(-> city fb:type.int)"), T("(-> fb:type.int city)").reverse());
+		assertSame(SemType.bottomType, T("(union)"));
+
+		// Meets that do not refine a type return it unchanged
+		final SemType union = T("(union city country)");
+		assertSame(union, union.meet(T("fb:common.topic")));
+		assertSame(union, union.meet(SemType.topType));
+		final SemType func = T("(-> (union city country) person)");
+		assertSame(func, func.meet(SemType.topTopFunc));
+		assertSame(T("(-> city person)"), func.meet(T("(-> city (union person dog))")));
+	}
+
+	// Lookups run while other threads register types (which grows the bit matrix).
+	@Test
+	public void concurrentHierarchy() throws InterruptedException
+	{
+		SemTypeHierarchy.opts.failOnUnknownTypes = false;
+		final SemTypeHierarchy hierarchy = new SemTypeHierarchy();
+		final int entity = hierarchy.getTypeId(CanonicalNames.ENTITY), any = hierarchy.getTypeId(CanonicalNames.ANY);
+		final AtomicInteger failures = new AtomicInteger();
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++)
+		{
+			final int thread = t;
+			threads.add(new Thread(() ->
+			{
+				for (int i = 0; i < 5000; i++)
+				{
+					// Registered by isSupertype (unknown types are entities)
+					final int type = hierarchy.getTypeId("test.type" + thread + "_" + i);
+					if (!hierarchy.isSupertype(type, entity) || !hierarchy.isSupertype(type, any) || !hierarchy.isSupertype(type, type))
+						failures.incrementAndGet();
+					// Registered by another thread, or about to be
+					final String other = "test.type" + (thread + 1) % 4 + "_" + i;
+					if (!hierarchy.getSupertypes(other).contains(CanonicalNames.ENTITY))
+						failures.incrementAndGet();
+				}
+			}));
+		}
+		for (final Thread thread : threads)
+			thread.start();
+		for (final Thread thread : threads)
+			thread.join();
+		assertEquals(0, failures.get());
+		assertEquals(4 * 5000 + 1, hierarchy.getSubtypes(CanonicalNames.ENTITY).size());
+	}
+
 	public static void main(final String[] args)
 	{
 		new SemTypeTest().simpleSemType();
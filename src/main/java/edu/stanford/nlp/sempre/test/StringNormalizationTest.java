@@ -0,0 +1,113 @@
+package edu.stanford.nlp.sempre.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import edu.stanford.nlp.sempre.tables.StringNormalizationUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.testng.annotations.Test;
+
+/**
+ * Compare the string normalizations in StringNormalizationUtils against their original regex-based definitions.
+ */
+public class StringNormalizationTest
+{
+	// Original definitions
+
+	static String characterNormalize(String string)
+	{
+		string = Normalizer.normalize(string, Normalizer.Form.NFD).replaceAll("[̀-ͯ]", "");
+		string = string.replaceAll("‚", ",").replaceAll("„", ",,").replaceAll("[·・]", ".").replaceAll("…", "...").replaceAll("ˆ", "^").replaceAll("˜", "~").replaceAll("‹", "<").replaceAll("›", ">").replaceAll("[‘’´`]", "'").replaceAll("[“”«»]", "\"").replaceAll("[•†‡]", "").replaceAll("[-‐‑–—]", "-");
+		return string.replaceAll("\\s+", " ").trim();
+	}
+
+	static String simpleNormalize(String string)
+	{
+		string = characterNormalize(string);
+		string = string.replaceAll("\\[(nb ?)?\\d+\\]", "");
+		string = string.replaceAll("\\*+$", "");
+		string = string.replaceAll("^\"(.*)\"$", "$1");
+		return string.replaceAll("\\s+", " ").trim();
+	}
+
+	static String collapseNormalize(final String x)
+	{
+		return Normalizer.normalize(x, Normalizer.Form.NFD).replaceAll("[^A-Za-z0-9]", "").toLowerCase();
+	}
+
+	static String whitespaceNormalize(final String x)
+	{
+		return x.replaceAll("\\s", " ").trim();
+	}
+
+	static final String[] TRICKY = { "", " ", "\t\n", "plain ascii", "  leading and trailing  ", "a\u000Bb\fc\r\nd", "Café Zürich", "Ångström", "naïve résumé", "‚„·・…ˆ˜‹›", "‘quoted’ ´acute´ `grave`", "“double” «guillemets»", "• bullet † dagger ‡", "-‐‑–—dashes", "Jürgen [1]", "Result[nb 2] *", "Result [nb3]**", "\"whole quote\"", "\"a\" and \"b\"", "“ ”", "2,345 people", "$ 1 234.5", "abc 1.5 def 3", "日本語 テキスト・ドット", " non-breaking space", "x̣́y", "ǅ ﬁ ligature", "Ⅻ roman" };
+
+	static void checkAll(final String s)
+	{
+		assertEquals(s, characterNormalize(s), StringNormalizationUtils.characterNormalize(s));
+		assertEquals(s, simpleNormalize(s), StringNormalizationUtils.simpleNormalize(s));
+		assertEquals(s, collapseNormalize(s), StringNormalizationUtils.collapseNormalize(s));
+		assertEquals(s, whitespaceNormalize(s), StringNormalizationUtils.whitespaceNormalize(s));
+	}
+
+	@Test
+	public void trickyStrings()
+	{
+		for (final String s : TRICKY)
+			checkAll(s);
+	}
+
+	@Test
+	public void randomStrings()
+	{
+		final String alphabet = "aZ09 \t\n\"*[]nb.,-éǺ‚„·・…ˆ˜‹›‘’´`“”«»•†‡‐‑–—日 ";
+		final Random random = new Random(1);
+		for (int n = 0; n < 20000; n++)
+		{
+			final StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(12); i > 0; i--)
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			checkAll(sb.toString());
+		}
+	}
+
+	// The collapsed form of a span is the concatenation of the collapsed forms of its tokens (used by EditDistanceFuzzyMatcher).
+	@Test
+	public void collapseConcatenation()
+	{
+		final List<String> tokens = new ArrayList<>(Arrays.asList(TRICKY));
+		for (int i = 0; i + 3 <= tokens.size(); i++)
+		{
+			final List<String> span = tokens.subList(i, i + 3);
+			final StringBuilder concatenated = new StringBuilder();
+			for (final String token : span)
+				concatenated.append(StringNormalizationUtils.collapseNormalize(token));
+			assertEquals(collapseNormalize(String.join(" ", span)), concatenated.toString());
+		}
+	}
+
+	// Every cell of the WikiTableQuestions tables, if they are available
+	@Test
+	public void tableCells() throws IOException
+	{
+		final Path dir = Paths.get("lib/data/WikiTableQuestions/csv");
+		if (!Files.isDirectory(dir))
+			return;
+		try (Stream<Path> paths = Files.walk(dir))
+		{
+			for (final Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".tsv"))::iterator)
+				for (final String line : Files.readAllLines(path, StandardCharsets.UTF_8))
+					for (final String cell : line.split("\t"))
+						checkAll(cell.replace("\\n", "\n").replace("\\p", "|").replace("\\\\", "\\"));
+		}
+	}
+}
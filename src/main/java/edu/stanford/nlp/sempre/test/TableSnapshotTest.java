@@ -0,0 +1,119 @@
+package edu.stanford.nlp.sempre.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import edu.stanford.nlp.sempre.ContextValue;
+import edu.stanford.nlp.sempre.Formula;
+import edu.stanford.nlp.sempre.NumberValue;
+import edu.stanford.nlp.sempre.Value;
+import edu.stanford.nlp.sempre.tables.TableCell;
+import edu.stanford.nlp.sempre.tables.TableKnowledgeGraph;
+import edu.stanford.nlp.sempre.tables.lambdadcs.LambdaDCSExecutor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.annotations.Test;
+
+/**
+ * Test that a table read from its snapshot (TableKnowledgeGraph.Options.snapshotDir) is the table read from its CSV file.
+ */
+public class TableSnapshotTest
+{
+	private static final List<String> CSV = Arrays.asList( //
+			"\"Name\",\"Date\",\"Score\",\"Distance\"", //
+			"\"Alpha\",\"10 March 1993\",\"3.14159265\",\"1,234,567.891\"", //
+			"\"Beta\",\"12 October 1993\",\"2.71828182\",\"0.000123456789\"", //
+			"\"Gamma\",\"1994\",\"1–2\",\"42 km\"", //
+			"\"Delta\",\"27 April 1994\",\"1.41421356\",\"1e-9\"");
+
+	private static final List<String> FORMULAS = Arrays.asList( //
+			"(sum (!fb:cell.cell.number (!fb:row.row.score (fb:type.object.type fb:type.row))))", //
+			"(!fb:cell.cell.number (!fb:row.row.distance (fb:type.object.type fb:type.row)))", //
+			"(!fb:row.row.name (argmax 1 1 (fb:type.object.type fb:type.row) (reverse (lambda r (!fb:cell.cell.number (!fb:row.row.score (var r)))))))", //
+			"(!fb:cell.cell.date (!fb:row.row.date (fb:type.object.type fb:type.row)))", //
+			"(!fb:row.row.name (fb:row.row.score (fb:cell.cell.number (> (number 3.1415)))))");
+
+	private static File writeTable(final File dir, final String name, final List<String> lines) throws IOException
+	{
+		final File file = new File(dir, name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+		return file;
+	}
+
+	@Test
+	public void snapshotMatchesCsv() throws IOException
+	{
+		final File dir = Files.createTempDirectory("sempre-snapshot").toFile();
+		final boolean cache = TableKnowledgeGraph.opts.cacheTableKnowledgeGraphs;
+		final String snapshotDir = TableKnowledgeGraph.opts.snapshotDir;
+		try
+		{
+			TableKnowledgeGraph.opts.cacheTableKnowledgeGraphs = false;
+			TableKnowledgeGraph.opts.snapshotDir = new File(dir, "snapshots").getPath();
+			final String filename = writeTable(dir, "table.csv", CSV).getPath();
+			final TableKnowledgeGraph fromCsv = TableKnowledgeGraph.fromRootedFilename(filename); // Writes the snapshot
+			assertEquals(1, new File(TableKnowledgeGraph.opts.snapshotDir).list().length);
+			final TableKnowledgeGraph fromSnapshot = TableKnowledgeGraph.fromRootedFilename(filename);
+
+			assertEquals(fromCsv.numRows(), fromSnapshot.numRows());
+			assertEquals(fromCsv.numColumns(), fromSnapshot.numColumns());
+			for (int j = 0; j < fromCsv.numColumns(); j++)
+				assertEquals(fromCsv.getColumn(j).relationNameValue, fromSnapshot.getColumn(j).relationNameValue);
+			for (int i = 0; i < fromCsv.numRows(); i++)
+				for (int j = 0; j < fromCsv.numColumns(); j++)
+				{
+					final TableCell expected = fromCsv.getCell(i, j), actual = fromSnapshot.getCell(i, j);
+					assertEquals(expected.properties.id, actual.properties.id);
+					assertEquals(expected.properties.originalString, actual.properties.originalString);
+					assertEquals(expected.properties.metadata, actual.properties.metadata);
+				}
+			// Numbers are not rounded
+			assertTrue(fromSnapshot.getCell(0, 2).properties.metadata.containsValue(new NumberValue(3.14159265)));
+			assertTrue(fromSnapshot.getCell(1, 3).properties.metadata.containsValue(new NumberValue(0.000123456789)));
+
+			final LambdaDCSExecutor executor = new LambdaDCSExecutor();
+			for (final String formula : FORMULAS)
+			{
+				final Value expected = executor.execute(Formula.fromString(formula), new ContextValue(fromCsv)).value;
+				final Value actual = executor.execute(Formula.fromString(formula), new ContextValue(fromSnapshot)).value;
+				assertEquals(formula, expected, actual);
+			}
+		}
+		finally
+		{
+			TableKnowledgeGraph.opts.cacheTableKnowledgeGraphs = cache;
+			TableKnowledgeGraph.opts.snapshotDir = snapshotDir;
+		}
+	}
+
+	// Paths that only differ by their separators have different snapshots.
+	@Test
+	public void distinctSnapshotFiles() throws IOException
+	{
+		final File dir = Files.createTempDirectory("sempre-snapshot").toFile();
+		final boolean cache = TableKnowledgeGraph.opts.cacheTableKnowledgeGraphs;
+		final String snapshotDir = TableKnowledgeGraph.opts.snapshotDir;
+		try
+		{
+			TableKnowledgeGraph.opts.cacheTableKnowledgeGraphs = false;
+			TableKnowledgeGraph.opts.snapshotDir = new File(dir, "snapshots").getPath();
+			final String first = writeTable(dir, "a/b_c.csv", CSV).getPath();
+			final String second = writeTable(dir, "a_b/c.csv", CSV.subList(0, 2)).getPath();
+			TableKnowledgeGraph.fromRootedFilename(first);
+			TableKnowledgeGraph.fromRootedFilename(second);
+			assertEquals(2, new File(TableKnowledgeGraph.opts.snapshotDir).list().length);
+			assertEquals(CSV.size() - 1, TableKnowledgeGraph.fromRootedFilename(first).numRows());
+			assertEquals(1, TableKnowledgeGraph.fromRootedFilename(second).numRows());
+		}
+		finally
+		{
+			TableKnowledgeGraph.opts.cacheTableKnowledgeGraphs = cache;
+			TableKnowledgeGraph.opts.snapshotDir = snapshotDir;
+		}
+	}
+}